@@ -0,0 +1,110 @@
+package com.karasov.hibernatehw.benchmark;
+
+import com.karasov.hibernatehw.HibernateHwApplication;
+import com.karasov.hibernatehw.readmodel.PersonReadModel;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Приложение для бенчмарков: встроенный PostgreSQL, схема из Liquibase changelog,
+ * синтетический набор данных и поднятый поверх них контекст {@link HibernateHwApplication}.
+ * <p>
+ * Набор данных: {@value #CITIES} городов с названиями {@code City 1..N} и {@code persons} людей с ключом
+ * ({@code Name<i % 5000>}, {@code Surname<i>}, {@code 18 + i % 63}), равномерно распределенных по городам.
+ */
+public final class BenchmarkApplication implements AutoCloseable {
+
+    public static final int CITIES = 100;
+
+    private final EmbeddedPostgres postgres;
+    private final ConfigurableApplicationContext context;
+
+    private BenchmarkApplication(EmbeddedPostgres postgres, ConfigurableApplicationContext context) {
+        this.postgres = postgres;
+        this.context = context;
+    }
+
+    /**
+     * Запускает базу и контекст приложения и заполняет таблицы.
+     *
+     * @param persons            Количество людей в наборе данных.
+     * @param webApplicationType Тип веб-приложения: {@code NONE} для сервисных бенчмарков,
+     *                           {@code SERVLET} для HTTP-нагрузки; профиль {@code reactive}
+     *                           сам переключает приложение на {@code REACTIVE}.
+     * @param properties         Дополнительные свойства Spring в формате {@code key=value}.
+     * @return Запущенное приложение.
+     */
+    public static BenchmarkApplication start(int persons, WebApplicationType webApplicationType, String... properties) {
+        EmbeddedPostgres postgres;
+        try {
+            postgres = EmbeddedPostgres.builder().start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // Свойства передаются как аргументы командной строки: они приоритетнее application.properties.
+        List<String> args = new ArrayList<>(List.of(
+                "spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                "spring.datasource.username=postgres",
+                "spring.datasource.password=postgres",
+                "spring.r2dbc.url=r2dbc:postgresql://localhost:" + postgres.getPort() + "/postgres",
+                "spring.r2dbc.username=postgres",
+                "spring.r2dbc.password=postgres",
+                "spring.liquibase.enabled=true",
+                "spring.liquibase.change-log=classpath:/db/changelog/db.changelog-master.xml",
+                "spring.jpa.defer-datasource-initialization=false",
+                "spring.jpa.show-sql=false",
+                "logging.level.root=WARN"
+        ));
+        args.addAll(List.of(properties));
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(HibernateHwApplication.class)
+                .web(webApplicationType)
+                .run(args.stream().map(property -> "--" + property).toArray(String[]::new));
+        seed(context.getBean(JdbcTemplate.class), persons);
+        // Набор данных записан мимо сервиса, поэтому модель чтения загружается заново (без нее — ничего не делает)
+        context.getBean(PersonReadModel.class).reload();
+        return new BenchmarkApplication(postgres, context);
+    }
+
+    /**
+     * Заполняет таблицы {@code city} и {@code person} набором данных, описанным в комментарии к классу.
+     */
+    public static void seed(JdbcTemplate jdbcTemplate, int persons) {
+        jdbcTemplate.update("""
+                INSERT INTO city (name)
+                SELECT 'City ' || g FROM generate_series(1, ?) g
+                ON CONFLICT DO NOTHING
+                """, CITIES);
+        jdbcTemplate.update("""
+                INSERT INTO person (name, surname, age, phone_number, city_id)
+                SELECT 'Name' || (g % 5000), 'Surname' || g, 18 + g % 63, lpad(g::text, 10, '0'), c.id
+                FROM generate_series(1, ?) g
+                JOIN city c ON c.name = 'City ' || (1 + g % ?)
+                ON CONFLICT DO NOTHING
+                """, persons, CITIES);
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public ConfigurableApplicationContext getContext() {
+        return context;
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        postgres.close();
+    }
+}
@@ -0,0 +1,88 @@
+package com.karasov.hibernatehw.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.karasov.hibernatehw.config.BinaryFormatsConfig;
+import com.karasov.hibernatehw.dto.PersonDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Сериализация и разбор {@code List<PersonDto>} в JSON, Smile и CBOR с теми же настройками, что и в ответах
+ * контроллера ({@link BinaryFormatsConfig}). Размер тела без сжатия и после gzip печатается при подготовке.
+ * Набор данных — как в {@link BenchmarkApplication}: 100 городов, неповторяющиеся фамилии.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersonEncodingBenchmark {
+
+    private static final TypeReference<List<PersonDto>> PERSON_LIST = new TypeReference<>() {
+    };
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    @Param({"100", "10000"})
+    private int size;
+
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    private List<PersonDto> persons;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = switch (format) {
+            case "json" -> Jackson2ObjectMapperBuilder.json().build();
+            case "smile" -> BinaryFormatsConfig.smileMapper(Jackson2ObjectMapperBuilder.json());
+            case "cbor" -> BinaryFormatsConfig.cborMapper(Jackson2ObjectMapperBuilder.json());
+            default -> throw new IllegalArgumentException(format);
+        };
+        writer = objectMapper.writerFor(PERSON_LIST);
+        reader = objectMapper.readerFor(PERSON_LIST);
+        persons = IntStream.range(0, size)
+                .mapToObj(i -> new PersonDto("Name" + i % 5000, "Surname" + i, 18 + i % 63,
+                        String.format("%010d", i), "City " + (1 + i % 100)))
+                .toList();
+        body = writer.writeValueAsBytes(persons);
+
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(body);
+        }
+        System.out.printf("%n%s, %d persons: %d bytes, %d bytes gzip%n", format, size, body.length, gzipped.size());
+    }
+
+    @Benchmark
+    public byte[] serializeList() throws IOException {
+        return writer.writeValueAsBytes(persons);
+    }
+
+    @Benchmark
+    public List<PersonDto> deserializeList() throws IOException {
+        return reader.readValue(body);
+    }
+}
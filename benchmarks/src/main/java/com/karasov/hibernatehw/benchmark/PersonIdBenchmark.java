@@ -0,0 +1,46 @@
+package com.karasov.hibernatehw.benchmark;
+
+import com.karasov.hibernatehw.entity.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость {@link Person.PersonId#hashCode()} и {@link Person.PersonId#equals(Object)}.
+ * Запускайте с {@code -prof gc}, чтобы видеть аллокации на вызов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersonIdBenchmark {
+
+    private final Person.PersonId personId = new Person.PersonId("John", "Doe", 30);
+    private final Person.PersonId equalPersonId = new Person.PersonId(new String("John"), new String("Doe"), 30);
+    private final Person.PersonId otherPersonId = new Person.PersonId("John", "Doe", 31);
+
+    @Benchmark
+    public int hashCodeOf() {
+        return personId.hashCode();
+    }
+
+    @Benchmark
+    public boolean equalsEqual() {
+        return personId.equals(equalPersonId);
+    }
+
+    @Benchmark
+    public boolean equalsDifferent() {
+        return personId.equals(otherPersonId);
+    }
+}
@@ -0,0 +1,57 @@
+package com.karasov.hibernatehw.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.karasov.hibernatehw.dto.PersonDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Сериализация {@code List<PersonDto>} в JSON тем же образом, что и в ответах контроллера.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersonJsonBenchmark {
+
+    @Param({"100", "10000"})
+    private int size;
+
+    private ObjectWriter writer;
+    private List<PersonDto> persons;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        writer = objectMapper.writerFor(new TypeReference<List<PersonDto>>() {
+        });
+        persons = IntStream.range(0, size)
+                .mapToObj(i -> new PersonDto("Name" + i % 5000, "Surname" + i, 18 + i % 63,
+                        String.format("%010d", i), "City " + (1 + i % 100)))
+                .toList();
+    }
+
+    @Benchmark
+    public byte[] serializeList() throws JsonProcessingException {
+        return writer.writeValueAsBytes(persons);
+    }
+}
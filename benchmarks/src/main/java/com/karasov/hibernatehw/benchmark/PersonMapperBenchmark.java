@@ -0,0 +1,44 @@
+package com.karasov.hibernatehw.benchmark;
+
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.entity.City;
+import com.karasov.hibernatehw.entity.Person;
+import com.karasov.hibernatehw.mapper.PersonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость маппинга между {@link Person} и {@link PersonDto}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersonMapperBenchmark {
+
+    private final PersonMapper mapper = new PersonMapper();
+    private final City city = new City(1L, "New York");
+    private final Person person = new Person(new Person.PersonId("John", "Doe", 30), "1234567890", city);
+    private final PersonDto personDto = new PersonDto("John", "Doe", 30, "1234567890", "New York");
+
+    @Benchmark
+    public PersonDto personToDto() {
+        return mapper.personToDto(person);
+    }
+
+    @Benchmark
+    public Person dtoToPerson() {
+        return mapper.dtoToPerson(personDto, city);
+    }
+}
@@ -0,0 +1,125 @@
+package com.karasov.hibernatehw.benchmark;
+
+import com.karasov.hibernatehw.dto.PatchPersonDto;
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonPageDto;
+import com.karasov.hibernatehw.service.PersonService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Методы {@link PersonService} против встроенного PostgreSQL с синтетическим набором данных
+ * (по умолчанию 1M людей, см. {@link BenchmarkApplication}).
+ * Кэш второго уровня и query cache выключены, чтобы измерялся путь до базы.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonServiceBenchmark {
+
+    @Param({"1000000"})
+    private int persons;
+
+    private BenchmarkApplication application;
+    private PersonService service;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        application = BenchmarkApplication.start(persons, WebApplicationType.NONE,
+                "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                "spring.jpa.properties.hibernate.cache.use_query_cache=false");
+        service = application.getBean(PersonService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        application.close();
+    }
+
+    /**
+     * {@code createPerson} строит URI из текущего запроса, поэтому каждому потоку нужен контекст запроса.
+     */
+    @State(Scope.Thread)
+    public static class RequestContext {
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            RequestContextHolder.setRequestAttributes(
+                    new ServletRequestAttributes(new MockHttpServletRequest("POST", "/persons")));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Benchmark
+    public PersonDto getPerson() {
+        return service.getPerson("Name42", "Surname42", 18 + 42 % 63);
+    }
+
+    @Benchmark
+    public PersonDto getPersonByNameAndSurname() {
+        return service.getPersonByNameAndSurname("name42", "surname42");
+    }
+
+    @Benchmark
+    public List<PersonDto> getPersonsByCity() {
+        return service.getPersonsByCity("City 7");
+    }
+
+    @Benchmark
+    public PersonPageDto getPersonsByCityPage() {
+        return service.getPersonsByCity("City 7", null, 100);
+    }
+
+    @Benchmark
+    public List<PersonDto> getPersonByAgeLowerThanAsc() {
+        return service.getPersonByAgeLowerThanAsc(19);
+    }
+
+    @Benchmark
+    public PersonPageDto getPersonByAgeLowerThanAscPage() {
+        return service.getPersonByAgeLowerThanAsc(19, null, 100);
+    }
+
+    @Benchmark
+    public int patchPerson() {
+        return service.patchPerson("Name42", "Surname42", 18 + 42 % 63,
+                new PatchPersonDto("0000000042", "City " + (1 + sequence.incrementAndGet() % BenchmarkApplication.CITIES)));
+    }
+
+    @Benchmark
+    public URI createAndDeletePerson(RequestContext requestContext) {
+        String surname = "Benchmark" + sequence.incrementAndGet();
+        URI uri = service.createPerson(new PersonDto("Bench", surname, 30, "0000000000", "City 1"));
+        service.deletePerson("Bench", surname, 30);
+        return uri;
+    }
+}
@@ -0,0 +1,71 @@
+package com.karasov.hibernatehw.benchmark.load;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Маршруты {@code PersonController}, которые нагружает {@link LoadTest}.
+ * Идентификатор используется в параметре смеси нагрузки, вес — доля запросов по умолчанию.
+ */
+enum Endpoint {
+
+    GET_PERSON("GET /persons/{name}/{surname}/{age}", 25, 200),
+    GET_BY_NAME("GET /persons?name&surname", 15, 200),
+    BY_CITY("GET /persons/by-city", 5, 200),
+    BY_CITY_NDJSON("GET /persons/by-city (ndjson)", 3, 200),
+    BY_CITY_PAGE("GET /persons/by-city/page", 10, 200),
+    BY_AGE("GET /persons/by-age", 3, 200),
+    /**
+     * Полный список без фильтра по возрасту: самый тяжелый запрос, для проверки групп {@code Bulkhead}.
+     */
+    BY_AGE_ALL("GET /persons/by-age (all)", 0, 200),
+    BY_AGE_NDJSON("GET /persons/by-age (ndjson)", 2, 200),
+    BY_AGE_PAGE("GET /persons/by-age/page", 10, 200),
+    CREATE("POST /persons", 8, 201),
+    /**
+     * 202 — изменение принято в очередь отложенной записи ({@code persons.write-behind.enabled}).
+     */
+    PATCH("PATCH /persons/{name}/{surname}/{age}", 10, 200, 202),
+    DELETE("DELETE /persons", 7, 200),
+    BATCH("POST /persons/batch", 2, 200),
+    BULK_PATCH("PATCH /persons/bulk", 1, 200),
+    SEARCH("GET /persons/search", 5, 200),
+    EXPORT("GET /persons/export (gzip csv)", 0, 200),
+    EXPORT_BINARY("GET /persons/export (binary)", 0, 200);
+
+    private final String route;
+    private final int defaultWeight;
+    private final int[] expectedStatuses;
+
+    Endpoint(String route, int defaultWeight, int... expectedStatuses) {
+        this.route = route;
+        this.defaultWeight = defaultWeight;
+        this.expectedStatuses = expectedStatuses;
+    }
+
+    /**
+     * @return Идентификатор маршрута в смеси нагрузки, например {@code by-city-page}.
+     */
+    String id() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    String route() {
+        return route;
+    }
+
+    int defaultWeight() {
+        return defaultWeight;
+    }
+
+    boolean isExpectedStatus(int status) {
+        return Arrays.stream(expectedStatuses).anyMatch(expected -> expected == status);
+    }
+
+    static Endpoint byId(String id) {
+        return Arrays.stream(values())
+                .filter(endpoint -> endpoint.id().equals(id))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown endpoint '%s'.".formatted(id)));
+    }
+}
@@ -0,0 +1,46 @@
+package com.karasov.hibernatehw.benchmark.load;
+
+import java.util.Arrays;
+
+/**
+ * Итоги нагрузки одного маршрута: пропускная способность и перцентили задержки в миллисекундах.
+ * Отклоненные при перегрузке запросы (503) считаются отдельно от ошибок и в перцентили не входят.
+ */
+record LatencyReport(String endpoint,
+                     String route,
+                     long requests,
+                     long errors,
+                     long shed,
+                     double throughput,
+                     double p50,
+                     double p95,
+                     double p99,
+                     double max) {
+
+    /**
+     * @param endpoint        Маршрут.
+     * @param latenciesNanos  Задержки успешных запросов в наносекундах; массив сортируется на месте.
+     * @param errors          Количество неуспешных запросов.
+     * @param shed            Количество запросов, отклоненных с 503.
+     * @param durationSeconds Длительность замера в секундах.
+     */
+    static LatencyReport of(Endpoint endpoint, long[] latenciesNanos, long errors, long shed,
+                            double durationSeconds) {
+        Arrays.sort(latenciesNanos);
+        long requests = latenciesNanos.length + errors + shed;
+        return new LatencyReport(endpoint.id(), endpoint.route(), requests, errors, shed,
+                requests / durationSeconds,
+                percentile(latenciesNanos, 50),
+                percentile(latenciesNanos, 95),
+                percentile(latenciesNanos, 99),
+                percentile(latenciesNanos, 100));
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,13 @@
+package com.karasov.hibernatehw.benchmark.load;
+
+import java.util.List;
+
+/**
+ * Итоги одного нагрузочного прогона: отчеты по маршрутам и потребление ресурсов за время замера.
+ */
+record LoadResult(List<LatencyReport> endpoints, ResourceUsage resources) {
+
+    boolean hasErrors() {
+        return endpoints.stream().anyMatch(report -> report.errors() > 0);
+    }
+}
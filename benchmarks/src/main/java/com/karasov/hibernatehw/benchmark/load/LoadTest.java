@@ -0,0 +1,435 @@
+package com.karasov.hibernatehw.benchmark.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.karasov.hibernatehw.benchmark.BenchmarkApplication;
+import com.karasov.hibernatehw.dto.BulkPatchItemDto;
+import com.karasov.hibernatehw.dto.PatchPersonDto;
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonKeyDto;
+import org.springframework.boot.WebApplicationType;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочный прогон всех маршрутов {@code /persons} по HTTP.
+ * <p>
+ * Поднимает приложение со встроенным PostgreSQL и набором данных из {@link BenchmarkApplication},
+ * после прогрева в течение заданного времени гоняет {@code concurrency} потоков, каждый из которых
+ * выбирает маршрут по весам смеси и синхронно ждет ответ. По каждому маршруту печатает и пишет в JSON
+ * пропускную способность и перцентили задержки, а также пик занятой кучи и числа потоков за время замера
+ * ({@link ResourceUsage}). Ответы 503 (отклонение при перегрузке) считаются отдельно, в колонке {@code shed}.
+ * Завершается с кодом 1, если были неуспешные ответы.
+ * <p>
+ * Аргументы в формате {@code key=value}:
+ * <ul>
+ *     <li>{@code persons} — размер набора данных, по умолчанию 100000;</li>
+ *     <li>{@code concurrency} — число одновременных клиентов, по умолчанию 32;</li>
+ *     <li>{@code warmup}, {@code duration} — прогрев и замер в секундах, по умолчанию 10 и 30;</li>
+ *     <li>{@code mix} — веса маршрутов, например {@code get-person:50,by-city-page:50};
+ *     пустое значение — смесь по умолчанию из {@link Endpoint};</li>
+ *     <li>{@code result} — путь к JSON-отчету.</li>
+ * </ul>
+ * Остальные аргументы передаются приложению как свойства Spring.
+ */
+public final class LoadTest {
+
+    private static final int BATCH_SIZE = 100;
+    private static final int PAGE_SIZE = 100;
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    private final URI baseUri;
+    private final int persons;
+    private final Endpoint[] mix;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final ObjectWriter personWriter = new ObjectMapper().writerFor(PersonDto.class);
+    private final ObjectWriter patchWriter = new ObjectMapper().writerFor(PatchPersonDto.class);
+    private final ObjectWriter bulkPatchWriter = new ObjectMapper().writerFor(BulkPatchItemDto[].class);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Queue<PersonDto> created = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean measuring;
+    private volatile boolean stopped;
+
+    private LoadTest(URI baseUri, int persons, Endpoint[] mix) {
+        this.baseUri = baseUri;
+        this.persons = persons;
+        this.mix = mix;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = defaultOptions("32");
+        List<String> properties = parseArgs(args, options);
+
+        LoadResult loadResult = run(options, properties);
+
+        print("Load test " + options, loadResult);
+        Map<String, Object> result = new LinkedHashMap<>(options);
+        result.put("properties", properties);
+        result.put("endpoints", loadResult.endpoints());
+        result.put("resources", loadResult.resources());
+        writeResult(options, result);
+        System.exit(loadResult.hasErrors() ? 1 : 0);
+    }
+
+    /**
+     * @param concurrency Число клиентов по умолчанию.
+     * @return Изменяемый набор параметров прогона со значениями по умолчанию.
+     */
+    static Map<String, String> defaultOptions(String concurrency) {
+        return new LinkedHashMap<>(Map.of(
+                "persons", "100000",
+                "concurrency", concurrency,
+                "warmup", "10",
+                "duration", "30",
+                "mix", "",
+                "result", "target/load-result.json"));
+    }
+
+    /**
+     * Раскладывает аргументы {@code key=value}: известные ключи переопределяют {@code options},
+     * остальные возвращаются как свойства Spring.
+     */
+    static List<String> parseArgs(String[] args, Map<String, String> options) {
+        List<String> properties = new ArrayList<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length == 2 && options.containsKey(pair[0])) {
+                options.put(pair[0], pair[1]);
+            } else {
+                properties.add(arg);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Поднимает приложение с заданными свойствами, прогоняет нагрузку и останавливает приложение.
+     */
+    static LoadResult run(Map<String, String> options, List<String> properties) throws Exception {
+        int persons = Integer.parseInt(options.get("persons"));
+        List<String> applicationProperties = new ArrayList<>(properties);
+        applicationProperties.add("server.port=0");
+
+        try (BenchmarkApplication application = BenchmarkApplication.start(
+                persons, WebApplicationType.SERVLET, applicationProperties.toArray(String[]::new))) {
+            int port = application.getContext().getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            LoadTest loadTest = new LoadTest(URI.create("http://localhost:" + port), persons, parseMix(options.get("mix")));
+            return loadTest.run(Integer.parseInt(options.get("concurrency")),
+                    Integer.parseInt(options.get("warmup")),
+                    Integer.parseInt(options.get("duration")));
+        }
+    }
+
+    static void writeResult(Map<String, String> options, Object result) throws IOException {
+        Path resultPath = Path.of(options.get("result"));
+        Files.createDirectories(resultPath.toAbsolutePath().getParent());
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(resultPath.toFile(), result);
+        System.out.println("Result written to " + resultPath.toAbsolutePath());
+    }
+
+    /**
+     * Разворачивает веса в массив маршрутов, из которого поток выбирает случайный элемент.
+     */
+    private static Endpoint[] parseMix(String mix) {
+        Map<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+        if (mix.isBlank()) {
+            Arrays.stream(Endpoint.values()).forEach(endpoint -> weights.put(endpoint, endpoint.defaultWeight()));
+        } else {
+            for (String entry : mix.split(",")) {
+                String[] pair = entry.trim().split(":", 2);
+                weights.put(Endpoint.byId(pair[0]), pair.length == 2 ? Integer.parseInt(pair[1]) : 1);
+            }
+        }
+        return weights.entrySet().stream()
+                .flatMap(entry -> Collections.nCopies(entry.getValue(), entry.getKey()).stream())
+                .toArray(Endpoint[]::new);
+    }
+
+    private LoadResult run(int concurrency, int warmupSeconds, int durationSeconds)
+            throws InterruptedException {
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            Worker worker = new Worker();
+            workers.add(worker);
+            worker.thread.start();
+        }
+
+        TimeUnit.SECONDS.sleep(warmupSeconds);
+        ResourceUsage.Sampler sampler = ResourceUsage.start();
+        measuring = true;
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(durationSeconds);
+        stopped = true;
+        double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        ResourceUsage resources = sampler.stop();
+        for (Worker worker : workers) {
+            worker.thread.join();
+        }
+
+        List<LatencyReport> reports = new ArrayList<>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            long[] latencies = workers.stream()
+                    .flatMapToLong(worker -> Arrays.stream(worker.latencies.get(endpoint).toArray()))
+                    .toArray();
+            long errors = workers.stream().mapToLong(worker -> worker.errors.get(endpoint)[0]).sum();
+            long shed = workers.stream().mapToLong(worker -> worker.shed.get(endpoint)[0]).sum();
+            if (latencies.length + errors + shed > 0) {
+                reports.add(LatencyReport.of(endpoint, latencies, errors, shed, elapsedSeconds));
+            }
+        }
+        return new LoadResult(reports, resources);
+    }
+
+    /**
+     * Строит запрос для маршрута. {@code DELETE} удаляет ранее созданного через {@code POST} человека;
+     * пока таких нет, вместо него выполняется {@code CREATE}.
+     */
+    private Call call(Endpoint endpoint, ThreadLocalRandom random) throws IOException {
+        int i = 1 + random.nextInt(persons);
+        String name = "Name" + i % 5000;
+        String surname = "Surname" + i;
+        int age = 18 + i % 63;
+        String city = "City " + (1 + random.nextInt(BenchmarkApplication.CITIES));
+        int maxAge = 19 + random.nextInt(2);
+
+        return switch (endpoint) {
+            case GET_PERSON -> new Call(endpoint, get("/persons/%s/%s/%d".formatted(name, surname, age)));
+            case GET_BY_NAME -> new Call(endpoint, get("/persons?name=%s&surname=%s".formatted(name, surname)));
+            case BY_CITY -> new Call(endpoint, get("/persons/by-city?city=" + encode(city)));
+            case BY_CITY_NDJSON -> new Call(endpoint, ndjson("/persons/by-city?city=" + encode(city)));
+            case BY_CITY_PAGE -> new Call(endpoint,
+                    get("/persons/by-city/page?size=%d&city=%s".formatted(PAGE_SIZE, encode(city))));
+            case BY_AGE -> new Call(endpoint, get("/persons/by-age?age=" + maxAge));
+            case BY_AGE_ALL -> new Call(endpoint, get("/persons/by-age?age=200"));
+            case BY_AGE_NDJSON -> new Call(endpoint, ndjson("/persons/by-age?age=" + maxAge));
+            case BY_AGE_PAGE -> new Call(endpoint,
+                    get("/persons/by-age/page?size=%d&age=%d".formatted(PAGE_SIZE, maxAge)));
+            case CREATE -> {
+                PersonDto person = newPerson("Load", city);
+                yield new Call(endpoint, request("/persons")
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(personWriter.writeValueAsBytes(person)))
+                        .build(), List.of(person));
+            }
+            case PATCH -> {
+                PatchPersonDto patch = new PatchPersonDto("%010d".formatted(random.nextInt(1_000_000_000)), city);
+                yield new Call(endpoint, request("/persons/%s/%s/%d".formatted(name, surname, age))
+                        .header("Content-Type", "application/json")
+                        .method("PATCH", HttpRequest.BodyPublishers.ofByteArray(patchWriter.writeValueAsBytes(patch)))
+                        .build());
+            }
+            case DELETE -> {
+                PersonDto person = created.poll();
+                if (person == null) {
+                    yield call(Endpoint.CREATE, random);
+                }
+                yield new Call(endpoint, request("/persons?name=%s&surname=%s&age=%d"
+                        .formatted(person.name(), person.surname(), person.age()))
+                        .DELETE()
+                        .build());
+            }
+            case BATCH -> {
+                List<PersonDto> batch = new ArrayList<>(BATCH_SIZE);
+                StringBuilder body = new StringBuilder();
+                for (int row = 0; row < BATCH_SIZE; row++) {
+                    PersonDto person = newPerson("Batch", city);
+                    batch.add(person);
+                    body.append(personWriter.writeValueAsString(person)).append('\n');
+                }
+                yield new Call(endpoint, request("/persons/batch")
+                        .header("Content-Type", "application/x-ndjson")
+                        .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                        .build(), batch);
+            }
+            case SEARCH -> new Call(endpoint,
+                    get("/persons/search?size=20&q=" + encode(searchQuery(name + " " + surname, random))));
+            case EXPORT -> new Call(endpoint, request("/persons/export")
+                    .header("Accept-Encoding", "gzip")
+                    .GET()
+                    .build());
+            case EXPORT_BINARY -> new Call(endpoint, request("/persons/export")
+                    .header("Accept", "application/x-person-binary")
+                    .GET()
+                    .build());
+            case BULK_PATCH -> {
+                BulkPatchItemDto[] items = new BulkPatchItemDto[BATCH_SIZE];
+                for (int item = 0; item < BATCH_SIZE; item++) {
+                    int j = 1 + random.nextInt(persons);
+                    items[item] = new BulkPatchItemDto(
+                            new PersonKeyDto("Name" + j % 5000, "Surname" + j, 18 + j % 63),
+                            new PatchPersonDto("%010d".formatted(random.nextInt(1_000_000_000)),
+                                    "City " + (1 + random.nextInt(BenchmarkApplication.CITIES))));
+                }
+                yield new Call(endpoint, request("/persons/bulk")
+                        .header("Content-Type", "application/json")
+                        .method("PATCH", HttpRequest.BodyPublishers.ofByteArray(
+                                bulkPatchWriter.writeValueAsBytes(items)))
+                        .build());
+            }
+        };
+    }
+
+    /**
+     * Строка поиска как при вводе: начало полного имени случайной длины, в половине случаев
+     * с переставленными соседними буквами.
+     */
+    private static String searchQuery(String fullName, ThreadLocalRandom random) {
+        char[] query = fullName.substring(0, 6 + random.nextInt(fullName.length() - 5)).toCharArray();
+        if (random.nextBoolean()) {
+            int i = 1 + random.nextInt(query.length - 2);
+            char swapped = query[i];
+            query[i] = query[i + 1];
+            query[i + 1] = swapped;
+        }
+        return new String(query);
+    }
+
+    private PersonDto newPerson(String name, String city) {
+        return new PersonDto(name, name + sequence.incrementAndGet(), 30, "0000000000", city);
+    }
+
+    private HttpRequest get(String path) {
+        return request(path).GET().build();
+    }
+
+    private HttpRequest ndjson(String path) {
+        return request(path).header("Accept", "application/x-ndjson").GET().build();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path));
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    static void print(String title, LoadResult result) {
+        System.out.println();
+        System.out.println(title);
+        ResourceUsage resources = result.resources();
+        System.out.printf("peak heap %.1f MB, peak threads %d, GC %d collections / %d ms%n",
+                resources.peakHeapMb(), resources.peakThreads(), resources.gcCount(), resources.gcMillis());
+        System.out.printf("%-16s %10s %8s %8s %10s %10s %10s %10s %10s%n",
+                "endpoint", "requests", "errors", "shed", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        for (LatencyReport report : result.endpoints()) {
+            System.out.printf("%-16s %10d %8d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                    report.endpoint(), report.requests(), report.errors(), report.shed(), report.throughput(),
+                    report.p50(), report.p95(), report.p99(), report.max());
+        }
+    }
+
+    /**
+     * Запрос к маршруту и люди, которых он создает: после успешного ответа их можно удалять.
+     */
+    private record Call(Endpoint endpoint, HttpRequest request, List<PersonDto> creates) {
+
+        Call(Endpoint endpoint, HttpRequest request) {
+            this(endpoint, request, List.of());
+        }
+    }
+
+    /**
+     * Поток-клиент со своими счетчиками, чтобы не синхронизироваться при записи замеров.
+     */
+    private final class Worker implements Runnable {
+
+        private final Thread thread = new Thread(this, "load-worker");
+        private final Map<Endpoint, LongList> latencies = new EnumMap<>(Endpoint.class);
+        private final Map<Endpoint, long[]> errors = new EnumMap<>(Endpoint.class);
+        private final Map<Endpoint, long[]> shed = new EnumMap<>(Endpoint.class);
+
+        private Worker() {
+            for (Endpoint endpoint : Endpoint.values()) {
+                latencies.put(endpoint, new LongList());
+                errors.put(endpoint, new long[1]);
+                shed.put(endpoint, new long[1]);
+            }
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (!stopped) {
+                Endpoint endpoint = mix[random.nextInt(mix.length)];
+                Call call = null;
+                boolean success;
+                boolean overloaded = false;
+                long start = System.nanoTime();
+                try {
+                    call = call(endpoint, random);
+                    start = System.nanoTime();
+                    HttpResponse<Void> response = client.send(call.request(), HttpResponse.BodyHandlers.discarding());
+                    success = call.endpoint().isExpectedStatus(response.statusCode());
+                    overloaded = response.statusCode() == SERVICE_UNAVAILABLE;
+                    if (!success && !overloaded) {
+                        System.err.printf("%s %s -> %d%n", call.request().method(), call.request().uri(),
+                                response.statusCode());
+                    }
+                } catch (IOException e) {
+                    success = false;
+                    System.err.printf("%s -> %s%n", endpoint.id(), e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long latency = System.nanoTime() - start;
+
+                if (success) {
+                    created.addAll(call.creates());
+                }
+                if (measuring && !stopped) {
+                    Endpoint measured = call != null ? call.endpoint() : endpoint;
+                    if (success) {
+                        latencies.get(measured).add(latency);
+                    } else if (overloaded) {
+                        shed.get(measured)[0]++;
+                    } else {
+                        errors.get(measured)[0]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Растущий массив {@code long} без упаковки.
+     */
+    private static final class LongList {
+
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.karasov.hibernatehw.benchmark.load;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сравнение блокирующего стека (Spring MVC + JPA) и реактивного (WebFlux + R2DBC).
+ * <p>
+ * Дважды прогоняет {@link LoadTest} на одинаковом наборе данных и смеси маршрутов: с профилем по умолчанию
+ * и с профилем {@code reactive}. Помимо пропускной способности и задержек сравнивает пик занятой кучи
+ * и числа потоков: потоковые списки по городу и возрасту в реактивном стеке читаются из курсора порциями
+ * и не держат ни результат целиком, ни поток на каждый открытый ответ.
+ * Принимает те же аргументы, что и {@link LoadTest}; по умолчанию 256 клиентов.
+ */
+public final class ReactiveComparison {
+
+    private ReactiveComparison() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadTest.defaultOptions("256");
+        options.put("result", "target/reactive-result.json");
+        List<String> properties = LoadTest.parseArgs(args, options);
+
+        LoadResult jpa = LoadTest.run(options, properties);
+
+        List<String> reactiveProperties = new ArrayList<>(properties);
+        reactiveProperties.add("spring.profiles.active=reactive");
+        LoadResult reactive = LoadTest.run(options, reactiveProperties);
+
+        LoadTest.print("MVC + JPA " + options, jpa);
+        LoadTest.print("WebFlux + R2DBC " + options, reactive);
+        Map<String, Object> result = new LinkedHashMap<>(options);
+        result.put("properties", properties);
+        result.put("jpa", jpa);
+        result.put("reactive", reactive);
+        LoadTest.writeResult(options, result);
+        System.exit(jpa.hasErrors() || reactive.hasErrors() ? 1 : 0);
+    }
+}
@@ -0,0 +1,78 @@
+package com.karasov.hibernatehw.benchmark.load;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Потребление ресурсов JVM за время замера: пик занятой кучи, пик числа потоков и работа GC.
+ * Приложение и клиенты нагрузки работают в одной JVM, поэтому в числа входят и {@code concurrency}
+ * потоков-клиентов; при сравнении стеков на одинаковой нагрузке эта часть одинакова.
+ */
+record ResourceUsage(double peakHeapMb,
+                     int peakThreads,
+                     long gcCount,
+                     long gcMillis) {
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 50;
+
+    /**
+     * Запускает фоновый замер; итоги возвращает {@link Sampler#stop()}.
+     */
+    static Sampler start() {
+        Sampler sampler = new Sampler();
+        sampler.thread.start();
+        return sampler;
+    }
+
+    static final class Sampler implements Runnable {
+
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private final Thread thread = new Thread(this, "resource-sampler");
+        private final long gcCountBefore = gcCount();
+        private final long gcMillisBefore = gcMillis();
+
+        private volatile boolean stopped;
+        private volatile long peakHeapBytes;
+
+        private Sampler() {
+            thread.setDaemon(true);
+            threads.resetPeakThreadCount();
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                peakHeapBytes = Math.max(peakHeapBytes, memory.getHeapMemoryUsage().getUsed());
+                try {
+                    Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        ResourceUsage stop() throws InterruptedException {
+            stopped = true;
+            thread.join();
+            return new ResourceUsage(peakHeapBytes / (1024.0 * 1024.0),
+                    threads.getPeakThreadCount(),
+                    gcCount() - gcCountBefore,
+                    gcMillis() - gcMillisBefore);
+        }
+
+        private static long gcCount() {
+            return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                    .mapToLong(GarbageCollectorMXBean::getCollectionCount)
+                    .sum();
+        }
+
+        private static long gcMillis() {
+            return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                    .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                    .sum();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.karasov.hibernatehw.benchmark.load;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сравнение платформенных и виртуальных потоков под высокой конкуррентностью.
+ * <p>
+ * Дважды прогоняет {@link LoadTest} на одинаковом наборе данных и смеси маршрутов:
+ * с пулом потоков Tomcat по умолчанию и в режиме {@code virtual-threads}, где запросы выполняются
+ * на виртуальных потоках, а вызовы сервиса ограничены размером пула соединений.
+ * Принимает те же аргументы, что и {@link LoadTest}; по умолчанию 1000 клиентов.
+ * Режим виртуальных потоков требует Java 21.
+ */
+public final class ThreadModeComparison {
+
+    private ThreadModeComparison() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (Runtime.version().feature() < 21) {
+            throw new IllegalStateException("Virtual threads require Java 21, running on " + Runtime.version());
+        }
+        Map<String, String> options = LoadTest.defaultOptions("1000");
+        options.put("result", "target/threads-result.json");
+        List<String> properties = LoadTest.parseArgs(args, options);
+
+        List<String> platformProperties = new ArrayList<>(properties);
+        platformProperties.add("spring.threads.virtual.enabled=false");
+        LoadResult platform = LoadTest.run(options, platformProperties);
+
+        List<String> virtualProperties = new ArrayList<>(properties);
+        virtualProperties.add("spring.profiles.active=virtual-threads");
+        LoadResult virtual = LoadTest.run(options, virtualProperties);
+
+        LoadTest.print("Platform threads " + options, platform);
+        LoadTest.print("Virtual threads " + options, virtual);
+        Map<String, Object> result = new LinkedHashMap<>(options);
+        result.put("properties", properties);
+        result.put("platform", platform);
+        result.put("virtual", virtual);
+        LoadTest.writeResult(options, result);
+    }
+}
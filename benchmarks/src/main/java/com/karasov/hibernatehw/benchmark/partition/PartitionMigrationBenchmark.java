@@ -0,0 +1,420 @@
+package com.karasov.hibernatehw.benchmark.partition;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karasov.hibernatehw.benchmark.BenchmarkApplication;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Перевод {@code person} на секционирование по городу (changeSet 10-12) на большом объеме под записью.
+ * <p>
+ * Поднимает встроенный PostgreSQL, применяет changelog до секционирования (changeSet 1-9) и заполняет таблицы
+ * набором данных {@link BenchmarkApplication}. Затем замеряет запросы по городу и по ключу в том виде, в каком
+ * их выполняло приложение до секционирования, и применяет changeSet 10, 11 и 12 по одному, пока {@code writers}
+ * потоков меняют телефон и город существующих людей, добавляют и удаляют людей. После миграции проверяется,
+ * что каждая запись писателей видна в секционированной таблице, и замеряются те же запросы в новом виде:
+ * по идентификатору города и по ключу через {@code person_key}.
+ * <p>
+ * Печатаются длительность каждого changeSet, задержки записи во время каждого из них (p50, p99, максимум),
+ * ошибки записи и время запросов до и после. Аргументы {@code key=value}: {@code persons} (по умолчанию
+ * 10 000 000), {@code writers}, {@code result}.
+ */
+public final class PartitionMigrationBenchmark {
+
+    private static final String CHANGE_LOG = "db/changelog/db.changelog-master.xml";
+    private static final int CHANGE_SETS_BEFORE_PARTITIONING = 9;
+    private static final List<String> PARTITIONING_CHANGE_SETS = List.of("10", "11", "12");
+    private static final String SELECT_PERSON = """
+            SELECT p.name, p.surname, p.age, p.phone_number, c.name
+            FROM person p JOIN city c ON c.id = p.city_id
+            """;
+
+    private PartitionMigrationBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(Map.of(
+                "persons", "10000000",
+                "writers", "2",
+                "result", "target/partition-result.json"));
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length == 2 && options.containsKey(pair[0])) {
+                options.put(pair[0], pair[1]);
+            }
+        }
+        int persons = Integer.parseInt(options.get("persons"));
+        int writerCount = Integer.parseInt(options.get("writers"));
+        Map<String, Object> result = new LinkedHashMap<>(options);
+
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder()
+                .setServerConfig("max_wal_size", "4GB")
+                .start()) {
+            DataSource dataSource = postgres.getPostgresDatabase();
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+            long start = System.nanoTime();
+            migrate(dataSource, CHANGE_SETS_BEFORE_PARTITIONING);
+            BenchmarkApplication.seed(jdbcTemplate, persons);
+            System.out.printf("Seeded %d persons in %d s%n", persons, (System.nanoTime() - start) / 1_000_000_000);
+            // Люди из changelog вместе с набором данных
+            long seededRows = jdbcTemplate.queryForObject("SELECT count(*) FROM person", Long.class);
+
+            result.put("queriesBefore", measureQueries(dataSource, persons, false));
+
+            List<Writer> writers = new ArrayList<>();
+            for (int i = 0; i < writerCount; i++) {
+                writers.add(new Writer(dataSource, i, writerCount, persons));
+            }
+            List<Thread> threads = writers.stream().map(Thread::new).toList();
+            threads.forEach(Thread::start);
+            Thread.sleep(2_000);
+
+            Map<String, Object> changeSets = new LinkedHashMap<>();
+            for (String changeSet : PARTITIONING_CHANGE_SETS) {
+                writers.forEach(writer -> writer.startPhase(changeSet));
+                long changeSetStart = System.nanoTime();
+                migrate(dataSource, 1);
+                long millis = (System.nanoTime() - changeSetStart) / 1_000_000;
+                Map<String, Object> phase = new LinkedHashMap<>();
+                phase.put("millis", millis);
+                phase.putAll(Writer.report(writers, changeSet));
+                changeSets.put(changeSet, phase);
+                System.out.printf("changeSet %s: %d ms, writes %s%n", changeSet, millis, phase);
+            }
+            Thread.sleep(2_000);
+            writers.forEach(Writer::stop);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            result.put("changeSets", changeSets);
+
+            long mismatches = 0;
+            for (Writer writer : writers) {
+                mismatches += writer.verify(jdbcTemplate);
+            }
+            long expectedRows = seededRows + writers.stream().mapToLong(Writer::netInserted).sum();
+            long rows = jdbcTemplate.queryForObject("SELECT count(*) FROM person", Long.class);
+            long keys = jdbcTemplate.queryForObject("SELECT count(*) FROM person_key", Long.class);
+            System.out.printf("Rows %d (expected %d), keys %d, mismatched writes %d%n",
+                    rows, expectedRows, keys, mismatches);
+            result.put("verification", Map.of("rows", rows, "expectedRows", expectedRows, "keys", keys,
+                    "mismatchedWrites", mismatches));
+
+            result.put("queriesAfter", measureQueries(dataSource, persons, true));
+
+            if (rows != expectedRows || keys != rows || mismatches != 0) {
+                throw new IllegalStateException("Writes were lost during the migration: " + result.get("verification"));
+            }
+        }
+        Path resultPath = Path.of(options.get("result"));
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(resultPath.toFile(), result);
+        System.out.println("Result written to " + resultPath.toAbsolutePath());
+    }
+
+    /**
+     * Применяет следующие {@code changeSets} changeSet главного changelog.
+     */
+    private static void migrate(DataSource dataSource, int changeSets) throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            Liquibase liquibase = new Liquibase(CHANGE_LOG, new ClassLoaderResourceAccessor(),
+                    new JdbcConnection(connection));
+            liquibase.update(changeSets, new Contexts(), new LabelExpression());
+        }
+    }
+
+    /**
+     * Замеряет запросы приложения по городу и по ключу на случайных городах и ключах.
+     *
+     * @param partitioned Запросы в виде после секционирования: город по идентификатору, ключ через
+     *                    {@code person_key}; иначе — как до него.
+     * @return Среднее время и перцентили каждого запроса в миллисекундах.
+     */
+    private static Map<String, Object> measureQueries(DataSource dataSource, int persons, boolean partitioned)
+            throws SQLException {
+        String byCity = partitioned
+                ? SELECT_PERSON + "WHERE p.city_id = ?"
+                : SELECT_PERSON + "WHERE p.city_id = (SELECT ci.id FROM city ci WHERE LOWER(ci.name) = LOWER(?))";
+        String byCityPage = byCity + " ORDER BY p.name, p.surname, p.age LIMIT 100";
+        String byKey = partitioned
+                ? SELECT_PERSON + """
+                WHERE p.name = ? AND p.surname = ? AND p.age = ?
+                  AND p.city_id = (SELECT k.city_id FROM person_key k
+                                   WHERE k.name = ? AND k.surname = ? AND k.age = ?)
+                """
+                : SELECT_PERSON + "WHERE p.name = ? AND p.surname = ? AND p.age = ?";
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        try (Connection connection = dataSource.getConnection()) {
+            report.put("by-city", measure(connection, byCity, 20,
+                    (statement, random) -> bindCity(connection, statement, random, partitioned)));
+            report.put("by-city-page", measure(connection, byCityPage, 500,
+                    (statement, random) -> bindCity(connection, statement, random, partitioned)));
+            report.put("get-person", measure(connection, byKey, 5_000, (statement, random) -> {
+                int g = 1 + random.nextInt(persons);
+                statement.setString(1, "Name" + g % 5000);
+                statement.setString(2, "Surname" + g);
+                statement.setInt(3, 18 + g % 63);
+                if (partitioned) {
+                    statement.setString(4, "Name" + g % 5000);
+                    statement.setString(5, "Surname" + g);
+                    statement.setInt(6, 18 + g % 63);
+                }
+            }));
+        }
+        System.out.printf("Queries %s partitioning: %s%n", partitioned ? "after" : "before", report);
+        return report;
+    }
+
+    private static void bindCity(Connection connection, PreparedStatement statement, ThreadLocalRandom random,
+                                 boolean partitioned) throws SQLException {
+        String city = "City " + (1 + random.nextInt(BenchmarkApplication.CITIES));
+        if (!partitioned) {
+            statement.setString(1, city);
+            return;
+        }
+        // Приложение берет идентификатор из справочника городов в памяти
+        try (PreparedStatement lookup = connection.prepareStatement("SELECT id FROM city WHERE name = ?")) {
+            lookup.setString(1, city);
+            try (ResultSet rs = lookup.executeQuery()) {
+                rs.next();
+                statement.setLong(1, rs.getLong(1));
+            }
+        }
+    }
+
+    private static Map<String, Double> measure(Connection connection, String sql, int runs, Binder binder)
+            throws SQLException {
+        long[] nanos = new long[runs];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            // Прогрев: план и кэш страниц
+            for (int i = 0; i < runs / 5 + 1; i++) {
+                binder.bind(statement, random);
+                drain(statement);
+            }
+            for (int i = 0; i < runs; i++) {
+                binder.bind(statement, random);
+                long start = System.nanoTime();
+                drain(statement);
+                nanos[i] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(nanos);
+        Map<String, Double> report = new LinkedHashMap<>();
+        report.put("mean", Arrays.stream(nanos).average().orElse(0) / 1_000_000);
+        report.put("p50", percentile(nanos, 50));
+        report.put("p99", percentile(nanos, 99));
+        return report;
+    }
+
+    private static void drain(PreparedStatement statement) throws SQLException {
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                rs.getString(1);
+            }
+        }
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1] / 1_000_000.0;
+    }
+
+    @FunctionalInterface
+    private interface Binder {
+        void bind(PreparedStatement statement, ThreadLocalRandom random) throws SQLException;
+    }
+
+    /**
+     * Поток записи на своем соединении в режиме autocommit. Писатель {@code index} трогает только людей
+     * с номером {@code g % writers == index} и своих добавленных людей, поэтому ожидаемое состояние каждого
+     * ключа определяется последней записью писателя.
+     */
+    private static final class Writer implements Runnable {
+
+        private static final String UPDATE = """
+                UPDATE person SET phone_number = ?, city_id = (SELECT id FROM city WHERE name = ?)
+                WHERE name = ? AND surname = ? AND age = ?
+                """;
+        private static final String INSERT = """
+                INSERT INTO person (name, surname, age, phone_number, city_id)
+                SELECT 'Writer', ?, 30, ?, id FROM city WHERE name = ?
+                ON CONFLICT DO NOTHING
+                """;
+        private static final String DELETE = "DELETE FROM person WHERE name = 'Writer' AND surname = ? AND age = 30";
+
+        private final DataSource dataSource;
+        private final int index;
+        private final int writers;
+        private final int persons;
+        /** Ключ → ожидаемые телефон и город; {@code null} — человек удален. */
+        private final Map<List<Object>, Object> expected = new ConcurrentHashMap<>();
+        private final Map<String, List<Long>> latencies = new ConcurrentHashMap<>();
+        private final AtomicLong errors = new AtomicLong();
+        private final Map<String, AtomicLong> phaseErrors = new ConcurrentHashMap<>();
+        private final List<String> inserted = new ArrayList<>();
+        private volatile String phase = "before";
+        private volatile boolean running = true;
+        private long sequence;
+        private long netInserted;
+
+        Writer(DataSource dataSource, int index, int writers, int persons) {
+            this.dataSource = dataSource;
+            this.index = index;
+            this.writers = writers;
+            this.persons = persons;
+        }
+
+        void startPhase(String phase) {
+            latencies.put(phase, new ArrayList<>());
+            phaseErrors.put(phase, new AtomicLong());
+            this.phase = phase;
+        }
+
+        void stop() {
+            running = false;
+        }
+
+        long netInserted() {
+            return netInserted;
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (running) {
+                try (Connection connection = dataSource.getConnection();
+                     PreparedStatement update = connection.prepareStatement(UPDATE);
+                     PreparedStatement insert = connection.prepareStatement(INSERT);
+                     PreparedStatement delete = connection.prepareStatement(DELETE)) {
+                    while (running) {
+                        String currentPhase = phase;
+                        long start = System.nanoTime();
+                        write(random, update, insert, delete);
+                        List<Long> phaseLatencies = latencies.get(currentPhase);
+                        if (phaseLatencies != null) {
+                            synchronized (phaseLatencies) {
+                                phaseLatencies.add(System.nanoTime() - start);
+                            }
+                        }
+                    }
+                } catch (SQLException e) {
+                    // Запись не подтверждена: ожидаемое состояние ключа неизвестно, поэтому писатель
+                    // не продолжает со старыми данными, а ошибка попадает в отчет
+                    errors.incrementAndGet();
+                    AtomicLong counter = phaseErrors.get(phase);
+                    if (counter != null) {
+                        counter.incrementAndGet();
+                    }
+                    System.err.println("Writer " + index + ": " + e.getMessage());
+                    expected.clear();
+                    running = false;
+                }
+            }
+        }
+
+        private void write(ThreadLocalRandom random, PreparedStatement update, PreparedStatement insert,
+                           PreparedStatement delete) throws SQLException {
+            String phoneNumber = String.format("%010d", random.nextInt(1_000_000_000));
+            String city = "City " + (1 + random.nextInt(BenchmarkApplication.CITIES));
+            int operation = random.nextInt(10);
+            if (operation < 6) {
+                int g = (random.nextInt(persons / writers)) * writers + index;
+                if (g == 0) {
+                    return;
+                }
+                update.setString(1, phoneNumber);
+                update.setString(2, city);
+                update.setString(3, "Name" + g % 5000);
+                update.setString(4, "Surname" + g);
+                update.setInt(5, 18 + g % 63);
+                update.executeUpdate();
+                expected.put(List.of("Name" + g % 5000, "Surname" + g, 18 + g % 63), List.of(phoneNumber, city));
+            } else if (operation < 8 || inserted.isEmpty()) {
+                String surname = "W" + index + "-" + sequence++;
+                insert.setString(1, surname);
+                insert.setString(2, phoneNumber);
+                insert.setString(3, city);
+                insert.executeUpdate();
+                inserted.add(surname);
+                netInserted++;
+                expected.put(List.of("Writer", surname, 30), List.of(phoneNumber, city));
+            } else {
+                String surname = inserted.remove(inserted.size() - 1);
+                delete.setString(1, surname);
+                delete.executeUpdate();
+                netInserted--;
+                expected.put(List.of("Writer", surname, 30), "deleted");
+            }
+        }
+
+        /**
+         * @return Количество ключей, состояние которых в базе не совпадает с последней записью писателя.
+         */
+        long verify(JdbcTemplate jdbcTemplate) {
+            if (errors.get() > 0) {
+                return errors.get();
+            }
+            long mismatches = 0;
+            for (Map.Entry<List<Object>, Object> entry : expected.entrySet()) {
+                List<Object> key = entry.getKey();
+                List<List<Object>> actual = jdbcTemplate.query("""
+                                SELECT p.phone_number, c.name FROM person p JOIN city c ON c.id = p.city_id
+                                WHERE p.name = ? AND p.surname = ? AND p.age = ?
+                                """,
+                        (rs, row) -> List.of(rs.getString(1), rs.getString(2)),
+                        key.get(0), key.get(1), key.get(2));
+                Object value = entry.getValue();
+                boolean matches = "deleted".equals(value) ? actual.isEmpty() : actual.equals(List.of(value));
+                if (!matches) {
+                    mismatches++;
+                }
+            }
+            return mismatches;
+        }
+
+        static Map<String, Object> report(List<Writer> writers, String phase) {
+            List<Long> all = new ArrayList<>();
+            long errors = 0;
+            for (Writer writer : writers) {
+                List<Long> phaseLatencies = writer.latencies.get(phase);
+                synchronized (phaseLatencies) {
+                    all.addAll(phaseLatencies);
+                }
+                errors += writer.phaseErrors.get(phase).get();
+            }
+            long[] sorted = all.stream().mapToLong(Long::longValue).sorted().toArray();
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("writes", sorted.length);
+            report.put("errors", errors);
+            report.put("p50", percentile(sorted, 50));
+            report.put("p99", percentile(sorted, 99));
+            report.put("max", percentile(sorted, 100));
+            return report;
+        }
+    }
+}
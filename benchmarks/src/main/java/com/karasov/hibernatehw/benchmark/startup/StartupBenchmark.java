@@ -0,0 +1,185 @@
+package com.karasov.hibernatehw.benchmark.startup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karasov.hibernatehw.benchmark.BenchmarkApplication;
+import com.karasov.hibernatehw.migration.MigrationRunner;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Время старта приложения: от запуска процесса JVM до первого ответа 200 на {@code GET /persons}.
+ * <p>
+ * Поднимает встроенный PostgreSQL со схемой и набором данных {@link BenchmarkApplication} и по очереди запускает
+ * распакованный jar сборки {@code -Pfast-startup} в отдельных процессах в пяти вариантах:
+ * <ul>
+ *     <li>{@code default} — настройки по умолчанию, миграции не применяются;</li>
+ *     <li>{@code liquibase} — миграции применяет встроенный Liquibase Spring Boot при каждом старте;</li>
+ *     <li>{@code fast-startup} — профиль {@code fast-startup};</li>
+ *     <li>{@code fast-startup+aot} — он же с кодом Spring AOT;</li>
+ *     <li>{@code fast-startup+aot+cds} — он же с архивом CDS.</li>
+ * </ul>
+ * Варианты чередуются, каждый запускается {@code runs} раз; печатаются медиана, минимум и максимум.
+ * <p>
+ * Аргументы {@code key=value}: {@code jar} (по умолчанию {@code ../target/fast-startup/hibernateHW-0.0.1-SNAPSHOT-exec.jar};
+ * архив CDS — {@code application.jsa} рядом с ним), {@code runs}, {@code persons}, {@code result};
+ * остальные аргументы передаются каждому процессу как свойства Spring.
+ */
+public final class StartupBenchmark {
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+    private static final long POLL_INTERVAL_MILLIS = 5;
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(Map.of(
+                "jar", "../target/fast-startup/hibernateHW-0.0.1-SNAPSHOT-exec.jar",
+                "runs", "5",
+                "persons", "100000",
+                "result", "target/startup-result.json"));
+        List<String> properties = new ArrayList<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length == 2 && options.containsKey(pair[0])) {
+                options.put(pair[0], pair[1]);
+            } else {
+                properties.add(arg);
+            }
+        }
+        Path jar = Path.of(options.get("jar")).toAbsolutePath().normalize();
+        Path archive = jar.resolveSibling("application.jsa");
+        if (!Files.isRegularFile(jar) || !Files.isRegularFile(archive)) {
+            throw new IllegalStateException(jar + " or " + archive
+                    + " not found, build the application with: mvn -B package -Pfast-startup");
+        }
+
+        Map<String, List<String>> variants = new LinkedHashMap<>();
+        variants.put("default", List.of("-jar", jar.toString()));
+        variants.put("liquibase", List.of("-jar", jar.toString(),
+                "--spring.liquibase.enabled=true",
+                "--spring.liquibase.change-log=classpath:/db/changelog/db.changelog-master.xml",
+                "--spring.jpa.defer-datasource-initialization=false"));
+        variants.put("fast-startup", List.of("-jar", jar.toString(),
+                "--spring.profiles.active=fast-startup"));
+        variants.put("fast-startup+aot", List.of("-Dspring.aot.enabled=true", "-jar", jar.toString(),
+                "--spring.profiles.active=fast-startup"));
+        variants.put("fast-startup+aot+cds", List.of("-XX:SharedArchiveFile=" + archive,
+                "-Dspring.aot.enabled=true", "-jar", jar.toString(), "--spring.profiles.active=fast-startup"));
+
+        Map<String, List<Long>> timings = new LinkedHashMap<>();
+        variants.keySet().forEach(variant -> timings.put(variant, new ArrayList<>()));
+        int runs = Integer.parseInt(options.get("runs"));
+        Path logs = Path.of(options.get("result")).toAbsolutePath().resolveSibling("startup-logs");
+        Files.createDirectories(logs);
+
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder().start()) {
+            prepareDatabase(postgres.getPostgresDatabase(), Integer.parseInt(options.get("persons")));
+            List<String> common = new ArrayList<>(List.of(
+                    "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                    "--spring.datasource.username=postgres",
+                    "--spring.datasource.password=postgres"));
+            properties.forEach(property -> common.add("--" + property));
+
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+            for (int run = 1; run <= runs; run++) {
+                for (Map.Entry<String, List<String>> variant : variants.entrySet()) {
+                    long millis = timeToFirstResponse(client, variant.getValue(), common,
+                            logs.resolve(variant.getKey() + "-" + run + ".log"));
+                    timings.get(variant.getKey()).add(millis);
+                    System.out.printf("%-22s run %d: %d ms%n", variant.getKey(), run, millis);
+                }
+            }
+        }
+
+        System.out.println();
+        System.out.println("Time to first GET /persons (ms), " + runs + " runs");
+        System.out.printf("%-22s %8s %8s %8s%n", "variant", "median", "min", "max");
+        Map<String, Object> result = new LinkedHashMap<>(options);
+        result.put("properties", properties);
+        for (Map.Entry<String, List<Long>> entry : timings.entrySet()) {
+            List<Long> sorted = entry.getValue().stream().sorted().toList();
+            long median = sorted.get(sorted.size() / 2);
+            System.out.printf("%-22s %8d %8d %8d%n", entry.getKey(), median, sorted.get(0), sorted.get(sorted.size() - 1));
+            result.put(entry.getKey(), Map.of("medianMillis", median, "runsMillis", entry.getValue()));
+        }
+        Path resultPath = Path.of(options.get("result"));
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(resultPath.toFile(), result);
+        System.out.println("Result written to " + resultPath.toAbsolutePath());
+    }
+
+    /**
+     * Применяет changelog тем же {@link MigrationRunner}, что и приложение: его отпечаток сохраняется, и варианты
+     * {@code fast-startup} пропускают Liquibase, а встроенный Liquibase варианта {@code liquibase} находит схему
+     * актуальной и только сверяет контрольные суммы.
+     */
+    private static void prepareDatabase(DataSource dataSource, int persons) throws Exception {
+        new MigrationRunner(dataSource, "db/changelog/db.changelog-master.xml", true, true).afterPropertiesSet();
+        BenchmarkApplication.seed(new JdbcTemplate(dataSource), persons);
+    }
+
+    /**
+     * Запускает приложение и опрашивает {@code GET /persons} до первого ответа 200; затем останавливает процесс.
+     *
+     * @return Время от запуска процесса до ответа в миллисекундах.
+     */
+    private static long timeToFirstResponse(HttpClient client, List<String> command, List<String> properties,
+                                            Path log) throws Exception {
+        int port = freePort();
+        List<String> commandLine = new ArrayList<>();
+        commandLine.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        commandLine.addAll(command);
+        commandLine.addAll(properties);
+        commandLine.add("--server.port=" + port);
+        HttpRequest request = HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + port + "/persons?name=Name1&surname=Surname1"))
+                .timeout(Duration.ofSeconds(10))
+                .build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(commandLine)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        try {
+            while (System.nanoTime() - start < TIMEOUT.toNanos()) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Application exited with " + process.exitValue() + ", see " + log);
+                }
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return (System.nanoTime() - start) / 1_000_000;
+                    }
+                } catch (IOException e) {
+                    // Порт еще не слушается
+                }
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+            throw new IllegalStateException("No successful response in " + TIMEOUT + ", see " + log);
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
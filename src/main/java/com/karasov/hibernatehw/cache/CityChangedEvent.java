@@ -0,0 +1,11 @@
+package com.karasov.hibernatehw.cache;
+
+/**
+ * Событие изменения строки таблицы {@code city}: вставка, обновление или удаление.
+ *
+ * @param cityId Идентификатор измененного города.
+ */
+public record CityChangedEvent(
+        Long cityId
+) {
+}
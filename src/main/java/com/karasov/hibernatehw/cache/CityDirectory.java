@@ -0,0 +1,123 @@
+package com.karasov.hibernatehw.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.karasov.hibernatehw.entity.City;
+import com.karasov.hibernatehw.repository.CityRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Справочник городов в памяти процесса: название города (без учета регистра) → идентификатор.
+ * Заполняется целиком при старте приложения, ограничен по размеру (вытеснение LRU-подобное),
+ * при промахе обращается в базу через {@link CityRepository}. Отсутствие города тоже запоминается, но только
+ * на {@code negative-ttl}: повторные запросы неизвестного города не идут в базу каждый раз, а город, добавленный
+ * в обход JPA, становится виден не позже чем через это время.
+ * Полностью сбрасывается после фиксации любой транзакции, записавшей в {@code city} через JPA
+ * (см. {@link CityEntityListener}).
+ * Попадания, промахи и размер публикуются метриками {@code cache.*} с тегом {@code cache=cities}.
+ */
+@Component
+public class CityDirectory implements MeterBinder {
+
+    private static final String CACHE_NAME = "cities";
+
+    private final CityRepository cityRepository;
+    private final Cache<String, Optional<Long>> idsByName;
+
+    public CityDirectory(CityRepository cityRepository,
+                         @Value("${persons.city-directory.max-size:10000}") long maxSize,
+                         @Value("${persons.city-directory.negative-ttl:5s}") Duration negativeTtl) {
+        this.cityRepository = cityRepository;
+        this.idsByName = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new AbsentCityExpiry(negativeTtl.toNanos()))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Находит идентификатор города по названию без учета регистра.
+     *
+     * @param name Название города.
+     * @return {@link Optional} с идентификатором города, если город существует.
+     */
+    public Optional<Long> findIdByName(String name) {
+        if (name == null) {
+            return Optional.empty();
+        }
+        return idsByName.get(key(name), this::loadId);
+    }
+
+    /**
+     * Загружает все города в справочник.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        for (City city : cityRepository.findAll()) {
+            idsByName.put(key(city.getName()), Optional.of(city.getId()));
+        }
+    }
+
+    /**
+     * Сбрасывает справочник после фиксации транзакции, изменившей таблицу {@code city}.
+     *
+     * @param event Событие изменения города.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCityChanged(CityChangedEvent event) {
+        idsByName.invalidateAll();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, idsByName, CACHE_NAME);
+    }
+
+    /**
+     * @return Текущее количество записей в справочнике.
+     */
+    public long size() {
+        return idsByName.estimatedSize();
+    }
+
+    private Optional<Long> loadId(String key) {
+        return cityRepository.findCityIdByName(key);
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Найденные города хранятся до вытеснения или сброса, отсутствующие — {@code negativeTtlNanos}.
+     */
+    private record AbsentCityExpiry(long negativeTtlNanos) implements Expiry<String, Optional<Long>> {
+
+        @Override
+        public long expireAfterCreate(String key, Optional<Long> id, long currentTime) {
+            return id.isPresent() ? Long.MAX_VALUE : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Optional<Long> id, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, id, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Optional<Long> id, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.karasov.hibernatehw.cache;
+
+import com.karasov.hibernatehw.entity.City;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+
+/**
+ * JPA-слушатель сущности {@link City}. Публикует {@link CityChangedEvent} при каждой записи в {@code city},
+ * чтобы {@link CityDirectory} сбросил свое содержимое после фиксации транзакции.
+ * Создается Hibernate через контейнер бинов Spring.
+ */
+@RequiredArgsConstructor
+public class CityEntityListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onWrite(City city) {
+        eventPublisher.publishEvent(new CityChangedEvent(city.getId()));
+    }
+}
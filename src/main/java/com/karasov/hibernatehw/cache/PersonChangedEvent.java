@@ -0,0 +1,35 @@
+package com.karasov.hibernatehw.cache;
+
+import com.karasov.hibernatehw.entity.Person;
+
+import java.util.List;
+
+/**
+ * Событие записи в таблицу {@code person}: вставка, обновление или удаление.
+ *
+ * @param changes Изменения отдельных людей.
+ */
+public record PersonChangedEvent(
+        List<Change> changes
+) {
+
+    /**
+     * Изменение одного человека.
+     *
+     * @param personId    Ключ человека в том виде, в каком он хранится.
+     * @param fromCityId  Город до записи; {@code null} для вставки.
+     * @param toCityId    Город после записи; {@code null} для удаления.
+     * @param phoneNumber Номер телефона после записи; {@code null} для удаления.
+     */
+    public record Change(
+            Person.PersonId personId,
+            Long fromCityId,
+            Long toCityId,
+            String phoneNumber
+    ) {
+    }
+
+    public static PersonChangedEvent of(List<Change> changes) {
+        return new PersonChangedEvent(List.copyOf(changes));
+    }
+}
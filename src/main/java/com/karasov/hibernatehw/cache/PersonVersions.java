@@ -0,0 +1,133 @@
+package com.karasov.hibernatehw.cache;
+
+import com.karasov.hibernatehw.datasource.PrimaryReads;
+import com.karasov.hibernatehw.entity.Person;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Счетчики версий данных о людях в памяти процесса, из которых строятся ETag ответов на чтение.
+ * <p>
+ * Версия города меняется при любой записи человека, который жил или стал жить в этом городе;
+ * версия человека — при записи с тем же именем и фамилией без учета регистра. Люди распределены по
+ * {@value #KEY_STRIPES} счетчикам по хэшу имени и фамилии: память не растет с числом людей, а совпадение
+ * хэшей приводит лишь к лишнему полному ответу. Общая версия меняется при любой записи.
+ * <p>
+ * Название города входит в каждый ответ о его жителях, поэтому изменение таблицы {@code city} (редкое)
+ * меняет поколение, входящее во все ETag, и делает недействительными сразу все версии.
+ * <p>
+ * Счетчики увеличиваются после фиксации транзакции, а ETag берется до чтения: ответ может оказаться
+ * новее своего ETag, но не старее. Поэтому выдача ETag направляет чтения запроса в основной источник
+ * ({@link PrimaryReads}): отстающая реплика могла бы не содержать записи, уже учтенной в счетчиках.
+ * <p>
+ * Счетчики локальны для процесса и начинаются заново при каждом запуске, поэтому в ETag входит метка
+ * запуска; записи, сделанные другими экземплярами приложения или мимо него, счетчики не видят. Поэтому
+ * ETag включаются свойством {@code persons.etag.enabled} только при одном экземпляре приложения; без него
+ * методы возвращают {@code null}, и ответы отдаются без ETag.
+ */
+@Component
+public class PersonVersions {
+
+    private static final int KEY_STRIPES = 4096;
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong all = new AtomicLong();
+    private final AtomicLongArray keys = new AtomicLongArray(KEY_STRIPES);
+    private final Map<Long, AtomicLong> cities = new ConcurrentHashMap<>();
+    private final CityDirectory cityDirectory;
+    private final boolean enabled;
+
+    public PersonVersions(CityDirectory cityDirectory, @Value("${persons.etag.enabled:false}") boolean enabled) {
+        this.cityDirectory = cityDirectory;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param name    Имя человека.
+     * @param surname Фамилия человека.
+     * @return ETag ответов о человеке с указанными именем и фамилией.
+     */
+    public String personTag(String name, String surname) {
+        if (!enabled) {
+            return null;
+        }
+        return tag(keys.get(stripe(name, surname)));
+    }
+
+    /**
+     * @param city Название города.
+     * @return ETag списков людей, проживающих в городе; неизвестный город не обращается к счетчикам городов.
+     * Город, появившийся под этим названием позже, меняет поколение, поэтому пустой ответ не устаревает незаметно.
+     */
+    public String cityTag(String city) {
+        if (!enabled) {
+            return null;
+        }
+        long version = cityDirectory.findIdByName(city)
+                .map(cities::get)
+                .map(AtomicLong::get)
+                .orElse(0L);
+        return tag(version);
+    }
+
+    /**
+     * @return ETag ответов, которые может изменить запись любого человека, например выборок по возрасту.
+     */
+    public String allTag() {
+        if (!enabled) {
+            return null;
+        }
+        return tag(all.get());
+    }
+
+    /**
+     * Увеличивает версии после фиксации транзакции, записавшей в {@code person}.
+     *
+     * @param event Событие изменения людей.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPersonChanged(PersonChangedEvent event) {
+        for (PersonChangedEvent.Change change : event.changes()) {
+            Person.PersonId personId = change.personId();
+            keys.incrementAndGet(stripe(personId.getName(), personId.getSurname()));
+            bumpCity(change.fromCityId());
+            bumpCity(change.toCityId());
+        }
+        all.incrementAndGet();
+    }
+
+    /**
+     * Меняет поколение после фиксации транзакции, изменившей таблицу {@code city}: переименование города меняет
+     * {@code cityName} в ответах о всех его жителях.
+     *
+     * @param event Событие изменения города.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCityChanged(CityChangedEvent event) {
+        generation.incrementAndGet();
+    }
+
+    private void bumpCity(Long cityId) {
+        if (cityId != null) {
+            cities.computeIfAbsent(cityId, id -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    private String tag(long version) {
+        PrimaryReads.pin();
+        return "W/\"" + epoch + '.' + generation.get() + '-' + version + '"';
+    }
+
+    private static int stripe(String name, String surname) {
+        int hash = 31 * name.toLowerCase(Locale.ROOT).hashCode() + surname.toLowerCase(Locale.ROOT).hashCode();
+        return (hash ^ (hash >>> 16)) & (KEY_STRIPES - 1);
+    }
+}
@@ -0,0 +1,251 @@
+package com.karasov.hibernatehw.concurrency;
+
+import com.karasov.hibernatehw.handler.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Адаптивное ограничение параллельности одного маршрута с очередью ограниченного размера.
+ * <p>
+ * Ограничение подстраивается по задержке, как в градиентном алгоритме: сравниваются краткосрочное
+ * ({@value #SHORT_WINDOW} вызовов) и долгосрочное ({@value #LONG_WINDOW} вызовов) экспоненциальные средние
+ * времени выполнения. Пока текущая задержка не выше долгосрочной более чем в {@code rtt-tolerance} раз,
+ * ограничение растет на {@code sqrt(limit)}; когда база начинает отвечать медленнее, оно уменьшается
+ * пропорционально росту задержки. Ошибка доступа к данным (таймаут пула, отмена запроса) считается
+ * перегрузкой и сразу уменьшает ограничение на 10 %. Пока занято меньше половины разрешений, задержка не
+ * говорит о перегрузке, и ограничение не меняется.
+ * <p>
+ * Сверх ограничения вызовы ждут не дольше {@code queue-timeout}; если очередь заполнена или время вышло, вызов
+ * отклоняется с {@link ServiceOverloadedException}. Освободившееся разрешение передается первому ожидающему
+ * в порядке поступления, а новый вызов при непустой очереди встает в ее конец. Время ожидания в очереди
+ * в задержку не входит.
+ * <p>
+ * Метрики с тегами {@code bulkhead} (маршрут) и {@code group}: {@code persons.bulkhead.limit}, {@code .inflight},
+ * {@code .queued}, {@code .rtt} (краткосрочная и долгосрочная средние), {@code .wait} и {@code .rejected} с тегом
+ * {@code reason}.
+ */
+public class AdaptiveBulkhead {
+
+    static final int SHORT_WINDOW = 10;
+    static final int LONG_WINDOW = 600;
+
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double DROP_FACTOR = 0.9;
+
+    private final String name;
+    private final BulkheadProperties.Group group;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private final Timer waitTimer;
+    private final Counter queueFull;
+    private final Counter timedOut;
+
+    private volatile double limit;
+    private volatile int inflight;
+    private volatile int queued;
+    private volatile double shortRtt;
+    private volatile double longRtt;
+
+    /**
+     * @param name      Маршрут.
+     * @param groupName Группа маршрута, из которой взяты настройки.
+     */
+    public AdaptiveBulkhead(String name, String groupName, BulkheadProperties.Group group,
+                            MeterRegistry meterRegistry) {
+        if (group.getMinLimit() < 1 || group.getMaxLimit() < group.getMinLimit()) {
+            throw new IllegalArgumentException("Bulkhead " + name + " needs 1 <= min-limit <= max-limit.");
+        }
+        this.name = name;
+        this.group = group;
+        this.limit = clamp(group.getInitialLimit(), group.getMinLimit(), group.getMaxLimit());
+
+        Gauge.builder("persons.bulkhead.limit", this, AdaptiveBulkhead::getLimit)
+                .description("Current concurrency limit of the bulkhead")
+                .tags("bulkhead", name, "group", groupName)
+                .register(meterRegistry);
+        Gauge.builder("persons.bulkhead.inflight", this, AdaptiveBulkhead::getInflight)
+                .description("Calls holding a bulkhead permit")
+                .tags("bulkhead", name, "group", groupName)
+                .register(meterRegistry);
+        Gauge.builder("persons.bulkhead.queued", this, AdaptiveBulkhead::getQueued)
+                .description("Calls waiting for a bulkhead permit")
+                .tags("bulkhead", name, "group", groupName)
+                .register(meterRegistry);
+        Gauge.builder("persons.bulkhead.rtt", this, bulkhead -> bulkhead.shortRtt / 1_000_000)
+                .description("Short-term average call time")
+                .tags("bulkhead", name, "group", groupName, "window", "short")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("persons.bulkhead.rtt", this, bulkhead -> bulkhead.longRtt / 1_000_000)
+                .description("Long-term average call time")
+                .tags("bulkhead", name, "group", groupName, "window", "long")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        waitTimer = Timer.builder("persons.bulkhead.wait")
+                .description("Time spent waiting for a bulkhead permit")
+                .tags("bulkhead", name, "group", groupName)
+                .register(meterRegistry);
+        queueFull = rejected(meterRegistry, groupName, "queue-full");
+        timedOut = rejected(meterRegistry, groupName, "timeout");
+    }
+
+    /**
+     * Ждет разрешение не дольше {@code queue-timeout}.
+     *
+     * @return Момент получения разрешения ({@link System#nanoTime()}), который нужно передать в {@link #release}.
+     * @throws ServiceOverloadedException Очередь заполнена или разрешение не получено вовремя.
+     */
+    public long acquire() {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (waiters.isEmpty() && inflight < (int) limit) {
+                inflight++;
+            } else {
+                // Разрешение передает release: ожидающий получает его уже учтенным в inflight
+                await();
+            }
+        } finally {
+            lock.unlock();
+        }
+        long acquired = System.nanoTime();
+        waitTimer.record(acquired - start, TimeUnit.NANOSECONDS);
+        return acquired;
+    }
+
+    /**
+     * Возвращает разрешение и учитывает время вызова в ограничении.
+     *
+     * @param acquired Значение, возвращенное {@link #acquire()}.
+     * @param dropped  Вызов завершился ошибкой, говорящей о перегрузке базы.
+     */
+    public void release(long acquired, boolean dropped) {
+        long rtt = System.nanoTime() - acquired;
+        lock.lock();
+        try {
+            update(rtt, inflight, dropped);
+            inflight--;
+            while (!waiters.isEmpty() && inflight < (int) limit) {
+                Waiter waiter = waiters.removeFirst();
+                waiter.granted = true;
+                inflight++;
+                waiter.condition.signal();
+            }
+            queued = waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getLimit() {
+        return limit;
+    }
+
+    public int getInflight() {
+        return inflight;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    /**
+     * Ставит вызов в конец очереди и ждет, пока {@link #release} передаст ему разрешение; вызывается под блокировкой.
+     */
+    private void await() {
+        if (waiters.size() >= group.getQueueSize()) {
+            queueFull.increment();
+            throw overloaded("queue of %d is full".formatted(group.getQueueSize()));
+        }
+        Waiter waiter = new Waiter(lock.newCondition());
+        waiters.addLast(waiter);
+        queued = waiters.size();
+        long remaining = group.getQueueTimeout().toNanos();
+        try {
+            while (!waiter.granted) {
+                if (remaining <= 0) {
+                    timedOut.increment();
+                    throw overloaded("no permit within %d ms".formatted(group.getQueueTimeout().toMillis()));
+                }
+                remaining = waiter.condition.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Разрешение уже передано и учтено: вызов выполняется и вернет его в release
+            if (!waiter.granted) {
+                throw overloaded("interrupted while waiting for a permit");
+            }
+        } finally {
+            if (!waiter.granted) {
+                waiters.remove(waiter);
+                queued = waiters.size();
+            }
+        }
+    }
+
+    /**
+     * Пересчитывает ограничение по времени завершившегося вызова; вызывается под блокировкой.
+     *
+     * @param inflight Число вызовов в работе, включая завершившийся.
+     */
+    private void update(long rtt, int inflight, boolean dropped) {
+        if (dropped) {
+            limit = Math.max(group.getMinLimit(), limit * DROP_FACTOR);
+            return;
+        }
+        shortRtt = shortRtt == 0 ? rtt : shortRtt + (rtt - shortRtt) / SHORT_WINDOW;
+        longRtt = longRtt == 0 ? rtt : longRtt + (rtt - longRtt) / LONG_WINDOW;
+        // После долгой перегрузки долгосрочная средняя завышена; быстро возвращаем ее к текущей задержке
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+        if (inflight < limit / 2) {
+            return;
+        }
+        double gradient = clamp(group.getRttTolerance() * longRtt / shortRtt, MIN_GRADIENT, 1.0);
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = clamp(limit * (1 - SMOOTHING) + newLimit * SMOOTHING, group.getMinLimit(), group.getMaxLimit());
+    }
+
+    private ServiceOverloadedException overloaded(String reason) {
+        return new ServiceOverloadedException("Bulkhead %s is saturated: %s.".formatted(name, reason),
+                group.getRetryAfter());
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private Counter rejected(MeterRegistry meterRegistry, String groupName, String reason) {
+        return Counter.builder("persons.bulkhead.rejected")
+                .description("Calls shed by the bulkhead")
+                .tags("bulkhead", name, "group", groupName, "reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Вызов в очереди. Защищен блокировкой ограничения.
+     */
+    private static final class Waiter {
+
+        private final Condition condition;
+        private boolean granted;
+
+        private Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+}
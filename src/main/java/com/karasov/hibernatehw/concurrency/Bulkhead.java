@@ -0,0 +1,25 @@
+package com.karasov.hibernatehw.concurrency;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Ограничивает параллельность обработчика адаптивным ограничением его маршрута ({@link AdaptiveBulkhead})
+ * с настройками группы {@code persons.bulkhead.groups.<имя>.*}; включается свойством {@code persons.bulkhead.enabled}.
+ * <p>
+ * Разрешение держится, пока выполняется обработчик; у потоковых ответов ({@code ResponseEntity<StreamingResponseBody>})
+ * — пока пишется тело, так как база читается уже после возврата из обработчика.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Bulkhead {
+
+    /**
+     * @return Имя группы, например {@code lists} или {@code lookups}.
+     */
+    String value();
+}
@@ -0,0 +1,138 @@
+package com.karasov.hibernatehw.concurrency;
+
+import com.karasov.hibernatehw.handler.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.Ordered;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Пропускает вызовы обработчиков с {@link Bulkhead} через {@link AdaptiveBulkhead} их маршрута.
+ * <p>
+ * У каждого маршрута свое ограничение и своя очередь с настройками его группы, поэтому всплеск запросов одного
+ * маршрута упирается в его ограничение, а не занимает весь пул соединений: остальные маршруты продолжают
+ * получать соединение. Маршрут — путь обработчика, например {@code /persons/by-age}. Отклоненный вызов завершается
+ * {@link ServiceOverloadedException} (503 с {@code Retry-After}) еще до обращения к сервису. Таймаут пула
+ * и временные ошибки базы уменьшают ограничение маршрута.
+ * <p>
+ * У потоковых обработчиков ({@link StreamingResponseBody}) база читается уже после возврата из обработчика, поэтому
+ * разрешение берется в начале записи тела и держится до ее окончания; отказ тогда приходит 503 еще до первой
+ * записанной строки.
+ * <p>
+ * Включается свойством {@code persons.bulkhead.enabled}.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@EnableConfigurationProperties(BulkheadProperties.class)
+@ConditionalOnProperty(prefix = "persons.bulkhead", name = "enabled", havingValue = "true")
+public class BulkheadAspect {
+
+    private final BulkheadProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AdaptiveBulkhead> bulkheads = new ConcurrentHashMap<>();
+    private final Map<Method, Handler> handlers = new ConcurrentHashMap<>();
+
+    public BulkheadAspect(BulkheadProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Аннотация читается из сигнатуры: при наивысшем приоритете аспекта привязка аргументов совета недоступна
+    @Around("@annotation(com.karasov.hibernatehw.concurrency.Bulkhead)")
+    public Object limit(ProceedingJoinPoint joinPoint) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Handler handler = handlers.computeIfAbsent(method, key -> new Handler(
+                bulkhead(route(key), key.getAnnotation(Bulkhead.class).value()), streaming(key)));
+        if (handler.streaming()) {
+            return limitBody(handler.bulkhead(), joinPoint.proceed());
+        }
+        AdaptiveBulkhead target = handler.bulkhead();
+        long acquired = target.acquire();
+        boolean dropped = false;
+        try {
+            return joinPoint.proceed();
+        } catch (TransientDataAccessException | CannotCreateTransactionException | ServiceOverloadedException e) {
+            dropped = true;
+            throw e;
+        } finally {
+            target.release(acquired, dropped);
+        }
+    }
+
+    /**
+     * @param route Путь обработчика.
+     * @param group Группа, задающая настройки ограничения.
+     * @return Ограничение маршрута; создается при первом вызове.
+     */
+    AdaptiveBulkhead bulkhead(String route, String group) {
+        return bulkheads.computeIfAbsent(route, key -> new AdaptiveBulkhead(key, group,
+                properties.getGroups().getOrDefault(group, new BulkheadProperties.Group()),
+                meterRegistry));
+    }
+
+    /**
+     * Оборачивает тело потокового ответа: разрешение берется в начале записи и освобождается после нее.
+     * Ответ без тела, например 304, разрешения не занимает.
+     */
+    private static Object limitBody(AdaptiveBulkhead target, Object result) {
+        if (!(result instanceof ResponseEntity<?> response)
+                || !(response.getBody() instanceof StreamingResponseBody body)) {
+            return result;
+        }
+        StreamingResponseBody limited = out -> {
+            long acquired = target.acquire();
+            boolean dropped = false;
+            try {
+                body.writeTo(out);
+            } catch (TransientDataAccessException | CannotCreateTransactionException | ServiceOverloadedException e) {
+                dropped = true;
+                throw e;
+            } finally {
+                target.release(acquired, dropped);
+            }
+        };
+        return new ResponseEntity<>(limited, response.getHeaders(), response.getStatusCode());
+    }
+
+    /**
+     * @return Обработчик возвращает {@code ResponseEntity<StreamingResponseBody>}.
+     */
+    private static boolean streaming(Method handler) {
+        ResolvableType type = ResolvableType.forMethodReturnType(handler);
+        return ResponseEntity.class.isAssignableFrom(type.toClass())
+                && StreamingResponseBody.class.isAssignableFrom(type.getGeneric(0).toClass());
+    }
+
+    /**
+     * @return Путь обработчика: путь контроллера и путь метода из {@link RequestMapping}.
+     */
+    private static String route(Method handler) {
+        return path(AnnotatedElementUtils.findMergedAnnotation(handler.getDeclaringClass(), RequestMapping.class))
+                + path(AnnotatedElementUtils.findMergedAnnotation(handler, RequestMapping.class));
+    }
+
+    private static String path(RequestMapping mapping) {
+        return mapping == null || mapping.path().length == 0 ? "" : mapping.path()[0];
+    }
+
+    private record Handler(AdaptiveBulkhead bulkhead, boolean streaming) {
+    }
+}
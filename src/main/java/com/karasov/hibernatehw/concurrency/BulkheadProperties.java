@@ -0,0 +1,63 @@
+package com.karasov.hibernatehw.concurrency;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Настройки групп маршрутов {@link Bulkhead} ({@code persons.bulkhead.*}).
+ * Группа без настроек получает значения по умолчанию из {@link Group}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties("persons.bulkhead")
+public class BulkheadProperties {
+
+    /**
+     * Включает ограничение параллельности обработчиков с {@link Bulkhead}.
+     */
+    private boolean enabled;
+
+    private Map<String, Group> groups = new LinkedHashMap<>();
+
+    @Getter
+    @Setter
+    public static class Group {
+
+        /**
+         * Ограничение параллельности при старте.
+         */
+        private int initialLimit = 10;
+
+        /**
+         * Границы, в которых ограничение меняется по задержке ответов.
+         */
+        private int minLimit = 1;
+
+        private int maxLimit = 100;
+
+        /**
+         * Сколько запросов может ждать разрешение; следующие отклоняются сразу.
+         */
+        private int queueSize = 100;
+
+        /**
+         * Сколько запрос ждет разрешение в очереди, прежде чем быть отклоненным.
+         */
+        private Duration queueTimeout = Duration.ofMillis(500);
+
+        /**
+         * Во сколько раз текущая задержка может превысить долгосрочную, прежде чем ограничение начнет снижаться.
+         */
+        private double rttTolerance = 1.5;
+
+        /**
+         * Значение {@code Retry-After} отклоненного запроса.
+         */
+        private Duration retryAfter = Duration.ofSeconds(1);
+    }
+}
@@ -0,0 +1,86 @@
+package com.karasov.hibernatehw.concurrency;
+
+import com.karasov.hibernatehw.handler.exception.ServiceOverloadedException;
+import com.karasov.hibernatehw.service.PersonService;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничивает число одновременных вызовов {@link PersonService} размером пула соединений.
+ * <p>
+ * Каждый вызов сервиса держит не больше одного соединения, поэтому при числе разрешений, равном
+ * {@code maximumPoolSize} Hikari, лишние вызовы ждут в честной очереди семафора, а не в пуле.
+ * Это нужно в режиме виртуальных потоков: запросов в работе могут быть тысячи, и без ограничения
+ * все они одновременно ждали бы соединение с таймаутом Hikari. Если разрешение не получено за
+ * {@code acquire-timeout}, вызов отклоняется с {@link ServiceOverloadedException}.
+ * <p>
+ * Разрешение берется до открытия транзакции, поэтому аспект стоит раньше транзакционного.
+ * Включается свойством {@code persons.concurrency.limit.enabled}.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(prefix = "persons.concurrency.limit", name = "enabled", havingValue = "true")
+public class ConnectionPoolLimiter {
+
+    private final Semaphore permits;
+    private final Duration acquireTimeout;
+
+    /**
+     * @param permits        Число разрешений; 0 — взять {@code maximumPoolSize} пула Hikari.
+     * @param acquireTimeout Сколько вызов ждет разрешение, прежде чем быть отклоненным.
+     */
+    public ConnectionPoolLimiter(DataSource dataSource,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${persons.concurrency.limit.permits:0}") int permits,
+                                 @Value("${persons.concurrency.limit.acquire-timeout:5s}") Duration acquireTimeout)
+            throws SQLException {
+        int size = permits > 0 ? permits : poolSize(dataSource);
+        this.permits = new Semaphore(size, true);
+        this.acquireTimeout = acquireTimeout;
+
+        Gauge.builder("persons.concurrency.limit.permits", this.permits, Semaphore::availablePermits)
+                .description("Available PersonService permits")
+                .register(meterRegistry);
+        Gauge.builder("persons.concurrency.limit.queued", this.permits, Semaphore::getQueueLength)
+                .description("Calls waiting for a PersonService permit")
+                .register(meterRegistry);
+    }
+
+    @Around("execution(public * com.karasov.hibernatehw.service.PersonService+.*(..))")
+    public Object limit(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!permits.tryAcquire(acquireTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+            throw new ServiceOverloadedException(
+                    "No database capacity available within %d ms.".formatted(acquireTimeout.toMillis()),
+                    acquireTimeout);
+        }
+        try {
+            return joinPoint.proceed();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static int poolSize(DataSource dataSource) throws SQLException {
+        if (!dataSource.isWrapperFor(HikariDataSource.class)) {
+            throw new IllegalStateException(
+                    "DataSource is not a HikariDataSource, set persons.concurrency.limit.permits explicitly.");
+        }
+        return dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+    }
+}
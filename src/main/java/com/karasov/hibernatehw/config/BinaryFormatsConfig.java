@@ -0,0 +1,58 @@
+package com.karasov.hibernatehw.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Двоичные представления ответов Spring MVC, которые выбираются заголовком {@code Accept}:
+ * Smile ({@code application/x-jackson-smile}) и CBOR ({@code application/cbor}).
+ * <p>
+ * Оба формата пишут повторяющиеся строки ссылкой на первое вхождение: в Smile — разделяемые значения
+ * (строки до 64 байт, окно из 1024 последних разных строк), в CBOR — расширение stringref (теги 256 и 25),
+ * которое клиент должен поддерживать. Названия городов и повторяющиеся имена и фамилии в списках людей
+ * передаются один раз. Имена полей Smile разделяет по умолчанию.
+ * <p>
+ * Преобразователи строятся из {@link Jackson2ObjectMapperBuilder} Spring Boot и сериализуют объекты так же,
+ * как JSON; Spring Boot ставит их на место преобразователей Smile и CBOR по умолчанию.
+ */
+@Configuration
+public class BinaryFormatsConfig {
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(smileMapper(builder));
+    }
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(cborMapper(builder));
+    }
+
+    /**
+     * @return {@link ObjectMapper} Smile с разделяемыми строковыми значениями.
+     */
+    public static ObjectMapper smileMapper(Jackson2ObjectMapperBuilder builder) {
+        return builder.factory(SmileFactory.builder()
+                        .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                        .build())
+                .build();
+    }
+
+    /**
+     * @return {@link ObjectMapper} CBOR со ссылками stringref на повторяющиеся строки.
+     */
+    public static ObjectMapper cborMapper(Jackson2ObjectMapperBuilder builder) {
+        return builder.factory(CBORFactory.builder()
+                        .enable(CBORGenerator.Feature.STRINGREF)
+                        .build())
+                .build();
+    }
+}
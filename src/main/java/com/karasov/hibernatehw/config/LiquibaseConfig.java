@@ -1,29 +1,40 @@
 package com.karasov.hibernatehw.config;
 
-import liquibase.Liquibase;
-import liquibase.database.jvm.JdbcConnection;
-import liquibase.exception.LiquibaseException;
-import liquibase.resource.ClassLoaderResourceAccessor;
-import lombok.RequiredArgsConstructor;
+import com.karasov.hibernatehw.migration.MigrationRunner;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.DependsOn;
 
 import javax.sql.DataSource;
-import java.sql.SQLException;
 
+/**
+ * Запуск миграций Liquibase приложением ({@link MigrationRunner}), когда встроенный запуск Spring Boot
+ * ({@code spring.liquibase.enabled}) выключен. Включается свойством {@code persons.migrations.enabled}.
+ * Миграции применяются до создания {@code entityManagerFactory}, как и во встроенном запуске.
+ * <p>
+ * Бин создается всегда, а свойство читается при запуске: при сборке с Spring AOT условия на бины вычисляются
+ * во время сборки, и миграции нельзя было бы выключить при запуске (например, в обучающем запуске для архива CDS).
+ */
 @Configuration
-@RequiredArgsConstructor
-@DependsOn("entityManagerFactory")
+@ConditionalOnProperty(prefix = "spring.liquibase", name = "enabled", havingValue = "false")
 public class LiquibaseConfig {
 
-    private final DataSource dataSource;
+    @Bean
+    public MigrationRunner migrationRunner(DataSource dataSource,
+                                           @Value("${persons.migrations.enabled:false}") boolean enabled,
+                                           @Value("${persons.migrations.change-log:db/changelog/db.changelog-master.xml}")
+                                           String changeLog,
+                                           @Value("${persons.migrations.skip-unchanged:true}") boolean skipUnchanged) {
+        return new MigrationRunner(dataSource, changeLog, enabled, skipUnchanged);
+    }
 
+    /**
+     * Ставит {@code migrationRunner} в зависимости {@code entityManagerFactory}.
+     */
     @Bean
-    public Liquibase liquibase() throws SQLException, LiquibaseException {
-        return new Liquibase(
-                "classpath:db/changelog/db.changelog-master.xml",
-                new ClassLoaderResourceAccessor(),
-                new JdbcConnection(dataSource.getConnection()));
+    public static EntityManagerFactoryDependsOnPostProcessor migrationsBeforeEntityManagerFactory() {
+        return new EntityManagerFactoryDependsOnPostProcessor(MigrationRunner.class);
     }
 }
@@ -0,0 +1,22 @@
+package com.karasov.hibernatehw.config;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Конфигурация метрик приложения.
+ * Включает обработку {@link Timed}: классы контроллера и сервиса людей публикуют таймеры
+ * {@code persons.controller} и {@code persons.service} с тегами {@code class}, {@code method} и {@code exception}.
+ * Метрики статистики Hibernate и пула Hikari настраиваются автоконфигурацией Spring Boot.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+}
@@ -0,0 +1,27 @@
+package com.karasov.hibernatehw.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * JDBC-источник данных для профиля {@code reactive}.
+ * Автоконфигурация Spring Boot не создает {@code DataSource}, если в контексте есть R2DBC
+ * {@code ConnectionFactory}, а без него не поднимаются Liquibase и JPA-часть приложения
+ * (справочник городов, кэш второго уровня). Пул собирается из тех же свойств {@code spring.datasource.*}.
+ */
+@Configuration
+@Profile("reactive")
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class ReactiveDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+}
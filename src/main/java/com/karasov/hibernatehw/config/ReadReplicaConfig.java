@@ -0,0 +1,78 @@
+package com.karasov.hibernatehw.config;
+
+import com.karasov.hibernatehw.datasource.PrimaryReads;
+import com.karasov.hibernatehw.datasource.ReadReplicaProperties;
+import com.karasov.hibernatehw.datasource.ReadYourWrites;
+import com.karasov.hibernatehw.datasource.ReplicaDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Маршрутизация соединений между основным источником и репликами для чтения.
+ * <p>
+ * Бин {@code dataSource} — {@link LazyConnectionDataSourceProxy}: физическое соединение берется только
+ * при первом запросе, когда уже известно, read-only ли транзакция. Read-only транзакции (запросы
+ * репозиториев Spring Data и {@code @Transactional(readOnly = true)}) получают соединение из
+ * {@link ReplicaDataSource}, остальные — из основного пула. Liquibase и Hibernate при старте работают
+ * с основным источником. Чтения запроса, отмеченного {@link PrimaryReads}, тоже идут в основной источник.
+ * <p>
+ * Реплики предполагаются почти синхронными: кэш запросов Hibernate сбрасывается при фиксации записи
+ * на основном источнике, и чтение с отстающей реплики сразу после этого может закэшировать старые данные.
+ */
+@Configuration
+@Profile("!reactive")
+@ConditionalOnProperty(prefix = "persons.datasource.routing", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties({DataSourceProperties.class, ReadReplicaProperties.class})
+public class ReadReplicaConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaDataSource replicaDataSource(HikariDataSource primaryDataSource, ReadReplicaProperties properties) {
+        List<DataSource> replicas = properties.getReplicas().stream()
+                .<DataSource>map(replica -> replicaPool(replica, properties))
+                .toList();
+        BooleanSupplier stickToPrimary = properties.isReadYourWrites()
+                ? () -> PrimaryReads.isPinned() || ReadYourWrites.hasWritten()
+                : PrimaryReads::isPinned;
+        return new ReplicaDataSource(primaryDataSource, replicas, properties.getEjectDuration(), stickToPrimary);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaDataSource replicaDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(replicaDataSource);
+        return dataSource;
+    }
+
+    @Bean
+    public ReadYourWrites readYourWrites() {
+        return new ReadYourWrites();
+    }
+
+    private static HikariDataSource replicaPool(DataSourceProperties replica, ReadReplicaProperties properties) {
+        HikariDataSource dataSource = replica.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setReadOnly(true);
+        dataSource.setConnectionTimeout(properties.getConnectionTimeout().toMillis());
+        // Недоступная при старте реплика не должна останавливать приложение: она будет исключена при первом чтении
+        dataSource.setInitializationFailTimeout(-1);
+        return dataSource;
+    }
+}
@@ -0,0 +1,13 @@
+package com.karasov.hibernatehw.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Включает {@code @Scheduled}; пул планировщика и бин {@code TaskScheduler} настраивает
+ * автоконфигурация Spring Boot ({@code spring.task.scheduling.*}).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,88 @@
+package com.karasov.hibernatehw.controller;
+
+import com.karasov.hibernatehw.dto.PersonDto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Компактный двоичный формат выгрузки людей {@value #MEDIA_TYPE_VALUE}.
+ * <p>
+ * Поток начинается с сигнатуры {@code PRS1}, за ней идут записи: длина тела записи и само тело.
+ * Тело — имя, фамилия, возраст, телефон и город; строка пишется как длина + 1 в байтах UTF-8 и байты
+ * ({@code 0} — {@code null}), возраст и длины — как беззнаковый varint (7 бит на байт, старший бит —
+ * признак продолжения). Запись нулевой длины завершает поток: если ее нет, выгрузка оборвалась,
+ * и ее можно продолжить с ключа последней полной записи.
+ * <p>
+ * Запись собирается в буфер размером с самую длинную запись и пишется в поток целиком.
+ */
+final class PersonBinaryWriter {
+
+    static final String MEDIA_TYPE_VALUE = "application/x-person-binary";
+
+    private static final byte[] MAGIC = {'P', 'R', 'S', '1'};
+
+    private final OutputStream out;
+    private byte[] record = new byte[256];
+    private int length;
+
+    PersonBinaryWriter(OutputStream out) throws IOException {
+        this.out = out;
+        out.write(MAGIC);
+    }
+
+    void write(PersonDto personDto) throws IOException {
+        length = 0;
+        putString(personDto.name());
+        putString(personDto.surname());
+        putVarint(personDto.age());
+        putString(personDto.phoneNumber());
+        putString(personDto.cityName());
+        writeVarint(length);
+        out.write(record, 0, length);
+    }
+
+    /**
+     * Пишет признак конца потока.
+     */
+    void finish() throws IOException {
+        writeVarint(0);
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            putVarint(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarint(bytes.length + 1);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, record, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void putVarint(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            record[length++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        record[length++] = (byte) value;
+    }
+
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > record.length) {
+            record = Arrays.copyOf(record, Math.max(record.length * 2, length + extra));
+        }
+    }
+}
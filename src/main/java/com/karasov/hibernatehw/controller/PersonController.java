@@ -1,13 +1,39 @@
 package com.karasov.hibernatehw.controller;
 
+import com.karasov.hibernatehw.cache.PersonVersions;
+import com.karasov.hibernatehw.concurrency.Bulkhead;
+import com.karasov.hibernatehw.config.BinaryFormatsConfig;
+import com.karasov.hibernatehw.dto.BatchResultDto;
+import com.karasov.hibernatehw.dto.BulkPatchItemDto;
+import com.karasov.hibernatehw.dto.BulkResultDto;
 import com.karasov.hibernatehw.dto.PatchPersonDto;
 import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonKeyDto;
+import com.karasov.hibernatehw.dto.PersonPageDto;
+import com.karasov.hibernatehw.dto.PersonStatisticsDto;
 import com.karasov.hibernatehw.entity.Person;
 import com.karasov.hibernatehw.handler.exception.CityNotFoundException;
 import com.karasov.hibernatehw.handler.exception.CreatingPersonAlreadyExistsException;
+import com.karasov.hibernatehw.handler.exception.InvalidCursorException;
 import com.karasov.hibernatehw.handler.exception.PersonNotFoundException;
+import com.karasov.hibernatehw.handler.exception.ServiceOverloadedException;
 import com.karasov.hibernatehw.service.PersonService;
+import com.karasov.hibernatehw.writebehind.PersonWriteBehind;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvGenerator;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -15,24 +41,67 @@ import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Контроллер для работы с сущностью {@link Person}.
  * Предоставляет REST API для создания, чтения, обновления и удаления людей.
  * Все операции взаимодействуют с сервисом {@link PersonService}.
+ * Время обработчиков публикуется таймером {@code persons.controller}; для потоковых ответов он
+ * не включает запись тела — полное время запроса есть в {@code http.server.requests}.
+ * Ответы на чтение несут ETag из {@link PersonVersions}, если они включены: запрос с совпадающим
+ * {@code If-None-Match} получает 304 без обращения к базе.
+ * Кроме JSON, ответы отдаются в Smile и CBOR по заголовку {@code Accept} (см. {@link BinaryFormatsConfig}).
+ * Чтения разделены на группы {@link Bulkhead}: тяжелые списки ({@value #LISTS}) и точечные чтения
+ * ({@value #LOOKUPS}) ограничиваются независимо, лишние запросы получают 503 с {@code Retry-After}.
+ * В профиле {@code reactive} вместо него работает {@link ReactivePersonController}.
  */
 @RequiredArgsConstructor
+@Timed(value = "persons.controller", description = "PersonController handler time")
 @RestController
 @RequestMapping("/persons")
+@Profile("!reactive")
 public class PersonController {
 
+    private static final String TEXT_CSV_VALUE = "text/csv";
+    private static final ObjectReader CSV_READER = new CsvMapper()
+            .readerFor(PersonDto.class)
+            .with(CsvSchema.emptySchema().withHeader());
+    private static final ObjectWriter CSV_WRITER = new CsvMapper()
+            .writerFor(PersonDto.class)
+            .with(CsvSchema.builder()
+                    .addColumn("name")
+                    .addColumn("surname")
+                    .addNumberColumn("age")
+                    .addColumn("phoneNumber")
+                    .addColumn("cityName")
+                    .setUseHeader(true)
+                    .build())
+            .with(CsvGenerator.Feature.STRICT_CHECK_FOR_QUOTING)
+            .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
+    static final String LISTS = "lists";
+    static final String LOOKUPS = "lookups";
+
     private final PersonService service;
+    private final PersonVersions versions;
+    private final ObjectMapper objectMapper;
+    private final PersonWriteBehind writeBehind;
 
     /**
      * Получает информацию о человеке по его имени, фамилии и возрасту.
@@ -43,35 +112,268 @@ public class PersonController {
      * @return {@link ResponseEntity} с объектом {@link PersonDto}, если человек найден.
      * @throws PersonNotFoundException если человек не найден.
      */
+    @Bulkhead(LOOKUPS)
     @GetMapping("/{name}/{surname}/{age}")
     public ResponseEntity<PersonDto> getPerson(@PathVariable String name,
                                                @PathVariable String surname,
-                                               @PathVariable int age
+                                               @PathVariable int age,
+                                               WebRequest request
     ) {
-        return ResponseEntity.ok(service.getPerson(name, surname, age));
+        String etag = versions.personTag(name, surname);
+        if (notModified(request, etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(service.getPerson(name, surname, age));
     }
 
     /**
      * Получает список людей, проживающих в указанном городе.
+     * Ответ в JSON, Smile или CBOR по заголовку {@code Accept}; NDJSON отдает {@link #streamPersonListByCityName}.
      *
      * @param city Название города.
      * @return {@link ResponseEntity} со списком объектов {@link PersonDto}.
      * @throws CityNotFoundException если город не найден.
      */
+    @Bulkhead(LISTS)
     @GetMapping("/by-city")
-    public ResponseEntity<List<PersonDto>> getPersonListByCityName(@RequestParam String city) {
-        return ResponseEntity.ok(service.getPersonsByCity(city));
+    public ResponseEntity<List<PersonDto>> getPersonListByCityName(@RequestParam String city, WebRequest request) {
+        String etag = versions.cityTag(city);
+        if (notModified(request, etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(service.getPersonsByCity(city));
     }
 
     /**
      * Получает список людей, возраст которых меньше указанного, отсортированных по возрастанию возраста.
+     * Ответ в JSON, Smile или CBOR по заголовку {@code Accept}; NDJSON отдает {@link #streamPersonListByAge}.
      *
      * @param age Возраст для фильтрации.
      * @return {@link ResponseEntity} со списком объектов {@link PersonDto}.
      */
+    @Bulkhead(LISTS)
     @GetMapping("/by-age")
-    public ResponseEntity<List<PersonDto>> getPersonListByCityName(@RequestParam int age) {
-        return ResponseEntity.ok(service.getPersonByAgeLowerThanAsc(age));
+    public ResponseEntity<List<PersonDto>> getPersonListByCityName(@RequestParam int age, WebRequest request) {
+        String etag = versions.allTag();
+        if (notModified(request, etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(service.getPersonByAgeLowerThanAsc(age));
+    }
+
+    /**
+     * Получает страницу людей, проживающих в указанном городе.
+     *
+     * @param city   Название города.
+     * @param cursor Токен продолжения из предыдущей страницы; отсутствует для первой страницы.
+     * @param size   Размер страницы.
+     * @return {@link ResponseEntity} со страницей {@link PersonPageDto}.
+     * @throws InvalidCursorException если токен продолжения поврежден.
+     */
+    @Bulkhead(LISTS)
+    @GetMapping("/by-city/page")
+    public ResponseEntity<PersonPageDto> getPersonPageByCityName(@RequestParam String city,
+                                                                 @RequestParam(required = false) String cursor,
+                                                                 @RequestParam(defaultValue = "100") int size,
+                                                                 WebRequest request) {
+        String etag = versions.cityTag(city);
+        if (notModified(request, etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(service.getPersonsByCity(city, cursor, size));
+    }
+
+    /**
+     * Получает страницу людей, возраст которых меньше указанного, отсортированных по возрастанию возраста.
+     *
+     * @param age    Возраст для фильтрации.
+     * @param cursor Токен продолжения из предыдущей страницы; отсутствует для первой страницы.
+     * @param size   Размер страницы.
+     * @return {@link ResponseEntity} со страницей {@link PersonPageDto}.
+     * @throws InvalidCursorException если токен продолжения поврежден.
+     */
+    @Bulkhead(LISTS)
+    @GetMapping("/by-age/page")
+    public ResponseEntity<PersonPageDto> getPersonPageByAge(@RequestParam int age,
+                                                            @RequestParam(required = false) String cursor,
+                                                            @RequestParam(defaultValue = "100") int size,
+                                                            WebRequest request) {
+        String etag = versions.allTag();
+        if (notModified(request, etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(service.getPersonByAgeLowerThanAsc(age, cursor, size));
+    }
+
+    /**
+     * Ищет людей по началу или похожему написанию имени и фамилии, например {@code "jo"}, {@code "doe"}
+     * или {@code "jonh do"}. Лучшие совпадения идут первыми.
+     *
+     * @param q      Строка поиска.
+     * @param cursor Токен продолжения из предыдущей страницы; отсутствует для первой страницы.
+     * @param size   Размер страницы.
+     * @return {@link ResponseEntity} со страницей {@link PersonPageDto}.
+     * @throws InvalidCursorException если токен продолжения поврежден.
+     */
+    @Bulkhead(LISTS)
+    @GetMapping("/search")
+    public ResponseEntity<PersonPageDto> searchPersons(@RequestParam String q,
+                                                       @RequestParam(required = false) String cursor,
+                                                       @RequestParam(defaultValue = "20") int size,
+                                                       WebRequest request) {
+        String etag = versions.allTag();
+        if (notModified(request, etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(service.searchPersons(q, cursor, size));
+    }
+
+    /**
+     * Получает статистику людей: количество по городам, гистограмму и перцентили возраста.
+     * Статистика читается из агрегата в памяти, который обновляется при каждой записи.
+     *
+     * @param city   Название города; без него статистика собирается по всем городам.
+     * @param bucket Ширина интервала гистограммы возраста в годах.
+     * @return {@link ResponseEntity} со статистикой {@link PersonStatisticsDto}.
+     * @throws CityNotFoundException если город не найден.
+     */
+    @GetMapping("/statistics")
+    public ResponseEntity<PersonStatisticsDto> getStatistics(@RequestParam(required = false) String city,
+                                                             @RequestParam(defaultValue = "10") int bucket) {
+        return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).body(service.getStatistics(city, bucket));
+    }
+
+    /**
+     * Потоково отдает людей, проживающих в указанном городе, в формате NDJSON.
+     * Выбирается при {@code Accept: application/x-ndjson}.
+     *
+     * @param city Название города.
+     * @return {@link ResponseEntity} с телом, которое пишется по мере чтения из базы.
+     */
+    @Bulkhead(LISTS)
+    @GetMapping(value = "/by-city", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamPersonListByCityName(@RequestParam String city,
+                                                                            WebRequest request) {
+        String etag = versions.cityTag(city);
+        if (notModified(request, etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(ndjson(consumer -> service.streamPersonsByCity(city, consumer)));
+    }
+
+    /**
+     * Потоково отдает людей, возраст которых меньше указанного, в формате NDJSON.
+     * Выбирается при {@code Accept: application/x-ndjson}.
+     *
+     * @param age Возраст для фильтрации.
+     * @return {@link ResponseEntity} с телом, которое пишется по мере чтения из базы.
+     */
+    @Bulkhead(LISTS)
+    @GetMapping(value = "/by-age", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamPersonListByAge(@RequestParam int age, WebRequest request) {
+        String etag = versions.allTag();
+        if (notModified(request, etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(ndjson(consumer -> service.streamPersonByAgeLowerThanAsc(age, consumer)));
+    }
+
+    /**
+     * Выгружает всех людей в CSV с заголовком {@code name,surname,age,phoneNumber,cityName} — тем же,
+     * что принимает {@code POST /persons/batch}. Строки идут в порядке ключа (имя, фамилия, возраст):
+     * таблица читается курсором базы и пишется прямо в ответ через буферы постоянного размера, поэтому
+     * память не зависит от числа людей. Если клиент принимает {@code gzip}, ответ сжимается.
+     * <p>
+     * Оборванную выгрузку можно продолжить с ключа последней полученной строки, передав его в
+     * {@code afterName}, {@code afterSurname} и {@code afterAge}.
+     *
+     * @param afterName      Имя последней полученной строки.
+     * @param afterSurname   Фамилия последней полученной строки.
+     * @param afterAge       Возраст последней полученной строки.
+     * @param acceptEncoding Заголовок {@code Accept-Encoding}.
+     * @return {@link ResponseEntity} с телом, которое пишется по мере чтения из базы.
+     * @throws InvalidCursorException если ключ продолжения задан не полностью.
+     */
+    @Bulkhead(LISTS)
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportPersonsAsCsv(
+            @RequestParam(required = false) String afterName,
+            @RequestParam(required = false) String afterSurname,
+            @RequestParam(required = false) Integer afterAge,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        Person.PersonId after = exportKey(afterName, afterSurname, afterAge);
+        return export(MediaType.parseMediaType(TEXT_CSV_VALUE), "persons.csv", acceptEncoding, out -> {
+            try (SequenceWriter writer = CSV_WRITER.writeValues(out)) {
+                service.exportPersons(after, personDto -> {
+                    try {
+                        writer.write(personDto);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Выгружает всех людей в двоичном формате {@link PersonBinaryWriter}, как {@link #exportPersonsAsCsv}.
+     * Выбирается при {@code Accept: application/x-person-binary}.
+     *
+     * @param afterName      Имя последней полученной записи.
+     * @param afterSurname   Фамилия последней полученной записи.
+     * @param afterAge       Возраст последней полученной записи.
+     * @param acceptEncoding Заголовок {@code Accept-Encoding}.
+     * @return {@link ResponseEntity} с телом, которое пишется по мере чтения из базы.
+     * @throws InvalidCursorException если ключ продолжения задан не полностью.
+     */
+    @Bulkhead(LISTS)
+    @GetMapping(value = "/export", produces = PersonBinaryWriter.MEDIA_TYPE_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportPersonsAsBinary(
+            @RequestParam(required = false) String afterName,
+            @RequestParam(required = false) String afterSurname,
+            @RequestParam(required = false) Integer afterAge,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        Person.PersonId after = exportKey(afterName, afterSurname, afterAge);
+        return export(MediaType.parseMediaType(PersonBinaryWriter.MEDIA_TYPE_VALUE), "persons.bin", acceptEncoding,
+                out -> {
+                    PersonBinaryWriter writer = new PersonBinaryWriter(out);
+                    service.exportPersons(after, personDto -> {
+                        try {
+                            writer.write(personDto);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    writer.finish();
+                });
     }
 
     /**
@@ -82,12 +384,21 @@ public class PersonController {
      * @return {@link ResponseEntity} с объектом {@link PersonDto}, если человек найден.
      * @throws PersonNotFoundException если человек не найден.
      */
+    @Bulkhead(LOOKUPS)
     @GetMapping()
     public ResponseEntity<PersonDto> getPersonByNameAndSurname(
             @RequestParam String name,
-            @RequestParam String surname
+            @RequestParam String surname,
+            WebRequest request
     ) {
-        return ResponseEntity.ok(service.getPersonByNameAndSurname(name, surname));
+        String etag = versions.personTag(name, surname);
+        if (notModified(request, etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(service.getPersonByNameAndSurname(name, surname));
     }
 
     /**
@@ -122,6 +433,36 @@ public class PersonController {
         return ResponseEntity.created(service.createPerson(personDto)).build();
     }
 
+    /**
+     * Импортирует людей из NDJSON: по одному объекту {@link PersonDto} на строку.
+     * Тело читается потоково и записывается пакетами, существующие люди не перезаписываются.
+     *
+     * @param body Тело запроса.
+     * @return {@link ResponseEntity} с итогами импорта и списком невставленных строк.
+     * @throws IOException если тело запроса не удалось прочитать.
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<BatchResultDto> importPersonsFromNdjson(InputStream body) throws IOException {
+        try (MappingIterator<PersonDto> persons = objectMapper.readerFor(PersonDto.class).readValues(body)) {
+            return ResponseEntity.ok(service.importPersons(persons));
+        }
+    }
+
+    /**
+     * Импортирует людей из CSV с заголовком {@code name,surname,age,phoneNumber,cityName}.
+     * Тело читается потоково и записывается пакетами, существующие люди не перезаписываются.
+     *
+     * @param body Тело запроса.
+     * @return {@link ResponseEntity} с итогами импорта и списком невставленных строк.
+     * @throws IOException если тело запроса не удалось прочитать.
+     */
+    @PostMapping(value = "/batch", consumes = TEXT_CSV_VALUE)
+    public ResponseEntity<BatchResultDto> importPersonsFromCsv(InputStream body) throws IOException {
+        try (MappingIterator<PersonDto> persons = CSV_READER.readValues(body)) {
+            return ResponseEntity.ok(service.importPersons(persons));
+        }
+    }
+
     /**
      * Обновляет данные человека (номер телефона и город).
      *
@@ -129,15 +470,124 @@ public class PersonController {
      * @param surname        Фамилия человека.
      * @param age            Возраст человека.
      * @param patchPersonDto Данные для обновления.
-     * @return {@link ResponseEntity} с количеством обновленных записей.
-     * @throws PersonNotFoundException если человек не найден.
-     * @throws CityNotFoundException   если указанный город не найден.
+     * @return {@link ResponseEntity} с количеством обновленных записей; при включенной отложенной записи
+     * ({@link PersonWriteBehind}) — {@code 202 Accepted} без тела.
+     * @throws PersonNotFoundException    если человек не найден.
+     * @throws CityNotFoundException      если указанный город не найден.
+     * @throws ServiceOverloadedException если очередь отложенной записи заполнена.
      */
     @PatchMapping("/{name}/{surname}/{age}")
     public ResponseEntity<Integer> updatePerson(@PathVariable String name,
                                                 @PathVariable String surname,
                                                 @PathVariable int age,
                                                 @RequestBody PatchPersonDto patchPersonDto) {
+        if (writeBehind.isEnabled()) {
+            writeBehind.submit(name, surname, age, patchPersonDto);
+            return ResponseEntity.accepted().build();
+        }
         return ResponseEntity.ok(service.patchPerson(name, surname, age, patchPersonDto));
     }
+
+    /**
+     * Обновляет номер телефона и город у набора людей.
+     * Запись идет пакетами, каждый пакет — один запрос к базе.
+     *
+     * @param items Пары из ключа человека и новых данных.
+     * @return {@link ResponseEntity} с количеством обновленных строк для каждого элемента и списком
+     * отклоненных элементов.
+     */
+    @PatchMapping("/bulk")
+    public ResponseEntity<BulkResultDto> patchPersons(@RequestBody List<BulkPatchItemDto> items) {
+        return ResponseEntity.ok(service.patchPersons(items));
+    }
+
+    /**
+     * Удаляет набор людей по ключам: имени, фамилии и возрасту.
+     * Удаление идет пакетами, каждый пакет — один запрос к базе.
+     *
+     * @param keys Ключи людей.
+     * @return {@link ResponseEntity} с количеством удаленных строк для каждого ключа и списком
+     * отклоненных ключей.
+     */
+    @DeleteMapping("/bulk")
+    public ResponseEntity<BulkResultDto> deletePersons(@RequestBody List<PersonKeyDto> keys) {
+        return ResponseEntity.ok(service.deletePersons(keys));
+    }
+
+    private static Person.PersonId exportKey(String name, String surname, Integer age) {
+        if (name == null && surname == null && age == null) {
+            return null;
+        }
+        if (name == null || surname == null || age == null) {
+            throw new InvalidCursorException("afterName, afterSurname and afterAge must be given together.");
+        }
+        return new Person.PersonId(name, surname, age);
+    }
+
+    /**
+     * Оборачивает тело выгрузки в буфер постоянного размера и, если клиент принимает {@code gzip}, в сжатие.
+     */
+    private static ResponseEntity<StreamingResponseBody> export(MediaType contentType,
+                                                                String fileName,
+                                                                String acceptEncoding,
+                                                                StreamingResponseBody body) {
+        boolean gzip = acceptsGzip(acceptEncoding);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(fileName).build().toString())
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(out -> {
+            GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, EXPORT_BUFFER_SIZE) : null;
+            BufferedOutputStream buffered = new BufferedOutputStream(gzip ? compressed : out, EXPORT_BUFFER_SIZE);
+            body.writeTo(buffered);
+            buffered.flush();
+            if (gzip) {
+                compressed.finish();
+            }
+        });
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Данные не изменились с ETag из {@code If-None-Match}; без ETag ({@code null}) ответ всегда полный.
+     */
+    private static boolean notModified(WebRequest request, String etag) {
+        return etag != null && request.checkNotModified(etag);
+    }
+
+    /**
+     * Тело NDJSON: каждая запись — одна строка JSON, завершенная {@code \n}, включая последнюю.
+     */
+    private StreamingResponseBody ndjson(Consumer<Consumer<PersonDto>> source) {
+        ObjectWriter writer = objectMapper.writerFor(PersonDto.class);
+        return out -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+                generator.setRootValueSeparator(null);
+                source.accept(personDto -> {
+                    try {
+                        writer.writeValue(generator, personDto);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+    }
 }
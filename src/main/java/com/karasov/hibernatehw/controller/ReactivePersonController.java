@@ -0,0 +1,155 @@
+package com.karasov.hibernatehw.controller;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.karasov.hibernatehw.dto.BatchResultDto;
+import com.karasov.hibernatehw.dto.BulkPatchItemDto;
+import com.karasov.hibernatehw.dto.BulkResultDto;
+import com.karasov.hibernatehw.dto.PatchPersonDto;
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonKeyDto;
+import com.karasov.hibernatehw.dto.PersonPageDto;
+import com.karasov.hibernatehw.service.ReactivePersonService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Реактивный контроллер людей для профиля {@code reactive}.
+ * Обслуживает тот же HTTP-контракт, что и {@link PersonController}: те же пути, параметры, коды ответов
+ * и тела ошибок, — но поверх WebFlux и {@link ReactivePersonService}.
+ * Списки по городу и возрасту отдаются как JSON-массив или, при {@code Accept: application/x-ndjson},
+ * построчно; в обоих случаях строки запрашиваются у базы по мере записи ответа.
+ */
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("/persons")
+@Profile("reactive")
+public class ReactivePersonController {
+
+    private static final String TEXT_CSV_VALUE = "text/csv";
+    private static final CsvMapper CSV_MAPPER = new CsvMapper();
+
+    private final ReactivePersonService service;
+
+    @GetMapping("/{name}/{surname}/{age}")
+    public Mono<PersonDto> getPerson(@PathVariable String name,
+                                     @PathVariable String surname,
+                                     @PathVariable int age) {
+        return service.getPerson(name, surname, age);
+    }
+
+    @GetMapping(value = "/by-city", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<PersonDto> getPersonListByCityName(@RequestParam String city) {
+        return service.getPersonsByCity(city);
+    }
+
+    @GetMapping(value = "/by-age", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<PersonDto> getPersonListByAge(@RequestParam int age) {
+        return service.getPersonByAgeLowerThanAsc(age);
+    }
+
+    @GetMapping("/by-city/page")
+    public Mono<PersonPageDto> getPersonPageByCityName(@RequestParam String city,
+                                                       @RequestParam(required = false) String cursor,
+                                                       @RequestParam(defaultValue = "100") int size) {
+        return service.getPersonsByCity(city, cursor, size);
+    }
+
+    @GetMapping("/by-age/page")
+    public Mono<PersonPageDto> getPersonPageByAge(@RequestParam int age,
+                                                  @RequestParam(required = false) String cursor,
+                                                  @RequestParam(defaultValue = "100") int size) {
+        return service.getPersonByAgeLowerThanAsc(age, cursor, size);
+    }
+
+    @GetMapping()
+    public Mono<PersonDto> getPersonByNameAndSurname(@RequestParam String name, @RequestParam String surname) {
+        return service.getPersonByNameAndSurname(name, surname);
+    }
+
+    @DeleteMapping()
+    public Mono<ResponseEntity<Void>> deletePerson(@RequestParam String name,
+                                                   @RequestParam String surname,
+                                                   @RequestParam int age) {
+        return service.deletePerson(name, surname, age).thenReturn(ResponseEntity.ok().build());
+    }
+
+    @PostMapping()
+    public Mono<ResponseEntity<URI>> createPerson(@RequestBody PersonDto personDto, ServerHttpRequest request) {
+        return service.createPerson(personDto)
+                .map(personId -> ResponseEntity.created(UriComponentsBuilder.fromUri(request.getURI())
+                        .path("/{name}/{surname}/{age}")
+                        .buildAndExpand(personId.getName(), personId.getSurname(), personId.getAge())
+                        .toUri()).build());
+    }
+
+    /**
+     * Импортирует людей из NDJSON: по одному объекту {@link PersonDto} на строку.
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public Mono<BatchResultDto> importPersonsFromNdjson(@RequestBody Flux<PersonDto> persons) {
+        return service.importPersons(persons);
+    }
+
+    /**
+     * Импортирует людей из CSV с заголовком {@code name,surname,age,phoneNumber,cityName}.
+     * Тело декодируется построчно, схема строится по первой строке.
+     */
+    @PostMapping(value = "/batch", consumes = TEXT_CSV_VALUE)
+    public Mono<BatchResultDto> importPersonsFromCsv(@RequestBody Flux<String> lines) {
+        return service.importPersons(lines
+                .filter(line -> !line.isBlank())
+                .switchOnFirst((header, rows) -> {
+                    if (!header.hasValue()) {
+                        return Flux.empty();
+                    }
+                    ObjectReader reader = csvReader(header.get());
+                    return rows.skip(1).concatMap(line -> Mono.fromCallable(() -> reader.<PersonDto>readValue(line)));
+                }));
+    }
+
+    @PatchMapping("/{name}/{surname}/{age}")
+    public Mono<Integer> updatePerson(@PathVariable String name,
+                                      @PathVariable String surname,
+                                      @PathVariable int age,
+                                      @RequestBody PatchPersonDto patchPersonDto) {
+        return service.patchPerson(name, surname, age, patchPersonDto);
+    }
+
+    @PatchMapping("/bulk")
+    public Mono<BulkResultDto> patchPersons(@RequestBody List<BulkPatchItemDto> items) {
+        return service.patchPersons(items);
+    }
+
+    @DeleteMapping("/bulk")
+    public Mono<BulkResultDto> deletePersons(@RequestBody List<PersonKeyDto> keys) {
+        return service.deletePersons(keys);
+    }
+
+    private static ObjectReader csvReader(String header) {
+        CsvSchema.Builder schema = CsvSchema.builder();
+        for (String column : header.split(",")) {
+            schema.addColumn(column.trim());
+        }
+        return CSV_MAPPER.readerFor(PersonDto.class).with(schema.build());
+    }
+}
@@ -0,0 +1,36 @@
+package com.karasov.hibernatehw.datasource;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Отмечает HTTP-запрос, чтения которого должны идти в основной источник, даже если транзакция read-only.
+ * Нужен ответам, согласованным с состоянием, которое приложение видит после своих фиксаций, например
+ * ответам с ETag из счетчиков в памяти: отстающая реплика отдала бы под новым ETag старые данные.
+ * Вне HTTP-запроса отметка не ставится.
+ */
+public final class PrimaryReads {
+
+    private static final String PINNED = PrimaryReads.class.getName() + ".PINNED";
+
+    private PrimaryReads() {
+    }
+
+    /**
+     * Направляет последующие чтения текущего HTTP-запроса в основной источник.
+     */
+    public static void pin() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.setAttribute(PINNED, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    /**
+     * @return {@code true}, если чтения текущего HTTP-запроса направлены в основной источник.
+     */
+    public static boolean isPinned() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes != null && attributes.getAttribute(PINNED, RequestAttributes.SCOPE_REQUEST) != null;
+    }
+}
@@ -0,0 +1,42 @@
+package com.karasov.hibernatehw.datasource;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Настройки маршрутизации чтения на реплики ({@code persons.datasource.routing.*}).
+ * Каждая реплика описывается так же, как основной источник: {@code url}, {@code username}, {@code password}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties("persons.datasource.routing")
+public class ReadReplicaProperties {
+
+    /**
+     * Включает маршрутизацию: read-only транзакции идут на реплики, остальные — на основной источник.
+     */
+    private boolean enabled;
+
+    /**
+     * Читать из основного источника до конца HTTP-запроса, если в нем уже была зафиксирована запись.
+     */
+    private boolean readYourWrites = true;
+
+    /**
+     * На сколько реплика исключается из балансировки после неудачной попытки получить соединение.
+     */
+    private Duration ejectDuration = Duration.ofSeconds(30);
+
+    /**
+     * Сколько ждать соединение от пула реплики, прежде чем считать ее недоступной.
+     */
+    private Duration connectionTimeout = Duration.ofSeconds(2);
+
+    private List<DataSourceProperties> replicas = new ArrayList<>();
+}
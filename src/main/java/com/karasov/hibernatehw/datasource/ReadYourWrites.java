@@ -0,0 +1,34 @@
+package com.karasov.hibernatehw.datasource;
+
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Отмечает HTTP-запрос, в котором зафиксирована пишущая транзакция, чтобы последующие чтения
+ * того же запроса шли в основной источник и видели свою запись независимо от отставания реплик.
+ * Вне HTTP-запроса отметка не ставится.
+ */
+public class ReadYourWrites implements TransactionExecutionListener {
+
+    private static final String WRITTEN = ReadYourWrites.class.getName() + ".WRITTEN";
+
+    @Override
+    public void afterCommit(TransactionExecution transaction, Throwable commitFailure) {
+        if (commitFailure == null && transaction.isNewTransaction() && !transaction.isReadOnly()) {
+            RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+            if (attributes != null) {
+                attributes.setAttribute(WRITTEN, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+            }
+        }
+    }
+
+    /**
+     * @return {@code true}, если в текущем HTTP-запросе уже была зафиксирована запись.
+     */
+    public static boolean hasWritten() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes != null && attributes.getAttribute(WRITTEN, RequestAttributes.SCOPE_REQUEST) != null;
+    }
+}
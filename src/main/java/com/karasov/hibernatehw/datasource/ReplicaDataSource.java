@@ -0,0 +1,116 @@
+package com.karasov.hibernatehw.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Источник соединений для чтения: распределяет соединения по репликам по кругу.
+ * <p>
+ * Реплика, не выдавшая соединение, исключается из балансировки на {@code ejectDuration}, и запрос
+ * переходит к следующей; по истечении срока реплика снова участвует в балансировке и проверяется
+ * первым же запросом. Если доступных реплик нет или {@code stickToPrimary} требует читать свою запись,
+ * соединение выдает основной источник.
+ */
+@Slf4j
+public class ReplicaDataSource extends AbstractDataSource implements AutoCloseable {
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long ejectNanos;
+    private final BooleanSupplier stickToPrimary;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaDataSource(DataSource primary, List<DataSource> replicas, Duration ejectDuration,
+                             BooleanSupplier stickToPrimary) {
+        this(primary, replicas, ejectDuration, stickToPrimary, System::nanoTime);
+    }
+
+    ReplicaDataSource(DataSource primary, List<DataSource> replicas, Duration ejectDuration,
+                      BooleanSupplier stickToPrimary, LongSupplier nanoClock) {
+        this.primary = primary;
+        long now = nanoClock.getAsLong();
+        this.replicas = IntStream.range(0, replicas.size())
+                .mapToObj(index -> new Replica(index, replicas.get(index), now))
+                .toList();
+        this.ejectNanos = ejectDuration.toNanos();
+        this.stickToPrimary = stickToPrimary;
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (replicas.isEmpty() || stickToPrimary.getAsBoolean()) {
+            return primary.getConnection();
+        }
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            long now = nanoClock.getAsLong();
+            if (replica.isEjected(now)) {
+                continue;
+            }
+            try {
+                return replica.dataSource.getConnection();
+            } catch (SQLException e) {
+                replica.ejectedUntil = now + ejectNanos;
+                log.warn("Read replica #{} ejected for {} ms: {}", replica.index, ejectNanos / 1_000_000,
+                        e.getMessage());
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Replica connections use the configured credentials");
+    }
+
+    /**
+     * @return Количество реплик, которые сейчас участвуют в балансировке.
+     */
+    public int healthyReplicas() {
+        long now = nanoClock.getAsLong();
+        return (int) replicas.stream().filter(replica -> !replica.isEjected(now)).count();
+    }
+
+    /**
+     * Закрывает пулы реплик; основной источник закрывается своим владельцем.
+     */
+    @Override
+    public void close() throws Exception {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private static final class Replica {
+
+        private final int index;
+        private final DataSource dataSource;
+        private volatile long ejectedUntil;
+
+        private Replica(int index, DataSource dataSource, long now) {
+            this.index = index;
+            this.dataSource = dataSource;
+            this.ejectedUntil = now;
+        }
+
+        private boolean isEjected(long now) {
+            return now - ejectedUntil < 0;
+        }
+    }
+}
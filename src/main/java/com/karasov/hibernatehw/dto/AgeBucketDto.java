@@ -0,0 +1,8 @@
+package com.karasov.hibernatehw.dto;
+
+public record AgeBucketDto(
+        int from,
+        int to,
+        long count
+) {
+}
@@ -0,0 +1,10 @@
+package com.karasov.hibernatehw.dto;
+
+import java.util.List;
+
+public record BatchResultDto(
+        long processed,
+        long succeeded,
+        List<BatchRowResultDto> failures
+) {
+}
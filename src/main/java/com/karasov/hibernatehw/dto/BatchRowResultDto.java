@@ -0,0 +1,8 @@
+package com.karasov.hibernatehw.dto;
+
+public record BatchRowResultDto(
+        long row,
+        BatchRowStatus status,
+        String message
+) {
+}
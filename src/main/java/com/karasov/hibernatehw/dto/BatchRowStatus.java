@@ -0,0 +1,7 @@
+package com.karasov.hibernatehw.dto;
+
+public enum BatchRowStatus {
+    CONFLICT,
+    CITY_NOT_FOUND,
+    INVALID
+}
@@ -0,0 +1,7 @@
+package com.karasov.hibernatehw.dto;
+
+public record BulkPatchItemDto(
+        PersonKeyDto id,
+        PatchPersonDto patch
+) {
+}
@@ -0,0 +1,11 @@
+package com.karasov.hibernatehw.dto;
+
+import java.util.List;
+
+public record BulkResultDto(
+        long processed,
+        long affected,
+        List<Integer> counts,
+        List<BatchRowResultDto> failures
+) {
+}
@@ -0,0 +1,7 @@
+package com.karasov.hibernatehw.dto;
+
+public record CityCountDto(
+        String city,
+        long count
+) {
+}
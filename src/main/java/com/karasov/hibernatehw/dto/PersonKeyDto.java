@@ -0,0 +1,8 @@
+package com.karasov.hibernatehw.dto;
+
+public record PersonKeyDto(
+        String name,
+        String surname,
+        Integer age
+) {
+}
@@ -0,0 +1,9 @@
+package com.karasov.hibernatehw.dto;
+
+import java.util.List;
+
+public record PersonPageDto(
+        List<PersonDto> items,
+        String nextCursor
+) {
+}
@@ -0,0 +1,12 @@
+package com.karasov.hibernatehw.dto;
+
+import java.util.List;
+import java.util.Map;
+
+public record PersonStatisticsDto(
+        long count,
+        List<CityCountDto> cities,
+        List<AgeBucketDto> ageHistogram,
+        Map<String, Integer> agePercentiles
+) {
+}
@@ -1,12 +1,17 @@
 package com.karasov.hibernatehw.entity;
 
+import com.karasov.hibernatehw.cache.CityEntityListener;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -21,6 +26,9 @@ import lombok.ToString;
 @NoArgsConstructor
 @AllArgsConstructor
 @Table(name = "city")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "city")
+@EntityListeners(CityEntityListener.class)
 public class City {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
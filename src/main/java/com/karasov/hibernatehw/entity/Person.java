@@ -1,5 +1,6 @@
 package com.karasov.hibernatehw.entity;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Embeddable;
 import jakarta.persistence.EmbeddedId;
@@ -8,6 +9,8 @@ import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -25,6 +28,8 @@ import java.util.Objects;
 @NoArgsConstructor
 @AllArgsConstructor
 @Table(name = "person")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "person")
 public class Person {
 
     @EmbeddedId
@@ -63,9 +68,15 @@ public class Person {
                     Objects.equals(surname, personId.surname);
         }
 
+        /**
+         * Совпадает по значению с {@code Objects.hash(name, surname, age)}, но не создает массив varargs
+         * и не упаковывает {@code age}: ключ используется в горячих путях (пакеты импорта, кэши).
+         */
         @Override
         public int hashCode() {
-            return Objects.hash(name, surname, age);
+            int result = 31 + Objects.hashCode(name);
+            result = 31 * result + Objects.hashCode(surname);
+            return 31 * result + age;
         }
     }
 }
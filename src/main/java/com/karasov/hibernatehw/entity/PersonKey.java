@@ -0,0 +1,30 @@
+package com.karasov.hibernatehw.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.Immutable;
+
+/**
+ * Глобальный ключ человека: таблица {@code person} секционирована по городу, и ее первичный ключ включает
+ * {@code city_id}, поэтому уникальность (имя, фамилия, возраст) держит {@code person_key}.
+ * Таблицу ведут триггеры {@code person}; приложение только читает ее, чтобы по ключу сразу найти секцию.
+ */
+@Entity
+@Immutable
+@Getter
+@ToString
+@NoArgsConstructor
+@Table(name = "person_key")
+public class PersonKey {
+
+    @EmbeddedId
+    private Person.PersonId id;
+
+    @Column(name = "city_id")
+    private Long cityId;
+}
@@ -1,7 +1,13 @@
 package com.karasov.hibernatehw.handler;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
 import com.karasov.hibernatehw.handler.exception.CreatingPersonAlreadyExistsException;
 import com.karasov.hibernatehw.handler.exception.EntityNotFoundException;
+import com.karasov.hibernatehw.handler.exception.InvalidCursorException;
+import com.karasov.hibernatehw.handler.exception.ServiceOverloadedException;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
@@ -18,4 +24,26 @@ public class ExceptionHandler {
     public ResponseEntity<String> handleCreatingPersonAlreadyExistsException(CreatingPersonAlreadyExistsException ex) {
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.CONFLICT);
     }
+
+    @org.springframework.web.bind.annotation.ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<String> handleInvalidCursorException(InvalidCursorException ex) {
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    @org.springframework.web.bind.annotation.ExceptionHandler({
+            JsonProcessingException.class,
+            RuntimeJsonMappingException.class,
+            DecodingException.class
+    })
+    public ResponseEntity<String> handleMalformedBatchException(Exception ex) {
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    @org.springframework.web.bind.annotation.ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<String> handleServiceOverloadedException(ServiceOverloadedException ex) {
+        long retryAfterSeconds = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+                .body(ex.getMessage());
+    }
 }
@@ -0,0 +1,16 @@
+package com.karasov.hibernatehw.handler.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+public class ServiceOverloadedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public ServiceOverloadedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
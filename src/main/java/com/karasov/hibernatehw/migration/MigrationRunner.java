@@ -0,0 +1,153 @@
+package com.karasov.hibernatehw.migration;
+
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Применяет changelog Liquibase при создании бина.
+ * <p>
+ * Каждый шаг берет соединение из пула и возвращает его: Liquibase получает соединение только на время
+ * {@code update}. Проверка и применение changelog — разбор всех changeSet, блокировка {@code DATABASECHANGELOGLOCK}
+ * и сверка контрольных сумм с {@code DATABASECHANGELOG} — занимают заметную часть старта. Поэтому после успешного
+ * применения в таблицу {@value #FINGERPRINT_TABLE} записывается SHA-256 файлов каталога changelog. Если
+ * {@code skipUnchanged} включено и отпечаток совпадает, Liquibase не запускается вовсе. Отпечаток отражает только
+ * файлы: изменения схемы мимо Liquibase он не замечает, как и сам Liquibase.
+ */
+@Slf4j
+public class MigrationRunner implements InitializingBean {
+
+    static final String FINGERPRINT_TABLE = "migration_fingerprint";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final String changeLog;
+    private final String changeLogDirectory;
+    private final boolean enabled;
+    private final boolean skipUnchanged;
+
+    /**
+     * @param changeLog     Путь к главному файлу changelog в classpath, например
+     *                      {@code db/changelog/db.changelog-master.xml}.
+     * @param enabled       Применять changelog; если выключено, бин ничего не делает.
+     * @param skipUnchanged Не запускать Liquibase, если файлы changelog не менялись с последнего применения.
+     */
+    public MigrationRunner(DataSource dataSource, String changeLog, boolean enabled, boolean skipUnchanged) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.changeLog = changeLog.replaceFirst("^classpath\\*?:/?", "");
+        this.changeLogDirectory = this.changeLog.contains("/")
+                ? this.changeLog.substring(0, this.changeLog.lastIndexOf('/') + 1)
+                : "";
+        this.enabled = enabled;
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws SQLException, LiquibaseException, IOException {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        String fingerprint = fingerprint();
+        if (skipUnchanged && fingerprint.equals(storedFingerprint())) {
+            log.info("Changelog {} is unchanged, skipped Liquibase in {} ms",
+                    changeLog, (System.nanoTime() - start) / 1_000_000);
+            return;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            Liquibase liquibase = new Liquibase(changeLog, new ClassLoaderResourceAccessor(),
+                    new JdbcConnection(connection));
+            liquibase.update(new Contexts(), new LabelExpression());
+        }
+        storeFingerprint(fingerprint);
+        log.info("Applied changelog {} in {} ms", changeLog, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * @return SHA-256 путей и содержимого всех файлов каталога главного файла changelog, включая подкаталоги,
+     * в порядке путей; для changelog в корне classpath — только его самого.
+     */
+    String fingerprint() throws IOException {
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources(changeLogDirectory.isEmpty()
+                ? "classpath*:" + changeLog
+                : "classpath*:" + changeLogDirectory + "**/*.*");
+        List<Resource> files = Arrays.stream(resources)
+                .filter(Resource::isReadable)
+                .sorted(Comparator.comparing(this::path))
+                .toList();
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Resource file : files) {
+            digest.update(path(file).getBytes(StandardCharsets.UTF_8));
+            try (InputStream in = file.getInputStream()) {
+                digest.update(in.readAllBytes());
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private String storedFingerprint() {
+        Boolean exists = jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, FINGERPRINT_TABLE);
+        if (!Boolean.TRUE.equals(exists)) {
+            return null;
+        }
+        return jdbcTemplate.query("SELECT sha256 FROM " + FINGERPRINT_TABLE + " WHERE change_log = ?",
+                rs -> rs.next() ? rs.getString(1) : null, changeLog);
+    }
+
+    private void storeFingerprint(String fingerprint) {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    change_log varchar(255) PRIMARY KEY,
+                    sha256 varchar(64) NOT NULL,
+                    applied_at timestamp NOT NULL
+                )
+                """.formatted(FINGERPRINT_TABLE));
+        jdbcTemplate.update("""
+                INSERT INTO %s (change_log, sha256, applied_at) VALUES (?, ?, now())
+                ON CONFLICT (change_log) DO UPDATE SET sha256 = EXCLUDED.sha256, applied_at = EXCLUDED.applied_at
+                """.formatted(FINGERPRINT_TABLE), changeLog, fingerprint);
+    }
+
+    /**
+     * @return Путь файла от каталога changelog: одинаков для каталога классов, обычного и исполняемого jar.
+     */
+    private String path(Resource resource) {
+        String uri;
+        try {
+            uri = resource.getURI().toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int start = changeLogDirectory.isEmpty() ? uri.lastIndexOf('/') + 1 : uri.lastIndexOf(changeLogDirectory);
+        return uri.substring(Math.max(start, 0));
+    }
+}
@@ -0,0 +1,45 @@
+package com.karasov.hibernatehw.readmodel;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Словарь строк: каждое различное значение хранится один раз, строки модели ссылаются на него номером.
+ * Имена повторяются у многих людей, поэтому словарь экономит память, а выдача переиспользует те же
+ * экземпляры {@link String} без копирования.
+ */
+final class Dictionary {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] values = new String[1024];
+
+    /**
+     * @return Номер значения; значение добавляется в словарь, если его еще нет.
+     */
+    int intern(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        int next = ids.size();
+        if (next == values.length) {
+            values = Arrays.copyOf(values, next * 2);
+        }
+        values[next] = value;
+        ids.put(value, next);
+        return next;
+    }
+
+    /**
+     * @return Номер значения или -1, если значения в словаре нет.
+     */
+    int find(String value) {
+        Integer id = ids.get(value);
+        return id == null ? -1 : id;
+    }
+
+    String value(int id) {
+        return values[id];
+    }
+}
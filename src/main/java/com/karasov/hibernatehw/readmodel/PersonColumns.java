@@ -0,0 +1,574 @@
+package com.karasov.hibernatehw.readmodel;
+
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.entity.Person;
+import com.karasov.hibernatehw.repository.SearchHit;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Колоночное хранилище людей: номер строки — индекс в массивах имен, фамилий, возрастов, телефонов и городов.
+ * <p>
+ * Имена и фамилии хранятся номерами в {@link Dictionary}. Ключ (имя, фамилия, возраст) ищется по хеш-таблице
+ * с открытой адресацией на {@code int[]}. Удаленная строка остается в таблице ключей с пометкой
+ * {@link #DELETED} вместо города и оживает при повторной вставке того же ключа, поэтому строки не переиспользуются
+ * и из хеш-таблицы ничего не удаляется.
+ * <p>
+ * Два индекса держат номера живых строк упорядоченными так же, как запросы {@code PersonRepository}:
+ * списки по городу — в порядке (имя, фамилия, возраст), списки по возрасту — по различным значениям возраста
+ * в порядке возрастания, внутри возраста — в порядке (имя, фамилия). Позиция в списке находится двоичным
+ * поиском. Строки сравниваются {@link String#compareTo}, то есть по кодовым точкам, как в запросах
+ * и индексах ключа, которые сравнивают имя и фамилию с {@code COLLATE "C"}.
+ * <p>
+ * Для поиска по имени и фамилии живые строки упорядочены еще и по строке {@code "имя фамилия"} в нижнем регистре,
+ * затем по ключу, как индекс {@code idx_person_name_prefix}: совпадения по началу строки — непрерывный отрезок
+ * этого списка. Похожие строки отбирает {@link TrigramIndex}.
+ * <p>
+ * Не потокобезопасно: доступ синхронизирует {@link PersonReadModel}.
+ */
+final class PersonColumns {
+
+    private static final int DELETED = -1;
+
+    private final Dictionary names = new Dictionary();
+    private final Dictionary surnames = new Dictionary();
+
+    private int[] nameIds = new int[1024];
+    private int[] surnameIds = new int[1024];
+    private int[] ages = new int[1024];
+    private String[] phoneNumbers = new String[1024];
+    private int[] citySlots = new int[1024];
+    private int rowCount;
+    private int liveCount;
+
+    /**
+     * Номер строки + 1; 0 — пустая ячейка.
+     */
+    private int[] keySlots = new int[2048];
+
+    private final Map<Long, Integer> cityIndex = new HashMap<>();
+    private String[] cityNames = new String[16];
+    private RowList[] cityRows = new RowList[16];
+
+    private final RowList textRows = new RowList();
+    private final TrigramIndex trigrams = new TrigramIndex();
+
+    private int[] distinctAges = new int[16];
+    private RowList[] ageRows = new RowList[16];
+    private int ageCount;
+
+    /**
+     * @return Количество живых людей.
+     */
+    int size() {
+        return liveCount;
+    }
+
+    boolean hasCity(long cityId) {
+        return cityIndex.containsKey(cityId);
+    }
+
+    /**
+     * Добавляет город или меняет его название.
+     */
+    void putCity(long cityId, String name) {
+        Integer slot = cityIndex.get(cityId);
+        if (slot != null) {
+            cityNames[slot] = name;
+            return;
+        }
+        int next = cityIndex.size();
+        if (next == cityNames.length) {
+            cityNames = Arrays.copyOf(cityNames, next * 2);
+            cityRows = Arrays.copyOf(cityRows, next * 2);
+        }
+        cityNames[next] = name;
+        cityRows[next] = new RowList();
+        cityIndex.put(cityId, next);
+    }
+
+    /**
+     * Вставляет человека или обновляет телефон и город существующего. Город должен быть добавлен
+     * через {@link #putCity(long, String)}.
+     */
+    void upsert(String name, String surname, int age, String phoneNumber, long cityId) {
+        int row = find(name, surname, age);
+        if (row < 0) {
+            row = addRow(name, surname, age);
+        }
+        phoneNumbers[row] = phoneNumber;
+        int city = cityIndex.get(cityId);
+        int current = citySlots[row];
+        if (current == city) {
+            return;
+        }
+        if (current == DELETED) {
+            // ageSlot может заменить массив ageRows, поэтому позиция вычисляется до чтения массива
+            int slot = ageSlot(age);
+            RowList rows = ageRows[slot];
+            rows.insert(position(rows, true, row, false), row);
+            textRows.insert(textPosition(row, false), row);
+            liveCount++;
+        } else {
+            RowList rows = cityRows[current];
+            rows.remove(position(rows, false, row, false));
+        }
+        citySlots[row] = city;
+        RowList rows = cityRows[city];
+        rows.insert(position(rows, false, row, false), row);
+    }
+
+    /**
+     * Удаляет человека с точно таким ключом, если он есть.
+     */
+    void delete(String name, String surname, int age) {
+        int row = find(name, surname, age);
+        if (row < 0 || citySlots[row] == DELETED) {
+            return;
+        }
+        RowList byCity = cityRows[citySlots[row]];
+        byCity.remove(position(byCity, false, row, false));
+        RowList byAge = ageRows[ageSlot(age)];
+        byAge.remove(position(byAge, true, row, false));
+        textRows.remove(textPosition(row, false));
+        citySlots[row] = DELETED;
+        phoneNumbers[row] = null;
+        liveCount--;
+    }
+
+    /**
+     * Добавляет в {@code target} человека с точно таким ключом, если он есть.
+     */
+    void collectByKey(String name, String surname, int age, List<PersonDto> target) {
+        int row = find(name, surname, age);
+        if (row >= 0 && citySlots[row] != DELETED) {
+            target.add(toDto(row));
+        }
+    }
+
+    /**
+     * Добавляет в {@code target} людей с такими именем и фамилией без учета регистра в порядке списка поиска.
+     * Совпадения — непрерывный отрезок этого списка: строка {@code "имя фамилия"} та же, имя той же длины.
+     */
+    void collectByNameAndSurname(String name, String surname, List<PersonDto> target) {
+        String text = lowerText(name, surname);
+        for (int i = textPosition(text, null, null, 0, false); i < textRows.size(); i++) {
+            int row = textRows.get(i);
+            if (compareText(row, text, false) != 0) {
+                return;
+            }
+            if (names.value(nameIds[row]).length() == name.length()) {
+                target.add(toDto(row));
+            }
+        }
+    }
+
+    /**
+     * Добавляет в {@code target} не больше {@code limit} людей города, следующих за ключом {@code after}
+     * в порядке (имя, фамилия, возраст).
+     *
+     * @param after Ключ последней записи предыдущей страницы или {@code null}, чтобы начать сначала.
+     */
+    void collectByCity(long cityId, Person.PersonId after, int limit, List<PersonDto> target) {
+        Integer city = cityIndex.get(cityId);
+        if (city == null) {
+            return;
+        }
+        RowList rows = cityRows[city];
+        int from = after == null ? 0 : position(rows, false, after.getName(), after.getSurname(), after.getAge(), true);
+        int to = (int) Math.min(rows.size(), (long) from + limit);
+        for (int i = from; i < to; i++) {
+            target.add(toDto(rows.get(i)));
+        }
+    }
+
+    /**
+     * Добавляет в {@code target} не больше {@code limit} людей младше {@code age}, следующих за ключом
+     * {@code after} в порядке (возраст, имя, фамилия).
+     *
+     * @param after Ключ последней записи предыдущей страницы или {@code null}, чтобы начать сначала.
+     */
+    void collectByAgeLowerThan(int age, Person.PersonId after, int limit, List<PersonDto> target) {
+        int added = 0;
+        int slot = 0;
+        if (after != null) {
+            slot = Arrays.binarySearch(distinctAges, 0, ageCount, after.getAge());
+            slot = slot < 0 ? -slot - 1 : slot;
+        }
+        for (; slot < ageCount && distinctAges[slot] < age && added < limit; slot++) {
+            RowList rows = ageRows[slot];
+            int from = after != null && distinctAges[slot] == after.getAge()
+                    ? position(rows, true, after.getName(), after.getSurname(), 0, true)
+                    : 0;
+            for (int i = from; i < rows.size() && added < limit; i++, added++) {
+                target.add(toDto(rows.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Добавляет в {@code target} не больше {@code limit} людей, чьи имя и фамилия начинаются со строки поиска,
+     * следующих за ключом {@code after} в порядке (строка {@code "имя фамилия"} в нижнем регистре, ключ).
+     *
+     * @param query Строка поиска в нижнем регистре.
+     * @param after Ключ последней записи предыдущей страницы или {@code null}, чтобы начать сначала.
+     */
+    void collectPrefixMatches(String query, Person.PersonId after, int limit, List<SearchHit> target) {
+        int from = after == null
+                ? textPosition(query, null, null, Integer.MIN_VALUE, false)
+                : textPosition(lowerText(after.getName(), after.getSurname()),
+                after.getName(), after.getSurname(), after.getAge(), true);
+        int added = 0;
+        for (int i = from; i < textRows.size() && added < limit; i++, added++) {
+            int row = textRows.get(i);
+            if (compareText(row, query, true) != 0) {
+                return;
+            }
+            target.add(new SearchHit(toDto(row), null));
+        }
+    }
+
+    /**
+     * Добавляет в {@code target} не больше {@code limit} людей, похожих на строку поиска, но не начинающихся с нее,
+     * в порядке (расстояние, ключ) после записи {@code after}. Сходство — доля триграмм строки поиска, найденных
+     * в имени и фамилии, как у {@code word_similarity} из {@code pg_trgm}; расстояние — единица минус сходство.
+     * <p>
+     * Списки {@link TrigramIndex} читаются от редких триграмм к частым, каждая впервые встреченная строка
+     * проверяется целиком, лучшие {@code limit} строк держатся в {@link TopRows}. Строка, впервые встреченная
+     * в списке номер {@code r} из {@code n}, делит со строкой поиска не больше {@code n - r} триграмм, поэтому
+     * чтение заканчивается, как только у худшей из отобранных строк общих триграмм больше или {@code n - r}
+     * меньше порога. Триграмма, которая есть больше чем у половины строк, сама по себе ничего не говорит о сходстве:
+     * ее список не читается, и строка, совпадающая со строкой поиска только такими триграммами, не находится.
+     * В этом выдача отличается от {@code PersonSearchRepository}, где такая строка проходит порог.
+     *
+     * @param query     Строка поиска в нижнем регистре.
+     * @param threshold Минимальное сходство от 0 до 1.
+     * @param after     Последняя запись предыдущей страницы из похожих или {@code null}, чтобы начать сначала.
+     */
+    void collectSimilar(String query, double threshold, SearchHit after, int limit, List<SearchHit> target) {
+        long[] queryTrigrams = Trigrams.distinct(query);
+        int total = queryTrigrams.length;
+        if (total == 0 || limit <= 0) {
+            return;
+        }
+        int required = Math.max(1, (int) Math.ceil(threshold * total - 1e-9));
+        RowList[] lists = trigrams.postings(queryTrigrams);
+        SharedTrigrams shared = new SharedTrigrams(queryTrigrams);
+        boolean[] visited = new boolean[rowCount];
+        TopRows top = new TopRows(limit);
+        scan:
+        for (int read = 0; read < total && total - read >= required && lists[read].size() <= rowCount / 2; read++) {
+            int bound = total - read;
+            RowList rows = lists[read];
+            for (int i = 0; i < rows.size(); i++) {
+                if (top.isFull() && top.worstShared() > bound) {
+                    break scan;
+                }
+                int row = rows.get(i);
+                if (visited[row]) {
+                    continue;
+                }
+                visited[row] = true;
+                // Строка делит не больше bound триграмм и может вытеснить худшую отобранную только меньшим ключом
+                if (citySlots[row] == DELETED
+                        || top.isFull() && top.worstShared() == bound && compareKeys(row, top.worstRow()) > 0) {
+                    continue;
+                }
+                int count = shared.count(nameIds[row], names.value(nameIds[row]), surnames.value(surnameIds[row]));
+                if (count < required || after != null && compareToHit(row, distance(count, total), after) <= 0
+                        || compareText(row, query, true) == 0) {
+                    continue;
+                }
+                top.offer(row, count);
+            }
+        }
+        for (int i = 0; i < top.size(); i++) {
+            target.add(new SearchHit(toDto(top.row(i)), distance(top.shared(i), total)));
+        }
+    }
+
+    private PersonDto toDto(int row) {
+        return new PersonDto(
+                names.value(nameIds[row]),
+                surnames.value(surnameIds[row]),
+                ages[row],
+                phoneNumbers[row],
+                cityNames[citySlots[row]]);
+    }
+
+    private int find(String name, String surname, int age) {
+        int nameId = names.find(name);
+        int surnameId = surnames.find(surname);
+        if (nameId < 0 || surnameId < 0) {
+            return -1;
+        }
+        int mask = keySlots.length - 1;
+        for (int i = hash(nameId, surnameId, age) & mask; ; i = (i + 1) & mask) {
+            int row = keySlots[i] - 1;
+            if (row < 0) {
+                return -1;
+            }
+            if (nameIds[row] == nameId && surnameIds[row] == surnameId && ages[row] == age) {
+                return row;
+            }
+        }
+    }
+
+    private int addRow(String name, String surname, int age) {
+        if (rowCount == nameIds.length) {
+            int capacity = rowCount * 2;
+            nameIds = Arrays.copyOf(nameIds, capacity);
+            surnameIds = Arrays.copyOf(surnameIds, capacity);
+            ages = Arrays.copyOf(ages, capacity);
+            phoneNumbers = Arrays.copyOf(phoneNumbers, capacity);
+            citySlots = Arrays.copyOf(citySlots, capacity);
+        }
+        int row = rowCount++;
+        nameIds[row] = names.intern(name);
+        surnameIds[row] = surnames.intern(surname);
+        ages[row] = age;
+        citySlots[row] = DELETED;
+        trigrams.add(row, name + ' ' + surname);
+        if (rowCount * 2 > keySlots.length) {
+            keySlots = new int[keySlots.length * 2];
+            for (int i = 0; i < rowCount; i++) {
+                putKey(i);
+            }
+        } else {
+            putKey(row);
+        }
+        return row;
+    }
+
+    private void putKey(int row) {
+        int mask = keySlots.length - 1;
+        int i = hash(nameIds[row], surnameIds[row], ages[row]) & mask;
+        while (keySlots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        keySlots[i] = row + 1;
+    }
+
+    /**
+     * @return Позиция значения возраста в {@link #distinctAges}; новое значение добавляется.
+     */
+    private int ageSlot(int age) {
+        int slot = Arrays.binarySearch(distinctAges, 0, ageCount, age);
+        if (slot >= 0) {
+            return slot;
+        }
+        slot = -slot - 1;
+        if (ageCount == distinctAges.length) {
+            distinctAges = Arrays.copyOf(distinctAges, ageCount * 2);
+            ageRows = Arrays.copyOf(ageRows, ageCount * 2);
+        }
+        System.arraycopy(distinctAges, slot, distinctAges, slot + 1, ageCount - slot);
+        System.arraycopy(ageRows, slot, ageRows, slot + 1, ageCount - slot);
+        distinctAges[slot] = age;
+        ageRows[slot] = new RowList();
+        ageCount++;
+        return slot;
+    }
+
+    private int position(RowList rows, boolean ageOrder, int row, boolean after) {
+        return position(rows, ageOrder, names.value(nameIds[row]), surnames.value(surnameIds[row]), ages[row], after);
+    }
+
+    /**
+     * Двоичный поиск в упорядоченном списке строк.
+     *
+     * @param ageOrder Список одного возраста, упорядоченный по (имя, фамилия); иначе — список города,
+     *                 упорядоченный по (имя, фамилия, возраст).
+     * @param after    Искать первую строку больше ключа; иначе — первую не меньше ключа.
+     * @return Позиция первой подходящей строки или размер списка.
+     */
+    private int position(RowList rows, boolean ageOrder, String name, String surname, int age, boolean after) {
+        int low = 0;
+        int high = rows.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int row = rows.get(mid);
+            int comparison = names.value(nameIds[row]).compareTo(name);
+            if (comparison == 0) {
+                comparison = surnames.value(surnameIds[row]).compareTo(surname);
+            }
+            if (comparison == 0 && !ageOrder) {
+                comparison = Integer.compare(ages[row], age);
+            }
+            if (comparison < 0 || after && comparison == 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static float distance(int shared, int total) {
+        return 1f - (float) shared / total;
+    }
+
+    /**
+     * Сравнивает строку с общим числом триграмм {@code distance} и записью выдачи в порядке (расстояние, ключ).
+     */
+    private int compareToHit(int row, float distance, SearchHit hit) {
+        int comparison = Float.compare(distance, hit.distance());
+        if (comparison == 0) {
+            comparison = names.value(nameIds[row]).compareTo(hit.person().name());
+        }
+        if (comparison == 0) {
+            comparison = surnames.value(surnameIds[row]).compareTo(hit.person().surname());
+        }
+        return comparison == 0 ? Integer.compare(ages[row], hit.person().age()) : comparison;
+    }
+
+    /**
+     * Сравнивает строки по ключу (имя, фамилия, возраст).
+     */
+    private int compareKeys(int row, int other) {
+        int comparison = names.value(nameIds[row]).compareTo(names.value(nameIds[other]));
+        if (comparison == 0) {
+            comparison = surnames.value(surnameIds[row]).compareTo(surnames.value(surnameIds[other]));
+        }
+        return comparison == 0 ? Integer.compare(ages[row], ages[other]) : comparison;
+    }
+
+    /**
+     * Лучшие строки выдачи похожих в порядке (число общих триграмм по убыванию, ключ), не больше {@code limit};
+     * худшая строка вытесняется лучшей.
+     */
+    private final class TopRows {
+
+        private final int[] rows;
+        private final int[] shared;
+        private int size;
+
+        TopRows(int limit) {
+            rows = new int[limit];
+            shared = new int[limit];
+        }
+
+        boolean isFull() {
+            return size == rows.length;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int row(int index) {
+            return rows[index];
+        }
+
+        int shared(int index) {
+            return shared[index];
+        }
+
+        int worstShared() {
+            return shared[size - 1];
+        }
+
+        int worstRow() {
+            return rows[size - 1];
+        }
+
+        void offer(int row, int count) {
+            if (isFull() && compare(row, count, size - 1) >= 0) {
+                return;
+            }
+            int i = isFull() ? size - 1 : size++;
+            for (; i > 0 && compare(row, count, i - 1) < 0; i--) {
+                rows[i] = rows[i - 1];
+                shared[i] = shared[i - 1];
+            }
+            rows[i] = row;
+            shared[i] = count;
+        }
+
+        private int compare(int row, int count, int index) {
+            int comparison = Integer.compare(shared[index], count);
+            return comparison == 0 ? compareKeys(row, rows[index]) : comparison;
+        }
+    }
+
+    private int textPosition(int row, boolean after) {
+        return textPosition(lowerText(names.value(nameIds[row]), surnames.value(surnameIds[row])),
+                names.value(nameIds[row]), surnames.value(surnameIds[row]), ages[row], after);
+    }
+
+    /**
+     * Двоичный поиск в {@link #textRows}.
+     *
+     * @param name  Имя ключа или {@code null}: сравнение только по строке {@code text}.
+     * @param after Искать первую строку больше ключа; иначе — первую не меньше ключа.
+     * @return Позиция первой подходящей строки или размер списка.
+     */
+    private int textPosition(String text, String name, String surname, int age, boolean after) {
+        int low = 0;
+        int high = textRows.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int row = textRows.get(mid);
+            int comparison = compareText(row, text, false);
+            if (comparison == 0 && name != null) {
+                comparison = names.value(nameIds[row]).compareTo(name);
+                if (comparison == 0) {
+                    comparison = surnames.value(surnameIds[row]).compareTo(surname);
+                }
+                if (comparison == 0) {
+                    comparison = Integer.compare(ages[row], age);
+                }
+            }
+            if (comparison < 0 || after && comparison == 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Сравнивает строку {@code "имя фамилия"} строки модели в нижнем регистре с {@code text}, не собирая ее.
+     *
+     * @param prefix Сравнить только начало длиной {@code text}: 0 означает, что строка начинается с {@code text}.
+     */
+    private int compareText(int row, String text, boolean prefix) {
+        String name = names.value(nameIds[row]);
+        String surname = surnames.value(surnameIds[row]);
+        int length = name.length() + 1 + surname.length();
+        for (int i = 0; i < text.length(); i++) {
+            if (i == length) {
+                return -1;
+            }
+            char c = i < name.length() ? name.charAt(i)
+                    : i == name.length() ? ' ' : surname.charAt(i - name.length() - 1);
+            int comparison = Character.compare(Character.toLowerCase(c), text.charAt(i));
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return prefix ? 0 : Integer.compare(length, text.length());
+    }
+
+    private static String lowerText(String name, String surname) {
+        StringBuilder text = new StringBuilder(name.length() + 1 + surname.length());
+        for (int i = 0; i < name.length(); i++) {
+            text.append(Character.toLowerCase(name.charAt(i)));
+        }
+        text.append(' ');
+        for (int i = 0; i < surname.length(); i++) {
+            text.append(Character.toLowerCase(surname.charAt(i)));
+        }
+        return text.toString();
+    }
+
+    private static int hash(int nameId, int surnameId, int age) {
+        int hash = (nameId * 31 + surnameId) * 31 + age;
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
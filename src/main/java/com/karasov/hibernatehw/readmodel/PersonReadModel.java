@@ -0,0 +1,404 @@
+package com.karasov.hibernatehw.readmodel;
+
+import com.karasov.hibernatehw.cache.CityChangedEvent;
+import com.karasov.hibernatehw.cache.CityDirectory;
+import com.karasov.hibernatehw.cache.PersonChangedEvent;
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.entity.City;
+import com.karasov.hibernatehw.entity.Person;
+import com.karasov.hibernatehw.repository.CityRepository;
+import com.karasov.hibernatehw.repository.PersonScanRepository;
+import com.karasov.hibernatehw.repository.PersonSearchRepository;
+import com.karasov.hibernatehw.repository.SearchHit;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Модель чтения всей таблицы {@code person} в памяти процесса (см. {@link PersonColumns}).
+ * Обслуживает чтение по ключу и по имени и фамилии, выборки по городу и по возрасту и поиск без обращения к базе;
+ * включается свойством {@code persons.read-model.enabled}.
+ * <p>
+ * Модель загружается одним чтением таблицы при старте и заново каждые {@code persons.read-model.refresh-interval}:
+ * повторная загрузка подхватывает записи мимо приложения и записи других экземпляров. Между загрузками модель
+ * обновляется по {@link PersonChangedEvent} после фиксации записи. События, пришедшие во время загрузки,
+ * повторно применяются к новой модели: применение события идемпотентно, поэтому событие, уже попавшее
+ * в прочитанные строки, ничего не меняет.
+ * <p>
+ * Пока модель не загружена, методы чтения возвращают пустой {@link Optional}, и сервис читает из базы.
+ * Слушатель событий стоит раньше {@code PersonVersions}: ответ с новым ETag не может быть собран из модели,
+ * еще не видевшей запись.
+ */
+@Slf4j
+@Component
+public class PersonReadModel {
+
+    private static final int STREAM_CHUNK_SIZE = 500;
+
+    private final PersonScanRepository personScanRepository;
+    private final CityRepository cityRepository;
+    private final CityDirectory cityDirectory;
+    private final boolean enabled;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Защищены {@link #lock}.
+     */
+    private PersonColumns columns = new PersonColumns();
+    private List<PersonChangedEvent> eventsDuringReload;
+
+    private volatile boolean ready;
+
+    public PersonReadModel(PersonScanRepository personScanRepository,
+                           CityRepository cityRepository,
+                           CityDirectory cityDirectory,
+                           MeterRegistry meterRegistry,
+                           @Value("${persons.read-model.enabled:false}") boolean enabled) {
+        this.personScanRepository = personScanRepository;
+        this.cityRepository = cityRepository;
+        this.cityDirectory = cityDirectory;
+        this.enabled = enabled;
+        if (enabled) {
+            Gauge.builder("persons.read-model.persons", this, PersonReadModel::size)
+                    .description("Persons held by the in-memory read model")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * @return Модель загружена и отражает все зафиксированные записи этого экземпляра.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Находит человека по ключу.
+     *
+     * @return Список из найденного человека, пустой список, если его нет, или пустой {@link Optional},
+     * если модель не готова.
+     */
+    public Optional<List<PersonDto>> getPerson(String name, String surname, int age) {
+        return read(persons -> columns.collectByKey(name, surname, age, persons));
+    }
+
+    /**
+     * Находит людей по имени и фамилии без учета регистра, как {@code PersonRepository#getPersonByNameAndSurname}.
+     *
+     * @return Все совпадения или пустой {@link Optional}, если модель не готова.
+     */
+    public Optional<List<PersonDto>> getPersonsByNameAndSurname(String name, String surname) {
+        return read(persons -> columns.collectByNameAndSurname(name, surname, persons));
+    }
+
+    /**
+     * Находит людей города, следующих за ключом {@code after} в порядке (имя, фамилия, возраст).
+     *
+     * @param city  Название города без учета регистра.
+     * @param after Ключ последней записи предыдущей страницы или {@code null} для первой страницы.
+     * @param limit Максимальное количество записей.
+     * @return Люди города или пустой {@link Optional}, если модель не готова.
+     */
+    public Optional<List<PersonDto>> getPersonsByCity(String city, Person.PersonId after, int limit) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        return Optional.of(cityDirectory.findIdByName(city)
+                .map(cityId -> collectByCity(cityId, after, limit))
+                .orElse(List.of()));
+    }
+
+    /**
+     * Находит людей младше {@code age}, следующих за ключом {@code after} в порядке (возраст, имя, фамилия).
+     *
+     * @param age   Возраст, по которому будет фильтроваться список.
+     * @param after Ключ последней записи предыдущей страницы или {@code null} для первой страницы.
+     * @param limit Максимальное количество записей.
+     * @return Люди младше {@code age} или пустой {@link Optional}, если модель не готова.
+     */
+    public Optional<List<PersonDto>> getPersonByAgeLowerThanAsc(int age, Person.PersonId after, int limit) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        return Optional.of(collectByAgeLowerThan(age, after, limit));
+    }
+
+    /**
+     * Ищет людей по имени и фамилии в том же порядке, что и {@link PersonSearchRepository}: сначала совпадения
+     * по началу строки, затем похожие по возрастанию расстояния.
+     *
+     * @param query     Строка поиска в нижнем регистре.
+     * @param threshold Минимальное сходство от 0 до 1.
+     * @param after     Последняя запись предыдущей страницы или {@code null} для первой страницы.
+     * @param limit     Максимальное количество записей.
+     * @return Найденные записи или пустой {@link Optional}, если модель не готова.
+     */
+    public Optional<List<SearchHit>> search(String query, double threshold, SearchHit after, int limit) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        List<SearchHit> hits = new ArrayList<>(limit);
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            if (after == null || after.distance() == null) {
+                columns.collectPrefixMatches(query, after == null ? null : after.key(), limit, hits);
+            }
+            if (hits.size() < limit) {
+                columns.collectSimilar(query, threshold, after == null || after.distance() == null ? null : after,
+                        limit - hits.size(), hits);
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return Optional.of(hits);
+    }
+
+    /**
+     * Передает людей города получателю порциями по {@value #STREAM_CHUNK_SIZE}. Блокировка держится только
+     * на время выборки порции, а не на время записи ответа; следующая порция начинается после ключа
+     * последней записи, поэтому записи между порциями не приводят к пропускам и повторам.
+     * Готовность модели проверяется один раз, перед первой порцией.
+     *
+     * @return {@code false}, если модель не готова и ничего не передано.
+     */
+    public boolean streamPersonsByCity(String city, Consumer<PersonDto> consumer) {
+        if (!ready) {
+            return false;
+        }
+        cityDirectory.findIdByName(city)
+                .ifPresent(cityId -> stream(after -> collectByCity(cityId, after, STREAM_CHUNK_SIZE), consumer));
+        return true;
+    }
+
+    /**
+     * Передает людей младше {@code age} получателю порциями, как {@link #streamPersonsByCity}.
+     *
+     * @return {@code false}, если модель не готова и ничего не передано.
+     */
+    public boolean streamPersonByAgeLowerThanAsc(int age, Consumer<PersonDto> consumer) {
+        if (!ready) {
+            return false;
+        }
+        stream(after -> collectByAgeLowerThan(age, after, STREAM_CHUNK_SIZE), consumer);
+        return true;
+    }
+
+    /**
+     * Применяет изменения людей к модели после фиксации транзакции.
+     *
+     * @param event Событие изменения людей.
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPersonChanged(PersonChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        List<City> newCities = newCities(event);
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            newCities.forEach(city -> columns.putCity(city.getId(), city.getName()));
+            apply(columns, event);
+            if (eventsDuringReload != null) {
+                eventsDuringReload.add(event);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Перечитывает названия городов после фиксации транзакции, изменившей таблицу {@code city}.
+     *
+     * @param event Событие изменения города.
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCityChanged(CityChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        List<City> cities = cityRepository.findAll();
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            cities.forEach(city -> columns.putCity(city.getId(), city.getName()));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Загружает модель из базы и заменяет ею текущую.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${persons.read-model.refresh-interval:PT5M}",
+            initialDelayString = "${persons.read-model.refresh-interval:PT5M}")
+    public synchronized void reload() {
+        if (!enabled) {
+            return;
+        }
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            eventsDuringReload = new ArrayList<>();
+        } finally {
+            writeLock.unlock();
+        }
+
+        long started = System.nanoTime();
+        PersonColumns loaded;
+        try {
+            loaded = load();
+        } catch (RuntimeException e) {
+            writeLock.lock();
+            try {
+                eventsDuringReload = null;
+            } finally {
+                writeLock.unlock();
+            }
+            throw e;
+        }
+
+        writeLock.lock();
+        try {
+            eventsDuringReload.forEach(event -> apply(loaded, event));
+            eventsDuringReload = null;
+            columns = loaded;
+            ready = true;
+        } finally {
+            writeLock.unlock();
+        }
+        log.info("Person read model loaded: {} persons in {} ms",
+                loaded.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private PersonColumns load() {
+        PersonColumns loaded = new PersonColumns();
+        cityRepository.findAll().forEach(city -> loaded.putCity(city.getId(), city.getName()));
+        personScanRepository.scan((name, surname, age, phoneNumber, cityId) -> {
+            if (!loaded.hasCity(cityId)) {
+                // Город добавлен после чтения справочника
+                cityRepository.findById(cityId).ifPresent(city -> loaded.putCity(city.getId(), city.getName()));
+            }
+            loaded.upsert(name, surname, age, phoneNumber, cityId);
+        });
+        return loaded;
+    }
+
+    private Optional<List<PersonDto>> read(Consumer<List<PersonDto>> collector) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        List<PersonDto> persons = new ArrayList<>(1);
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            collector.accept(persons);
+        } finally {
+            readLock.unlock();
+        }
+        return Optional.of(persons);
+    }
+
+    private List<PersonDto> collectByCity(long cityId, Person.PersonId after, int limit) {
+        List<PersonDto> persons = new ArrayList<>(Math.min(limit, STREAM_CHUNK_SIZE));
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            columns.collectByCity(cityId, after, limit, persons);
+        } finally {
+            readLock.unlock();
+        }
+        return persons;
+    }
+
+    private List<PersonDto> collectByAgeLowerThan(int age, Person.PersonId after, int limit) {
+        List<PersonDto> persons = new ArrayList<>(Math.min(limit, STREAM_CHUNK_SIZE));
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            columns.collectByAgeLowerThan(age, after, limit, persons);
+        } finally {
+            readLock.unlock();
+        }
+        return persons;
+    }
+
+    private int size() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return columns.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Города, которых еще нет в модели: название читается из базы до взятия блокировки.
+     */
+    private List<City> newCities(PersonChangedEvent event) {
+        List<City> cities = new ArrayList<>();
+        for (PersonChangedEvent.Change change : event.changes()) {
+            Long cityId = change.toCityId();
+            if (cityId != null && !hasCity(cityId) && cities.stream().noneMatch(city -> cityId.equals(city.getId()))) {
+                cityRepository.findById(cityId).ifPresent(cities::add);
+            }
+        }
+        return cities;
+    }
+
+    private boolean hasCity(long cityId) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return columns.hasCity(cityId);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private static void apply(PersonColumns columns, PersonChangedEvent event) {
+        for (PersonChangedEvent.Change change : event.changes()) {
+            Person.PersonId personId = change.personId();
+            if (change.toCityId() == null) {
+                columns.delete(personId.getName(), personId.getSurname(), personId.getAge());
+            } else if (columns.hasCity(change.toCityId())) {
+                columns.upsert(personId.getName(), personId.getSurname(), personId.getAge(),
+                        change.phoneNumber(), change.toCityId());
+            }
+        }
+    }
+
+    private static void stream(Function<Person.PersonId, List<PersonDto>> chunkAfter, Consumer<PersonDto> consumer) {
+        List<PersonDto> chunk = chunkAfter.apply(null);
+        while (true) {
+            chunk.forEach(consumer);
+            if (chunk.size() < STREAM_CHUNK_SIZE) {
+                return;
+            }
+            PersonDto last = chunk.get(chunk.size() - 1);
+            chunk = chunkAfter.apply(new Person.PersonId(last.name(), last.surname(), last.age()));
+        }
+    }
+}
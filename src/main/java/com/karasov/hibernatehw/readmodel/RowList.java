@@ -0,0 +1,36 @@
+package com.karasov.hibernatehw.readmodel;
+
+import java.util.Arrays;
+
+/**
+ * Упорядоченный список номеров строк на массиве {@code int[]}: список людей одного города
+ * или одного возраста. Порядок поддерживает {@link PersonColumns}, список только хранит номера
+ * и сдвигает хвост при вставке и удалении.
+ */
+final class RowList {
+
+    private int[] rows = new int[16];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    int get(int index) {
+        return rows[index];
+    }
+
+    void insert(int index, int row) {
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size * 2);
+        }
+        System.arraycopy(rows, index, rows, index + 1, size - index);
+        rows[index] = row;
+        size++;
+    }
+
+    void remove(int index) {
+        System.arraycopy(rows, index + 1, rows, index, size - index - 1);
+        size--;
+    }
+}
@@ -0,0 +1,107 @@
+package com.karasov.hibernatehw.readmodel;
+
+import java.util.Arrays;
+
+/**
+ * Число различных триграмм строки поиска, встречающихся в имени и фамилии (см. {@link Trigrams}).
+ * Найденные триграммы отмечаются битами маски по номеру в упорядоченном массиве триграмм запроса. Маска имени
+ * запоминается по номеру имени в словаре на время одного поиска: одно имя носят многие люди, и проверка строки
+ * сводится к разбору фамилии.
+ */
+final class SharedTrigrams {
+
+    /**
+     * Маска с номером бита {@code Long.SIZE - 1} не строится, поэтому -1 не бывает маской.
+     */
+    private static final long UNKNOWN = -1L;
+
+    private final long[] query;
+
+    /**
+     * Хеш-таблица с открытой адресацией: триграмма и ее номер в {@link #query}. Триграмма не бывает нулем,
+     * поэтому 0 — пустая ячейка.
+     */
+    private final long[] slots;
+    private final int[] indexes;
+    private long[] nameMasks = new long[0];
+
+    /**
+     * @param query Различные триграммы строки поиска по возрастанию.
+     */
+    SharedTrigrams(long[] query) {
+        this.query = query;
+        int capacity = Integer.highestOneBit(Math.max(query.length, 1) * 4);
+        slots = new long[capacity];
+        indexes = new int[capacity];
+        for (int i = 0; i < query.length; i++) {
+            int slot = slot(query[i]);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            slots[slot] = query[i];
+            indexes[slot] = i;
+        }
+    }
+
+    /**
+     * @param nameId Номер имени в словаре имен.
+     * @return Число различных триграмм строки поиска в имени и фамилии.
+     */
+    int count(int nameId, String name, String surname) {
+        if (query.length >= Long.SIZE) {
+            return countWithoutMasks(name + ' ' + surname);
+        }
+        if (nameId >= nameMasks.length) {
+            int length = nameMasks.length;
+            nameMasks = Arrays.copyOf(nameMasks, Math.max(nameId + 1, length * 2));
+            Arrays.fill(nameMasks, length, nameMasks.length, UNKNOWN);
+        }
+        long nameMask = nameMasks[nameId];
+        if (nameMask == UNKNOWN) {
+            nameMask = mask(name);
+            nameMasks[nameId] = nameMask;
+        }
+        return Long.bitCount(nameMask | mask(surname));
+    }
+
+    private long mask(String text) {
+        long[] mask = {0};
+        Trigrams.forEach(text, trigram -> {
+            int index = indexOf(trigram);
+            if (index >= 0) {
+                mask[0] |= 1L << index;
+            }
+        });
+        return mask[0];
+    }
+
+    private int countWithoutMasks(String text) {
+        boolean[] seen = new boolean[query.length];
+        int[] count = {0};
+        Trigrams.forEach(text, trigram -> {
+            int index = indexOf(trigram);
+            if (index >= 0 && !seen[index]) {
+                seen[index] = true;
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * @return Номер триграммы в {@link #query} или -1.
+     */
+    private int indexOf(long trigram) {
+        for (int slot = slot(trigram); slots[slot] != 0; slot = (slot + 1) & (slots.length - 1)) {
+            if (slots[slot] == trigram) {
+                return indexes[slot];
+            }
+        }
+        return -1;
+    }
+
+    private int slot(long trigram) {
+        long hash = trigram * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 40) & (slots.length - 1);
+    }
+}
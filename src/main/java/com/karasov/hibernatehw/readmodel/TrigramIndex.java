@@ -0,0 +1,43 @@
+package com.karasov.hibernatehw.readmodel;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Инвертированный индекс триграмм имени и фамилии (см. {@link Trigrams}): для каждой триграммы — номера строк,
+ * в которых она встречается. Строки добавляются один раз, при создании, и не переиспользуются, поэтому списки
+ * растут только добавлением в конец; живость строки проверяет {@link PersonColumns}.
+ * <p>
+ * Не потокобезопасно: доступ синхронизирует {@link PersonReadModel}.
+ */
+final class TrigramIndex {
+
+    private static final RowList EMPTY = new RowList();
+
+    private final Map<Long, RowList> postings = new HashMap<>();
+
+    /**
+     * Добавляет новую строку.
+     */
+    void add(int row, String text) {
+        for (long trigram : Trigrams.distinct(text)) {
+            RowList rows = postings.computeIfAbsent(trigram, key -> new RowList());
+            rows.insert(rows.size(), row);
+        }
+    }
+
+    /**
+     * @param query Различные триграммы запроса.
+     * @return Списки строк для каждой триграммы запроса, от самого короткого к самому длинному.
+     */
+    RowList[] postings(long[] query) {
+        RowList[] lists = new RowList[query.length];
+        for (int i = 0; i < query.length; i++) {
+            lists[i] = postings.getOrDefault(query[i], EMPTY);
+        }
+        Arrays.sort(lists, Comparator.comparingInt(RowList::size));
+        return lists;
+    }
+}
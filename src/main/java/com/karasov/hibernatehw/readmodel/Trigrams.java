@@ -0,0 +1,59 @@
+package com.karasov.hibernatehw.readmodel;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Триграммы строки по правилам {@code pg_trgm}: строка делится на слова из букв и цифр, каждое слово
+ * в нижнем регистре дополняется двумя пробелами в начале и одним в конце, триграммы — все подстроки
+ * из трех символов дополненного слова. Триграмма упаковывается в {@code long} по 16 бит на символ.
+ */
+final class Trigrams {
+
+    private Trigrams() {
+    }
+
+    /**
+     * @return Различные триграммы строки по возрастанию.
+     */
+    static long[] distinct(String text) {
+        long[][] trigrams = {new long[text.length() + 2]};
+        int[] count = {0};
+        forEach(text, trigram -> {
+            if (count[0] == trigrams[0].length) {
+                trigrams[0] = Arrays.copyOf(trigrams[0], count[0] * 2);
+            }
+            trigrams[0][count[0]++] = trigram;
+        });
+        return Arrays.stream(trigrams[0], 0, count[0]).sorted().distinct().toArray();
+    }
+
+    /**
+     * Передает получателю триграммы строки по порядку, с повторами.
+     */
+    static void forEach(String text, LongConsumer consumer) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                return;
+            }
+            char first = ' ';
+            char second = ' ';
+            for (; i < length && Character.isLetterOrDigit(text.charAt(i)); i++) {
+                char third = Character.toLowerCase(text.charAt(i));
+                consumer.accept(pack(first, second, third));
+                first = second;
+                second = third;
+            }
+            consumer.accept(pack(first, second, ' '));
+        }
+    }
+
+    private static long pack(char first, char second, char third) {
+        return (long) first << 32 | (long) second << 16 | third;
+    }
+}
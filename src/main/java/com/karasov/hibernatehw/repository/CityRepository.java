@@ -2,11 +2,18 @@ package com.karasov.hibernatehw.repository;
 
 import com.karasov.hibernatehw.entity.City;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
+@Transactional(readOnly = true)
 public interface CityRepository extends JpaRepository<City, Long> {
 
     Optional<City> findCityByName(String name);
 
+    @Query("SELECT c.id FROM City c WHERE LOWER(c.name) = LOWER(:name)")
+    Optional<Long> findCityIdByName(@Param("name") String name);
+
 }
@@ -0,0 +1,16 @@
+package com.karasov.hibernatehw.repository;
+
+import com.karasov.hibernatehw.entity.Person;
+
+/**
+ * Удаленный человек: ключ в том виде, в каком он хранился, и город, в котором человек жил.
+ * Удаление сравнивает имя и фамилию без учета регистра, поэтому ключ может отличаться от запрошенного.
+ *
+ * @param personId Ключ удаленного человека.
+ * @param cityId   Идентификатор города удаленного человека.
+ */
+public record DeletedPerson(
+        Person.PersonId personId,
+        Long cityId
+) {
+}
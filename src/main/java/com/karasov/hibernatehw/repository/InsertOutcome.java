@@ -0,0 +1,18 @@
+package com.karasov.hibernatehw.repository;
+
+/**
+ * Результат вставки одного человека запросом {@code INSERT ... ON CONFLICT DO NOTHING}
+ * с разрешением города подзапросом.
+ */
+public enum InsertOutcome {
+    INSERTED,
+    ALREADY_EXISTS,
+    CITY_NOT_FOUND;
+
+    static InsertOutcome of(boolean inserted, boolean cityFound) {
+        if (inserted) {
+            return INSERTED;
+        }
+        return cityFound ? ALREADY_EXISTS : CITY_NOT_FOUND;
+    }
+}
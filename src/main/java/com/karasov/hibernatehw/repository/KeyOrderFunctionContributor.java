@@ -0,0 +1,27 @@
+package com.karasov.hibernatehw.repository;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Функция HQL {@code key_order(строка)} — строка с правилом сортировки {@code "C"}, то есть по кодовым точкам.
+ * В этом порядке имена и фамилии сравнивают keyset-запросы, индексы ключа и модель чтения
+ * ({@code PersonColumns}), поэтому токен продолжения одинаково читается любым из них независимо от правила
+ * сортировки базы. Синтаксис {@code collate(... as ...)} HQL разборщик запросов Spring Data не понимает.
+ * <p>
+ * Регистрируется через {@code META-INF/services/org.hibernate.boot.model.FunctionContributor}.
+ */
+public class KeyOrderFunctionContributor implements FunctionContributor {
+
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        functionContributions.getFunctionRegistry()
+                .patternDescriptorBuilder("key_order", "(?1 collate \"C\")")
+                .setExactArgumentCount(1)
+                .setInvariantType(functionContributions.getTypeConfiguration()
+                        .getBasicTypeRegistry()
+                        .resolve(StandardBasicTypes.STRING))
+                .register();
+    }
+}
@@ -0,0 +1,306 @@
+package com.karasov.hibernatehw.repository;
+
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.entity.Person;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.action.internal.BulkOperationCleanupAction;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Репозиторий пакетной записи людей через JDBC: вставка, обновление и удаление.
+ * Каждый пакет передается в базу как набор массивов и записывается одним set-based запросом,
+ * без создания сущностей и без контекста персистентности.
+ * Так как запись идет мимо Hibernate, таблица {@code person} явно помечается измененной в текущей сессии —
+ * так же, как это делает нативный модифицирующий запрос с объявленными query spaces, — чтобы кэш второго
+ * уровня и query cache были сброшены по завершении транзакции.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PersonBatchRepository {
+
+    private static final String INSERT_ABSENT = """
+            INSERT INTO person (name, surname, age, phone_number, city_id)
+            SELECT r.name, r.surname, r.age, r.phone_number, r.city_id
+            FROM unnest(?::varchar[], ?::varchar[], ?::int[], ?::varchar[], ?::bigint[])
+                AS r(name, surname, age, phone_number, city_id)
+            WHERE NOT EXISTS (
+                SELECT 1 FROM person_key k
+                WHERE k.name = r.name AND k.surname = r.surname AND k.age = r.age
+            )
+            ON CONFLICT DO NOTHING
+            RETURNING name, surname, age
+            """;
+
+    /**
+     * Вставка одного человека с городом из подзапроса. Строка результата сообщает, вставлен ли человек
+     * и найден ли город: так причина отказа известна без дополнительных запросов.
+     */
+    private static final String INSERT_IF_ABSENT = """
+            WITH c AS (
+                SELECT id FROM city WHERE LOWER(name) = LOWER(:city)
+            ), ins AS (
+                INSERT INTO person (name, surname, age, phone_number, city_id)
+                SELECT :name, :surname, :age, :phoneNumber, c.id FROM c
+                ON CONFLICT DO NOTHING
+                RETURNING 1
+            )
+            SELECT EXISTS (SELECT 1 FROM ins) AS inserted, EXISTS (SELECT 1 FROM c) AS city_found
+            """;
+
+    /**
+     * Обновление одного человека. Город человека читается из {@code person_key} с блокировкой строки:
+     * параллельный перенос или удаление того же человека меняют эту строку триггером и ждут. Значение
+     * подзапроса известно до чтения {@code person}, поэтому обновление обращается к одной секции,
+     * а {@code RETURNING} отдает город, в котором человек жил до обновления.
+     */
+    private static final String UPDATE_RETURNING_CITY = """
+            WITH k AS MATERIALIZED (
+                SELECT city_id FROM person_key
+                WHERE name = :name AND surname = :surname AND age = :age
+                FOR UPDATE
+            )
+            UPDATE person
+            SET phone_number = :phoneNumber, city_id = :cityId
+            WHERE name = :name AND surname = :surname AND age = :age AND city_id = (SELECT city_id FROM k)
+            RETURNING (SELECT city_id FROM k)
+            """;
+
+    /**
+     * Удаление по ключу без учета регистра; как и {@link #UPDATE_RETURNING_CITY}, блокирует строки
+     * {@code person_key}. Городов может быть несколько, и секции не отбрасываются: каждая читается
+     * по {@code idx_person_lower_key}.
+     */
+    private static final String DELETE_RETURNING_CITY = """
+            WITH k AS MATERIALIZED (
+                SELECT city_id FROM person_key
+                WHERE LOWER(name) = LOWER(:name) AND LOWER(surname) = LOWER(:surname) AND age = :age
+                FOR UPDATE
+            )
+            DELETE FROM person
+            WHERE LOWER(name) = LOWER(:name) AND LOWER(surname) = LOWER(:surname) AND age = :age
+              AND city_id IN (SELECT city_id FROM k)
+            RETURNING name, surname, age, city_id
+            """;
+
+    /**
+     * Пакетное обновление. Как и {@link #UPDATE_RETURNING_CITY}, сначала блокирует строки {@code person_key}
+     * (в порядке ключа, чтобы встречные пакеты не взаимоблокировались): параллельный перенос того же человека
+     * ждет, а не переносит строку из-под обновления. Самосоединение с {@code person} возвращает прежний город
+     * каждого человека: строка {@code old} читается из снимка до изменения. Город из {@code person_key}
+     * оставляет в чтениях каждого человека одну секцию.
+     */
+    private static final String UPDATE_BY_KEYS = """
+            WITH r AS (
+                SELECT * FROM unnest(?::varchar[], ?::varchar[], ?::int[], ?::varchar[], ?::bigint[]) WITH ORDINALITY
+                    AS r(name, surname, age, phone_number, city_id, ord)
+            ), k AS MATERIALIZED (
+                SELECT r.ord, pk.city_id FROM r
+                JOIN person_key pk ON pk.name = r.name AND pk.surname = r.surname AND pk.age = r.age
+                ORDER BY pk.name, pk.surname, pk.age
+                FOR UPDATE OF pk
+            )
+            UPDATE person p
+            SET phone_number = r.phone_number, city_id = r.city_id
+            FROM r JOIN k ON k.ord = r.ord, person old
+            WHERE p.name = r.name AND p.surname = r.surname AND p.age = r.age AND p.city_id = k.city_id
+                AND old.name = p.name AND old.surname = p.surname AND old.age = p.age AND old.city_id = p.city_id
+            RETURNING r.ord, old.city_id
+            """;
+
+    private static final String DELETE_BY_KEYS = """
+            DELETE FROM person p
+            USING unnest(?::varchar[], ?::varchar[], ?::int[]) WITH ORDINALITY AS r(name, surname, age, ord)
+            WHERE LOWER(p.name) = LOWER(r.name) AND LOWER(p.surname) = LOWER(r.surname) AND p.age = r.age
+            RETURNING r.ord, p.name, p.surname, p.age, p.city_id
+            """;
+
+    private static final Set<String> PERSON_SPACES = Set.of("person", "person_key");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+
+    /**
+     * Вставляет людей, которых еще нет в таблице, одним запросом.
+     * Ключи внутри пакета должны быть уникальны.
+     *
+     * @param persons Люди для вставки; у города должен быть заполнен идентификатор.
+     * @return Ключи фактически вставленных людей; остальные уже существовали.
+     */
+    @Transactional
+    public Set<Person.PersonId> insertAbsent(List<Person> persons) {
+        BulkOperationCleanupAction.schedule(entityManager.unwrap(SharedSessionContractImplementor.class), PERSON_SPACES);
+        Set<Person.PersonId> inserted = new HashSet<>();
+        jdbcTemplate.query(
+                connection -> prepareWithPersons(connection, INSERT_ABSENT, persons),
+                rs -> {
+                    inserted.add(new Person.PersonId(rs.getString(1), rs.getString(2), rs.getInt(3)));
+                });
+        return inserted;
+    }
+
+    /**
+     * Вставляет человека, если его еще нет, одним атомарным запросом: город разрешается подзапросом,
+     * конфликт ключа не вставляет строку. Запрос выполняется через Hibernate, поэтому учитывается
+     * в его статистике.
+     *
+     * @param personDto Данные человека.
+     * @return Результат вставки.
+     */
+    @Transactional
+    public InsertOutcome insertIfAbsent(PersonDto personDto) {
+        BulkOperationCleanupAction.schedule(entityManager.unwrap(SharedSessionContractImplementor.class), PERSON_SPACES);
+        Object[] result = (Object[]) entityManager.createNativeQuery(INSERT_IF_ABSENT)
+                .setParameter("city", personDto.cityName())
+                .setParameter("name", personDto.name())
+                .setParameter("surname", personDto.surname())
+                .setParameter("age", personDto.age())
+                .setParameter("phoneNumber", personDto.phoneNumber())
+                .getSingleResult();
+        return InsertOutcome.of((Boolean) result[0], (Boolean) result[1]);
+    }
+
+    /**
+     * Обновляет номер телефона и город человека по ключу одним запросом.
+     *
+     * @param personId    Ключ человека.
+     * @param phoneNumber Новый номер телефона.
+     * @param cityId      Идентификатор нового города.
+     * @return Идентификатор города, в котором человек жил до обновления, или пустой список, если человек не найден.
+     */
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public List<Long> updateReturningCity(Person.PersonId personId, String phoneNumber, Long cityId) {
+        BulkOperationCleanupAction.schedule(entityManager.unwrap(SharedSessionContractImplementor.class), PERSON_SPACES);
+        return entityManager.createNativeQuery(UPDATE_RETURNING_CITY, Long.class)
+                .setParameter("phoneNumber", phoneNumber)
+                .setParameter("cityId", cityId)
+                .setParameter("name", personId.getName())
+                .setParameter("surname", personId.getSurname())
+                .setParameter("age", personId.getAge())
+                .getResultList();
+    }
+
+    /**
+     * Удаляет человека по ключу одним запросом; имя и фамилия сравниваются без учета регистра.
+     *
+     * @param personId Ключ человека.
+     * @return Удаленные люди с хранившимися ключами и городами; пустой список, если никто не удален.
+     */
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public List<DeletedPerson> deleteReturningCity(Person.PersonId personId) {
+        BulkOperationCleanupAction.schedule(entityManager.unwrap(SharedSessionContractImplementor.class), PERSON_SPACES);
+        List<Object[]> rows = entityManager.createNativeQuery(DELETE_RETURNING_CITY)
+                .setParameter("name", personId.getName())
+                .setParameter("surname", personId.getSurname())
+                .setParameter("age", personId.getAge())
+                .getResultList();
+        return rows.stream()
+                .map(row -> new DeletedPerson(
+                        new Person.PersonId((String) row[0], (String) row[1], ((Number) row[2]).intValue()),
+                        ((Number) row[3]).longValue()))
+                .toList();
+    }
+
+    /**
+     * Обновляет номер телефона и город людей одним запросом.
+     * Ключи внутри пакета должны быть уникальны.
+     *
+     * @param persons Новые данные людей; у города должен быть заполнен идентификатор.
+     * @return Идентификатор города, в котором человек жил до обновления, для каждого элемента пакета,
+     * в том же порядке; {@code null}, если человек не найден.
+     */
+    @Transactional
+    public Long[] updateByKeys(List<Person> persons) {
+        BulkOperationCleanupAction.schedule(entityManager.unwrap(SharedSessionContractImplementor.class), PERSON_SPACES);
+        Long[] previousCityIds = new Long[persons.size()];
+        jdbcTemplate.query(
+                connection -> prepareWithPersons(connection, UPDATE_BY_KEYS, persons),
+                rs -> {
+                    previousCityIds[rs.getInt(1) - 1] = rs.getLong(2);
+                });
+        return previousCityIds;
+    }
+
+    /**
+     * Удаляет людей по ключам одним запросом; имя и фамилия сравниваются без учета регистра,
+     * как в {@link #deleteReturningCity}. Ключи внутри пакета должны быть уникальны без учета регистра.
+     *
+     * @param personIds Ключи людей.
+     * @return Удаленные люди для каждого ключа пакета, в том же порядке; пустой список, если никто не удален.
+     */
+    @Transactional
+    public List<List<DeletedPerson>> deleteByKeys(List<Person.PersonId> personIds) {
+        BulkOperationCleanupAction.schedule(entityManager.unwrap(SharedSessionContractImplementor.class), PERSON_SPACES);
+        List<List<DeletedPerson>> deleted = new ArrayList<>(personIds.size());
+        for (int i = 0; i < personIds.size(); i++) {
+            deleted.add(new ArrayList<>(1));
+        }
+        jdbcTemplate.query(
+                connection -> prepareDeleteByKeys(connection, personIds),
+                rs -> {
+                    deleted.get(rs.getInt(1) - 1).add(new DeletedPerson(
+                            new Person.PersonId(rs.getString(2), rs.getString(3), rs.getInt(4)),
+                            rs.getLong(5)));
+                });
+        return deleted;
+    }
+
+    private static PreparedStatement prepareWithPersons(Connection connection, String sql, List<Person> persons)
+            throws SQLException {
+        int size = persons.size();
+        String[] names = new String[size];
+        String[] surnames = new String[size];
+        Integer[] ages = new Integer[size];
+        String[] phoneNumbers = new String[size];
+        Long[] cityIds = new Long[size];
+        for (int i = 0; i < size; i++) {
+            Person person = persons.get(i);
+            names[i] = person.getId().getName();
+            surnames[i] = person.getId().getSurname();
+            ages[i] = person.getId().getAge();
+            phoneNumbers[i] = person.getPhoneNumber();
+            cityIds[i] = person.getCityOfLiving().getId();
+        }
+
+        PreparedStatement statement = connection.prepareStatement(sql);
+        statement.setArray(1, connection.createArrayOf("varchar", names));
+        statement.setArray(2, connection.createArrayOf("varchar", surnames));
+        statement.setArray(3, connection.createArrayOf("int4", ages));
+        statement.setArray(4, connection.createArrayOf("varchar", phoneNumbers));
+        statement.setArray(5, connection.createArrayOf("int8", cityIds));
+        return statement;
+    }
+
+    private static PreparedStatement prepareDeleteByKeys(Connection connection, List<Person.PersonId> personIds)
+            throws SQLException {
+        int size = personIds.size();
+        String[] names = new String[size];
+        String[] surnames = new String[size];
+        Integer[] ages = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            Person.PersonId personId = personIds.get(i);
+            names[i] = personId.getName();
+            surnames[i] = personId.getSurname();
+            ages[i] = personId.getAge();
+        }
+
+        PreparedStatement statement = connection.prepareStatement(DELETE_BY_KEYS);
+        statement.setArray(1, connection.createArrayOf("varchar", names));
+        statement.setArray(2, connection.createArrayOf("varchar", surnames));
+        statement.setArray(3, connection.createArrayOf("int4", ages));
+        return statement;
+    }
+}
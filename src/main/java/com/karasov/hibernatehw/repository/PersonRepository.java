@@ -1,66 +1,93 @@
 package com.karasov.hibernatehw.repository;
 
+import com.karasov.hibernatehw.dto.PersonDto;
 import com.karasov.hibernatehw.entity.Person;
+import com.karasov.hibernatehw.entity.PersonKey;
+import com.karasov.hibernatehw.statistics.CityAgeCount;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Репозиторий для работы с сущностью {@link Person}.
  * Этот интерфейс расширяет {@link JpaRepository}, предоставляя основные операции CRUD для сущности {@link Person}.
  * Включает дополнительные методы для поиска, обновления и удаления людей по различным критериям.
+ * <p>
+ * Методы чтения возвращают {@link PersonDto} через конструкторную проекцию: человек и город выбираются
+ * одним запросом с join, без создания сущностей и без отслеживания в контексте персистентности.
+ * <p>
+ * Таблица {@code person} секционирована по {@code city_id}. Выборки по городу получают уже разрешенный
+ * идентификатор города (см. {@link com.karasov.hibernatehw.cache.CityDirectory}), поэтому планировщик оставляет
+ * одну секцию и читает ее по {@code pk_person} в порядке ключа. Выборка по ключу читает город в подзапросе
+ * к {@link PersonKey} в том же запросе: значение подзапроса известно до чтения {@code person}, и лишние секции
+ * отбрасываются при выполнении. Поиск по имени и фамилии и выборки по возрасту читают все секции
+ * по {@code idx_person_lower_key} и {@code idx_person_age_key}.
+ * <p>
+ * Выборки по ключу, городу и возрасту кэшируются в query cache Hibernate. Запись людей идет через
+ * {@link PersonBatchRepository}, который помечает измененными только таблицы {@code person} и {@code person_key}:
+ * сбрасываются регион {@code person} и результаты запросов по этим таблицам, а не весь кэш второго уровня.
+ * <p>
+ * Методы выполняются в read-only транзакции: при маршрутизации на реплики
+ * ({@code persons.datasource.routing.enabled}) именно по ней соединение берется из реплики.
  */
+@Transactional(readOnly = true)
 public interface PersonRepository extends JpaRepository<Person, Person.PersonId> {
 
     /**
-     * Находит человека по уникальному идентификатору {@link Person.PersonId}.
-     *
-     * @param personId Уникальный идентификатор человека.
-     * @return {@link Optional} с найденным человеком, если таковой существует.
+     * Размер выборки JDBC для потокового чтения: сколько строк драйвер забирает за один round trip.
+     */
+    String STREAM_FETCH_SIZE = "500";
+
+    /**
+     * Общая часть запросов чтения: проекция {@link Person} и его города в {@link PersonDto}.
      */
-    Optional<Person> findPersonById(Person.PersonId personId);
+    String SELECT_PERSON_DTO = """
+            SELECT new com.karasov.hibernatehw.dto.PersonDto(
+                p.id.name, p.id.surname, p.id.age, p.phoneNumber, c.name)
+            FROM Person p
+            JOIN p.cityOfLiving c
+            """;
 
     /**
-     * Обновляет номер телефона и идентификатор города человека по его уникальному идентификатору.
+     * Находит человека по уникальному идентификатору {@link Person.PersonId}; подзапрос к {@link PersonKey}
+     * оставляет в чтении одну секцию {@code person}.
      *
-     * @param personId    Уникальный идентификатор человека.
-     * @param phoneNumber Новый номер телефона.
-     * @param cityId      Идентификатор города.
-     * @return Количество обновленных записей.
+     * @param personId Уникальный идентификатор человека.
+     * @return {@link Optional} с найденным человеком, если таковой существует.
      */
-    @Modifying
-    @Transactional
-    @Query(value = """
-            UPDATE person SET \
-            phone_number = :phoneNumber, city_id = :cityId \
-            WHERE name = :#{#personId.name} AND surname = :#{#personId.surname} AND age = :#{#personId.age} \
-            """, nativeQuery = true)
-    int updatePersonById(Person.PersonId personId, String phoneNumber, Long cityId);
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "person-by-id")
+    })
+    @Query(SELECT_PERSON_DTO + """
+            WHERE p.id = :personId
+              AND p.cityOfLiving.id = (SELECT k.cityId FROM PersonKey k WHERE k.id = :personId)
+            """)
+    Optional<PersonDto> findPersonDtoById(@Param("personId") Person.PersonId personId);
 
     /**
      * Находит людей, проживающих в указанном городе.
      *
-     * @param city Название города.
+     * @param cityId Идентификатор города.
      * @return Список людей, проживающих в указанном городе.
      */
-    @Query(value = """
-                 SELECT\s
-                     p.name,
-                     p.surname,
-                     p.age,
-                     p.phone_number,
-                     p.city_id
-                 FROM person p
-                 JOIN city c ON p.city_id = c.id
-                 WHERE LOWER(c.name) = LOWER(:city)
-            \s""",
-            nativeQuery = true)
-    List<Person> getPersonsByCity(@Param("city") String city);
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "person-by-city")
+    })
+    @Query(SELECT_PERSON_DTO + """
+            WHERE p.cityOfLiving.id = :cityId
+            """)
+    List<PersonDto> getPersonsByCityId(@Param("cityId") long cityId);
 
     /**
      * Находит людей, возраст которых меньше указанного, отсортированных по возрастанию возраста.
@@ -68,14 +95,138 @@ public interface PersonRepository extends JpaRepository<Person, Person.PersonId>
      * @param age Возраст, по которому будет происходить фильтрация.
      * @return Список людей, возраст которых меньше указанного.
      */
-    @Query(
-            value = """
-                    SELECT * FROM person
-                    WHERE age < :age;
-                    """,
-            nativeQuery = true
-    )
-    List<Person> getPersonByAgeLowerThanAsc(@Param("age") int age);
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = "person-by-age")
+    })
+    @Query(SELECT_PERSON_DTO + """
+            WHERE p.id.age < :age
+            ORDER BY p.id.age, key_order(p.id.name), key_order(p.id.surname)
+            """)
+    List<PersonDto> getPersonByAgeLowerThanAsc(@Param("age") int age);
+
+    /**
+     * Находит первую страницу людей, проживающих в указанном городе, упорядоченных по ключу
+     * (имя, фамилия, возраст).
+     *
+     * @param cityId Идентификатор города.
+     * @param limit  Максимальное количество записей.
+     * @return Список людей первой страницы.
+     */
+    @Query(SELECT_PERSON_DTO + """
+            WHERE p.cityOfLiving.id = :cityId
+            ORDER BY key_order(p.id.name), key_order(p.id.surname), p.id.age
+            LIMIT :limit
+            """)
+    List<PersonDto> getPersonsByCityIdFirstPage(@Param("cityId") long cityId, @Param("limit") int limit);
+
+    /**
+     * Находит страницу людей, проживающих в указанном городе, следующую за ключом {@code after}
+     * в порядке (имя, фамилия, возраст).
+     *
+     * @param cityId Идентификатор города.
+     * @param after  Ключ последней записи предыдущей страницы.
+     * @param limit  Максимальное количество записей.
+     * @return Список людей следующей страницы.
+     */
+    @Query(SELECT_PERSON_DTO + """
+            WHERE p.cityOfLiving.id = :cityId
+              AND (key_order(p.id.name), key_order(p.id.surname), p.id.age)
+                  > (:#{#after.name}, :#{#after.surname}, :#{#after.age})
+            ORDER BY key_order(p.id.name), key_order(p.id.surname), p.id.age
+            LIMIT :limit
+            """)
+    List<PersonDto> getPersonsByCityIdAfter(@Param("cityId") long cityId,
+                                            @Param("after") Person.PersonId after,
+                                            @Param("limit") int limit);
+
+    /**
+     * Находит первую страницу людей, возраст которых меньше указанного, упорядоченных по ключу
+     * (возраст, имя, фамилия).
+     *
+     * @param age   Возраст, по которому будет происходить фильтрация.
+     * @param limit Максимальное количество записей.
+     * @return Список людей первой страницы.
+     */
+    @Query(SELECT_PERSON_DTO + """
+            WHERE p.id.age < :age
+            ORDER BY p.id.age, key_order(p.id.name), key_order(p.id.surname)
+            LIMIT :limit
+            """)
+    List<PersonDto> getPersonByAgeLowerThanAscFirstPage(@Param("age") int age, @Param("limit") int limit);
+
+    /**
+     * Находит страницу людей, возраст которых меньше указанного, следующую за ключом {@code after}
+     * в порядке (возраст, имя, фамилия).
+     *
+     * @param age   Возраст, по которому будет происходить фильтрация.
+     * @param after Ключ последней записи предыдущей страницы.
+     * @param limit Максимальное количество записей.
+     * @return Список людей следующей страницы.
+     */
+    @Query(SELECT_PERSON_DTO + """
+            WHERE p.id.age < :age
+              AND (p.id.age, key_order(p.id.name), key_order(p.id.surname))
+                  > (:#{#after.age}, :#{#after.name}, :#{#after.surname})
+            ORDER BY p.id.age, key_order(p.id.name), key_order(p.id.surname)
+            LIMIT :limit
+            """)
+    List<PersonDto> getPersonByAgeLowerThanAscAfter(@Param("age") int age,
+                                                    @Param("after") Person.PersonId after,
+                                                    @Param("limit") int limit);
+
+    /**
+     * Потоково читает людей, проживающих в указанном городе, через forward-only курсор JDBC.
+     * Поток должен потребляться внутри транзакции и быть закрыт после использования.
+     *
+     * @param cityId Идентификатор города.
+     * @return Поток людей, упорядоченных по ключу (имя, фамилия, возраст).
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(SELECT_PERSON_DTO + """
+            WHERE p.cityOfLiving.id = :cityId
+            ORDER BY key_order(p.id.name), key_order(p.id.surname), p.id.age
+            """)
+    Stream<PersonDto> streamPersonsByCityId(@Param("cityId") long cityId);
+
+    /**
+     * Потоково читает людей, возраст которых меньше указанного, через forward-only курсор JDBC.
+     * Поток должен потребляться внутри транзакции и быть закрыт после использования.
+     *
+     * @param age Возраст, по которому будет происходить фильтрация.
+     * @return Поток людей, упорядоченных по ключу (возраст, имя, фамилия).
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(SELECT_PERSON_DTO + """
+            WHERE p.id.age < :age
+            ORDER BY p.id.age, key_order(p.id.name), key_order(p.id.surname)
+            """)
+    Stream<PersonDto> streamPersonByAgeLowerThanAsc(@Param("age") int age);
+
+    /**
+     * Передает получателю людей из {@link #streamPersonsByCityId(long)}: поток читается и закрывается
+     * внутри транзакции этого метода.
+     *
+     * @param cityId   Идентификатор города.
+     * @param consumer Получатель {@link PersonDto}.
+     */
+    default void forEachPersonByCityId(long cityId, Consumer<PersonDto> consumer) {
+        try (Stream<PersonDto> persons = streamPersonsByCityId(cityId)) {
+            persons.forEach(consumer);
+        }
+    }
+
+    /**
+     * Передает получателю людей из {@link #streamPersonByAgeLowerThanAsc(int)} внутри транзакции этого метода.
+     *
+     * @param age      Возраст, по которому будет фильтроваться список.
+     * @param consumer Получатель {@link PersonDto}.
+     */
+    default void forEachPersonByAgeLowerThanAsc(int age, Consumer<PersonDto> consumer) {
+        try (Stream<PersonDto> persons = streamPersonByAgeLowerThanAsc(age)) {
+            persons.forEach(consumer);
+        }
+    }
 
     /**
      * Находит человека по имени и фамилии.
@@ -84,33 +235,21 @@ public interface PersonRepository extends JpaRepository<Person, Person.PersonId>
      * @param surname Фамилия человека.
      * @return {@link Optional} с найденным человеком, если таковой существует.
      */
-    @Query(
-            value = """
-                    SELECT * FROM person
-                    WHERE LOWER(name) = LOWER(:name) AND LOWER(surname) = LOWER(:surname);
-                    """,
-            nativeQuery = true
-    )
-    Optional<Person> getPersonByNameAndSurname(@Param("name") String name,
-                                               @Param("surname") String surname);
+    @Query(SELECT_PERSON_DTO + """
+            WHERE LOWER(p.id.name) = LOWER(:name) AND LOWER(p.id.surname) = LOWER(:surname)
+            """)
+    Optional<PersonDto> getPersonByNameAndSurname(@Param("name") String name,
+                                                  @Param("surname") String surname);
 
     /**
-     * Удаляет человека по ключу: имени, фамилии и возрасту.
+     * Считает людей по городам и возрастам для пересчета статистики.
      *
-     * @param name    Имя человека.
-     * @param surname Фамилия человека.
-     * @param age     Возраст человека.
+     * @return Количество людей для каждой пары город-возраст, в которой есть хотя бы один человек.
      */
-    @Modifying
-    @Transactional
-    @Query(
-            value = """
-                    DELETE FROM person
-                    WHERE LOWER(name) = LOWER(:name) AND LOWER(surname) = LOWER(:surname) AND age = :age;
-                    """,
-            nativeQuery = true
-    )
-    void deletePerson(@Param("name") String name,
-                      @Param("surname") String surname,
-                      @Param("age") int age);
+    @Query("""
+            SELECT new com.karasov.hibernatehw.statistics.CityAgeCount(c.id, c.name, p.id.age, COUNT(p))
+            FROM Person p JOIN p.cityOfLiving c
+            GROUP BY c.id, c.name, p.id.age
+            """)
+    List<CityAgeCount> countByCityAndAge();
 }
@@ -0,0 +1,87 @@
+package com.karasov.hibernatehw.repository;
+
+import com.karasov.hibernatehw.entity.Person;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+
+/**
+ * Полное чтение таблицы {@code person} для построения модели чтения в памяти и выгрузки.
+ * Строки читаются курсором порциями по {@value #FETCH_SIZE} и передаются обработчику по одной,
+ * без создания сущностей и {@link com.karasov.hibernatehw.dto.PersonDto}.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PersonScanRepository {
+
+    private static final int FETCH_SIZE = 10_000;
+
+    /**
+     * Порядок первичного ключа: строки читаются по {@code pk_person} всех секций со слиянием и приходят
+     * в том порядке, в котором модель хранит людей города, поэтому вставка в ее индексы — добавление в конец.
+     */
+    private static final String SCAN = """
+            SELECT name, surname, age, phone_number, city_id
+            FROM person
+            ORDER BY name, surname, age
+            """;
+
+    /**
+     * Продолжение чтения после ключа: сравнение строк {@code (name, surname, age) > (...)} задает
+     * нижнюю границу поиска по {@code pk_person}, порядок тот же, что у {@link #SCAN}.
+     */
+    private static final String SCAN_AFTER = """
+            SELECT name, surname, age, phone_number, city_id
+            FROM person
+            WHERE (name, surname, age) > (?, ?, ?)
+            ORDER BY name, surname, age
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Обработчик одной строки таблицы {@code person}.
+     */
+    @FunctionalInterface
+    public interface RowHandler {
+        void row(String name, String surname, int age, String phoneNumber, long cityId);
+    }
+
+    /**
+     * Читает всех людей в порядке ключа (имя, фамилия, возраст).
+     * Курсор PostgreSQL работает только внутри транзакции, поэтому чтение транзакционное.
+     *
+     * @param handler Обработчик строк.
+     */
+    @Transactional(readOnly = true)
+    public void scan(RowHandler handler) {
+        scan(null, handler);
+    }
+
+    /**
+     * Читает людей, следующих за ключом {@code after}, в порядке ключа (имя, фамилия, возраст).
+     *
+     * @param after   Ключ последней уже прочитанной строки или {@code null}, чтобы начать сначала.
+     * @param handler Обработчик строк.
+     */
+    @Transactional(readOnly = true)
+    public void scan(Person.PersonId after, RowHandler handler) {
+        jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(after == null ? SCAN : SCAN_AFTER);
+                    if (after != null) {
+                        statement.setString(1, after.getName());
+                        statement.setString(2, after.getSurname());
+                        statement.setInt(3, after.getAge());
+                    }
+                    statement.setFetchSize(FETCH_SIZE);
+                    return statement;
+                },
+                rs -> {
+                    handler.row(rs.getString(1), rs.getString(2), rs.getInt(3), rs.getString(4), rs.getLong(5));
+                });
+    }
+}
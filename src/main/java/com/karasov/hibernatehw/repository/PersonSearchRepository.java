@@ -0,0 +1,127 @@
+package com.karasov.hibernatehw.repository;
+
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.entity.Person;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Поиск людей по имени и фамилии: по началу строки и с учетом опечаток через расширение {@code pg_trgm}.
+ * <p>
+ * Строка поиска сравнивается со строкой {@code LOWER(name || ' ' || surname)}. Выдача собирается одним запросом
+ * из двух частей, вторая выполняется, только если первая не заполнила страницу:
+ * <ol>
+ *     <li>совпадения по началу строки — диапазон btree-индекса {@code idx_person_name_prefix}
+ *     ({@code text_pattern_ops}), уже в порядке индекса, без сортировки;</li>
+ *     <li>остальные похожие строки по сходству слов ({@code <%}) в порядке возрастания расстояния {@code <<->}:
+ *     по порогу из GIN-индекса {@code idx_person_name_trgm_gin} или, когда под порог попадает большая часть
+ *     таблицы, обходом GiST-индекса {@code idx_person_name_trgm} в порядке расстояния.</li>
+ * </ol>
+ * Страницы продолжаются по ключу последней записи (см. {@link SearchHit}), а не по смещению; имя и фамилия ключа
+ * сравниваются по кодовым точкам ({@code COLLATE "C"}), как в модели чтения. В масштабе поиск
+ * обслуживает модель чтения в памяти, этот запрос — пока она не загружена или выключена.
+ * Порог сходства задается на время транзакции, так как оператор {@code <%} читает его из настройки
+ * {@code pg_trgm.word_similarity_threshold}.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PersonSearchRepository {
+
+    private static final String SET_THRESHOLD = """
+            SELECT set_config('pg_trgm.word_similarity_threshold', ?, true)
+            """;
+
+    /**
+     * Диапазон начала строки задан явно ({@code ~>=~}, {@code ~<~}), а не через {@code LIKE}: так его границы
+     * остаются условиями индекса и в общем плане подготовленного запроса.
+     */
+    private static final String SEARCH = """
+            SELECT name, surname, age, phone_number, city_name, distance
+            FROM (
+                (SELECT p.name, p.surname, p.age, p.phone_number, c.name AS city_name, NULL::real AS distance
+                 FROM person p
+                 JOIN city c ON c.id = p.city_id
+                 WHERE ?::boolean
+                   AND LOWER(p.name || ' ' || p.surname) ~>=~ COALESCE(LOWER(?::text || ' ' || ?::text), ?::text)
+                   AND LOWER(p.name || ' ' || p.surname) ~<~ ?::text
+                   AND (?::text IS NULL
+                        OR LOWER(p.name || ' ' || p.surname) ~>~ LOWER(?::text || ' ' || ?::text)
+                        OR (p.name COLLATE "C", p.surname COLLATE "C", p.age) > (?::text, ?::text, ?::int))
+                 ORDER BY LOWER(p.name || ' ' || p.surname) USING ~<~, p.name COLLATE "C", p.surname COLLATE "C", p.age
+                 LIMIT ?)
+                UNION ALL
+                (SELECT p.name, p.surname, p.age, p.phone_number, c.name,
+                        ?::text <<-> LOWER(p.name || ' ' || p.surname) AS distance
+                 FROM person p
+                 JOIN city c ON c.id = p.city_id
+                 WHERE ?::text <% LOWER(p.name || ' ' || p.surname)
+                   AND NOT (LOWER(p.name || ' ' || p.surname) ~>=~ ?::text
+                            AND LOWER(p.name || ' ' || p.surname) ~<~ ?::text)
+                   AND (?::text <<-> LOWER(p.name || ' ' || p.surname),
+                        p.name COLLATE "C", p.surname COLLATE "C", p.age) > (?::real, ?::text, ?::text, ?::int)
+                 ORDER BY distance, p.name COLLATE "C", p.surname COLLATE "C", p.age
+                 LIMIT ?)
+            ) hits
+            LIMIT ?
+            """;
+
+    /**
+     * Начало последовательности похожих строк: расстояние не бывает отрицательным.
+     */
+    private static final SearchHit FIRST_SIMILAR = new SearchHit(new PersonDto("", "", Integer.MIN_VALUE, null, null),
+            -1f);
+
+    private static final String MAX_CHARACTER = Character.toString(Character.MAX_CODE_POINT);
+
+    private static final RowMapper<SearchHit> SEARCH_HIT = (rs, rowNum) -> {
+        PersonDto person = new PersonDto(
+                rs.getString("name"),
+                rs.getString("surname"),
+                rs.getInt("age"),
+                rs.getString("phone_number"),
+                rs.getString("city_name"));
+        float distance = rs.getFloat("distance");
+        return new SearchHit(person, rs.wasNull() ? null : distance);
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Находит людей, чьи имя и фамилия начинаются со строки поиска или похожи на нее.
+     *
+     * @param query     Строка поиска в нижнем регистре.
+     * @param threshold Минимальное сходство слов от 0 до 1.
+     * @param after     Последняя запись предыдущей страницы или {@code null} для первой страницы.
+     * @param limit     Максимальное количество записей.
+     * @return Список найденных записей в порядке выдачи.
+     */
+    @Transactional(readOnly = true)
+    public List<SearchHit> search(String query, double threshold, SearchHit after, int limit) {
+        jdbcTemplate.queryForObject(SET_THRESHOLD, String.class, Double.toString(threshold));
+        String prefixEnd = query + MAX_CHARACTER;
+        boolean inPrefixes = after == null || after.distance() == null;
+        Person.PersonId afterPrefix = after == null || after.distance() != null ? null : after.key();
+        SearchHit afterSimilar = inPrefixes ? FIRST_SIMILAR : after;
+        String afterName = afterPrefix == null ? null : afterPrefix.getName();
+        String afterSurname = afterPrefix == null ? null : afterPrefix.getSurname();
+        Integer afterAge = afterPrefix == null ? null : afterPrefix.getAge();
+        return jdbcTemplate.query(SEARCH, SEARCH_HIT,
+                inPrefixes,
+                afterName, afterSurname, query,
+                prefixEnd,
+                afterName, afterName, afterSurname, afterName, afterSurname, afterAge,
+                limit,
+                query,
+                query,
+                query, prefixEnd,
+                query, afterSimilar.distance(), afterSimilar.person().name(), afterSimilar.person().surname(),
+                afterSimilar.person().age(),
+                limit,
+                limit);
+    }
+}
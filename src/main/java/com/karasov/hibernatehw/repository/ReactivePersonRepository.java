@@ -0,0 +1,334 @@
+package com.karasov.hibernatehw.repository;
+
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.entity.Person;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неблокирующий репозиторий людей поверх R2DBC для профиля {@code reactive}.
+ * <p>
+ * Запросы повторяют {@link PersonRepository}: те же проекции в {@link PersonDto}, тот же порядок
+ * и те же индексы. Списки читаются порциями по {@code persons.reactive.fetch-size} строк
+ * из открытого портала внутри read-only транзакции: следующая порция запрашивается у базы только
+ * после того, как подписчик затребовал строки, поэтому противодавление доходит до курсора базы.
+ * <p>
+ * Транзакции управляются отдельным {@link R2dbcTransactionManager}, который не регистрируется как бин,
+ * чтобы {@code @Transactional} в остальном приложении по-прежнему относился к JPA.
+ */
+@Repository
+@Profile("reactive")
+public class ReactivePersonRepository {
+
+    private static final String SELECT_PERSON_DTO = """
+            SELECT p.name, p.surname, p.age, p.phone_number, c.name AS city_name
+            FROM person p
+            JOIN city c ON c.id = p.city_id
+            """;
+
+    private static final String WHERE_CITY = """
+            WHERE p.city_id = (SELECT ci.id FROM city ci WHERE LOWER(ci.name) = LOWER(:city))
+            """;
+
+    private static final String ORDER_BY_CITY_KEY = "ORDER BY p.name COLLATE \"C\", p.surname COLLATE \"C\", p.age\n";
+
+    private static final String ORDER_BY_AGE_KEY = "ORDER BY p.age, p.name COLLATE \"C\", p.surname COLLATE \"C\"\n";
+
+    private static final String INSERT_ABSENT = """
+            INSERT INTO person (name, surname, age, phone_number, city_id)
+            SELECT r.name, r.surname, r.age, r.phone_number, r.city_id
+            FROM unnest(CAST(:names AS varchar[]), CAST(:surnames AS varchar[]), CAST(:ages AS int[]),
+                        CAST(:phoneNumbers AS varchar[]), CAST(:cityIds AS bigint[]))
+                AS r(name, surname, age, phone_number, city_id)
+            WHERE NOT EXISTS (
+                SELECT 1 FROM person p
+                WHERE p.name = r.name AND p.surname = r.surname AND p.age = r.age
+            )
+            ON CONFLICT DO NOTHING
+            RETURNING name, surname, age
+            """;
+
+    /**
+     * Пакетное обновление; строки {@code person_key} блокируются в порядке ключа, как в
+     * {@link PersonBatchRepository}, чтобы параллельный перенос человека в другой город ждал обновления.
+     */
+    private static final String UPDATE_BY_KEYS = """
+            WITH r AS (
+                SELECT * FROM unnest(CAST(:names AS varchar[]), CAST(:surnames AS varchar[]), CAST(:ages AS int[]),
+                                     CAST(:phoneNumbers AS varchar[]), CAST(:cityIds AS bigint[])) WITH ORDINALITY
+                    AS r(name, surname, age, phone_number, city_id, ord)
+            ), k AS MATERIALIZED (
+                SELECT r.ord, pk.city_id FROM r
+                JOIN person_key pk ON pk.name = r.name AND pk.surname = r.surname AND pk.age = r.age
+                ORDER BY pk.name, pk.surname, pk.age
+                FOR UPDATE OF pk
+            )
+            UPDATE person p
+            SET phone_number = r.phone_number, city_id = r.city_id
+            FROM r JOIN k ON k.ord = r.ord
+            WHERE p.name = r.name AND p.surname = r.surname AND p.age = r.age AND p.city_id = k.city_id
+            RETURNING r.ord
+            """;
+
+    private static final String DELETE_BY_KEYS = """
+            DELETE FROM person p
+            USING unnest(CAST(:names AS varchar[]), CAST(:surnames AS varchar[]), CAST(:ages AS int[]))
+                WITH ORDINALITY AS r(name, surname, age, ord)
+            WHERE LOWER(p.name) = LOWER(r.name) AND LOWER(p.surname) = LOWER(r.surname) AND p.age = r.age
+            RETURNING r.ord
+            """;
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final TransactionalOperator readOnlyTransactionalOperator;
+    private final int fetchSize;
+
+    public ReactivePersonRepository(DatabaseClient databaseClient,
+                                    ConnectionFactory connectionFactory,
+                                    @Value("${persons.reactive.fetch-size:500}") int fetchSize) {
+        R2dbcTransactionManager transactionManager = new R2dbcTransactionManager(connectionFactory);
+        DefaultTransactionDefinition readOnly = new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRED);
+        readOnly.setReadOnly(true);
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = TransactionalOperator.create(transactionManager);
+        this.readOnlyTransactionalOperator = TransactionalOperator.create(transactionManager, readOnly);
+        this.fetchSize = fetchSize;
+    }
+
+    public Mono<PersonDto> findPersonDtoById(Person.PersonId personId) {
+        return databaseClient.sql(SELECT_PERSON_DTO + """
+                        WHERE p.name = :name AND p.surname = :surname AND p.age = :age
+                        """)
+                .bind("name", personId.getName())
+                .bind("surname", personId.getSurname())
+                .bind("age", personId.getAge())
+                .map(ReactivePersonRepository::toPersonDto)
+                .one();
+    }
+
+    public Mono<PersonDto> getPersonByNameAndSurname(String name, String surname) {
+        return databaseClient.sql(SELECT_PERSON_DTO + """
+                        WHERE LOWER(p.name) = LOWER(:name) AND LOWER(p.surname) = LOWER(:surname)
+                        """)
+                .bind("name", name)
+                .bind("surname", surname)
+                .map(ReactivePersonRepository::toPersonDto)
+                .one();
+    }
+
+    /**
+     * Потоково читает людей, проживающих в городе, в порядке ключа (имя, фамилия, возраст).
+     */
+    public Flux<PersonDto> streamPersonsByCity(String city) {
+        return stream(databaseClient.sql(SELECT_PERSON_DTO + WHERE_CITY + ORDER_BY_CITY_KEY)
+                .bind("city", city));
+    }
+
+    /**
+     * Потоково читает людей младше указанного возраста в порядке ключа (возраст, имя, фамилия).
+     */
+    public Flux<PersonDto> streamPersonByAgeLowerThanAsc(int age) {
+        return stream(databaseClient.sql(SELECT_PERSON_DTO + "WHERE p.age < :age\n" + ORDER_BY_AGE_KEY)
+                .bind("age", age));
+    }
+
+    /**
+     * @param after Ключ последнего человека предыдущей страницы или {@code null} для первой страницы.
+     */
+    public Flux<PersonDto> getPersonsByCityPage(String city, Person.PersonId after, int limit) {
+        DatabaseClient.GenericExecuteSpec spec = after == null
+                ? databaseClient.sql(SELECT_PERSON_DTO + WHERE_CITY + ORDER_BY_CITY_KEY + "LIMIT :limit")
+                : bindAfter(databaseClient.sql(SELECT_PERSON_DTO + WHERE_CITY + """
+                  AND (p.name COLLATE "C", p.surname COLLATE "C", p.age) > (:afterName, :afterSurname, :afterAge)
+                """ + ORDER_BY_CITY_KEY + "LIMIT :limit"), after);
+        return spec.bind("city", city)
+                .bind("limit", limit)
+                .map(ReactivePersonRepository::toPersonDto)
+                .all();
+    }
+
+    /**
+     * @param after Ключ последнего человека предыдущей страницы или {@code null} для первой страницы.
+     */
+    public Flux<PersonDto> getPersonByAgeLowerThanAscPage(int age, Person.PersonId after, int limit) {
+        DatabaseClient.GenericExecuteSpec spec = after == null
+                ? databaseClient.sql(SELECT_PERSON_DTO + "WHERE p.age < :age\n" + ORDER_BY_AGE_KEY + "LIMIT :limit")
+                : bindAfter(databaseClient.sql(SELECT_PERSON_DTO + """
+                WHERE p.age < :age
+                  AND (p.age, p.name COLLATE "C", p.surname COLLATE "C") > (:afterAge, :afterName, :afterSurname)
+                """ + ORDER_BY_AGE_KEY + "LIMIT :limit"), after);
+        return spec.bind("age", age)
+                .bind("limit", limit)
+                .map(ReactivePersonRepository::toPersonDto)
+                .all();
+    }
+
+    public Mono<Long> findCityIdByName(String name) {
+        return databaseClient.sql("SELECT id FROM city WHERE LOWER(name) = LOWER(:name)")
+                .bind("name", name)
+                .map(row -> row.get("id", Long.class))
+                .one();
+    }
+
+    /**
+     * Разрешает названия городов в идентификаторы одним запросом.
+     *
+     * @param lowerCaseNames Названия в нижнем регистре.
+     * @return Идентификаторы найденных городов по названию в нижнем регистре.
+     */
+    public Mono<Map<String, Long>> findCityIdsByLowerCaseNames(Collection<String> lowerCaseNames) {
+        return databaseClient.sql("SELECT id, LOWER(name) AS lower_name FROM city WHERE LOWER(name) = ANY(:names)")
+                .bind("names", lowerCaseNames.toArray(String[]::new))
+                .map(row -> Map.entry(row.get("lower_name", String.class), row.get("id", Long.class)))
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    /**
+     * Вставляет человека, если его еще нет, одним атомарным запросом, разрешая город подзапросом.
+     *
+     * @return Результат вставки: вставлен, уже существует или город не найден.
+     */
+    public Mono<InsertOutcome> insertIfAbsent(PersonDto personDto) {
+        return databaseClient.sql("""
+                        WITH c AS (
+                            SELECT id FROM city WHERE LOWER(name) = LOWER(:city)
+                        ), ins AS (
+                            INSERT INTO person (name, surname, age, phone_number, city_id)
+                            SELECT :name, :surname, :age, :phoneNumber, c.id FROM c
+                            ON CONFLICT DO NOTHING
+                            RETURNING 1
+                        )
+                        SELECT EXISTS (SELECT 1 FROM ins) AS inserted, EXISTS (SELECT 1 FROM c) AS city_found
+                        """)
+                .bind("name", personDto.name())
+                .bind("surname", personDto.surname())
+                .bind("age", personDto.age())
+                .bind("phoneNumber", personDto.phoneNumber())
+                .bind("city", personDto.cityName())
+                .map(row -> InsertOutcome.of(row.get("inserted", Boolean.class), row.get("city_found", Boolean.class)))
+                .one();
+    }
+
+    /**
+     * Вставляет людей, которых еще нет в таблице, одним запросом в отдельной транзакции.
+     * Ключи внутри пакета должны быть уникальны.
+     *
+     * @param persons Люди для вставки; у города должен быть заполнен идентификатор.
+     * @return Ключи фактически вставленных людей; остальные уже существовали.
+     */
+    public Flux<Person.PersonId> insertAbsent(List<Person> persons) {
+        return databaseClient.sql(INSERT_ABSENT)
+                .bind("names", persons.stream().map(person -> person.getId().getName()).toArray(String[]::new))
+                .bind("surnames", persons.stream().map(person -> person.getId().getSurname()).toArray(String[]::new))
+                .bind("ages", persons.stream().map(person -> person.getId().getAge()).toArray(Integer[]::new))
+                .bind("phoneNumbers", persons.stream().map(Person::getPhoneNumber).toArray(String[]::new))
+                .bind("cityIds", persons.stream().map(person -> person.getCityOfLiving().getId()).toArray(Long[]::new))
+                .map(row -> new Person.PersonId(
+                        row.get("name", String.class),
+                        row.get("surname", String.class),
+                        row.get("age", Integer.class)))
+                .all()
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * Обновляет номер телефона и город людей одним запросом в отдельной транзакции.
+     * Ключи внутри пакета должны быть уникальны.
+     *
+     * @return Количество обновленных строк для каждого элемента пакета, в том же порядке.
+     */
+    public Mono<int[]> updateByKeys(List<Person> persons) {
+        return countByOrdinal(databaseClient.sql(UPDATE_BY_KEYS)
+                .bind("names", persons.stream().map(person -> person.getId().getName()).toArray(String[]::new))
+                .bind("surnames", persons.stream().map(person -> person.getId().getSurname()).toArray(String[]::new))
+                .bind("ages", persons.stream().map(person -> person.getId().getAge()).toArray(Integer[]::new))
+                .bind("phoneNumbers", persons.stream().map(Person::getPhoneNumber).toArray(String[]::new))
+                .bind("cityIds", persons.stream().map(person -> person.getCityOfLiving().getId()).toArray(Long[]::new)),
+                persons.size());
+    }
+
+    /**
+     * Удаляет людей по ключам одним запросом в отдельной транзакции; имя и фамилия сравниваются
+     * без учета регистра. Ключи внутри пакета должны быть уникальны без учета регистра.
+     *
+     * @return Количество удаленных строк для каждого ключа пакета, в том же порядке.
+     */
+    public Mono<int[]> deleteByKeys(List<Person.PersonId> personIds) {
+        return countByOrdinal(databaseClient.sql(DELETE_BY_KEYS)
+                .bind("names", personIds.stream().map(Person.PersonId::getName).toArray(String[]::new))
+                .bind("surnames", personIds.stream().map(Person.PersonId::getSurname).toArray(String[]::new))
+                .bind("ages", personIds.stream().map(Person.PersonId::getAge).toArray(Integer[]::new)),
+                personIds.size());
+    }
+
+    public Mono<Long> updatePersonById(Person.PersonId personId, String phoneNumber, Long cityId) {
+        return databaseClient.sql("""
+                        UPDATE person SET phone_number = :phoneNumber, city_id = :cityId
+                        WHERE name = :name AND surname = :surname AND age = :age
+                        """)
+                .bind("phoneNumber", phoneNumber)
+                .bind("cityId", cityId)
+                .bind("name", personId.getName())
+                .bind("surname", personId.getSurname())
+                .bind("age", personId.getAge())
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Long> deletePerson(String name, String surname, int age) {
+        return databaseClient.sql("""
+                        DELETE FROM person
+                        WHERE LOWER(name) = LOWER(:name) AND LOWER(surname) = LOWER(:surname) AND age = :age
+                        """)
+                .bind("name", name)
+                .bind("surname", surname)
+                .bind("age", age)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private Flux<PersonDto> stream(DatabaseClient.GenericExecuteSpec spec) {
+        return spec.filter(statement -> statement.fetchSize(fetchSize))
+                .map(ReactivePersonRepository::toPersonDto)
+                .all()
+                .as(readOnlyTransactionalOperator::transactional);
+    }
+
+    private Mono<int[]> countByOrdinal(DatabaseClient.GenericExecuteSpec spec, int size) {
+        return spec.map(row -> row.get("ord", Long.class))
+                .all()
+                .collect(() -> new int[size], (counts, ord) -> counts[(int) (ord - 1)]++)
+                .as(transactionalOperator::transactional);
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindAfter(DatabaseClient.GenericExecuteSpec spec,
+                                                               Person.PersonId after) {
+        return spec.bind("afterName", after.getName())
+                .bind("afterSurname", after.getSurname())
+                .bind("afterAge", after.getAge());
+    }
+
+    private static PersonDto toPersonDto(Readable row) {
+        return new PersonDto(
+                row.get("name", String.class),
+                row.get("surname", String.class),
+                row.get("age", Integer.class),
+                row.get("phone_number", String.class),
+                row.get("city_name", String.class));
+    }
+}
@@ -0,0 +1,24 @@
+package com.karasov.hibernatehw.repository;
+
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.entity.Person;
+
+/**
+ * Запись выдачи поиска и ее место в порядке выдачи: совпадения по началу строки идут первыми
+ * в порядке индекса, затем похожие — по возрастанию расстояния.
+ *
+ * @param person   Найденный человек.
+ * @param distance Расстояние {@code <<->} до строки поиска; {@code null} для совпадения по началу строки.
+ */
+public record SearchHit(
+        PersonDto person,
+        Float distance
+) {
+
+    /**
+     * @return Ключ найденного человека.
+     */
+    public Person.PersonId key() {
+        return new Person.PersonId(person.name(), person.surname(), person.age());
+    }
+}
@@ -0,0 +1,114 @@
+package com.karasov.hibernatehw.service;
+
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonPageDto;
+import com.karasov.hibernatehw.entity.Person;
+import com.karasov.hibernatehw.handler.exception.InvalidCursorException;
+import com.karasov.hibernatehw.repository.SearchHit;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Токен продолжения для keyset-пагинации по ключу {@link Person.PersonId}.
+ * Токен непрозрачен для клиента: это Base64 (URL-safe) от имени, фамилии и возраста
+ * последней записи страницы, разделенных символом {@code \0}.
+ * Токен выдачи поиска дополнительно хранит расстояние до строки поиска (см. {@link SearchHit}).
+ */
+public final class PersonCursor {
+
+    private static final char SEPARATOR = '\0';
+
+    private PersonCursor() {
+    }
+
+    /**
+     * Кодирует ключ последней записи страницы в токен продолжения.
+     *
+     * @param personId Ключ последней записи страницы.
+     * @return Токен продолжения.
+     */
+    public static String encode(Person.PersonId personId) {
+        String raw = personId.getName() + SEPARATOR + personId.getSurname() + SEPARATOR + personId.getAge();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Декодирует токен продолжения в ключ, после которого начинается следующая страница.
+     *
+     * @param cursor Токен продолжения.
+     * @return Ключ последней записи предыдущей страницы.
+     * @throws InvalidCursorException если токен поврежден.
+     */
+    public static Person.PersonId decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int first = raw.indexOf(SEPARATOR);
+            int second = raw.indexOf(SEPARATOR, first + 1);
+            if (first < 0 || second < 0) {
+                throw new InvalidCursorException(String.format("Cursor '%s' is malformed.", cursor));
+            }
+            return new Person.PersonId(
+                    raw.substring(0, first),
+                    raw.substring(first + 1, second),
+                    Integer.parseInt(raw.substring(second + 1))
+            );
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException(String.format("Cursor '%s' is malformed.", cursor));
+        }
+    }
+
+    /**
+     * Кодирует последнюю запись страницы выдачи поиска в токен продолжения: к ключу записи добавляется
+     * расстояние до строки поиска, если запись найдена по сходству, а не по началу строки.
+     *
+     * @param hit Последняя запись страницы.
+     * @return Токен продолжения.
+     */
+    public static String encodeSearch(SearchHit hit) {
+        String raw = hit.person().name() + SEPARATOR + hit.person().surname() + SEPARATOR + hit.person().age()
+                + (hit.distance() == null ? "" : SEPARATOR + Float.toString(hit.distance()));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Декодирует токен продолжения выдачи поиска в запись, после которой начинается следующая страница.
+     *
+     * @param cursor Токен продолжения.
+     * @return Последняя запись предыдущей страницы: ключ и расстояние, без остальных полей.
+     * @throws InvalidCursorException если токен поврежден.
+     */
+    public static SearchHit decodeSearch(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(String.valueOf(SEPARATOR), -1);
+            if (parts.length != 3 && parts.length != 4) {
+                throw new InvalidCursorException(String.format("Cursor '%s' is malformed.", cursor));
+            }
+            Float distance = parts.length == 3 ? null : Float.valueOf(parts[3]);
+            if (distance != null && !(distance >= 0)) {
+                throw new InvalidCursorException(String.format("Cursor '%s' is malformed.", cursor));
+            }
+            return new SearchHit(new PersonDto(parts[0], parts[1], Integer.parseInt(parts[2]), null, null), distance);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException(String.format("Cursor '%s' is malformed.", cursor));
+        }
+    }
+
+    /**
+     * Собирает страницу из выборки, запрошенной с запасом в одну запись.
+     *
+     * @param persons Выборка из не более чем {@code limit + 1} записей.
+     * @param limit   Размер страницы.
+     * @return Страница и токен продолжения, если выборка не поместилась в страницу.
+     */
+    public static PersonPageDto toPage(List<PersonDto> persons, int limit) {
+        if (persons.size() <= limit) {
+            return new PersonPageDto(persons, null);
+        }
+        List<PersonDto> page = List.copyOf(persons.subList(0, limit));
+        PersonDto last = page.get(limit - 1);
+        return new PersonPageDto(page, encode(new Person.PersonId(last.name(), last.surname(), last.age())));
+    }
+}
@@ -1,23 +1,52 @@
 package com.karasov.hibernatehw.service;
 
+import com.karasov.hibernatehw.dto.BatchResultDto;
+import com.karasov.hibernatehw.dto.BulkPatchItemDto;
+import com.karasov.hibernatehw.dto.BulkResultDto;
 import com.karasov.hibernatehw.dto.PatchPersonDto;
 import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonKeyDto;
+import com.karasov.hibernatehw.dto.PersonPageDto;
+import com.karasov.hibernatehw.dto.PersonStatisticsDto;
+import com.karasov.hibernatehw.entity.Person;
 
 import java.net.URI;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface PersonService {
     List<PersonDto> getPersonsByCity(String city);
 
     List<PersonDto> getPersonByAgeLowerThanAsc(int age);
 
+    PersonPageDto getPersonsByCity(String city, String cursor, int size);
+
+    PersonPageDto getPersonByAgeLowerThanAsc(int age, String cursor, int size);
+
+    void streamPersonsByCity(String city, Consumer<PersonDto> consumer);
+
+    void streamPersonByAgeLowerThanAsc(int age, Consumer<PersonDto> consumer);
+
+    void exportPersons(Person.PersonId after, Consumer<PersonDto> consumer);
+
     PersonDto getPersonByNameAndSurname(String name, String surname);
 
     void deletePerson(String name, String surname, int age);
 
     URI createPerson(PersonDto personDto);
 
+    BatchResultDto importPersons(Iterator<PersonDto> persons);
+
     PersonDto getPerson(String name, String surname, int age);
 
     int patchPerson(String name, String surname, int age, PatchPersonDto patchPersonDto);
+
+    BulkResultDto patchPersons(List<BulkPatchItemDto> items);
+
+    BulkResultDto deletePersons(List<PersonKeyDto> keys);
+
+    PersonStatisticsDto getStatistics(String city, int bucketWidth);
+
+    PersonPageDto searchPersons(String query, String cursor, int size);
 }
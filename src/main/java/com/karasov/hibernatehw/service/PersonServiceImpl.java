@@ -1,37 +1,92 @@
 package com.karasov.hibernatehw.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.karasov.hibernatehw.cache.CityDirectory;
+import com.karasov.hibernatehw.cache.PersonChangedEvent;
+import com.karasov.hibernatehw.dto.BatchResultDto;
+import com.karasov.hibernatehw.dto.BatchRowResultDto;
+import com.karasov.hibernatehw.dto.BatchRowStatus;
+import com.karasov.hibernatehw.dto.BulkPatchItemDto;
+import com.karasov.hibernatehw.dto.BulkResultDto;
 import com.karasov.hibernatehw.dto.PatchPersonDto;
 import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonKeyDto;
+import com.karasov.hibernatehw.dto.PersonPageDto;
+import com.karasov.hibernatehw.dto.PersonStatisticsDto;
 import com.karasov.hibernatehw.entity.City;
 import com.karasov.hibernatehw.entity.Person;
 import com.karasov.hibernatehw.handler.exception.CityNotFoundException;
 import com.karasov.hibernatehw.handler.exception.CreatingPersonAlreadyExistsException;
 import com.karasov.hibernatehw.handler.exception.PersonNotFoundException;
 import com.karasov.hibernatehw.mapper.PersonMapper;
+import com.karasov.hibernatehw.readmodel.PersonReadModel;
 import com.karasov.hibernatehw.repository.CityRepository;
+import com.karasov.hibernatehw.repository.DeletedPerson;
+import com.karasov.hibernatehw.repository.PersonBatchRepository;
 import com.karasov.hibernatehw.repository.PersonRepository;
+import com.karasov.hibernatehw.repository.PersonScanRepository;
+import com.karasov.hibernatehw.repository.PersonSearchRepository;
+import com.karasov.hibernatehw.repository.SearchHit;
+import com.karasov.hibernatehw.statistics.PersonStatistics;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Реализация интерфейса {@link PersonService}.
  * Содержит бизнес-логику для управления сущностями {@link Person}.
  * Включает методы для получения, обновления, удаления и создания людей в системе.
- * Взаимодействует с {@link PersonRepository}, {@link CityRepository} и {@link PersonMapper}
- * для доступа к данным и их маппинга.
+ * Взаимодействует с {@link PersonRepository}, {@link PersonBatchRepository} и {@link PersonMapper}
+ * для доступа к данным и их маппинга. Названия городов разрешаются через {@link CityDirectory}
+ * без обращения к базе в обычном случае.
+ * Каждая запись публикует {@link PersonChangedEvent}, по которому меняются версии в ETag ответов на чтение.
+ * Чтение по ключу, по имени и фамилии, выборки по городу и по возрасту и поиск обслуживает {@link PersonReadModel},
+ * если она включена и загружена, иначе — запросы к базе.
  */
 @RequiredArgsConstructor
+@Timed(value = "persons.service", description = "PersonService method time")
 @Service
 public class PersonServiceImpl implements PersonService {
 
     private final PersonRepository personRepository;
+    private final PersonBatchRepository personBatchRepository;
+    private final PersonSearchRepository personSearchRepository;
+    private final PersonScanRepository personScanRepository;
     private final CityRepository cityRepository;
     private final PersonMapper personMapper;
+    private final CityDirectory cityDirectory;
+    private final PersonStatistics personStatistics;
+    private final PersonReadModel personReadModel;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${persons.page.max-size:1000}")
+    private int maxPageSize;
+
+    @Value("${persons.search.similarity-threshold:0.3}")
+    private double searchSimilarityThreshold;
+
+    @Value("${persons.batch.chunk-size:1000}")
+    private int batchChunkSize;
 
     /**
      * Получает {@link PersonDto} по ключу: имени, фамилии и возрасту.
@@ -44,8 +99,9 @@ public class PersonServiceImpl implements PersonService {
      */
     @Override
     public PersonDto getPerson(String name, String surname, int age) {
-        return personRepository.findPersonById(new Person.PersonId(name, surname, age))
-                .map(personMapper::personToDto)
+        return personReadModel.getPerson(name, surname, age)
+                .map(persons -> persons.stream().findFirst())
+                .orElseGet(() -> personRepository.findPersonDtoById(new Person.PersonId(name, surname, age)))
                 .orElseThrow(() -> new PersonNotFoundException(
                         String.format("Person with name '%s', surname '%s' and age %d not found.", name, surname, age)
                 ));
@@ -65,26 +121,33 @@ public class PersonServiceImpl implements PersonService {
     @Transactional
     @Override
     public int patchPerson(String name, String surname, int age, PatchPersonDto patchPersonDto) {
-
-        City city = cityRepository.findCityByName(patchPersonDto.cityName()).orElseThrow(() -> new CityNotFoundException(
-                String.format("City '%s' not found.", patchPersonDto.cityName())
-        ));
+        Long cityId = resolveCityId(patchPersonDto.cityName());
 
         Person.PersonId personId = new Person.PersonId(name, surname, age);
-        return personRepository.updatePersonById(personId, patchPersonDto.phoneNumber(), city.getId());
+        List<Long> previousCityIds = personBatchRepository.updateReturningCity(
+                personId, patchPersonDto.phoneNumber(), cityId);
+        if (!previousCityIds.isEmpty()) {
+            eventPublisher.publishEvent(PersonChangedEvent.of(previousCityIds.stream()
+                    .map(previousCityId -> new PersonChangedEvent.Change(
+                            personId, previousCityId, cityId, patchPersonDto.phoneNumber()))
+                    .toList()));
+        }
+        return previousCityIds.size();
     }
 
     /**
      * Получает список {@link PersonDto} всех людей, проживающих в указанном городе.
+     * Город разрешается в идентификатор до запроса, поэтому запрос читает одну секцию {@code person}.
      *
      * @param city Название города.
      * @return Список {@link PersonDto} людей, проживающих в данном городе.
      */
     @Override
     public List<PersonDto> getPersonsByCity(String city) {
-        return personRepository.getPersonsByCity(city).stream()
-                .map(personMapper::personToDto)
-                .toList();
+        return personReadModel.getPersonsByCity(city, null, Integer.MAX_VALUE)
+                .orElseGet(() -> cityDirectory.findIdByName(city)
+                        .map(personRepository::getPersonsByCityId)
+                        .orElseGet(List::of));
     }
 
     /**
@@ -95,9 +158,103 @@ public class PersonServiceImpl implements PersonService {
      */
     @Override
     public List<PersonDto> getPersonByAgeLowerThanAsc(int age) {
-        return personRepository.getPersonByAgeLowerThanAsc(age).stream()
-                .map(personMapper::personToDto)
-                .toList();
+        return personReadModel.getPersonByAgeLowerThanAsc(age, null, Integer.MAX_VALUE)
+                .orElseGet(() -> personRepository.getPersonByAgeLowerThanAsc(age));
+    }
+
+    /**
+     * Получает страницу {@link PersonDto} людей, проживающих в указанном городе.
+     * Использует keyset-пагинацию по ключу (имя, фамилия, возраст), поэтому стоимость запроса
+     * не зависит от номера страницы.
+     *
+     * @param city   Название города.
+     * @param cursor Токен продолжения из предыдущей страницы или {@code null} для первой страницы.
+     * @param size   Запрошенный размер страницы.
+     * @return Страница {@link PersonDto} и токен продолжения, если есть следующая страница.
+     */
+    @Override
+    public PersonPageDto getPersonsByCity(String city, String cursor, int size) {
+        int limit = pageSize(size);
+        Person.PersonId after = cursor == null ? null : PersonCursor.decode(cursor);
+        List<PersonDto> persons = personReadModel.getPersonsByCity(city, after, limit + 1)
+                .orElseGet(() -> cityDirectory.findIdByName(city)
+                        .map(cityId -> after == null
+                                ? personRepository.getPersonsByCityIdFirstPage(cityId, limit + 1)
+                                : personRepository.getPersonsByCityIdAfter(cityId, after, limit + 1))
+                        .orElseGet(List::of));
+        return PersonCursor.toPage(persons, limit);
+    }
+
+    /**
+     * Получает страницу {@link PersonDto} людей, чей возраст меньше указанного.
+     * Использует keyset-пагинацию по ключу (возраст, имя, фамилия).
+     *
+     * @param age    Возраст, по которому будет фильтроваться список.
+     * @param cursor Токен продолжения из предыдущей страницы или {@code null} для первой страницы.
+     * @param size   Запрошенный размер страницы.
+     * @return Страница {@link PersonDto} и токен продолжения, если есть следующая страница.
+     */
+    @Override
+    public PersonPageDto getPersonByAgeLowerThanAsc(int age, String cursor, int size) {
+        int limit = pageSize(size);
+        Person.PersonId after = cursor == null ? null : PersonCursor.decode(cursor);
+        List<PersonDto> persons = personReadModel.getPersonByAgeLowerThanAsc(age, after, limit + 1)
+                .orElseGet(() -> after == null
+                        ? personRepository.getPersonByAgeLowerThanAscFirstPage(age, limit + 1)
+                        : personRepository.getPersonByAgeLowerThanAscAfter(age, after, limit + 1));
+        return PersonCursor.toPage(persons, limit);
+    }
+
+    /**
+     * Потоково передает {@link PersonDto} всех людей, проживающих в указанном городе.
+     * Строки проецируются прямо в {@link PersonDto} и не попадают в контекст персистентности,
+     * поэтому потребление памяти не растет с размером выборки.
+     *
+     * Транзакция открывается только для чтения из базы: передача из {@link PersonReadModel}
+     * не держит соединение, пока клиент читает ответ.
+     *
+     * @param city     Название города.
+     * @param consumer Получатель {@link PersonDto}.
+     */
+    @Override
+    public void streamPersonsByCity(String city, Consumer<PersonDto> consumer) {
+        if (!personReadModel.streamPersonsByCity(city, consumer)) {
+            cityDirectory.findIdByName(city)
+                    .ifPresent(cityId -> personRepository.forEachPersonByCityId(cityId, consumer));
+        }
+    }
+
+    /**
+     * Потоково передает {@link PersonDto} людей, чей возраст меньше указанного, в порядке возрастания возраста.
+     *
+     * @param age      Возраст, по которому будет фильтроваться список.
+     * @param consumer Получатель {@link PersonDto}.
+     */
+    @Override
+    public void streamPersonByAgeLowerThanAsc(int age, Consumer<PersonDto> consumer) {
+        if (!personReadModel.streamPersonByAgeLowerThanAsc(age, consumer)) {
+            personRepository.forEachPersonByAgeLowerThanAsc(age, consumer);
+        }
+    }
+
+    /**
+     * Передает {@link PersonDto} всех людей в порядке ключа (имя, фамилия, возраст), начиная после ключа
+     * {@code after}. Таблица читается курсором без соединения с {@code city}: названия городов берутся
+     * из словаря, загруженного один раз, поэтому память не зависит от числа людей.
+     *
+     * @param after    Ключ последней уже полученной записи или {@code null}, чтобы начать сначала.
+     * @param consumer Получатель {@link PersonDto}.
+     */
+    @Override
+    public void exportPersons(Person.PersonId after, Consumer<PersonDto> consumer) {
+        Map<Long, String> cityNames = new HashMap<>();
+        cityRepository.findAll().forEach(city -> cityNames.put(city.getId(), city.getName()));
+        personScanRepository.scan(after, (name, surname, age, phoneNumber, cityId) -> {
+            // Город, добавленный после загрузки словаря.
+            String cityName = cityNames.computeIfAbsent(cityId,
+                    id -> cityRepository.findById(id).map(City::getName).orElse(null));
+            consumer.accept(new PersonDto(name, surname, age, phoneNumber, cityName));
+        });
     }
 
     /**
@@ -110,8 +267,11 @@ public class PersonServiceImpl implements PersonService {
      */
     @Override
     public PersonDto getPersonByNameAndSurname(String name, String surname) {
-        return personRepository.getPersonByNameAndSurname(name, surname)
-                .map(personMapper::personToDto)
+        // Несколько совпадений разных возрастов разбирает запрос к базе, как и без модели
+        return personReadModel.getPersonsByNameAndSurname(name, surname)
+                .filter(persons -> persons.size() <= 1)
+                .map(persons -> persons.stream().findFirst())
+                .orElseGet(() -> personRepository.getPersonByNameAndSurname(name, surname))
                 .orElseThrow(() -> new PersonNotFoundException(
                         String.format("Person with name '%s' and surname '%s' not found.", name, surname)
                 ));
@@ -127,46 +287,355 @@ public class PersonServiceImpl implements PersonService {
     @Transactional
     @Override
     public void deletePerson(String name, String surname, int age) {
-        personRepository.deletePerson(name, surname, age);
+        List<DeletedPerson> deleted = personBatchRepository.deleteReturningCity(new Person.PersonId(name, surname, age));
+        if (!deleted.isEmpty()) {
+            eventPublisher.publishEvent(PersonChangedEvent.of(deleted.stream()
+                    .map(PersonServiceImpl::deletion)
+                    .toList()));
+        }
     }
 
     /**
-     * Создает нового человека.
-     * Если человек с такими данными уже существует, выбрасывает исключение.
+     * Создает нового человека одним атомарным запросом: город разрешается подзапросом, а конфликт ключа
+     * не вставляет строку, поэтому между проверкой и вставкой нет окна для гонки.
      *
      * @param personDto Объект с данными нового человека.
      * @return URI для доступа к созданному человеку.
      * @throws CreatingPersonAlreadyExistsException Если человек с такими данными уже существует.
      * @throws CityNotFoundException                Если город не найден.
      */
-    @Transactional
     @Override
     public URI createPerson(PersonDto personDto) {
-        if (personRepository.existsById(
-                new Person.PersonId(
-                        personDto.name(),
-                        personDto.surname(),
-                        personDto.age()
-                ))) {
-            throw new CreatingPersonAlreadyExistsException(
+        switch (personBatchRepository.insertIfAbsent(personDto)) {
+            case ALREADY_EXISTS -> throw new CreatingPersonAlreadyExistsException(
                     String.format("Person with name '%s', surname '%s' and age %d already exists.",
                             personDto.name(),
                             personDto.surname(),
                             personDto.age()
                     ));
+            case CITY_NOT_FOUND -> throw new CityNotFoundException(
+                    String.format("City '%s' not found.", personDto.cityName()));
+            case INSERTED -> eventPublisher.publishEvent(PersonChangedEvent.of(List.of(new PersonChangedEvent.Change(
+                    new Person.PersonId(personDto.name(), personDto.surname(), personDto.age()),
+                    null,
+                    cityDirectory.findIdByName(personDto.cityName()).orElse(null),
+                    personDto.phoneNumber()))));
         }
 
-        City city = cityRepository.findCityByName(personDto.cityName()).orElseThrow(() -> new CityNotFoundException(
-                String.format("City '%s' not found.", personDto.cityName())
-        ));
-
-        Person person = personMapper.dtoToPerson(personDto, city);
-        personRepository.save(person);
-
-        Person.PersonId personId = person.getId();
         return ServletUriComponentsBuilder.fromCurrentRequest()
                 .path("/{name}/{surname}/{age}")
-                .buildAndExpand(personId.getName(), personId.getSurname(), personId.getAge())
+                .buildAndExpand(personDto.name(), personDto.surname(), personDto.age())
                 .toUri();
     }
+
+    /**
+     * Импортирует поток людей пакетами по {@code persons.batch.chunk-size} строк.
+     * Каждый пакет записывается одним запросом в собственной транзакции, поэтому уже записанные
+     * пакеты остаются в базе, даже если чтение входного потока прервется.
+     * Города разрешаются через {@link CityDirectory}, существующие люди не перезаписываются.
+     * Строка, которую не удалось разобрать, отмечается как {@link BatchRowStatus#INVALID}, и импорт
+     * продолжается со следующей; если разбор дальше невозможен (синтаксическая ошибка), импорт
+     * останавливается на этой строке и возвращает итоги уже записанных пакетов.
+     *
+     * @param persons Поток людей для импорта.
+     * @return Количество обработанных и вставленных строк и список строк, которые не были вставлены.
+     */
+    @Override
+    public BatchResultDto importPersons(Iterator<PersonDto> persons) {
+        List<BatchRowResultDto> failures = new ArrayList<>();
+        List<Person> chunk = new ArrayList<>(batchChunkSize);
+        List<Long> chunkRows = new ArrayList<>(batchChunkSize);
+        Set<Person.PersonId> chunkKeys = new HashSet<>();
+        long processed = 0;
+        long inserted = 0;
+
+        while (true) {
+            long row = processed + 1;
+            try {
+                if (!persons.hasNext()) {
+                    break;
+                }
+            } catch (RuntimeException e) {
+                processed = row;
+                failures.add(malformedInput(row, e));
+                break;
+            }
+            processed = row;
+
+            PersonDto personDto;
+            try {
+                personDto = persons.next();
+            } catch (RuntimeJsonMappingException e) {
+                String message = e.getCause() instanceof JsonMappingException cause
+                        ? cause.getOriginalMessage() : e.getMessage();
+                failures.add(new BatchRowResultDto(row, BatchRowStatus.INVALID, message));
+                continue;
+            } catch (RuntimeException e) {
+                failures.add(malformedInput(row, e));
+                break;
+            }
+
+            if (personDto.name() == null || personDto.surname() == null
+                    || personDto.phoneNumber() == null || personDto.cityName() == null) {
+                failures.add(new BatchRowResultDto(row, BatchRowStatus.INVALID,
+                        "Fields name, surname, phoneNumber and cityName are required."));
+                continue;
+            }
+
+            Optional<Long> cityId = cityDirectory.findIdByName(personDto.cityName());
+            if (cityId.isEmpty()) {
+                failures.add(new BatchRowResultDto(row, BatchRowStatus.CITY_NOT_FOUND,
+                        String.format("City '%s' not found.", personDto.cityName())));
+                continue;
+            }
+
+            Person person = personMapper.dtoToPerson(personDto, new City(cityId.get(), personDto.cityName()));
+            if (!chunkKeys.add(person.getId())) {
+                failures.add(alreadyExists(row, person.getId()));
+                continue;
+            }
+            chunk.add(person);
+            chunkRows.add(row);
+
+            if (chunk.size() == batchChunkSize) {
+                inserted += insertChunk(chunk, chunkRows, failures);
+                chunk.clear();
+                chunkRows.clear();
+                chunkKeys.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            inserted += insertChunk(chunk, chunkRows, failures);
+        }
+        return new BatchResultDto(processed, inserted, failures);
+    }
+
+    /**
+     * Строка импорта, после которой входной поток разобрать нельзя. Исключения, не вызванные ошибкой
+     * разбора, пробрасываются дальше.
+     */
+    private static BatchRowResultDto malformedInput(long row, RuntimeException e) {
+        if (!(e.getCause() instanceof JsonProcessingException cause)) {
+            throw e;
+        }
+        return new BatchRowResultDto(row, BatchRowStatus.INVALID,
+                "Malformed input, import stopped: " + cause.getOriginalMessage());
+    }
+
+    private int insertChunk(List<Person> chunk, List<Long> chunkRows, List<BatchRowResultDto> failures) {
+        Set<Person.PersonId> inserted = personBatchRepository.insertAbsent(chunk);
+        List<PersonChangedEvent.Change> changes = new ArrayList<>(inserted.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            Person person = chunk.get(i);
+            if (inserted.contains(person.getId())) {
+                changes.add(new PersonChangedEvent.Change(
+                        person.getId(), null, person.getCityOfLiving().getId(), person.getPhoneNumber()));
+            } else {
+                failures.add(alreadyExists(chunkRows.get(i), person.getId()));
+            }
+        }
+        publishIfChanged(changes);
+        return inserted.size();
+    }
+
+    /**
+     * Обновляет номер телефона и город у набора людей.
+     * Элементы записываются пакетами по {@code persons.batch.chunk-size}: каждый пакет — один запрос
+     * {@code UPDATE ... FROM unnest(...)} в собственной транзакции. Города разрешаются через {@link CityDirectory}.
+     * Если ключ повторяется внутри пакета, применяется последнее изменение, а количество обновленных строк
+     * сообщается для каждого из повторов — как при последовательных одиночных вызовах.
+     *
+     * @param items Пары из ключа человека и новых данных.
+     * @return Количество обновленных строк для каждого элемента в порядке запроса и список отклоненных элементов.
+     */
+    @Override
+    public BulkResultDto patchPersons(List<BulkPatchItemDto> items) {
+        int[] counts = new int[items.size()];
+        List<BatchRowResultDto> failures = new ArrayList<>();
+        Map<Person.PersonId, Person> chunk = new LinkedHashMap<>();
+        Map<Person.PersonId, List<Integer>> chunkItems = new HashMap<>();
+
+        for (int i = 0; i < items.size(); i++) {
+            BulkPatchItemDto item = items.get(i);
+            if (!isValidKey(item.id()) || item.patch() == null
+                    || item.patch().phoneNumber() == null || item.patch().cityName() == null) {
+                failures.add(new BatchRowResultDto(i + 1, BatchRowStatus.INVALID,
+                        "Fields id.name, id.surname, id.age, patch.phoneNumber and patch.cityName are required."));
+                continue;
+            }
+
+            PatchPersonDto patch = item.patch();
+            Optional<Long> cityId = cityDirectory.findIdByName(patch.cityName());
+            if (cityId.isEmpty()) {
+                failures.add(new BatchRowResultDto(i + 1, BatchRowStatus.CITY_NOT_FOUND,
+                        String.format("City '%s' not found.", patch.cityName())));
+                continue;
+            }
+
+            Person.PersonId personId = toPersonId(item.id());
+            chunk.put(personId, new Person(personId, patch.phoneNumber(), new City(cityId.get(), patch.cityName())));
+            chunkItems.computeIfAbsent(personId, key -> new ArrayList<>()).add(i);
+
+            if (chunk.size() == batchChunkSize) {
+                updateChunk(chunk, chunkItems, counts);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            updateChunk(chunk, chunkItems, counts);
+        }
+        return bulkResult(counts, failures);
+    }
+
+    /**
+     * Удаляет набор людей по ключам; имя и фамилия сравниваются без учета регистра, как в
+     * {@link #deletePerson(String, String, int)}.
+     * Ключи удаляются пакетами по {@code persons.batch.chunk-size}: каждый пакет — один запрос
+     * {@code DELETE ... USING unnest(...)} в собственной транзакции. Повтор ключа внутри пакета получает 0,
+     * так как строка уже удалена первым вхождением.
+     *
+     * @param keys Ключи людей.
+     * @return Количество удаленных строк для каждого ключа в порядке запроса и список отклоненных ключей.
+     */
+    @Override
+    public BulkResultDto deletePersons(List<PersonKeyDto> keys) {
+        int[] counts = new int[keys.size()];
+        List<BatchRowResultDto> failures = new ArrayList<>();
+        List<Person.PersonId> chunk = new ArrayList<>(Math.min(keys.size(), batchChunkSize));
+        List<Integer> chunkItems = new ArrayList<>(Math.min(keys.size(), batchChunkSize));
+        Set<Person.PersonId> chunkKeys = new HashSet<>();
+
+        for (int i = 0; i < keys.size(); i++) {
+            PersonKeyDto key = keys.get(i);
+            if (!isValidKey(key)) {
+                failures.add(new BatchRowResultDto(i + 1, BatchRowStatus.INVALID,
+                        "Fields name, surname and age are required."));
+                continue;
+            }
+            if (!chunkKeys.add(new Person.PersonId(key.name().toLowerCase(Locale.ROOT),
+                    key.surname().toLowerCase(Locale.ROOT), key.age()))) {
+                continue;
+            }
+            chunk.add(toPersonId(key));
+            chunkItems.add(i);
+
+            if (chunk.size() == batchChunkSize) {
+                deleteChunk(chunk, chunkItems, counts);
+                chunkKeys.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            deleteChunk(chunk, chunkItems, counts);
+        }
+        return bulkResult(counts, failures);
+    }
+
+    private void updateChunk(Map<Person.PersonId, Person> chunk,
+                             Map<Person.PersonId, List<Integer>> chunkItems,
+                             int[] counts) {
+        List<Person> persons = List.copyOf(chunk.values());
+        Long[] previousCityIds = personBatchRepository.updateByKeys(persons);
+        List<PersonChangedEvent.Change> changes = new ArrayList<>();
+        for (int i = 0; i < persons.size(); i++) {
+            Person person = persons.get(i);
+            int count = previousCityIds[i] == null ? 0 : 1;
+            chunkItems.get(person.getId()).forEach(item -> counts[item] = count);
+            if (count > 0) {
+                changes.add(new PersonChangedEvent.Change(person.getId(), previousCityIds[i],
+                        person.getCityOfLiving().getId(), person.getPhoneNumber()));
+            }
+        }
+        publishIfChanged(changes);
+        chunk.clear();
+        chunkItems.clear();
+    }
+
+    private void deleteChunk(List<Person.PersonId> chunk, List<Integer> chunkItems, int[] counts) {
+        List<List<DeletedPerson>> deleted = personBatchRepository.deleteByKeys(chunk);
+        List<PersonChangedEvent.Change> changes = new ArrayList<>();
+        for (int i = 0; i < deleted.size(); i++) {
+            counts[chunkItems.get(i)] = deleted.get(i).size();
+            deleted.get(i).forEach(person -> changes.add(deletion(person)));
+        }
+        publishIfChanged(changes);
+        chunk.clear();
+        chunkItems.clear();
+    }
+
+    /**
+     * Возвращает статистику людей из агрегата {@link PersonStatistics} без обращения к таблице {@code person}.
+     *
+     * @param city        Название города или {@code null} для всех городов.
+     * @param bucketWidth Ширина интервала гистограммы возраста в годах.
+     * @return Количество людей по городам, гистограмма и перцентили возраста.
+     * @throws CityNotFoundException Если город не найден.
+     */
+    @Override
+    public PersonStatisticsDto getStatistics(String city, int bucketWidth) {
+        Long cityId = city == null ? null : resolveCityId(city);
+        return personStatistics.snapshot(cityId, Math.max(1, Math.min(bucketWidth, PersonStatistics.MAX_AGE + 1)));
+    }
+
+    /**
+     * Ищет людей по началу или похожему написанию имени и фамилии: сначала совпадения по началу строки,
+     * затем похожие в порядке убывания сходства. Страницы продолжаются по последней записи, а не по смещению.
+     *
+     * @param query  Строка поиска; пустая строка ничего не находит.
+     * @param cursor Токен продолжения из предыдущей страницы или {@code null} для первой страницы.
+     * @param size   Запрошенный размер страницы.
+     * @return Страница {@link PersonDto} и токен продолжения, если есть следующая страница.
+     */
+    @Override
+    public PersonPageDto searchPersons(String query, String cursor, int size) {
+        String normalized = query == null ? "" : query.strip().toLowerCase(Locale.ROOT);
+        SearchHit after = cursor == null ? null : PersonCursor.decodeSearch(cursor);
+        if (normalized.isEmpty()) {
+            return new PersonPageDto(List.of(), null);
+        }
+        int limit = pageSize(size);
+        int fetch = limit + 1;
+        List<SearchHit> hits = personReadModel.search(normalized, searchSimilarityThreshold, after, fetch)
+                .orElseGet(() -> personSearchRepository.search(normalized, searchSimilarityThreshold, after, fetch));
+        List<PersonDto> persons = hits.stream().limit(limit).map(SearchHit::person).toList();
+        String nextCursor = hits.size() > limit ? PersonCursor.encodeSearch(hits.get(limit - 1)) : null;
+        return new PersonPageDto(persons, nextCursor);
+    }
+
+    private void publishIfChanged(List<PersonChangedEvent.Change> changes) {
+        if (!changes.isEmpty()) {
+            eventPublisher.publishEvent(PersonChangedEvent.of(changes));
+        }
+    }
+
+    private static PersonChangedEvent.Change deletion(DeletedPerson deleted) {
+        return new PersonChangedEvent.Change(deleted.personId(), deleted.cityId(), null, null);
+    }
+
+    private static boolean isValidKey(PersonKeyDto key) {
+        return key != null && key.name() != null && key.surname() != null && key.age() != null;
+    }
+
+    private static Person.PersonId toPersonId(PersonKeyDto key) {
+        return new Person.PersonId(key.name(), key.surname(), key.age());
+    }
+
+    private static BulkResultDto bulkResult(int[] counts, List<BatchRowResultDto> failures) {
+        return new BulkResultDto(counts.length, Arrays.stream(counts).asLongStream().sum(),
+                Arrays.stream(counts).boxed().toList(), failures);
+    }
+
+    private static BatchRowResultDto alreadyExists(long row, Person.PersonId personId) {
+        return new BatchRowResultDto(row, BatchRowStatus.CONFLICT,
+                String.format("Person with name '%s', surname '%s' and age %d already exists.",
+                        personId.getName(), personId.getSurname(), personId.getAge()));
+    }
+
+    private Long resolveCityId(String cityName) {
+        return cityDirectory.findIdByName(cityName).orElseThrow(() -> new CityNotFoundException(
+                String.format("City '%s' not found.", cityName)
+        ));
+    }
+
+    private int pageSize(int size) {
+        return Math.max(1, Math.min(size, maxPageSize));
+    }
 }
@@ -0,0 +1,40 @@
+package com.karasov.hibernatehw.service;
+
+import com.karasov.hibernatehw.dto.BatchResultDto;
+import com.karasov.hibernatehw.dto.BulkPatchItemDto;
+import com.karasov.hibernatehw.dto.BulkResultDto;
+import com.karasov.hibernatehw.dto.PatchPersonDto;
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonKeyDto;
+import com.karasov.hibernatehw.dto.PersonPageDto;
+import com.karasov.hibernatehw.entity.Person;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface ReactivePersonService {
+    Flux<PersonDto> getPersonsByCity(String city);
+
+    Flux<PersonDto> getPersonByAgeLowerThanAsc(int age);
+
+    Mono<PersonPageDto> getPersonsByCity(String city, String cursor, int size);
+
+    Mono<PersonPageDto> getPersonByAgeLowerThanAsc(int age, String cursor, int size);
+
+    Mono<PersonDto> getPersonByNameAndSurname(String name, String surname);
+
+    Mono<Void> deletePerson(String name, String surname, int age);
+
+    Mono<Person.PersonId> createPerson(PersonDto personDto);
+
+    Mono<BatchResultDto> importPersons(Flux<PersonDto> persons);
+
+    Mono<PersonDto> getPerson(String name, String surname, int age);
+
+    Mono<Integer> patchPerson(String name, String surname, int age, PatchPersonDto patchPersonDto);
+
+    Mono<BulkResultDto> patchPersons(List<BulkPatchItemDto> items);
+
+    Mono<BulkResultDto> deletePersons(List<PersonKeyDto> keys);
+}
@@ -0,0 +1,412 @@
+package com.karasov.hibernatehw.service;
+
+import com.karasov.hibernatehw.dto.BatchResultDto;
+import com.karasov.hibernatehw.dto.BatchRowResultDto;
+import com.karasov.hibernatehw.dto.BatchRowStatus;
+import com.karasov.hibernatehw.dto.BulkPatchItemDto;
+import com.karasov.hibernatehw.dto.BulkResultDto;
+import com.karasov.hibernatehw.dto.PatchPersonDto;
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonKeyDto;
+import com.karasov.hibernatehw.dto.PersonPageDto;
+import com.karasov.hibernatehw.entity.City;
+import com.karasov.hibernatehw.entity.Person;
+import com.karasov.hibernatehw.handler.exception.CityNotFoundException;
+import com.karasov.hibernatehw.handler.exception.CreatingPersonAlreadyExistsException;
+import com.karasov.hibernatehw.handler.exception.PersonNotFoundException;
+import com.karasov.hibernatehw.mapper.PersonMapper;
+import com.karasov.hibernatehw.repository.ReactivePersonRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Неблокирующая реализация {@link ReactivePersonService} для профиля {@code reactive}.
+ * Повторяет поведение {@link PersonServiceImpl} — те же выборки, сообщения об ошибках и исключения, —
+ * но работает через {@link ReactivePersonRepository} и не блокирует поток ни на одном вызове.
+ * Списки отдаются как {@link Flux} с противодавлением до курсора базы.
+ */
+@RequiredArgsConstructor
+@Service
+@Profile("reactive")
+public class ReactivePersonServiceImpl implements ReactivePersonService {
+
+    private final ReactivePersonRepository personRepository;
+    private final PersonMapper personMapper;
+
+    @Value("${persons.page.max-size:1000}")
+    private int maxPageSize;
+
+    @Value("${persons.batch.chunk-size:1000}")
+    private int batchChunkSize;
+
+    /**
+     * Получает {@link PersonDto} по ключу: имени, фамилии и возрасту.
+     *
+     * @return {@link PersonDto} или ошибка {@link PersonNotFoundException}, если человек не найден.
+     */
+    @Override
+    public Mono<PersonDto> getPerson(String name, String surname, int age) {
+        return personRepository.findPersonDtoById(new Person.PersonId(name, surname, age))
+                .switchIfEmpty(Mono.error(() -> new PersonNotFoundException(
+                        String.format("Person with name '%s', surname '%s' and age %d not found.", name, surname, age)
+                )));
+    }
+
+    /**
+     * Обновляет номер телефона и город человека.
+     *
+     * @return Количество обновленных записей или ошибка {@link CityNotFoundException}, если город не найден.
+     */
+    @Override
+    public Mono<Integer> patchPerson(String name, String surname, int age, PatchPersonDto patchPersonDto) {
+        Person.PersonId personId = new Person.PersonId(name, surname, age);
+        return resolveCityId(patchPersonDto.cityName())
+                .flatMap(cityId -> personRepository.updatePersonById(personId, patchPersonDto.phoneNumber(), cityId))
+                .map(Long::intValue);
+    }
+
+    /**
+     * Потоково отдает людей, проживающих в указанном городе.
+     */
+    @Override
+    public Flux<PersonDto> getPersonsByCity(String city) {
+        return personRepository.streamPersonsByCity(city);
+    }
+
+    /**
+     * Потоково отдает людей, чей возраст меньше указанного, в порядке возрастания возраста.
+     */
+    @Override
+    public Flux<PersonDto> getPersonByAgeLowerThanAsc(int age) {
+        return personRepository.streamPersonByAgeLowerThanAsc(age);
+    }
+
+    /**
+     * Получает страницу людей, проживающих в указанном городе, с keyset-пагинацией по ключу
+     * (имя, фамилия, возраст).
+     */
+    @Override
+    public Mono<PersonPageDto> getPersonsByCity(String city, String cursor, int size) {
+        int limit = pageSize(size);
+        return Mono.defer(() -> personRepository
+                        .getPersonsByCityPage(city, cursor == null ? null : PersonCursor.decode(cursor), limit + 1)
+                        .collectList())
+                .map(persons -> PersonCursor.toPage(persons, limit));
+    }
+
+    /**
+     * Получает страницу людей, чей возраст меньше указанного, с keyset-пагинацией по ключу
+     * (возраст, имя, фамилия).
+     */
+    @Override
+    public Mono<PersonPageDto> getPersonByAgeLowerThanAsc(int age, String cursor, int size) {
+        int limit = pageSize(size);
+        return Mono.defer(() -> personRepository
+                        .getPersonByAgeLowerThanAscPage(age, cursor == null ? null : PersonCursor.decode(cursor), limit + 1)
+                        .collectList())
+                .map(persons -> PersonCursor.toPage(persons, limit));
+    }
+
+    /**
+     * Получает {@link PersonDto} по имени и фамилии без учета регистра.
+     *
+     * @return {@link PersonDto} или ошибка {@link PersonNotFoundException}, если человек не найден.
+     */
+    @Override
+    public Mono<PersonDto> getPersonByNameAndSurname(String name, String surname) {
+        return personRepository.getPersonByNameAndSurname(name, surname)
+                .switchIfEmpty(Mono.error(() -> new PersonNotFoundException(
+                        String.format("Person with name '%s' and surname '%s' not found.", name, surname)
+                )));
+    }
+
+    /**
+     * Удаляет человека по ключу: имени, фамилии и возрасту.
+     */
+    @Override
+    public Mono<Void> deletePerson(String name, String surname, int age) {
+        return personRepository.deletePerson(name, surname, age).then();
+    }
+
+    /**
+     * Создает нового человека одним атомарным запросом: город разрешается подзапросом, конфликт ключа
+     * не вставляет строку, а причина отказа возвращается тем же запросом.
+     *
+     * @return Ключ созданного человека или ошибка {@link CreatingPersonAlreadyExistsException}
+     * либо {@link CityNotFoundException}.
+     */
+    @Override
+    public Mono<Person.PersonId> createPerson(PersonDto personDto) {
+        return personRepository.insertIfAbsent(personDto).handle((outcome, sink) -> {
+            switch (outcome) {
+                case INSERTED -> sink.next(new Person.PersonId(personDto.name(), personDto.surname(), personDto.age()));
+                case ALREADY_EXISTS -> sink.error(new CreatingPersonAlreadyExistsException(
+                        String.format("Person with name '%s', surname '%s' and age %d already exists.",
+                                personDto.name(), personDto.surname(), personDto.age())));
+                case CITY_NOT_FOUND -> sink.error(cityNotFound(personDto.cityName()));
+            }
+        });
+    }
+
+    /**
+     * Импортирует поток людей пакетами по {@code persons.batch.chunk-size} строк.
+     * Пакеты обрабатываются строго по очереди: следующий пакет читается из входного потока только после
+     * записи предыдущего, поэтому скорость чтения тела запроса ограничена скоростью записи в базу.
+     * Каждый пакет разрешает города одним запросом и записывает людей другим, в собственной транзакции.
+     *
+     * @param persons Поток людей для импорта.
+     * @return Количество обработанных и вставленных строк и список строк, которые не были вставлены.
+     */
+    @Override
+    public Mono<BatchResultDto> importPersons(Flux<PersonDto> persons) {
+        return Mono.defer(() -> {
+            ImportProgress progress = new ImportProgress();
+            return persons.index()
+                    .buffer(batchChunkSize)
+                    .concatMap(chunk -> importChunk(chunk, progress), 1)
+                    .then(Mono.fromSupplier(progress::toResult));
+        });
+    }
+
+    private Mono<Void> importChunk(List<Tuple2<Long, PersonDto>> chunk, ImportProgress progress) {
+        List<Tuple2<Long, PersonDto>> valid = new ArrayList<>(chunk.size());
+        Set<String> cityNames = new HashSet<>();
+        for (Tuple2<Long, PersonDto> row : chunk) {
+            progress.processed++;
+            PersonDto personDto = row.getT2();
+            if (personDto.name() == null || personDto.surname() == null
+                    || personDto.phoneNumber() == null || personDto.cityName() == null) {
+                progress.failures.add(new BatchRowResultDto(row.getT1() + 1, BatchRowStatus.INVALID,
+                        "Fields name, surname, phoneNumber and cityName are required."));
+                continue;
+            }
+            valid.add(row);
+            cityNames.add(personDto.cityName().toLowerCase(Locale.ROOT));
+        }
+        if (valid.isEmpty()) {
+            return Mono.empty();
+        }
+
+        return personRepository.findCityIdsByLowerCaseNames(cityNames).flatMap(cityIds -> {
+            List<Person> batch = new ArrayList<>(valid.size());
+            List<Long> batchRows = new ArrayList<>(valid.size());
+            Set<Person.PersonId> batchKeys = new HashSet<>();
+            for (Tuple2<Long, PersonDto> row : valid) {
+                long rowNumber = row.getT1() + 1;
+                PersonDto personDto = row.getT2();
+                Long cityId = cityIds.get(personDto.cityName().toLowerCase(Locale.ROOT));
+                if (cityId == null) {
+                    progress.failures.add(new BatchRowResultDto(rowNumber, BatchRowStatus.CITY_NOT_FOUND,
+                            String.format("City '%s' not found.", personDto.cityName())));
+                    continue;
+                }
+                Person person = personMapper.dtoToPerson(personDto, new City(cityId, personDto.cityName()));
+                if (!batchKeys.add(person.getId())) {
+                    progress.failures.add(alreadyExists(rowNumber, person.getId()));
+                    continue;
+                }
+                batch.add(person);
+                batchRows.add(rowNumber);
+            }
+            if (batch.isEmpty()) {
+                return Mono.empty();
+            }
+
+            return personRepository.insertAbsent(batch).collect(HashSet<Person.PersonId>::new, Set::add)
+                    .doOnNext(inserted -> {
+                        for (int i = 0; i < batch.size(); i++) {
+                            Person.PersonId personId = batch.get(i).getId();
+                            if (!inserted.contains(personId)) {
+                                progress.failures.add(alreadyExists(batchRows.get(i), personId));
+                            }
+                        }
+                        progress.inserted += inserted.size();
+                    })
+                    .then();
+        });
+    }
+
+    /**
+     * Обновляет номер телефона и город у набора людей пакетами по {@code persons.batch.chunk-size}:
+     * на пакет один запрос городов и один {@code UPDATE ... FROM unnest(...)} в собственной транзакции.
+     * Повторы ключа внутри пакета обрабатываются так же, как в {@link PersonServiceImpl#patchPersons}.
+     *
+     * @return Количество обновленных строк для каждого элемента в порядке запроса и список отклоненных элементов.
+     */
+    @Override
+    public Mono<BulkResultDto> patchPersons(List<BulkPatchItemDto> items) {
+        return Mono.defer(() -> {
+            int[] counts = new int[items.size()];
+            List<BatchRowResultDto> failures = new ArrayList<>();
+            return Flux.range(0, items.size())
+                    .buffer(batchChunkSize)
+                    .concatMap(chunk -> patchChunk(items, chunk, counts, failures), 1)
+                    .then(Mono.fromSupplier(() -> bulkResult(counts, failures)));
+        });
+    }
+
+    /**
+     * Удаляет набор людей по ключам пакетами по {@code persons.batch.chunk-size}:
+     * на пакет один {@code DELETE ... USING unnest(...)} в собственной транзакции.
+     * Повторы ключа внутри пакета получают 0, как в {@link PersonServiceImpl#deletePersons}.
+     *
+     * @return Количество удаленных строк для каждого ключа в порядке запроса и список отклоненных ключей.
+     */
+    @Override
+    public Mono<BulkResultDto> deletePersons(List<PersonKeyDto> keys) {
+        return Mono.defer(() -> {
+            int[] counts = new int[keys.size()];
+            List<BatchRowResultDto> failures = new ArrayList<>();
+            return Flux.range(0, keys.size())
+                    .buffer(batchChunkSize)
+                    .concatMap(chunk -> deleteChunk(keys, chunk, counts, failures), 1)
+                    .then(Mono.fromSupplier(() -> bulkResult(counts, failures)));
+        });
+    }
+
+    private Mono<Void> patchChunk(List<BulkPatchItemDto> items, List<Integer> indexes,
+                                  int[] counts, List<BatchRowResultDto> failures) {
+        Set<String> cityNames = new HashSet<>();
+        for (int i : indexes) {
+            if (isValid(items.get(i))) {
+                cityNames.add(items.get(i).patch().cityName().toLowerCase(Locale.ROOT));
+            }
+        }
+        Mono<Map<String, Long>> cities = cityNames.isEmpty()
+                ? Mono.just(Map.of())
+                : personRepository.findCityIdsByLowerCaseNames(cityNames);
+
+        return cities.flatMap(cityIds -> {
+            Map<Person.PersonId, Person> chunk = new LinkedHashMap<>();
+            Map<Person.PersonId, List<Integer>> chunkItems = new HashMap<>();
+            for (int i : indexes) {
+                BulkPatchItemDto item = items.get(i);
+                if (!isValid(item)) {
+                    failures.add(new BatchRowResultDto(i + 1, BatchRowStatus.INVALID,
+                            "Fields id.name, id.surname, id.age, patch.phoneNumber and patch.cityName are required."));
+                    continue;
+                }
+                PatchPersonDto patch = item.patch();
+                Long cityId = cityIds.get(patch.cityName().toLowerCase(Locale.ROOT));
+                if (cityId == null) {
+                    failures.add(new BatchRowResultDto(i + 1, BatchRowStatus.CITY_NOT_FOUND,
+                            String.format("City '%s' not found.", patch.cityName())));
+                    continue;
+                }
+                Person.PersonId personId = toPersonId(item.id());
+                chunk.put(personId, new Person(personId, patch.phoneNumber(), new City(cityId, patch.cityName())));
+                chunkItems.computeIfAbsent(personId, key -> new ArrayList<>()).add(i);
+            }
+            if (chunk.isEmpty()) {
+                return Mono.empty();
+            }
+
+            return personRepository.updateByKeys(List.copyOf(chunk.values()))
+                    .doOnNext(updated -> {
+                        int i = 0;
+                        for (Person.PersonId personId : chunk.keySet()) {
+                            int count = updated[i++];
+                            chunkItems.get(personId).forEach(item -> counts[item] = count);
+                        }
+                    })
+                    .then();
+        });
+    }
+
+    private Mono<Void> deleteChunk(List<PersonKeyDto> keys, List<Integer> indexes,
+                                   int[] counts, List<BatchRowResultDto> failures) {
+        List<Person.PersonId> chunk = new ArrayList<>(indexes.size());
+        List<Integer> chunkItems = new ArrayList<>(indexes.size());
+        Set<Person.PersonId> chunkKeys = new HashSet<>();
+        for (int i : indexes) {
+            PersonKeyDto key = keys.get(i);
+            if (!isValidKey(key)) {
+                failures.add(new BatchRowResultDto(i + 1, BatchRowStatus.INVALID,
+                        "Fields name, surname and age are required."));
+                continue;
+            }
+            if (chunkKeys.add(new Person.PersonId(key.name().toLowerCase(Locale.ROOT),
+                    key.surname().toLowerCase(Locale.ROOT), key.age()))) {
+                chunk.add(toPersonId(key));
+                chunkItems.add(i);
+            }
+        }
+        if (chunk.isEmpty()) {
+            return Mono.empty();
+        }
+
+        return personRepository.deleteByKeys(chunk)
+                .doOnNext(deleted -> {
+                    for (int i = 0; i < deleted.length; i++) {
+                        counts[chunkItems.get(i)] = deleted[i];
+                    }
+                })
+                .then();
+    }
+
+    private static boolean isValid(BulkPatchItemDto item) {
+        return isValidKey(item.id()) && item.patch() != null
+                && item.patch().phoneNumber() != null && item.patch().cityName() != null;
+    }
+
+    private static boolean isValidKey(PersonKeyDto key) {
+        return key != null && key.name() != null && key.surname() != null && key.age() != null;
+    }
+
+    private static Person.PersonId toPersonId(PersonKeyDto key) {
+        return new Person.PersonId(key.name(), key.surname(), key.age());
+    }
+
+    private static BulkResultDto bulkResult(int[] counts, List<BatchRowResultDto> failures) {
+        return new BulkResultDto(counts.length, Arrays.stream(counts).asLongStream().sum(),
+                Arrays.stream(counts).boxed().toList(), failures);
+    }
+
+    private static BatchRowResultDto alreadyExists(long row, Person.PersonId personId) {
+        return new BatchRowResultDto(row, BatchRowStatus.CONFLICT,
+                String.format("Person with name '%s', surname '%s' and age %d already exists.",
+                        personId.getName(), personId.getSurname(), personId.getAge()));
+    }
+
+    private Mono<Long> resolveCityId(String cityName) {
+        return personRepository.findCityIdByName(cityName)
+                .switchIfEmpty(Mono.error(() -> cityNotFound(cityName)));
+    }
+
+    private static CityNotFoundException cityNotFound(String cityName) {
+        return new CityNotFoundException(String.format("City '%s' not found.", cityName));
+    }
+
+    private int pageSize(int size) {
+        return Math.max(1, Math.min(size, maxPageSize));
+    }
+
+    /**
+     * Итоги импорта; изменяется только из последовательной обработки пакетов одного запроса.
+     */
+    private static final class ImportProgress {
+
+        private final List<BatchRowResultDto> failures = new ArrayList<>();
+        private long processed;
+        private long inserted;
+
+        private BatchResultDto toResult() {
+            return new BatchResultDto(processed, inserted, failures);
+        }
+    }
+}
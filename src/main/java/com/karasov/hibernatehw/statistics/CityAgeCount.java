@@ -0,0 +1,17 @@
+package com.karasov.hibernatehw.statistics;
+
+/**
+ * Количество людей одного возраста в одном городе: строка пересчета {@link PersonStatistics}.
+ *
+ * @param cityId   Идентификатор города.
+ * @param cityName Название города.
+ * @param age      Возраст.
+ * @param count    Количество людей.
+ */
+public record CityAgeCount(
+        Long cityId,
+        String cityName,
+        int age,
+        long count
+) {
+}
@@ -0,0 +1,228 @@
+package com.karasov.hibernatehw.statistics;
+
+import com.karasov.hibernatehw.cache.PersonChangedEvent;
+import com.karasov.hibernatehw.dto.AgeBucketDto;
+import com.karasov.hibernatehw.dto.CityCountDto;
+import com.karasov.hibernatehw.dto.PersonStatisticsDto;
+import com.karasov.hibernatehw.entity.City;
+import com.karasov.hibernatehw.repository.CityRepository;
+import com.karasov.hibernatehw.repository.PersonRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Статистика людей в памяти процесса: количество людей по городам и по годам возраста.
+ * <p>
+ * Агрегат обновляется инкрементально по {@link PersonChangedEvent} после фиксации записи, поэтому чтение
+ * стоит O(городов), а не O(людей). Возраст хранится с точностью до года в диапазоне
+ * 0..{@value #MAX_AGE}; возраст вне диапазона учитывается в ближайшей границе.
+ * <p>
+ * Агрегат полностью пересчитывается одним запросом {@code GROUP BY} при старте и каждые
+ * {@code persons.statistics.reconcile-interval}. Пересчет исправляет расхождения от записей мимо приложения,
+ * записей других экземпляров и записей, зафиксированных во время предыдущего пересчета: такие записи могут
+ * быть учтены дважды или не учтены до следующего пересчета. Величина исправления публикуется счетчиком
+ * {@code persons.statistics.drift}.
+ */
+@Slf4j
+@Component
+public class PersonStatistics {
+
+    public static final int MAX_AGE = 150;
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+    private final PersonRepository personRepository;
+    private final CityRepository cityRepository;
+    private final Counter drift;
+
+    private boolean loadedOnce;
+
+    private volatile Map<Long, CityAges> cities = new ConcurrentHashMap<>();
+
+    public PersonStatistics(PersonRepository personRepository,
+                            CityRepository cityRepository,
+                            MeterRegistry meterRegistry) {
+        this.personRepository = personRepository;
+        this.cityRepository = cityRepository;
+        this.drift = Counter.builder("persons.statistics.drift")
+                .description("Person counts corrected by statistics reconciliation")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Собирает статистику по всем городам или по одному городу.
+     *
+     * @param cityId      Идентификатор города или {@code null} для всех городов.
+     * @param bucketWidth Ширина интервала гистограммы возраста в годах.
+     * @return Количество людей, распределение по городам, гистограмма и перцентили возраста.
+     */
+    public PersonStatisticsDto snapshot(Long cityId, int bucketWidth) {
+        long[] ages = new long[MAX_AGE + 1];
+        List<CityCountDto> counts = new ArrayList<>();
+        for (Map.Entry<Long, CityAges> entry : cities.entrySet()) {
+            if (cityId != null && !cityId.equals(entry.getKey())) {
+                continue;
+            }
+            long count = entry.getValue().addTo(ages);
+            if (count > 0) {
+                counts.add(new CityCountDto(entry.getValue().name(entry.getKey()), count));
+            }
+        }
+        counts.sort(Comparator.comparingLong(CityCountDto::count).reversed()
+                .thenComparing(CityCountDto::city, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        long total = counts.stream().mapToLong(CityCountDto::count).sum();
+        return new PersonStatisticsDto(total, counts, histogram(ages, bucketWidth), percentiles(ages, total));
+    }
+
+    /**
+     * Применяет изменения людей к агрегату после фиксации транзакции.
+     *
+     * @param event Событие изменения людей.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPersonChanged(PersonChangedEvent event) {
+        Map<Long, CityAges> current = cities;
+        for (PersonChangedEvent.Change change : event.changes()) {
+            int age = change.personId().getAge();
+            if (change.fromCityId() != null) {
+                current.computeIfAbsent(change.fromCityId(), id -> new CityAges(null)).add(age, -1);
+            }
+            if (change.toCityId() != null) {
+                current.computeIfAbsent(change.toCityId(), id -> new CityAges(null)).add(age, 1);
+            }
+        }
+    }
+
+    /**
+     * Пересчитывает агрегат по базе и заменяет им текущий.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${persons.statistics.reconcile-interval:PT5M}",
+            initialDelayString = "${persons.statistics.reconcile-interval:PT5M}")
+    public synchronized void reconcile() {
+        Map<Long, CityAges> reconciled = new ConcurrentHashMap<>();
+        for (CityAgeCount row : personRepository.countByCityAndAge()) {
+            reconciled.computeIfAbsent(row.cityId(), id -> new CityAges(row.cityName())).add(row.age(), row.count());
+        }
+        long corrected = loadedOnce ? difference(cities, reconciled) : 0;
+        cities = reconciled;
+        loadedOnce = true;
+        if (corrected > 0) {
+            drift.increment(corrected);
+            log.info("Person statistics reconciled, {} counts corrected", corrected);
+        }
+    }
+
+    private static List<AgeBucketDto> histogram(long[] ages, int bucketWidth) {
+        int last = MAX_AGE;
+        while (last >= 0 && ages[last] == 0) {
+            last--;
+        }
+        List<AgeBucketDto> buckets = new ArrayList<>();
+        for (int from = 0; from <= last; from += bucketWidth) {
+            int to = Math.min(from + bucketWidth - 1, MAX_AGE);
+            long count = 0;
+            for (int age = from; age <= to; age++) {
+                count += ages[age];
+            }
+            buckets.add(new AgeBucketDto(from, to, count));
+        }
+        return buckets;
+    }
+
+    /**
+     * Перцентили по методу ближайшего ранга: возраст, не превышенный долей {@code p} людей.
+     */
+    private static Map<String, Integer> percentiles(long[] ages, long total) {
+        Map<String, Integer> percentiles = new LinkedHashMap<>();
+        if (total == 0) {
+            return percentiles;
+        }
+        for (double percentile : PERCENTILES) {
+            long rank = Math.max(1, (long) Math.ceil(percentile * total));
+            long seen = 0;
+            int age = 0;
+            while (age < MAX_AGE && (seen += ages[age]) < rank) {
+                age++;
+            }
+            percentiles.put("p" + Math.round(percentile * 100), age);
+        }
+        return percentiles;
+    }
+
+    private static long difference(Map<Long, CityAges> before, Map<Long, CityAges> after) {
+        Set<Long> cityIds = new HashSet<>(before.keySet());
+        cityIds.addAll(after.keySet());
+        long difference = 0;
+        for (Long cityId : cityIds) {
+            CityAges expected = after.get(cityId);
+            CityAges actual = before.get(cityId);
+            for (int age = 0; age <= MAX_AGE; age++) {
+                difference += Math.abs(count(expected, age) - count(actual, age));
+            }
+        }
+        return difference;
+    }
+
+    private static long count(CityAges ages, int age) {
+        return ages == null ? 0 : ages.ages.get(age);
+    }
+
+    /**
+     * Счетчики людей одного города по годам возраста.
+     */
+    private final class CityAges {
+
+        private final AtomicLongArray ages = new AtomicLongArray(MAX_AGE + 1);
+        private volatile String name;
+
+        private CityAges(String name) {
+            this.name = name;
+        }
+
+        private void add(int age, long delta) {
+            ages.addAndGet(Math.max(0, Math.min(age, MAX_AGE)), delta);
+        }
+
+        /**
+         * Прибавляет счетчики к {@code target}; отрицательные значения от расхождений не учитываются.
+         *
+         * @return Количество людей в городе.
+         */
+        private long addTo(long[] target) {
+            long count = 0;
+            for (int age = 0; age <= MAX_AGE; age++) {
+                long value = Math.max(0, ages.get(age));
+                target[age] += value;
+                count += value;
+            }
+            return count;
+        }
+
+        private String name(Long cityId) {
+            String cityName = name;
+            if (cityName == null) {
+                cityName = cityRepository.findById(cityId).map(City::getName).orElse(null);
+                name = cityName;
+            }
+            return cityName;
+        }
+    }
+}
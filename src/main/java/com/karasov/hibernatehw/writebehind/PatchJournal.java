@@ -0,0 +1,285 @@
+package com.karasov.hibernatehw.writebehind;
+
+import com.karasov.hibernatehw.entity.Person;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Локальный журнал изменений, принятых в очередь {@link PersonWriteBehind}, но еще не записанных в базу.
+ * <p>
+ * Журнал — последовательность сегментов {@code patches-<номер>.journal}, в которые изменения только
+ * дописываются. Перед каждой записью очереди в базу журнал переходит на новый сегмент; после успешной записи
+ * все предыдущие сегменты удаляются, так как каждое изменение в них записано или перекрыто более новым.
+ * При старте все сегменты читаются по порядку, и изменения возвращаются в очередь.
+ * <p>
+ * Запись сегмента — длина тела, CRC32 тела и само тело. Чтение сегмента останавливается на первой неполной
+ * или поврежденной записи: это хвост, оборванный падением процесса, и клиент не получил на него ответ.
+ * <p>
+ * {@link #append} можно вызывать из нескольких потоков одновременно: запись в файл короткая и идет под
+ * блокировкой журнала, а синхронизация с диском — вне ее, одна на всех, чьи записи успели попасть в файл
+ * (group commit). Остальные методы вызывает {@link PersonWriteBehind} под своей блокировкой.
+ */
+@Slf4j
+final class PatchJournal implements Closeable {
+
+    private static final Pattern SEGMENT = Pattern.compile("patches-(\\d+)\\.journal");
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    private final Path directory;
+    private final boolean force;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Object forceLock = new Object();
+
+    /**
+     * Защищены {@link #writeLock}; {@link #segment} читается и без нее.
+     */
+    private FileChannel channel;
+    private volatile long segment;
+    private long written;
+
+    /**
+     * Номер последней записи, сброшенной на диск.
+     */
+    private final AtomicLong forced = new AtomicLong();
+
+    /**
+     * @param directory Каталог сегментов; создается, если его нет.
+     * @param force     Сбрасывать каждую запись на диск: без этого запись переживает падение процесса,
+     *                  но не отключение питания.
+     */
+    PatchJournal(Path directory, boolean force) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.force = force;
+    }
+
+    /**
+     * Читает все сегменты и открывает новый сегмент для записи.
+     *
+     * @return Изменения в порядке записи.
+     */
+    List<PendingPatch> replay() throws IOException {
+        List<PendingPatch> patches = new ArrayList<>();
+        List<Long> segments = segments();
+        for (long number : segments) {
+            read(path(number), patches);
+        }
+        segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        writeLock.lock();
+        try {
+            next();
+        } finally {
+            writeLock.unlock();
+        }
+        return patches;
+    }
+
+    /**
+     * Дописывает изменение в текущий сегмент и, если журнал сбрасывается на диск, ждет синхронизации.
+     * Если запись не удалась, журнал переходит на новый сегмент: следующие изменения не должны оказаться
+     * за оборванной записью, на которой остановится чтение.
+     *
+     * @return Номер сегмента, в который попало изменение.
+     */
+    long append(PendingPatch patch) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeUTF(patch.personId().getName());
+        out.writeUTF(patch.personId().getSurname());
+        out.writeInt(patch.personId().getAge());
+        out.writeBoolean(patch.phoneNumber() != null);
+        out.writeUTF(patch.phoneNumber() == null ? "" : patch.phoneNumber());
+        out.writeLong(patch.cityId());
+
+        byte[] body = buffer.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer record = ByteBuffer.allocate(8 + body.length);
+        record.putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+
+        long number;
+        long appendedTo;
+        writeLock.lock();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            number = ++written;
+            appendedTo = segment;
+        } catch (IOException e) {
+            next();
+            throw e;
+        } finally {
+            writeLock.unlock();
+        }
+        if (force) {
+            forceUpTo(number);
+        }
+        return appendedTo;
+    }
+
+    /**
+     * @return Номер текущего сегмента.
+     */
+    long segment() {
+        return segment;
+    }
+
+    /**
+     * Закрывает текущий сегмент и начинает следующий. Если журнал сбрасывается на диск, закрываемый сегмент
+     * сначала синхронизируется: записи, ждущие синхронизации, не должны ее потерять.
+     *
+     * @return Номер нового сегмента: все сегменты до него можно удалить после записи очереди в базу.
+     */
+    long rotate() throws IOException {
+        writeLock.lock();
+        try {
+            if (channel != null && force) {
+                channel.force(false);
+                forced.accumulateAndGet(written, Math::max);
+            }
+            return next();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Удаляет сегменты с номерами меньше {@code segment}.
+     */
+    void deleteBefore(long segment) throws IOException {
+        for (long number : segments()) {
+            if (number < segment) {
+                Files.deleteIfExists(path(number));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private long next() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        segment++;
+        channel = FileChannel.open(path(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return segment;
+    }
+
+    /**
+     * Сбрасывает на диск все записи до {@code number} включительно. Синхронизацию ведет один поток за раз и
+     * захватывает все записи, уже попавшие в файл: потоки, ждавшие за ним, обычно находят свои записи
+     * сброшенными и не синхронизируют диск повторно.
+     */
+    private void forceUpTo(long number) throws IOException {
+        synchronized (forceLock) {
+            if (forced.get() >= number) {
+                return;
+            }
+            FileChannel target;
+            long upTo;
+            writeLock.lock();
+            try {
+                target = channel;
+                upTo = written;
+            } finally {
+                writeLock.unlock();
+            }
+            try {
+                target.force(false);
+            } catch (ClosedChannelException e) {
+                // Сегмент закрыт переходом на следующий: rotate синхронизирует его сам, а после сбоя записи
+                // синхронизации не было, и ждущие ее записи получают ошибку.
+                if (forced.get() < number) {
+                    throw e;
+                }
+                return;
+            }
+            forced.accumulateAndGet(upTo, Math::max);
+        }
+    }
+
+    private List<Long> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> SEGMENT.matcher(file.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path path(long number) {
+        return directory.resolve("patches-%019d.journal".formatted(number));
+    }
+
+    private static void read(Path file, List<PendingPatch> patches) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (length < 0 || length > MAX_RECORD_SIZE) {
+                    log.warn("Write-behind journal {} has a corrupt record, ignoring the rest of the segment", file);
+                    return;
+                }
+                byte[] checksum = in.readNBytes(4);
+                byte[] body = in.readNBytes(length);
+                if (checksum.length < 4 || body.length < length) {
+                    log.warn("Write-behind journal {} ends with a torn record", file);
+                    return;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if ((int) crc.getValue() != ByteBuffer.wrap(checksum).getInt()) {
+                    log.warn("Write-behind journal {} has a corrupt record, ignoring the rest of the segment", file);
+                    return;
+                }
+                patches.add(decode(body));
+            }
+        }
+    }
+
+    private static PendingPatch decode(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        Person.PersonId personId = new Person.PersonId(in.readUTF(), in.readUTF(), in.readInt());
+        boolean hasPhoneNumber = in.readBoolean();
+        String phoneNumber = in.readUTF();
+        return new PendingPatch(personId, hasPhoneNumber ? phoneNumber : null, in.readLong());
+    }
+}
@@ -0,0 +1,25 @@
+package com.karasov.hibernatehw.writebehind;
+
+import com.karasov.hibernatehw.entity.Person;
+
+/**
+ * Изменение телефона и города человека, ожидающее записи в базу.
+ *
+ * @param personId    Ключ человека.
+ * @param phoneNumber Новый номер телефона.
+ * @param cityId      Идентификатор нового города.
+ * @param rejections  Сколько раз база отклонила это изменение; в журнал не пишется.
+ */
+record PendingPatch(Person.PersonId personId, String phoneNumber, long cityId, int rejections) {
+
+    PendingPatch(Person.PersonId personId, String phoneNumber, long cityId) {
+        this(personId, phoneNumber, cityId, 0);
+    }
+
+    /**
+     * @return То же изменение с еще одним отказом базы.
+     */
+    PendingPatch rejected() {
+        return new PendingPatch(personId, phoneNumber, cityId, rejections + 1);
+    }
+}
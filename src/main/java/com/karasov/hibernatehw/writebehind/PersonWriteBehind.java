@@ -0,0 +1,496 @@
+package com.karasov.hibernatehw.writebehind;
+
+import com.karasov.hibernatehw.cache.CityDirectory;
+import com.karasov.hibernatehw.cache.PersonChangedEvent;
+import com.karasov.hibernatehw.dto.PatchPersonDto;
+import com.karasov.hibernatehw.entity.City;
+import com.karasov.hibernatehw.entity.Person;
+import com.karasov.hibernatehw.handler.exception.CityNotFoundException;
+import com.karasov.hibernatehw.handler.exception.ServiceOverloadedException;
+import com.karasov.hibernatehw.repository.PersonBatchRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Отложенная запись изменений телефона и города: {@code PATCH /persons/{name}/{surname}/{age}} ставит изменение
+ * в очередь и сразу отвечает, а фоновый поток записывает очередь в базу пакетами.
+ * Включается свойством {@code persons.write-behind.enabled}.
+ * <p>
+ * Очередь хранит одно изменение на ключ человека: следующее изменение того же человека заменяет предыдущее,
+ * поэтому серия изменений одного человека дает одну запись. Очередь записывается, когда в ней
+ * {@code flush-size} людей или когда самому старому изменению {@code max-delay}; запись идет запросами
+ * {@link PersonBatchRepository#updateByKeys} по {@code persons.batch.chunk-size} людей. Если база недоступна,
+ * незаписанные изменения возвращаются в очередь (кроме перекрытых более новыми) и записываются повторно через
+ * {@code max-delay}. Пакет, который база отклонила из-за данных, делится пополам, пока отказ не сведется
+ * к отдельным изменениям: остальные записываются сразу, а отклоненное изменение возвращается в очередь
+ * и после {@code max-attempts} отказов уходит в журнал ошибок {@code ...PersonWriteBehind.dead-letter}.
+ * В очереди не больше {@code capacity} людей: изменение нового человека в полную очередь отклоняется
+ * с {@link ServiceOverloadedException}.
+ * <p>
+ * Сохранность принятых изменений задает {@code durability} ({@link Durability}). Очередь записывается целиком
+ * при остановке приложения — после остановки веб-сервера, но до закрытия пула соединений.
+ * <p>
+ * Чтение видит изменение только после записи очереди: ответ {@code 202 Accepted} не гарантирует, что
+ * следующий {@code GET} вернет новые данные.
+ */
+@Slf4j
+@Component
+public class PersonWriteBehind implements SmartLifecycle {
+
+    /**
+     * Запускается раньше и останавливается позже веб-сервера: очередь восстановлена из журнала до первого
+     * запроса и записывается в базу после последнего.
+     */
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private static final Logger DEAD_LETTERS =
+            LoggerFactory.getLogger(PersonWriteBehind.class.getName() + ".dead-letter");
+
+    /**
+     * Сохранность изменений, принятых в очередь.
+     */
+    public enum Durability {
+        /**
+         * Только память: изменения, не записанные в базу, теряются при падении процесса.
+         */
+        NONE,
+        /**
+         * Изменение дописывается в локальный журнал до ответа и восстанавливается из него при старте;
+         * переживает падение процесса, но не отключение питания.
+         */
+        JOURNAL,
+        /**
+         * Как {@link #JOURNAL}, но журнал сбрасывается на диск до ответа; параллельные изменения делят
+         * одну синхронизацию с диском.
+         */
+        JOURNAL_FSYNC
+    }
+
+    private final PersonBatchRepository personBatchRepository;
+    private final CityDirectory cityDirectory;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final int capacity;
+    private final int flushSize;
+    private final Duration maxDelay;
+    private final Durability durability;
+    private final Path journalDirectory;
+    private final int maxAttempts;
+    private final int chunkSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+
+    /**
+     * Защищены {@link #lock}.
+     */
+    private Map<Person.PersonId, PendingPatch> pending = new LinkedHashMap<>();
+    private long oldestNanos;
+    private boolean stopping;
+    private PatchJournal journal;
+
+    private Thread flusher;
+    private Timer flushTimer;
+    private Timer delayTimer;
+    private Counter coalesced;
+    private Counter failures;
+    private Counter deadLetters;
+
+    public PersonWriteBehind(PersonBatchRepository personBatchRepository,
+                             CityDirectory cityDirectory,
+                             ApplicationEventPublisher eventPublisher,
+                             MeterRegistry meterRegistry,
+                             @Value("${persons.write-behind.enabled:false}") boolean enabled,
+                             @Value("${persons.write-behind.capacity:100000}") int capacity,
+                             @Value("${persons.write-behind.flush-size:1000}") int flushSize,
+                             @Value("${persons.write-behind.max-delay:1s}") Duration maxDelay,
+                             @Value("${persons.write-behind.durability:none}") Durability durability,
+                             @Value("${persons.write-behind.journal-dir:write-behind}") Path journalDirectory,
+                             @Value("${persons.write-behind.max-attempts:3}") int maxAttempts,
+                             @Value("${persons.batch.chunk-size:1000}") int chunkSize) {
+        this.personBatchRepository = personBatchRepository;
+        this.cityDirectory = cityDirectory;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.flushSize = flushSize;
+        this.maxDelay = maxDelay;
+        this.durability = durability;
+        this.journalDirectory = journalDirectory;
+        this.maxAttempts = maxAttempts;
+        this.chunkSize = chunkSize;
+        if (enabled) {
+            Gauge.builder("persons.write-behind.depth", this, PersonWriteBehind::depth)
+                    .description("Persons with a patch waiting in the write-behind queue")
+                    .register(meterRegistry);
+            flushTimer = Timer.builder("persons.write-behind.flush")
+                    .description("Time to write one drained write-behind queue to the database")
+                    .register(meterRegistry);
+            delayTimer = Timer.builder("persons.write-behind.delay")
+                    .description("Age of the oldest patch of a write-behind flush when it reached the database")
+                    .register(meterRegistry);
+            coalesced = Counter.builder("persons.write-behind.coalesced")
+                    .description("Queued patches replaced by a later patch of the same person")
+                    .register(meterRegistry);
+            failures = Counter.builder("persons.write-behind.failures")
+                    .description("Write-behind flushes that failed and were requeued")
+                    .register(meterRegistry);
+            deadLetters = Counter.builder("persons.write-behind.dead-letters")
+                    .description("Write-behind patches dropped after max-attempts rejections by the database")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * @return Изменения через {@code PATCH} идут в очередь.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Ставит изменение в очередь. Город проверяется сразу, чтобы отказ пришел в ответе, а не при записи.
+     *
+     * @throws CityNotFoundException      если город не найден.
+     * @throws ServiceOverloadedException если очередь заполнена или приложение останавливается.
+     * @throws UncheckedIOException       если изменение не удалось записать в журнал.
+     */
+    public void submit(String name, String surname, int age, PatchPersonDto patchPersonDto) {
+        long cityId = cityDirectory.findIdByName(patchPersonDto.cityName()).orElseThrow(() -> new CityNotFoundException(
+                String.format("City '%s' not found.", patchPersonDto.cityName())
+        ));
+        PendingPatch patch = new PendingPatch(
+                new Person.PersonId(name, surname, age), patchPersonDto.phoneNumber(), cityId);
+
+        PatchJournal target;
+        lock.lock();
+        try {
+            if (stopping) {
+                throw new ServiceOverloadedException("Write-behind queue is shutting down.", maxDelay);
+            }
+            if (pending.size() >= capacity && !pending.containsKey(patch.personId())) {
+                throw new ServiceOverloadedException(
+                        "Write-behind queue is full (%d persons).".formatted(capacity), maxDelay);
+            }
+            target = journal;
+            if (target == null) {
+                enqueue(patch);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // Запись в журнал и синхронизация с диском идут вне блокировки очереди: параллельные изменения
+        // делят одну синхронизацию, а поток записи не ждет диск, чтобы выбрать очередь.
+        while (true) {
+            long segment;
+            try {
+                segment = target.append(patch);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            lock.lock();
+            try {
+                // Если журнал перешел на новый сегмент после дозаписи, очередь могла быть выбрана без этого
+                // изменения, а его сегмент удалится после ее записи: изменение дописывается повторно.
+                if (segment == target.segment()) {
+                    enqueue(patch);
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Добавляет изменение в очередь; вызывается под {@link #lock}.
+     */
+    private void enqueue(PendingPatch patch) {
+        boolean first = pending.isEmpty();
+        if (first) {
+            oldestNanos = System.nanoTime();
+        }
+        if (pending.put(patch.personId(), patch) != null) {
+            coalesced.increment();
+        }
+        // Первое изменение запускает отсчет max-delay у ждущего потока записи.
+        if (first || pending.size() >= flushSize) {
+            flushNeeded.signal();
+        }
+    }
+
+    /**
+     * Восстанавливает очередь из журнала и запускает поток записи.
+     */
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            stopping = false;
+            if (durability != Durability.NONE) {
+                journal = new PatchJournal(journalDirectory, durability == Durability.JOURNAL_FSYNC);
+                List<PendingPatch> replayed = journal.replay();
+                replayed.forEach(patch -> pending.put(patch.personId(), patch));
+                oldestNanos = System.nanoTime() - maxDelay.toNanos();
+                if (!replayed.isEmpty()) {
+                    log.info("Replayed {} write-behind patches for {} persons from {}",
+                            replayed.size(), pending.size(), journalDirectory.toAbsolutePath());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+        flusher = new Thread(this::run, "person-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Записывает очередь в базу и останавливает поток записи. Новые изменения после этого отклоняются.
+     */
+    @Override
+    public void stop() {
+        if (flusher == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            stopping = true;
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flusher = null;
+        lock.lock();
+        try {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        } catch (IOException e) {
+            log.warn("Failed to close the write-behind journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return flusher != null;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private double depth() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            List<PendingPatch> batch;
+            long oldest;
+            long segment;
+            boolean last;
+            lock.lock();
+            try {
+                while (!stopping && !flushDue()) {
+                    if (pending.isEmpty()) {
+                        flushNeeded.await();
+                    } else {
+                        flushNeeded.awaitNanos(maxDelay.toNanos() - (System.nanoTime() - oldestNanos));
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(pending.values());
+                oldest = oldestNanos;
+                pending = new LinkedHashMap<>();
+                segment = journal != null ? journal.rotate() : 0;
+                last = stopping;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                log.error("Failed to rotate the write-behind journal, stopping the flusher", e);
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            if (!flush(batch, oldest, segment) && last) {
+                log.error("Write-behind queue of {} persons was not written on shutdown{}", batch.size(),
+                        journal != null ? ", it stays in the journal" : " and is lost");
+                return;
+            }
+        }
+    }
+
+    private boolean flushDue() {
+        return !pending.isEmpty()
+                && (pending.size() >= flushSize || System.nanoTime() - oldestNanos >= maxDelay.toNanos());
+    }
+
+    /**
+     * Записывает изменения в базу. Отклоненные изменения и изменения, не записанные из-за недоступности базы,
+     * возвращаются в очередь.
+     *
+     * @param segment Сегмент журнала, начатый при выборке изменений из очереди.
+     * @return Все изменения записаны или отброшены.
+     */
+    private boolean flush(List<PendingPatch> batch, long oldest, long segment) {
+        long start = System.nanoTime();
+        List<PendingPatch> retry = new ArrayList<>();
+        for (int from = 0; from < batch.size(); from += chunkSize) {
+            try {
+                writeIsolating(batch.subList(from, Math.min(batch.size(), from + chunkSize)), retry);
+            } catch (RuntimeException e) {
+                log.warn("Write-behind flush of {} persons failed, retrying in {}", batch.size() - from, maxDelay, e);
+                // Изменение, отклоненное раньше в этом же пакете, остается со счетчиком отказов
+                Map<Person.PersonId, PendingPatch> unwritten = new LinkedHashMap<>();
+                batch.subList(from, batch.size()).forEach(patch -> unwritten.put(patch.personId(), patch));
+                retry.forEach(patch -> unwritten.put(patch.personId(), patch));
+                requeue(unwritten.values());
+                return false;
+            }
+        }
+        if (!retry.isEmpty()) {
+            log.warn("Write-behind flush: {} of {} patches rejected, retrying in {}",
+                    retry.size(), batch.size(), maxDelay);
+            requeue(retry);
+            return false;
+        }
+        long end = System.nanoTime();
+        flushTimer.record(end - start, TimeUnit.NANOSECONDS);
+        delayTimer.record(end - oldest, TimeUnit.NANOSECONDS);
+
+        lock.lock();
+        try {
+            if (journal != null) {
+                journal.deleteBefore(segment);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to delete written write-behind journal segments", e);
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Записывает изменения; если база отклонила их из-за данных, делит их пополам и записывает половины отдельно.
+     *
+     * @param retry Отклоненные по отдельности изменения, которые нужно повторить.
+     * @throws RuntimeException если запись не удалась не из-за данных, например база недоступна.
+     */
+    private void writeIsolating(List<PendingPatch> patches, List<PendingPatch> retry) {
+        try {
+            write(patches);
+        } catch (RuntimeException e) {
+            if (!rejectedByData(e)) {
+                throw e;
+            }
+            if (patches.size() > 1) {
+                int middle = patches.size() / 2;
+                writeIsolating(patches.subList(0, middle), retry);
+                writeIsolating(patches.subList(middle, patches.size()), retry);
+                return;
+            }
+            PendingPatch patch = patches.get(0).rejected();
+            if (patch.rejections() < maxAttempts) {
+                retry.add(patch);
+                return;
+            }
+            deadLetters.increment();
+            DEAD_LETTERS.error("Dropped write-behind patch after {} attempts: person {} {} {}, phone {}, city id {}",
+                    patch.rejections(), patch.personId().getName(), patch.personId().getSurname(),
+                    patch.personId().getAge(), patch.phoneNumber(), patch.cityId(), e);
+        }
+    }
+
+    /**
+     * Возвращает изменения в очередь, если их не перекрыли более новые.
+     */
+    private void requeue(Iterable<PendingPatch> patches) {
+        failures.increment();
+        lock.lock();
+        try {
+            Map<Person.PersonId, PendingPatch> requeued = new LinkedHashMap<>();
+            patches.forEach(patch -> requeued.put(patch.personId(), patch));
+            requeued.putAll(pending);
+            pending = requeued;
+            oldestNanos = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return База отклонила сами данные (нарушение ограничения, слишком длинное значение), и повтор того же
+     * запроса снова завершится ошибкой; недоступность базы сюда не относится.
+     */
+    private static boolean rejectedByData(RuntimeException e) {
+        return e instanceof NonTransientDataAccessException && !(e instanceof DataAccessResourceFailureException);
+    }
+
+    private void write(List<PendingPatch> chunk) {
+        List<Person> persons = chunk.stream()
+                .map(patch -> new Person(patch.personId(), patch.phoneNumber(), new City(patch.cityId(), null)))
+                .toList();
+        Long[] previousCityIds = personBatchRepository.updateByKeys(persons);
+        List<PersonChangedEvent.Change> changes = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            if (previousCityIds[i] != null) {
+                PendingPatch patch = chunk.get(i);
+                changes.add(new PersonChangedEvent.Change(
+                        patch.personId(), previousCityIds[i], patch.cityId(), patch.phoneNumber()));
+            }
+        }
+        if (!changes.isEmpty()) {
+            eventPublisher.publishEvent(PersonChangedEvent.of(changes));
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package com.karasov.hibernatehw;
 
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
 
 @SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
 class HibernateHwApplicationTests {
 
     @Test
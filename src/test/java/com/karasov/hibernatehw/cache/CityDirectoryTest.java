@@ -0,0 +1,103 @@
+package com.karasov.hibernatehw.cache;
+
+import com.karasov.hibernatehw.entity.City;
+import com.karasov.hibernatehw.repository.CityRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+class CityDirectoryTest {
+
+    @Autowired
+    private CityDirectory cityDirectory;
+
+    @Autowired
+    private CityRepository cityRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    void tearDown() {
+        cityRepository.findCityByName("Chicago").ifPresent(cityRepository::delete);
+    }
+
+    @Test
+    void resolvesPreloadedCityIgnoringCaseWithoutStatements() {
+        cityDirectory.preload();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        assertThat(cityDirectory.findIdByName("NEW YORK")).isPresent();
+        assertThat(cityDirectory.findIdByName("san diego")).isPresent();
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    void seesCityInsertedAfterPreload() {
+        cityDirectory.preload();
+        assertThat(cityDirectory.findIdByName("Chicago")).isEmpty();
+
+        City chicago = cityRepository.save(new City(null, "Chicago"));
+
+        assertThat(cityDirectory.findIdByName("chicago")).contains(chicago.getId());
+    }
+
+    @Test
+    void forgetsDeletedCity() {
+        City chicago = cityRepository.save(new City(null, "Chicago"));
+        assertThat(cityDirectory.findIdByName("Chicago")).contains(chicago.getId());
+
+        cityRepository.delete(chicago);
+
+        assertThat(cityDirectory.findIdByName("Chicago")).isEmpty();
+    }
+
+    @Test
+    void remembersUnknownCityWithoutRepeatedStatements() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        assertThat(cityDirectory.findIdByName("Atlantis")).isEmpty();
+        assertThat(cityDirectory.findIdByName("ATLANTIS")).isEmpty();
+        assertThat(cityDirectory.findIdByName("atlantis")).isEmpty();
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void publishesHitAndMissCounters() {
+        cityDirectory.preload();
+        double hits = gets("hit");
+        double misses = gets("miss");
+
+        cityDirectory.findIdByName("New York");
+        cityDirectory.findIdByName("Gotham");
+
+        assertThat(gets("hit")).isEqualTo(hits + 1);
+        assertThat(gets("miss")).isEqualTo(misses + 1);
+    }
+
+    private double gets(String result) {
+        FunctionCounter counter = meterRegistry.find("cache.gets").tag("cache", "cities").tag("result", result)
+                .functionCounter();
+        assertThat(counter).isNotNull();
+        return counter.count();
+    }
+}
@@ -0,0 +1,144 @@
+package com.karasov.hibernatehw.concurrency;
+
+import com.karasov.hibernatehw.handler.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Проверяет подстройку ограничения по задержке, отказы при заполненной очереди и порядок очереди. Время вызова задается сдвигом
+ * момента получения разрешения, переданного в {@link AdaptiveBulkhead#release}.
+ */
+class AdaptiveBulkheadTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void limitGrowsWhileLatencyIsStableAndShrinksWhenItRises() {
+        AdaptiveBulkhead bulkhead = new AdaptiveBulkhead("test", "lists", group(4, 1, 50, 0, Duration.ZERO), meterRegistry);
+        runSaturated(bulkhead, 300, Duration.ofMillis(10));
+        double grown = bulkhead.getLimit();
+        assertThat(grown).isGreaterThan(8);
+
+        runSaturated(bulkhead, 30, Duration.ofMillis(100));
+        assertThat(bulkhead.getLimit()).isLessThan(grown / 2);
+        assertThat(meterRegistry.get("persons.bulkhead.limit").tag("bulkhead", "test").gauge().value())
+                .isEqualTo(bulkhead.getLimit());
+    }
+
+    @Test
+    void limitDoesNotGrowWhileMostPermitsAreIdle() {
+        AdaptiveBulkhead bulkhead = new AdaptiveBulkhead("test", "lists", group(10, 1, 50, 0, Duration.ZERO), meterRegistry);
+
+        for (int i = 0; i < 100; i++) {
+            bulkhead.release(bulkhead.acquire() - Duration.ofMillis(10).toNanos(), false);
+        }
+
+        assertThat(bulkhead.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void dropShrinksLimit() {
+        AdaptiveBulkhead bulkhead = new AdaptiveBulkhead("test", "lists", group(10, 1, 50, 0, Duration.ZERO), meterRegistry);
+
+        bulkhead.release(bulkhead.acquire(), true);
+
+        assertThat(bulkhead.getLimit()).isEqualTo(9);
+    }
+
+    @Test
+    void rejectsWhenQueueIsFullOrWaitTimesOut() {
+        AdaptiveBulkhead full = new AdaptiveBulkhead("full", "lists", group(1, 1, 1, 0, Duration.ofSeconds(5)),
+                meterRegistry);
+        full.acquire();
+        assertThatThrownBy(full::acquire)
+                .isInstanceOf(ServiceOverloadedException.class)
+                .hasMessageContaining("queue");
+
+        AdaptiveBulkhead slow = new AdaptiveBulkhead("slow", "lists", group(1, 1, 1, 1, Duration.ofMillis(50)),
+                meterRegistry);
+        slow.acquire();
+        assertThatThrownBy(slow::acquire)
+                .isInstanceOf(ServiceOverloadedException.class)
+                .hasMessageContaining("50 ms");
+
+        assertThat(meterRegistry.get("persons.bulkhead.rejected").tags("bulkhead", "full", "reason", "queue-full")
+                .counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("persons.bulkhead.rejected").tags("bulkhead", "slow", "reason", "timeout")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void queuedCallProceedsWhenPermitIsReleased() throws Exception {
+        AdaptiveBulkhead bulkhead = new AdaptiveBulkhead("test", "lists", group(1, 1, 1, 1, Duration.ofSeconds(10)),
+                meterRegistry);
+        long held = bulkhead.acquire();
+
+        CompletableFuture<Long> queued = CompletableFuture.supplyAsync(bulkhead::acquire);
+        while (bulkhead.getQueued() == 0) {
+            assertThat(queued).isNotDone();
+            Thread.sleep(1);
+        }
+        bulkhead.release(held, false);
+
+        bulkhead.release(queued.get(10, TimeUnit.SECONDS), false);
+        assertThat(bulkhead.getInflight()).isZero();
+    }
+
+    @Test
+    void releasedPermitsGoToQueuedCallsInArrivalOrder() throws Exception {
+        AdaptiveBulkhead bulkhead = new AdaptiveBulkhead("test", "lists", group(1, 1, 1, 2, Duration.ofSeconds(10)),
+                meterRegistry);
+        long held = bulkhead.acquire();
+        CompletableFuture<Long> first = CompletableFuture.supplyAsync(bulkhead::acquire);
+        awaitQueued(bulkhead, 1);
+        CompletableFuture<Long> second = CompletableFuture.supplyAsync(bulkhead::acquire);
+        awaitQueued(bulkhead, 2);
+
+        bulkhead.release(held, false);
+        long firstAcquired = first.get(10, TimeUnit.SECONDS);
+        // Освободившееся разрешение передано первому и уже учтено, второй продолжает ждать
+        assertThat(bulkhead.getInflight()).isEqualTo(1);
+        assertThat(second).isNotDone();
+
+        bulkhead.release(firstAcquired, false);
+        bulkhead.release(second.get(10, TimeUnit.SECONDS), false);
+        assertThat(bulkhead.getInflight()).isZero();
+        assertThat(bulkhead.getQueued()).isZero();
+    }
+
+    private static void awaitQueued(AdaptiveBulkhead bulkhead, int queued) throws InterruptedException {
+        while (bulkhead.getQueued() < queued) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Держит все разрешения занятыми и завершает по одному вызову с заданным временем.
+     */
+    private static void runSaturated(AdaptiveBulkhead bulkhead, int calls, Duration rtt) {
+        for (int i = 0; i < calls; i++) {
+            while (bulkhead.getInflight() < (int) bulkhead.getLimit()) {
+                bulkhead.acquire();
+            }
+            bulkhead.release(System.nanoTime() - rtt.toNanos(), false);
+        }
+    }
+
+    private static BulkheadProperties.Group group(int initial, int min, int max, int queueSize, Duration queueTimeout) {
+        BulkheadProperties.Group group = new BulkheadProperties.Group();
+        group.setInitialLimit(initial);
+        group.setMinLimit(min);
+        group.setMaxLimit(max);
+        group.setQueueSize(queueSize);
+        group.setQueueTimeout(queueTimeout);
+        return group;
+    }
+}
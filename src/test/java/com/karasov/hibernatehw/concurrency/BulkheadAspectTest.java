@@ -0,0 +1,99 @@
+package com.karasov.hibernatehw.concurrency;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Проверяет, что занятый маршрут отклоняет запросы с 503 и {@code Retry-After}, не затрагивая другие маршруты своей
+ * группы и точечные чтения.
+ */
+@SpringBootTest(properties = {
+        "persons.bulkhead.enabled=true",
+        "persons.bulkhead.groups.lists.initial-limit=1",
+        "persons.bulkhead.groups.lists.max-limit=1",
+        "persons.bulkhead.groups.lists.queue-size=0",
+        "persons.bulkhead.groups.lists.retry-after=3s"
+})
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+@AutoConfigureMockMvc
+class BulkheadAspectTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BulkheadAspect aspect;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void shedsBusyRouteWhileOtherRoutesProceed() throws Exception {
+        AdaptiveBulkhead byAge = aspect.bulkhead("/persons/by-age", "lists");
+        long held = byAge.acquire();
+        try {
+            mockMvc.perform(get("/persons/by-age").param("age", "100"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "3"));
+            mockMvc.perform(get("/persons/by-city").param("city", "New York"))
+                    .andExpect(status().isOk());
+            mockMvc.perform(get("/persons/John/Doe/30"))
+                    .andExpect(status().isOk());
+        } finally {
+            byAge.release(held, false);
+        }
+
+        mockMvc.perform(get("/persons/by-age").param("age", "100"))
+                .andExpect(status().isOk());
+        assertThat(meterRegistry.get("persons.bulkhead.rejected")
+                .tags("bulkhead", "/persons/by-age", "group", "lists", "reason", "queue-full")
+                .counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("persons.bulkhead.inflight")
+                .tags("bulkhead", "/persons/{name}/{surname}/{age}", "group", "lookups").gauge().value())
+                .isZero();
+    }
+
+    @Test
+    void streamingBodyHoldsPermitWhileWriting() throws Exception {
+        AdaptiveBulkhead byCity = aspect.bulkhead("/persons/by-city", "lists");
+        long held = byCity.acquire();
+        try {
+            MvcResult rejected = mockMvc.perform(get("/persons/by-city").param("city", "New York")
+                            .accept(MediaType.APPLICATION_NDJSON))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            mockMvc.perform(asyncDispatch(rejected))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "3"));
+        } finally {
+            byCity.release(held, false);
+        }
+
+        MvcResult streamed = mockMvc.perform(get("/persons/by-city").param("city", "New York")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(streamed))
+                .andExpect(status().isOk());
+        assertThat(meterRegistry.get("persons.bulkhead.inflight")
+                .tags("bulkhead", "/persons/by-city", "group", "lists").gauge().value())
+                .isZero();
+    }
+}
@@ -0,0 +1,59 @@
+package com.karasov.hibernatehw.concurrency;
+
+import com.karasov.hibernatehw.handler.exception.ServiceOverloadedException;
+import com.karasov.hibernatehw.service.PersonService;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Проверяет, что при занятых разрешениях вызов сервиса отклоняется, а после освобождения проходит.
+ */
+@SpringBootTest(properties = {
+        "persons.concurrency.limit.enabled=true",
+        "persons.concurrency.limit.permits=1",
+        "persons.concurrency.limit.acquire-timeout=100ms"
+})
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+class ConnectionPoolLimiterTest {
+
+    @Autowired
+    private PersonService service;
+
+    @Test
+    void rejectsCallsWhilePermitsAreTaken() throws Exception {
+        CountDownLatch streaming = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() ->
+                service.streamPersonsByCity("New York", person -> {
+                    streaming.countDown();
+                    await(release);
+                }));
+        assertThat(streaming.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> service.getPerson("John", "Doe", 30))
+                .isInstanceOf(ServiceOverloadedException.class);
+
+        release.countDown();
+        holder.get(10, TimeUnit.SECONDS);
+        assertThat(service.getPerson("John", "Doe", 30).cityName()).isEqualTo("New York");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
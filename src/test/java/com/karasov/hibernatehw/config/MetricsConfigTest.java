@@ -0,0 +1,56 @@
+package com.karasov.hibernatehw.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Проверяет, что запрос к контроллеру публикует таймеры контроллера и сервиса,
+ * а статистика Hibernate доступна как метрики. Метрики пула Hikari здесь не проверяются:
+ * встроенная тестовая база подключается через собственный пул, а не через Hikari.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+@AutoConfigureMockMvc
+class MetricsConfigTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void requestIsTimedOnControllerAndServiceLevel() throws Exception {
+        long controllerCalls = count("persons.controller", "getPersonByNameAndSurname");
+        long serviceCalls = count("persons.service", "getPersonByNameAndSurname");
+
+        mockMvc.perform(get("/persons").param("name", "john").param("surname", "doe"))
+                .andExpect(status().isOk());
+
+        assertThat(count("persons.controller", "getPersonByNameAndSurname")).isEqualTo(controllerCalls + 1);
+        assertThat(count("persons.service", "getPersonByNameAndSurname")).isEqualTo(serviceCalls + 1);
+    }
+
+    @Test
+    void hibernateStatisticsAreRegistered() {
+        assertThat(meterRegistry.find("hibernate.statements").tag("status", "prepared").functionCounter()).isNotNull();
+        assertThat(meterRegistry.find("hibernate.second.level.cache.requests").meters()).isNotEmpty();
+    }
+
+    private long count(String name, String method) {
+        Timer timer = meterRegistry.find(name).tag("method", method).timer();
+        return timer == null ? 0 : timer.count();
+    }
+}
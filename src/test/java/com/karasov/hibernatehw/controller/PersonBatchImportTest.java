@@ -0,0 +1,94 @@
+package com.karasov.hibernatehw.controller;
+
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "persons.batch.chunk-size=2")
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+@AutoConfigureMockMvc
+@Transactional
+class PersonBatchImportTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void importsNdjsonAndReportsRejectedRows() throws Exception {
+        String body = """
+                {"name":"Ann","surname":"Lee","age":20,"phoneNumber":"1","cityName":"new york"}
+                {"name":"John","surname":"Doe","age":30,"phoneNumber":"2","cityName":"New York"}
+                {"name":"Bob","surname":"Ray","age":21,"phoneNumber":"3","cityName":"Atlantis"}
+                {"name":"Ann","surname":"Lee","age":20,"phoneNumber":"4","cityName":"San Diego"}
+                {"name":"Kim","surname":"Park","age":22,"phoneNumber":"5","cityName":"Los Angeles"}
+                """;
+
+        mockMvc.perform(post("/persons/batch").contentType(MediaType.APPLICATION_NDJSON).content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.processed").value(5))
+                .andExpect(jsonPath("$.succeeded").value(2))
+                .andExpect(jsonPath("$.failures[*].row").value(contains(2, 3, 4)))
+                .andExpect(jsonPath("$.failures[*].status")
+                        .value(contains("CONFLICT", "CITY_NOT_FOUND", "CONFLICT")));
+    }
+
+    @Test
+    void importsCsvWithHeader() throws Exception {
+        String body = """
+                name,surname,age,phoneNumber,cityName
+                Ann,Lee,20,1,New York
+                Kim,Park,22,5,San Diego
+                """;
+
+        mockMvc.perform(post("/persons/batch").contentType("text/csv").content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.processed").value(2))
+                .andExpect(jsonPath("$.succeeded").value(2))
+                .andExpect(jsonPath("$.failures").isEmpty());
+    }
+
+    @Test
+    void marksUnparsableRowsInvalidAndKeepsImporting() throws Exception {
+        String body = """
+                {"name":"Ann","surname":"Lee","age":20,"phoneNumber":"1","cityName":"New York"}
+                {"name":"Bob","surname":"Ray","age":"old","phoneNumber":"2","cityName":"New York"}
+                {"name":"Kim","surname":"Park","age":22,"phoneNumber":"3","cityName":"San Diego"}
+                {"name":"Eve",
+                """;
+
+        mockMvc.perform(post("/persons/batch").contentType(MediaType.APPLICATION_NDJSON).content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.processed").value(4))
+                .andExpect(jsonPath("$.succeeded").value(2))
+                .andExpect(jsonPath("$.failures[*].row").value(contains(2, 4)))
+                .andExpect(jsonPath("$.failures[*].status").value(contains("INVALID", "INVALID")));
+    }
+
+    @Test
+    void marksUnparsableCsvRowsInvalid() throws Exception {
+        String body = """
+                name,surname,age,phoneNumber,cityName
+                Ann,Lee,twenty,1,New York
+                Kim,Park,22,5,San Diego
+                """;
+
+        mockMvc.perform(post("/persons/batch").contentType("text/csv").content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.processed").value(2))
+                .andExpect(jsonPath("$.succeeded").value(1))
+                .andExpect(jsonPath("$.failures[*].row").value(contains(1)))
+                .andExpect(jsonPath("$.failures[*].status").value(contains("INVALID")));
+    }
+}
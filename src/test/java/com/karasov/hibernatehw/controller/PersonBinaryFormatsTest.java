@@ -0,0 +1,95 @@
+package com.karasov.hibernatehw.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.karasov.hibernatehw.dto.PersonDto;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+@AutoConfigureMockMvc
+class PersonBinaryFormatsTest {
+
+    private static final TypeReference<List<PersonDto>> PERSON_LIST = new TypeReference<>() {
+    };
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void smileListMatchesJsonAndWritesCityNameOnce() throws Exception {
+        List<PersonDto> json = objectMapper.readValue(body("/persons/by-age", MediaType.APPLICATION_JSON), PERSON_LIST);
+        byte[] smile = body("/persons/by-age", new MediaType("application", "x-jackson-smile"));
+
+        assertThat(new SmileMapper().readValue(smile, PERSON_LIST)).isEqualTo(json);
+        assertThat(json).filteredOn(person -> person.cityName().equals("New York")).hasSizeGreaterThan(1);
+        assertThat(occurrences(smile, "New York")).isEqualTo(1);
+    }
+
+    @Test
+    void cborListMatchesJsonAndWritesCityNameOnce() throws Exception {
+        byte[] json = body("/persons/by-city?city=Los Angeles", MediaType.APPLICATION_JSON);
+        byte[] cbor = body("/persons/by-city?city=Los Angeles", MediaType.APPLICATION_CBOR);
+
+        assertThat(new CBORMapper().readValue(cbor, PERSON_LIST)).isEqualTo(objectMapper.readValue(json, PERSON_LIST));
+        assertThat(occurrences(json, "Los Angeles")).isGreaterThan(1);
+        assertThat(occurrences(cbor, "Los Angeles")).isEqualTo(1);
+        assertThat(cbor.length).isLessThan(json.length);
+    }
+
+    @Test
+    void negotiatedLookupsAndPagesVaryByAccept() throws Exception {
+        byte[] smile = body("/persons?name=John&surname=Doe", new MediaType("application", "x-jackson-smile"));
+        body("/persons/by-city/page?city=New York", MediaType.APPLICATION_CBOR);
+        body("/persons/search?q=jo", MediaType.APPLICATION_JSON);
+
+        assertThat(new SmileMapper().readValue(smile, PersonDto.class).name()).isEqualTo("John");
+    }
+
+    private byte[] body(String uri, MediaType mediaType) throws Exception {
+        return mockMvc.perform(get(uri.contains("?") ? uri : uri + "?age=100").accept(mediaType))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, mediaType.toString()))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+                .andReturn()
+                .getResponse()
+                .getContentAsByteArray();
+    }
+
+    private static int occurrences(byte[] body, String value) {
+        byte[] needle = value.getBytes(StandardCharsets.UTF_8);
+        int count = 0;
+        for (int i = 0; i + needle.length <= body.length; i++) {
+            int j = 0;
+            while (j < needle.length && body[i + j] == needle[j]) {
+                j++;
+            }
+            if (j == needle.length) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,81 @@
+package com.karasov.hibernatehw.controller;
+
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "persons.batch.chunk-size=2")
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+@AutoConfigureMockMvc
+@Transactional
+class PersonBulkTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void patchesEveryItemAndReportsPerItemCounts() throws Exception {
+        String body = """
+                [
+                  {"id":{"name":"John","surname":"Doe","age":30},"patch":{"phoneNumber":"1","cityName":"san diego"}},
+                  {"id":{"name":"Nobody","surname":"Here","age":1},"patch":{"phoneNumber":"2","cityName":"New York"}},
+                  {"id":{"name":"Jane","surname":"Smith","age":25},"patch":{"phoneNumber":"3","cityName":"Atlantis"}},
+                  {"id":{"name":"Jane","surname":"Smith"},"patch":{"phoneNumber":"4","cityName":"New York"}},
+                  {"id":{"name":"Alice","surname":"Johnson","age":40},"patch":{"phoneNumber":"5","cityName":"New York"}},
+                  {"id":{"name":"Alice","surname":"Johnson","age":40},"patch":{"phoneNumber":"6","cityName":"San Diego"}}
+                ]
+                """;
+
+        mockMvc.perform(patch("/persons/bulk").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.processed").value(6))
+                .andExpect(jsonPath("$.affected").value(3))
+                .andExpect(jsonPath("$.counts").value(contains(1, 0, 0, 0, 1, 1)))
+                .andExpect(jsonPath("$.failures[*].row").value(contains(3, 4)))
+                .andExpect(jsonPath("$.failures[*].status").value(contains("CITY_NOT_FOUND", "INVALID")));
+
+        mockMvc.perform(get("/persons/John/Doe/30"))
+                .andExpect(jsonPath("$.cityName").value("San Diego"));
+        mockMvc.perform(get("/persons/Alice/Johnson/40"))
+                .andExpect(jsonPath("$.phoneNumber").value("6"))
+                .andExpect(jsonPath("$.cityName").value("San Diego"));
+    }
+
+    @Test
+    void deletesKeysCaseInsensitivelyAndCountsRepeatsOnce() throws Exception {
+        String body = """
+                [
+                  {"name":"john","surname":"DOE","age":30},
+                  {"name":"John","surname":"Doe","age":30},
+                  {"name":"Nobody","surname":"Here","age":1},
+                  {"name":"Tom","surname":"DeLonge"},
+                  {"name":"Mark","surname":"Hoppus","age":50}
+                ]
+                """;
+
+        mockMvc.perform(delete("/persons/bulk").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.processed").value(5))
+                .andExpect(jsonPath("$.affected").value(2))
+                .andExpect(jsonPath("$.counts").value(contains(1, 0, 0, 0, 1)))
+                .andExpect(jsonPath("$.failures[*].row").value(contains(4)));
+
+        mockMvc.perform(get("/persons/John/Doe/30")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/persons/Mark/Hoppus/50")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/persons/Tom/DeLonge/50")).andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,146 @@
+package com.karasov.hibernatehw.controller;
+
+import com.karasov.hibernatehw.dto.PatchPersonDto;
+import com.karasov.hibernatehw.entity.City;
+import com.karasov.hibernatehw.repository.CityRepository;
+import com.karasov.hibernatehw.service.PersonService;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Проверяет условные GET: версии меняются только после фиксации записи, поэтому тест не транзакционный
+ * и возвращает данные в исходное состояние после себя.
+ */
+@SpringBootTest(properties = "persons.etag.enabled=true")
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+@AutoConfigureMockMvc
+class PersonEtagTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PersonService service;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CityRepository cityRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void tearDown() {
+        service.patchPerson("John", "Doe", 30, new PatchPersonDto("1234567890", "New York"));
+        service.deletePerson("Ann", "Lee", 20);
+    }
+
+    @Test
+    void unchangedCityListIsNotModifiedWithoutQueries() throws Exception {
+        String etag = etag("/persons/by-city?city=New York");
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        mockMvc.perform(get("/persons/by-city").param("city", "new york").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+        mockMvc.perform(get("/persons/by-city").param("city", "New York")
+                        .accept(MediaType.APPLICATION_NDJSON)
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    void movingPersonChangesListsOfBothCities() throws Exception {
+        String newYork = etag("/persons/by-city?city=New York");
+        String sanDiego = etag("/persons/by-city?city=San Diego");
+        String losAngeles = etag("/persons/by-city?city=Los Angeles");
+
+        mockMvc.perform(patch("/persons/John/Doe/30").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"phoneNumber\":\"555\",\"cityName\":\"San Diego\"}"))
+                .andExpect(status().isOk());
+
+        assertModified("/persons/by-city?city=New York", newYork);
+        assertModified("/persons/by-city?city=San Diego", sanDiego);
+        mockMvc.perform(get("/persons/by-city").param("city", "Los Angeles").header(HttpHeaders.IF_NONE_MATCH, losAngeles))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void creatingPersonChangesOnlyAffectedTags() throws Exception {
+        String john = etag("/persons/John/Doe/30");
+        String ann = etag("/persons?name=Ann&surname=Lee");
+        String byAge = etag("/persons/by-age?age=200");
+        String byAgePage = etag("/persons/by-age/page?age=200&size=2");
+
+        mockMvc.perform(post("/persons").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Ann\",\"surname\":\"Lee\",\"age\":20,\"phoneNumber\":\"1\",\"cityName\":\"Los Angeles\"}"))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(get("/persons/John/Doe/30").header(HttpHeaders.IF_NONE_MATCH, john))
+                .andExpect(status().isNotModified());
+        assertModified("/persons?name=ann&surname=LEE", ann);
+        assertModified("/persons/by-age?age=200", byAge);
+        assertModified("/persons/by-age/page?age=200&size=2", byAgePage);
+    }
+
+    @Test
+    void renamingCityChangesAllTags() throws Exception {
+        String john = etag("/persons/John/Doe/30");
+        String newYork = etag("/persons/by-city?city=New York");
+        String losAngeles = etag("/persons/by-city?city=Los Angeles");
+
+        renameCity("New York", "New Amsterdam");
+        try {
+            assertModified("/persons/John/Doe/30", john);
+            assertModified("/persons/by-city?city=Los Angeles", losAngeles);
+            assertModified("/persons/by-city?city=New York", newYork);
+        } finally {
+            renameCity("New Amsterdam", "New York");
+        }
+    }
+
+    private void renameCity(String from, String to) {
+        transactionTemplate.executeWithoutResult(status -> {
+            City city = cityRepository.findCityByName(from).orElseThrow();
+            city.setName(to);
+        });
+    }
+
+    private String etag(String uri) throws Exception {
+        String etag = mockMvc.perform(get(uri)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).startsWith("W/\"");
+        return etag;
+    }
+
+    private void assertModified(String uri, String etag) throws Exception {
+        String current = mockMvc.perform(get(uri).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(current).isNotEqualTo(etag);
+    }
+}
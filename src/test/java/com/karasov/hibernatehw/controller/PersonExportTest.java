@@ -0,0 +1,151 @@
+package com.karasov.hibernatehw.controller;
+
+import com.karasov.hibernatehw.dto.PersonDto;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+@AutoConfigureMockMvc
+class PersonExportTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void exportsGzipCsvInKeyOrderAndResumesAfterKey() throws Exception {
+        List<PersonDto> persons = personsInKeyOrder();
+
+        MvcResult full = export(get("/persons/export").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"));
+
+        assertThat(full.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(full.getResponse().getContentType()).isEqualTo("text/csv");
+        List<String> lines = gunzip(full.getResponse().getContentAsByteArray()).lines().toList();
+        assertThat(lines.get(0)).isEqualTo("name,surname,age,phoneNumber,cityName");
+        assertThat(lines.subList(1, lines.size())).containsExactlyElementsOf(persons.stream()
+                .map(p -> String.join(",", p.name(), p.surname(), String.valueOf(p.age()),
+                        p.phoneNumber(), p.cityName()))
+                .toList());
+
+        PersonDto last = persons.get(2);
+        MvcResult resumed = export(get("/persons/export")
+                .param("afterName", last.name())
+                .param("afterSurname", last.surname())
+                .param("afterAge", String.valueOf(last.age())));
+
+        assertThat(resumed.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+        List<String> rest = resumed.getResponse().getContentAsString().lines().skip(1).toList();
+        assertThat(rest).hasSize(persons.size() - 3);
+        assertThat(rest.get(0)).startsWith(persons.get(3).name() + "," + persons.get(3).surname() + ",");
+    }
+
+    @Test
+    void exportsLengthPrefixedBinary() throws Exception {
+        MvcResult result = export(get("/persons/export").accept(PersonBinaryWriter.MEDIA_TYPE_VALUE));
+
+        assertThat(result.getResponse().getContentType()).isEqualTo(PersonBinaryWriter.MEDIA_TYPE_VALUE);
+        assertThat(readBinary(new ByteArrayInputStream(result.getResponse().getContentAsByteArray())))
+                .containsExactlyElementsOf(personsInKeyOrder());
+    }
+
+    @Test
+    void rejectsPartialResumeKey() throws Exception {
+        mockMvc.perform(get("/persons/export").param("afterName", "John"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private MvcResult export(RequestBuilder requestBuilder) throws Exception {
+        MvcResult started = mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, startsWith("attachment")))
+                .andReturn();
+    }
+
+    private List<PersonDto> personsInKeyOrder() {
+        return jdbcTemplate.query("""
+                        SELECT p.name, p.surname, p.age, p.phone_number, c.name
+                        FROM person p JOIN city c ON c.id = p.city_id
+                        ORDER BY p.name, p.surname, p.age
+                        """,
+                (rs, rowNum) -> new PersonDto(rs.getString(1), rs.getString(2), rs.getInt(3),
+                        rs.getString(4), rs.getString(5)));
+    }
+
+    private static String gunzip(byte[] bytes) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static List<PersonDto> readBinary(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] magic = new byte[4];
+        data.readFully(magic);
+        assertThat(new String(magic, StandardCharsets.US_ASCII)).isEqualTo("PRS1");
+        List<PersonDto> persons = new ArrayList<>();
+        for (int length = readVarint(data); length != 0; length = readVarint(data)) {
+            byte[] record = new byte[length];
+            data.readFully(record);
+            DataInputStream fields = new DataInputStream(new ByteArrayInputStream(record));
+            persons.add(new PersonDto(readString(fields), readString(fields), readVarint(fields),
+                    readString(fields), readString(fields)));
+            assertThat(fields.available()).isZero();
+        }
+        assertThat(data.available()).isZero();
+        return persons;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readVarint(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
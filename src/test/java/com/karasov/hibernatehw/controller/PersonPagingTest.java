@@ -0,0 +1,185 @@
+package com.karasov.hibernatehw.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonPageDto;
+import com.karasov.hibernatehw.entity.City;
+import com.karasov.hibernatehw.repository.CityRepository;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Keyset-страницы {@code /persons/by-city/page} и {@code /persons/by-age/page} и потоковый NDJSON.
+ * Люди отдельного города совпадают по имени и фамилии и различаются возрастом, поэтому границы страниц
+ * проходят внутри групп с одинаковым началом ключа сортировки.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+@AutoConfigureMockMvc
+class PersonPagingTest {
+
+    private static final String CITY = "Paging City";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CityRepository cityRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private City city;
+
+    @BeforeEach
+    void setUp() {
+        city = cityRepository.save(new City(null, CITY));
+        for (String surname : List.of("Same", "Other")) {
+            for (int age = 20; age < 23; age++) {
+                jdbcTemplate.update("""
+                        INSERT INTO person (name, surname, age, phone_number, city_id)
+                        VALUES ('Pager', ?, ?, '5550000', ?)
+                        """, surname, age, city.getId());
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM person WHERE city_id = ?", city.getId());
+        cityRepository.delete(city);
+    }
+
+    @Test
+    void cityPagesFollowCursorAcrossDuplicateSortKeysToLastPage() throws Exception {
+        List<PersonDto> expected = jdbcTemplate.query("""
+                        SELECT name, surname, age, phone_number FROM person WHERE city_id = ?
+                        ORDER BY name, surname, age
+                        """,
+                (rs, rowNum) -> new PersonDto(rs.getString(1), rs.getString(2), rs.getInt(3),
+                        rs.getString(4), CITY),
+                city.getId());
+
+        List<PersonDto> collected = collectPages(() -> get("/persons/by-city/page").param("city", CITY), 2, 3);
+
+        assertThat(collected).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void agePagesFollowCursorAcrossDuplicateAgesToLastPage() throws Exception {
+        List<List<Object>> expected = jdbcTemplate.query("""
+                        SELECT name, surname, age FROM person WHERE age < 23
+                        ORDER BY age, name, surname
+                        """,
+                (rs, rowNum) -> List.of(rs.getString(1), rs.getString(2), rs.getInt(3)));
+
+        List<PersonDto> collected = collectPages(() -> get("/persons/by-age/page").param("age", "23"), 2,
+                (expected.size() + 1) / 2);
+
+        assertThat(collected).extracting(p -> List.<Object>of(p.name(), p.surname(), p.age()))
+                .containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void pageHoldingTheRestHasNoCursor() throws Exception {
+        PersonPageDto page = page(get("/persons/by-city/page").param("city", CITY).param("size", "6"));
+
+        assertThat(page.items()).hasSize(6);
+        assertThat(page.nextCursor()).isNull();
+    }
+
+    @Test
+    void malformedOrTamperedCursorIsBadRequest() throws Exception {
+        List<String> cursors = List.of(
+                "not base64!",
+                encode("Pager\0Same"),
+                encode("Pager\0Same\0twenty"));
+        for (String cursor : cursors) {
+            mockMvc.perform(get("/persons/by-city/page").param("city", CITY).param("cursor", cursor))
+                    .andExpect(status().isBadRequest());
+            mockMvc.perform(get("/persons/by-age/page").param("age", "23").param("cursor", cursor))
+                    .andExpect(status().isBadRequest());
+        }
+    }
+
+    @Test
+    void streamsCityAsNewlineTerminatedJsonLines() throws Exception {
+        MvcResult started = mockMvc.perform(get("/persons/by-city").param("city", CITY)
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(MediaType.parseMediaType(result.getResponse().getContentType()))
+                .isEqualTo(MediaType.APPLICATION_NDJSON);
+        String body = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertThat(body).endsWith("\n");
+        List<PersonDto> persons = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            assertThat(line).startsWith("{").endsWith("}");
+            persons.add(objectMapper.readValue(line, PersonDto.class));
+        }
+        assertThat(persons).hasSize(6).allMatch(p -> p.cityName().equals(CITY));
+    }
+
+    /**
+     * Проходит страницы по токенам продолжения до страницы без токена.
+     *
+     * @return Записи всех страниц по порядку.
+     */
+    private List<PersonDto> collectPages(Supplier<MockHttpServletRequestBuilder> request, int size,
+                                         int expectedPages) throws Exception {
+        List<PersonDto> collected = new ArrayList<>();
+        PersonPageDto page = page(request.get().param("size", String.valueOf(size)));
+        int pages = 1;
+        collected.addAll(page.items());
+        while (page.nextCursor() != null) {
+            assertThat(page.items()).hasSize(size);
+            page = page(request.get().param("size", String.valueOf(size)).param("cursor", page.nextCursor()));
+            pages++;
+            collected.addAll(page.items());
+        }
+        assertThat(pages).isEqualTo(expectedPages);
+        return collected;
+    }
+
+    private PersonPageDto page(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        String body = mockMvc.perform(requestBuilder)
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        return objectMapper.readValue(body, PersonPageDto.class);
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,130 @@
+package com.karasov.hibernatehw.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonPageDto;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItems;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+@AutoConfigureMockMvc
+@Transactional
+class PersonSearchTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void findsByPrefixOfNameOrSurname() throws Exception {
+        mockMvc.perform(get("/persons/search").param("q", "Jo"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[*].surname").value(hasItems("Doe", "Johnson")));
+        mockMvc.perform(get("/persons/search").param("q", "delon"))
+                .andExpect(jsonPath("$.items[0].name").value("Tom"));
+    }
+
+    @Test
+    void toleratesTypos() throws Exception {
+        mockMvc.perform(get("/persons/search").param("q", "jonh doe"))
+                .andExpect(jsonPath("$.items[0].name").value("John"))
+                .andExpect(jsonPath("$.items[0].surname").value("Doe"));
+        mockMvc.perform(get("/persons/search").param("q", "hopus"))
+                .andExpect(jsonPath("$.items[0].surname").value("Hoppus"));
+    }
+
+    @Test
+    void returnsEveryPersonSharingNameAndSurname() throws Exception {
+        mockMvc.perform(post("/persons").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"John\",\"surname\":\"Doe\",\"age\":31,\"phoneNumber\":\"1\",\"cityName\":\"San Diego\"}"))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(get("/persons/search").param("q", "john doe"))
+                .andExpect(jsonPath("$.items[0].age").value(30))
+                .andExpect(jsonPath("$.items[1].age").value(31));
+    }
+
+    @Test
+    void pagesThroughResultsWithoutRepeats() throws Exception {
+        List<PersonDto> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            var request = get("/persons/search").param("q", "d").param("size", "2");
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+            PersonPageDto page = objectMapper.readValue(
+                    mockMvc.perform(request).andReturn().getResponse().getContentAsString(), PersonPageDto.class);
+            assertThat(page.items()).hasSizeLessThanOrEqualTo(2);
+            seen.addAll(page.items());
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertThat(seen).doesNotHaveDuplicates().hasSizeGreaterThan(2);
+    }
+
+    @Test
+    void pagesFollowOnePageOrderFromPrefixesIntoSimilarNames() throws Exception {
+        List<PersonDto> whole = page("jo", 100, null).items();
+        List<PersonDto> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            PersonPageDto page = page("jo", 1, cursor);
+            seen.addAll(page.items());
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertThat(whole).extracting(PersonDto::name).startsWith("John");
+        assertThat(seen).containsExactlyElementsOf(whole);
+    }
+
+    @Test
+    void blankQueryFindsNothingAndBadCursorIsRejected() throws Exception {
+        mockMvc.perform(get("/persons/search").param("q", "  "))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items").value(empty()));
+        mockMvc.perform(get("/persons/search").param("q", "jo").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/persons/search").param("q", "jo").param("cursor", encode("John\0Doe\030\0-1.0")))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/persons/search").param("q", "jo").param("cursor", encode("John\0Doe\030\0NaN")))
+                .andExpect(status().isBadRequest());
+    }
+
+    private PersonPageDto page(String query, int size, String cursor) throws Exception {
+        var request = get("/persons/search").param("q", query).param("size", String.valueOf(size));
+        if (cursor != null) {
+            request.param("cursor", cursor);
+        }
+        return objectMapper.readValue(
+                mockMvc.perform(request).andReturn().getResponse().getContentAsString(), PersonPageDto.class);
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,225 @@
+package com.karasov.hibernatehw.controller;
+
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonPageDto;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.hasItems;
+
+/**
+ * Проверяет, что профиль {@code reactive} обслуживает тот же HTTP-контракт, что и {@link PersonController}.
+ * R2DBC требуется адрес базы, поэтому вместо подмены DataSource через zonky база поднимается явно
+ * и общая для JDBC (Liquibase) и R2DBC.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "persons.batch.chunk-size=2")
+@ActiveProfiles({"test", "reactive"})
+class ReactivePersonControllerTest {
+
+    private static final EmbeddedPostgres POSTGRES = start();
+
+    @Autowired
+    private WebTestClient client;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> POSTGRES.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+        registry.add("spring.r2dbc.url", () -> "r2dbc:postgresql://localhost:" + POSTGRES.getPort() + "/postgres");
+        registry.add("spring.r2dbc.username", () -> "postgres");
+        registry.add("spring.r2dbc.password", () -> "postgres");
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        POSTGRES.close();
+    }
+
+    @Test
+    void getsPersonByKeyAndByName() {
+        client.get().uri("/persons/John/Doe/30").exchange()
+                .expectStatus().isOk()
+                .expectBody(PersonDto.class)
+                .isEqualTo(new PersonDto("John", "Doe", 30, "1234567890", "New York"));
+
+        client.get().uri("/persons?name=jane&surname=SMITH").exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.cityName").isEqualTo("New York");
+
+        client.get().uri("/persons/Nobody/Here/1").exchange()
+                .expectStatus().isNotFound()
+                .expectBody(String.class)
+                .isEqualTo("Person with name 'Nobody', surname 'Here' and age 1 not found.");
+    }
+
+    @Test
+    void streamsListsAsJsonArrayAndNdjson() {
+        client.get().uri("/persons/by-city?city=los angeles").exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$[*].name").value(hasItems("Alice", "Dug"));
+
+        List<PersonDto> persons = client.get().uri("/persons/by-age?age=31")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(PersonDto.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertThat(persons).extracting(PersonDto::age).isSorted().allMatch(age -> age < 31);
+        assertThat(persons).extracting(PersonDto::name).contains("Jane", "John");
+    }
+
+    @Test
+    void pagesByCityWithCursor() {
+        List<String> names = new ArrayList<>();
+        String cursor = null;
+        do {
+            String after = cursor;
+            PersonPageDto page = client.get().uri(builder -> builder.path("/persons/by-city/page")
+                            .queryParam("city", "New York")
+                            .queryParam("size", 1)
+                            .queryParamIfPresent("cursor", Optional.ofNullable(after))
+                            .build())
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody(PersonPageDto.class)
+                    .returnResult()
+                    .getResponseBody();
+            assertThat(page.items()).hasSizeLessThanOrEqualTo(1);
+            page.items().forEach(person -> names.add(person.name()));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertThat(names).isSorted().contains("Jane", "John");
+
+        client.get().uri("/persons/by-city/page?city=New York&cursor=%%%").exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void createsPatchesAndDeletesPerson() {
+        PersonDto person = new PersonDto("Reactive", "Create", 33, "5550000", "San Diego");
+
+        client.post().uri("/persons").bodyValue(person).exchange()
+                .expectStatus().isCreated()
+                .expectHeader().value("Location", endsWith("/persons/Reactive/Create/33"));
+        client.post().uri("/persons").bodyValue(person).exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+        client.post().uri("/persons").bodyValue(new PersonDto("Reactive", "Nowhere", 33, "1", "Atlantis"))
+                .exchange()
+                .expectStatus().isNotFound();
+
+        client.patch().uri("/persons/Reactive/Create/33")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"phoneNumber\":\"5551111\",\"cityName\":\"new york\"}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Integer.class).isEqualTo(1);
+        client.get().uri("/persons/Reactive/Create/33").exchange()
+                .expectBody().jsonPath("$.cityName").isEqualTo("New York");
+
+        client.delete().uri("/persons?name=reactive&surname=create&age=33").exchange()
+                .expectStatus().isOk();
+        client.get().uri("/persons/Reactive/Create/33").exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void importsNdjsonAndCsvBatches() {
+        String ndjson = """
+                {"name":"Batch","surname":"One","age":20,"phoneNumber":"1","cityName":"new york"}
+                {"name":"John","surname":"Doe","age":30,"phoneNumber":"2","cityName":"New York"}
+                {"name":"Batch","surname":"Two","age":21,"phoneNumber":"3","cityName":"Atlantis"}
+                {"name":"Batch","surname":"One","age":20,"phoneNumber":"4","cityName":"San Diego"}
+                {"name":"Batch","surname":"Three","age":22,"phoneNumber":"5","cityName":"Los Angeles"}
+                """;
+
+        client.post().uri("/persons/batch").contentType(MediaType.APPLICATION_NDJSON).bodyValue(ndjson).exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.processed").isEqualTo(5)
+                .jsonPath("$.succeeded").isEqualTo(2)
+                .jsonPath("$.failures[*].row").value(contains(2, 3, 4))
+                .jsonPath("$.failures[*].status").value(contains("CONFLICT", "CITY_NOT_FOUND", "CONFLICT"));
+
+        String csv = """
+                name,surname,age,phoneNumber,cityName
+                Csv,Lee,20,1,New York
+                Csv,Park,22,5,San Diego
+                """;
+
+        client.post().uri("/persons/batch").contentType(MediaType.parseMediaType("text/csv")).bodyValue(csv)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.processed").isEqualTo(2)
+                .jsonPath("$.succeeded").isEqualTo(2)
+                .jsonPath("$.failures").isEmpty();
+    }
+
+    @Test
+    void patchesAndDeletesInBulk() {
+        client.post().uri("/persons/batch").contentType(MediaType.APPLICATION_NDJSON).bodyValue("""
+                        {"name":"Bulk","surname":"One","age":40,"phoneNumber":"1","cityName":"New York"}
+                        {"name":"Bulk","surname":"Two","age":41,"phoneNumber":"2","cityName":"New York"}
+                        """)
+                .exchange()
+                .expectStatus().isOk();
+
+        client.patch().uri("/persons/bulk").contentType(MediaType.APPLICATION_JSON).bodyValue("""
+                        [
+                          {"id":{"name":"Bulk","surname":"One","age":40},"patch":{"phoneNumber":"3","cityName":"san diego"}},
+                          {"id":{"name":"Bulk","surname":"Two","age":41},"patch":{"phoneNumber":"4","cityName":"Atlantis"}},
+                          {"id":{"name":"Bulk","surname":"None","age":42},"patch":{"phoneNumber":"5","cityName":"New York"}}
+                        ]
+                        """)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.counts").value(contains(1, 0, 0))
+                .jsonPath("$.failures[*].status").value(contains("CITY_NOT_FOUND"));
+        client.get().uri("/persons/Bulk/One/40").exchange()
+                .expectBody().jsonPath("$.cityName").isEqualTo("San Diego");
+
+        client.method(HttpMethod.DELETE).uri("/persons/bulk").contentType(MediaType.APPLICATION_JSON).bodyValue("""
+                        [{"name":"bulk","surname":"one","age":40},{"name":"Bulk","surname":"One","age":40},
+                         {"name":"Bulk","surname":"Two","age":41}]
+                        """)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.affected").isEqualTo(2)
+                .jsonPath("$.counts").value(contains(1, 0, 1));
+    }
+
+    private static EmbeddedPostgres start() {
+        try {
+            return EmbeddedPostgres.builder().start();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
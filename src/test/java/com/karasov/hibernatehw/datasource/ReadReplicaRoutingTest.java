@@ -0,0 +1,140 @@
+package com.karasov.hibernatehw.datasource;
+
+import com.karasov.hibernatehw.cache.PersonVersions;
+import com.karasov.hibernatehw.dto.PatchPersonDto;
+import com.karasov.hibernatehw.service.PersonService;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import liquibase.Liquibase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.sql.Connection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Маршрутизация на двух встроенных базах: основной и реплике. Реплика получает ту же схему и данные,
+ * но у John Doe на ней другой номер телефона, поэтому по результату чтения видно, откуда оно пришло.
+ * Кэши Hibernate выключены, чтобы каждое чтение доходило до базы.
+ */
+@SpringBootTest(properties = {
+        "persons.datasource.routing.enabled=true",
+        "persons.etag.enabled=true",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+})
+@ActiveProfiles("test")
+class ReadReplicaRoutingTest {
+
+    private static final EmbeddedPostgres PRIMARY = start();
+    private static final EmbeddedPostgres REPLICA = startReplica();
+
+    @Autowired
+    private PersonService service;
+
+    @Autowired
+    private PersonVersions versions;
+
+    private final JdbcTemplate primary = new JdbcTemplate(PRIMARY.getPostgresDatabase());
+
+    @DynamicPropertySource
+    static void databases(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> PRIMARY.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+        registry.add("persons.datasource.routing.replicas[0].url", () -> REPLICA.getJdbcUrl("postgres", "postgres"));
+        registry.add("persons.datasource.routing.replicas[0].username", () -> "postgres");
+        registry.add("persons.datasource.routing.replicas[0].password", () -> "postgres");
+    }
+
+    /**
+     * {@code ServletTestExecutionListener} привязывает к потоку теста mock-запрос; без его сброса
+     * чтение после записи в любом тесте шло бы в основной источник.
+     */
+    @BeforeEach
+    @AfterEach
+    void resetRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        PRIMARY.close();
+        REPLICA.close();
+    }
+
+    @Test
+    void readsGoToReplica() {
+        assertThat(service.getPerson("John", "Doe", 30).phoneNumber()).isEqualTo("replica");
+        assertThat(service.getPersonsByCity("New York"))
+                .anySatisfy(person -> assertThat(person.phoneNumber()).isEqualTo("replica"));
+    }
+
+    @Test
+    void writesGoToPrimary() {
+        int updated = service.patchPerson("Jane", "Smith", 25, new PatchPersonDto("written", "San Diego"));
+
+        assertThat(updated).isEqualTo(1);
+        assertThat(primary.queryForObject(
+                "SELECT phone_number FROM person WHERE name = 'Jane' AND surname = 'Smith'", String.class))
+                .isEqualTo("written");
+        assertThat(service.getPerson("Jane", "Smith", 25).phoneNumber()).isEqualTo("0987654321");
+    }
+
+    @Test
+    void readsAfterWriteInSameRequestStayOnPrimary() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        assertThat(service.getPerson("John", "Doe", 30).phoneNumber()).isEqualTo("replica");
+
+        service.patchPerson("Alice", "Johnson", 40, new PatchPersonDto("own write", "Los Angeles"));
+
+        assertThat(service.getPerson("Alice", "Johnson", 40).phoneNumber()).isEqualTo("own write");
+        assertThat(service.getPerson("John", "Doe", 30).phoneNumber()).isEqualTo("1234567890");
+    }
+
+    @Test
+    void readsUnderEtagStayOnPrimary() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        assertThat(service.getPerson("John", "Doe", 30).phoneNumber()).isEqualTo("replica");
+
+        versions.personTag("John", "Doe");
+
+        assertThat(service.getPerson("John", "Doe", 30).phoneNumber()).isEqualTo("1234567890");
+    }
+
+    private static EmbeddedPostgres start() {
+        try {
+            return EmbeddedPostgres.builder().start();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static EmbeddedPostgres startReplica() {
+        EmbeddedPostgres replica = start();
+        try (Connection connection = replica.getPostgresDatabase().getConnection()) {
+            new Liquibase("db/changelog/db.changelog-master.xml", new ClassLoaderResourceAccessor(),
+                    new JdbcConnection(connection)).update("");
+            connection.createStatement().execute(
+                    "UPDATE person SET phone_number = 'replica' WHERE name = 'John' AND surname = 'Doe'");
+            connection.commit();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return replica;
+    }
+}
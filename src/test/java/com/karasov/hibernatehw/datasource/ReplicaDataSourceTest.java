@@ -0,0 +1,87 @@
+package com.karasov.hibernatehw.datasource;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReplicaDataSourceTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicBoolean written = new AtomicBoolean();
+    private final DataSource primary = mock(DataSource.class);
+    private final DataSource first = mock(DataSource.class);
+    private final DataSource second = mock(DataSource.class);
+    private final Connection primaryConnection = mock(Connection.class);
+    private final Connection firstConnection = mock(Connection.class);
+    private final Connection secondConnection = mock(Connection.class);
+
+    private ReplicaDataSource replicaDataSource() throws SQLException {
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(first.getConnection()).thenReturn(firstConnection);
+        when(second.getConnection()).thenReturn(secondConnection);
+        return new ReplicaDataSource(primary, List.of(first, second), Duration.ofSeconds(30), written::get, clock::get);
+    }
+
+    @Test
+    void balancesReadsAcrossReplicas() throws SQLException {
+        ReplicaDataSource dataSource = replicaDataSource();
+
+        assertThat(List.of(dataSource.getConnection(), dataSource.getConnection(), dataSource.getConnection()))
+                .containsExactly(firstConnection, secondConnection, firstConnection);
+        verify(primary, never()).getConnection();
+    }
+
+    @Test
+    void ejectsFailingReplicaUntilEjectDurationPasses() throws SQLException {
+        ReplicaDataSource dataSource = replicaDataSource();
+        when(first.getConnection()).thenThrow(new SQLException("connection refused"));
+
+        assertThat(dataSource.getConnection()).isSameAs(secondConnection);
+        assertThat(dataSource.getConnection()).isSameAs(secondConnection);
+        assertThat(dataSource.getConnection()).isSameAs(secondConnection);
+        assertThat(dataSource.healthyReplicas()).isEqualTo(1);
+        verify(first, times(1)).getConnection();
+
+        clock.addAndGet(Duration.ofSeconds(31).toNanos());
+        doReturn(firstConnection).when(first).getConnection();
+
+        assertThat(dataSource.healthyReplicas()).isEqualTo(2);
+        assertThat(List.of(dataSource.getConnection(), dataSource.getConnection()))
+                .containsExactlyInAnyOrder(firstConnection, secondConnection);
+    }
+
+    @Test
+    void fallsBackToPrimaryWhenNoReplicaIsHealthy() throws SQLException {
+        ReplicaDataSource dataSource = replicaDataSource();
+        when(first.getConnection()).thenThrow(new SQLException("down"));
+        when(second.getConnection()).thenThrow(new SQLException("down"));
+
+        assertThat(dataSource.getConnection()).isSameAs(primaryConnection);
+        assertThat(dataSource.getConnection()).isSameAs(primaryConnection);
+        assertThat(dataSource.healthyReplicas()).isZero();
+    }
+
+    @Test
+    void sticksToPrimaryAfterWrite() throws SQLException {
+        ReplicaDataSource dataSource = replicaDataSource();
+        written.set(true);
+
+        assertThat(dataSource.getConnection()).isSameAs(primaryConnection);
+        verify(first, never()).getConnection();
+        verify(second, never()).getConnection();
+    }
+}
@@ -0,0 +1,87 @@
+package com.karasov.hibernatehw.migration;
+
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.Scope;
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
+import liquibase.changelog.FastCheckService;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Откат секционирования {@code person} (changeSet 10-14) возвращает несекционированную таблицу с теми же
+ * людьми, а повторное применение снова секционирует ее. Тест оставляет схему и данные в исходном состоянии.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+class ChangelogRollbackTest {
+
+    private static final String CHANGE_LOG = "db/changelog/db.changelog-master.xml";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void partitioningRollsBackToPlainTableAndAppliesAgain() throws Exception {
+        List<String> persons = persons();
+
+        try (Connection connection = dataSource.getConnection()) {
+            // История примененных changeSet и признак актуальной схемы кэшируются на процесс
+            resetChangeLogHistory();
+            Liquibase liquibase = new Liquibase(CHANGE_LOG, new ClassLoaderResourceAccessor(),
+                    new JdbcConnection(connection));
+            liquibase.rollback(5, new Contexts(), new LabelExpression());
+
+            assertThat(relationKind("person")).isEqualTo("r");
+            assertThat(relationKind("person_partitioned")).isNull();
+            assertThat(relationKind("person_key")).isNull();
+            assertThat(relationKind("idx_person_city_key")).isEqualTo("i");
+            assertThat(persons()).isEqualTo(persons);
+
+            resetChangeLogHistory();
+            liquibase.update(new Contexts(), new LabelExpression());
+        }
+
+        assertThat(relationKind("person")).isEqualTo("p");
+        assertThat(persons()).isEqualTo(persons);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM person_key", Integer.class))
+                .isEqualTo(persons.size());
+    }
+
+    private static void resetChangeLogHistory() {
+        Scope.getCurrentScope().getSingleton(ChangeLogHistoryServiceFactory.class).resetAll();
+        Scope.getCurrentScope().getSingleton(FastCheckService.class).clearCache();
+    }
+
+    private List<String> persons() {
+        return jdbcTemplate.queryForList("""
+                SELECT concat_ws(' ', name, surname, age, phone_number, city_id) FROM person
+                ORDER BY name, surname, age
+                """, String.class);
+    }
+
+    /**
+     * @return Вид отношения из {@code pg_class} или {@code null}, если его нет.
+     */
+    private String relationKind(String name) {
+        return jdbcTemplate.queryForList("SELECT relkind::text FROM pg_class WHERE oid = to_regclass(?)",
+                String.class, name).stream().findFirst().orElse(null);
+    }
+}
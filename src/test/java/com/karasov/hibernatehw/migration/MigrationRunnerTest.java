@@ -0,0 +1,62 @@
+package com.karasov.hibernatehw.migration;
+
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import liquibase.exception.ValidationFailedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Схему теста уже применил встроенный запуск Liquibase; проверяется, что запуск миграций приложением
+ * совместим с ним и что при неизменном changelog проверка контрольных сумм не выполняется.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+class MigrationRunnerTest {
+
+    private static final String CHANGE_LOG = "classpath:/db/changelog/db.changelog-master.xml";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private String checksum;
+
+    @BeforeEach
+    void setUp() {
+        checksum = jdbcTemplate.queryForObject("SELECT md5sum FROM databasechangelog WHERE id = '1'", String.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("UPDATE databasechangelog SET md5sum = ? WHERE id = '1'", checksum);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + MigrationRunner.FINGERPRINT_TABLE);
+    }
+
+    @Test
+    void skipsValidationWhenChangelogIsUnchanged() throws Exception {
+        new MigrationRunner(dataSource, CHANGE_LOG, true, true).afterPropertiesSet();
+        String fingerprint = jdbcTemplate.queryForObject(
+                "SELECT sha256 FROM " + MigrationRunner.FINGERPRINT_TABLE, String.class);
+        assertThat(fingerprint).isEqualTo(new MigrationRunner(dataSource, CHANGE_LOG, true, true).fingerprint());
+
+        // Контрольная сумма, которую Liquibase отверг бы при проверке changelog.
+        jdbcTemplate.update("UPDATE databasechangelog SET md5sum = left(md5sum, 2) || repeat('f', 32) WHERE id = '1'");
+
+        new MigrationRunner(dataSource, CHANGE_LOG, true, true).afterPropertiesSet();
+        assertThatThrownBy(() -> new MigrationRunner(dataSource, CHANGE_LOG, true, false).afterPropertiesSet())
+                .hasRootCauseInstanceOf(ValidationFailedException.class);
+    }
+}
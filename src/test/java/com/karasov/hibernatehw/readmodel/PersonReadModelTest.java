@@ -0,0 +1,216 @@
+package com.karasov.hibernatehw.readmodel;
+
+import com.karasov.hibernatehw.cache.CityDirectory;
+import com.karasov.hibernatehw.dto.BulkPatchItemDto;
+import com.karasov.hibernatehw.dto.PatchPersonDto;
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonKeyDto;
+import com.karasov.hibernatehw.dto.PersonPageDto;
+import com.karasov.hibernatehw.entity.Person;
+import com.karasov.hibernatehw.handler.exception.PersonNotFoundException;
+import com.karasov.hibernatehw.repository.PersonRepository;
+import com.karasov.hibernatehw.repository.SearchHit;
+import com.karasov.hibernatehw.service.PersonService;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Проверяет, что модель чтения обслуживает выборки без запросов к базе и совпадает с базой после записей
+ * сервиса. Модель меняется после фиксации записи, поэтому тест не транзакционный и возвращает данные после себя.
+ */
+@SpringBootTest(properties = "persons.read-model.enabled=true")
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+class PersonReadModelTest {
+
+    private static final List<String> CITIES = List.of("New York", "Los Angeles", "San Diego");
+
+    @Autowired
+    private PersonReadModel readModel;
+
+    @Autowired
+    private PersonService service;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private CityDirectory cityDirectory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    void setUp() {
+        readModel.reload();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.patchPerson("John", "Doe", 30, new PatchPersonDto("1234567890", "New York"));
+        service.patchPerson("Jane", "Smith", 25, new PatchPersonDto("0987654321", "New York"));
+        service.deletePerson("Ann", "Lee", 20);
+        service.deletePerson("alice", "Zed", 40);
+        service.deletePerson("Bob", "Zed", 40);
+        jdbcTemplate.update("DELETE FROM person WHERE name = 'Bypass'");
+        jdbcTemplate.update("""
+                INSERT INTO person (name, surname, age, phone_number, city_id)
+                VALUES ('Mark', 'Hoppus', 50, '6677889900', 3)
+                ON CONFLICT DO NOTHING
+                """);
+        readModel.reload();
+    }
+
+    @Test
+    void servesCityAndAgeReadsWithoutStatements() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<PersonDto> losAngeles = service.getPersonsByCity("los angeles");
+        PersonPageDto first = service.getPersonByAgeLowerThanAsc(200, null, 4);
+        PersonPageDto second = service.getPersonByAgeLowerThanAsc(200, first.nextCursor(), 4);
+        List<PersonDto> streamed = new ArrayList<>();
+        service.streamPersonsByCity("San Diego", streamed::add);
+
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(losAngeles).extracting(PersonDto::name).containsExactly("Alice", "Dug");
+        assertThat(first.items()).extracting(PersonDto::age).containsExactly(25, 30, 35, 40);
+        assertThat(second.items()).extracting(PersonDto::name).containsExactly("Mark", "Tom");
+        assertThat(second.nextCursor()).isNull();
+        assertThat(streamed).extracting(PersonDto::surname).containsExactly("Hoppus", "DeLonge");
+        assertMatchesDatabase();
+    }
+
+    @Test
+    void servesPointLookupsWithoutStatements() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        PersonDto byKey = service.getPerson("John", "Doe", 30);
+        PersonDto byName = service.getPersonByNameAndSurname("MARK", "hoppus");
+
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(byKey).isEqualTo(new PersonDto("John", "Doe", 30, "1234567890", "New York"));
+        assertThat(byName).isEqualTo(new PersonDto("Mark", "Hoppus", 50, "6677889900", "San Diego"));
+        assertThatThrownBy(() -> service.getPerson("john", "Doe", 30)).isInstanceOf(PersonNotFoundException.class);
+        assertThatThrownBy(() -> service.getPersonByNameAndSurname("Mark", "Hoppu"))
+                .isInstanceOf(PersonNotFoundException.class);
+        assertThatThrownBy(() -> service.getPersonByNameAndSurname("Mar", "k Hoppus"))
+                .isInstanceOf(PersonNotFoundException.class);
+    }
+
+    @Test
+    void followsServiceWrites() {
+        service.createPerson(new PersonDto("Ann", "Lee", 20, "5550000", "san diego"));
+        service.patchPerson("John", "Doe", 30, new PatchPersonDto("1", "Los Angeles"));
+        service.patchPersons(List.of(new BulkPatchItemDto(
+                new PersonKeyDto("Jane", "Smith", 25), new PatchPersonDto("2", "San Diego"))));
+        service.deletePersons(List.of(new PersonKeyDto("mark", "HOPPUS", 50)));
+
+        assertThat(readModel.getPersonsByCity("San Diego", null, 10).orElseThrow())
+                .containsExactly(
+                        new PersonDto("Ann", "Lee", 20, "5550000", "San Diego"),
+                        new PersonDto("Jane", "Smith", 25, "2", "San Diego"),
+                        new PersonDto("Tom", "DeLonge", 50, "1122334455", "San Diego"));
+        assertThat(readModel.getPersonsByCity("New York", null, 10).orElseThrow()).isEmpty();
+        assertMatchesDatabase();
+
+        service.deletePerson("ANN", "lee", 20);
+        service.createPerson(new PersonDto("Ann", "Lee", 20, "5551111", "New York"));
+
+        assertThat(readModel.getPersonByAgeLowerThanAsc(21, null, 10).orElseThrow())
+                .containsExactly(new PersonDto("Ann", "Lee", 20, "5551111", "New York"));
+        assertMatchesDatabase();
+    }
+
+    @Test
+    void ordersMixedCaseNamesLikeDatabase() {
+        service.createPerson(new PersonDto("alice", "Zed", 40, "1", "New York"));
+        service.createPerson(new PersonDto("Bob", "Zed", 40, "2", "New York"));
+        long cityId = cityDirectory.findIdByName("New York").orElseThrow();
+
+        List<PersonDto> model = readModel.getPersonsByCity("New York", null, 10).orElseThrow();
+
+        // Строчные буквы идут после всех заглавных, как в String#compareTo, при любом правиле сортировки базы
+        assertThat(model).extracting(PersonDto::name).containsExactly("Bob", "Jane", "John", "alice");
+        assertThat(personRepository.getPersonsByCityIdAfter(cityId, new Person.PersonId("Bob", "Zed", 40), 10))
+                .containsExactlyElementsOf(model.subList(1, model.size()));
+        assertMatchesDatabase();
+    }
+
+    @Test
+    void reloadPicksUpWritesMadeElsewhere() {
+        jdbcTemplate.update("""
+                INSERT INTO person (name, surname, age, phone_number, city_id)
+                VALUES ('Bypass', 'Writer', 33, '1', 2)
+                """);
+
+        assertThat(service.getPersonsByCity("Los Angeles")).extracting(PersonDto::name).doesNotContain("Bypass");
+
+        readModel.reload();
+
+        assertThat(service.getPersonsByCity("Los Angeles")).extracting(PersonDto::name)
+                .containsExactly("Alice", "Bypass", "Dug");
+        assertMatchesDatabase();
+    }
+
+    @Test
+    void searchesPrefixesThenSimilarNamesAcrossPages() {
+        List<PersonDto> whole = service.searchPersons("jo", null, 20).items();
+        List<PersonDto> paged = new ArrayList<>();
+        PersonPageDto page = service.searchPersons("jo", null, 1);
+        paged.addAll(page.items());
+        while (page.nextCursor() != null) {
+            page = service.searchPersons("jo", page.nextCursor(), 1);
+            paged.addAll(page.items());
+        }
+
+        assertThat(readModel.search("jo", 0.3, null, 20).orElseThrow())
+                .extracting(SearchHit::person).containsExactlyElementsOf(whole);
+        assertThat(whole).extracting(PersonDto::surname).containsExactly("Doe", "Johnson", "Smith");
+        assertThat(paged).containsExactlyElementsOf(whole);
+        assertThat(service.searchPersons("jonh doe", null, 20).items().get(0).surname()).isEqualTo("Doe");
+        assertThat(service.searchPersons("hopus", null, 20).items().get(0).surname()).isEqualTo("Hoppus");
+    }
+
+    @Test
+    void searchFollowsServiceWrites() {
+        service.createPerson(new PersonDto("Ann", "Lee", 20, "5550000", "san diego"));
+
+        assertThat(service.searchPersons("ann l", null, 20).items()).extracting(PersonDto::surname)
+                .startsWith("Lee");
+
+        service.deletePerson("Ann", "Lee", 20);
+
+        assertThat(service.searchPersons("ann l", null, 20).items()).extracting(PersonDto::surname)
+                .doesNotContain("Lee");
+    }
+
+    private void assertMatchesDatabase() {
+        for (String city : CITIES) {
+            assertThat(readModel.getPersonsByCity(city, null, Integer.MAX_VALUE).orElseThrow())
+                    .containsExactlyElementsOf(personRepository.getPersonsByCityIdFirstPage(
+                            cityDirectory.findIdByName(city).orElseThrow(), 1000));
+        }
+        assertThat(readModel.getPersonByAgeLowerThanAsc(200, null, Integer.MAX_VALUE).orElseThrow())
+                .containsExactlyElementsOf(personRepository.getPersonByAgeLowerThanAscFirstPage(200, 1000));
+    }
+}
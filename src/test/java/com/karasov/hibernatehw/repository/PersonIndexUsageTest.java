@@ -0,0 +1,172 @@
+package com.karasov.hibernatehw.repository;
+
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет по EXPLAIN, что запросы {@link PersonRepository} могут обслуживаться индексами из changelog.
+ * Последовательное сканирование запрещено на время транзакции, поэтому на маленькой тестовой таблице
+ * планировщик выбирает индекс всегда, когда он применим, и {@code Seq Scan} в плане означает,
+ * что подходящего индекса нет.
+ * <p>
+ * Таблица {@code person} секционирована по городу, и в плане стоят индексы секций; {@link #explain(String)}
+ * заменяет их именами индексов {@code person} из changelog, от которых они созданы.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+@Transactional
+class PersonIndexUsageTest {
+
+    private static final String SELECT_PERSON_DTO = """
+            SELECT p.name, p.surname, p.age, p.phone_number, c.name
+            FROM person p
+            JOIN city c ON c.id = p.city_id
+            """;
+
+    /**
+     * Узел сортировки; строка {@code Sort Key} узла {@code Merge Append} под него не подходит.
+     */
+    private static final String SORT_NODE = "Sort  (";
+    private static final Pattern INDEX_NAME = Pattern.compile("(using|Bitmap Index Scan on) (\\w+)");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void disableSeqScan() {
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+    }
+
+    @Test
+    void findPersonDtoByIdUsesIndex() {
+        String plan = explain(SELECT_PERSON_DTO + """
+                WHERE p.name = 'John' AND p.surname = 'Doe' AND p.age = 30
+                  AND p.city_id = (SELECT k.city_id FROM person_key k
+                                   WHERE k.name = 'John' AND k.surname = 'Doe' AND k.age = 30)
+                """);
+
+        assertThat(plan).contains("pk_person_key", "pk_person").doesNotContain("Seq Scan");
+    }
+
+    @Test
+    void getPersonsByCityPageReadsOnePartitionInKeyOrder() {
+        long cityId = jdbcTemplate.queryForObject("SELECT id FROM city WHERE name = 'New York'", Long.class);
+        String plan = explain(SELECT_PERSON_DTO + """
+                WHERE p.city_id = %d
+                  AND (p.name COLLATE "C", p.surname COLLATE "C", p.age) > ('Jane', 'Smith', 25)
+                ORDER BY p.name COLLATE "C", p.surname COLLATE "C", p.age
+                LIMIT 100
+                """.formatted(cityId));
+
+        assertThat(plan).contains("on person_" + cityId + " p", "idx_person_key_order")
+                .doesNotContain("Append", "Seq Scan", SORT_NODE);
+    }
+
+    @Test
+    void getPersonByAgeLowerThanAscUsesAgeKeyIndexWithoutSort() {
+        String plan = explain(SELECT_PERSON_DTO + """
+                WHERE p.age < 40
+                  AND (p.age, p.name COLLATE "C", p.surname COLLATE "C") > (25, 'Jane', 'Smith')
+                ORDER BY p.age, p.name COLLATE "C", p.surname COLLATE "C"
+                LIMIT 100
+                """);
+
+        assertThat(plan).contains("idx_person_age_key").doesNotContain("Seq Scan", SORT_NODE);
+    }
+
+    @Test
+    void getPersonByNameAndSurnameUsesLowerCaseIndex() {
+        String plan = explain(SELECT_PERSON_DTO + """
+                WHERE LOWER(p.name) = LOWER('john') AND LOWER(p.surname) = LOWER('doe')
+                """);
+
+        assertThat(plan).contains("idx_person_lower_key").doesNotContain("Seq Scan");
+    }
+
+    @Test
+    void deletePersonUsesLowerCaseIndex() {
+        String plan = explain("""
+                DELETE FROM person
+                WHERE LOWER(name) = LOWER('john') AND LOWER(surname) = LOWER('doe') AND age = 30
+                """);
+
+        assertThat(plan).contains("idx_person_lower_key").doesNotContain("Seq Scan");
+    }
+
+    @Test
+    void searchReadsPrefixesFromPrefixIndexInOutputOrder() {
+        String plan = explain("""
+                SELECT p.name, p.surname, p.age
+                FROM person p
+                WHERE LOWER(p.name || ' ' || p.surname) ~>=~ 'jo'
+                  AND LOWER(p.name || ' ' || p.surname) ~<~ 'jp'
+                ORDER BY LOWER(p.name || ' ' || p.surname) USING ~<~, p.name COLLATE "C", p.surname COLLATE "C", p.age
+                LIMIT 20
+                """);
+
+        assertThat(plan).contains("using idx_person_name_prefix")
+                .doesNotContain("Seq Scan on person", SORT_NODE);
+    }
+
+    @Test
+    void searchFiltersSimilarNamesThroughTrigramIndex() {
+        // Отбор по порогу без порядка расстояния; на маленькой таблице иначе дешевле обойти индекс целиком.
+        // GIN и GiST здесь стоят одинаково, и планировщик берет любой из двух триграммных индексов.
+        jdbcTemplate.execute("SET LOCAL enable_indexscan = off");
+        jdbcTemplate.execute("SET LOCAL enable_indexonlyscan = off");
+        String plan = explain("""
+                SELECT p.name, p.surname, 'jonh do' <<-> LOWER(p.name || ' ' || p.surname) AS distance
+                FROM person p
+                WHERE 'jonh do' <% LOWER(p.name || ' ' || p.surname)
+                ORDER BY distance
+                LIMIT 20
+                """);
+
+        assertThat(plan).containsPattern("Bitmap Index Scan on idx_person_name_trgm(_gin)? ")
+                .doesNotContain("Seq Scan on person");
+    }
+
+    @Test
+    void searchReadsSimilarNamesInDistanceOrderFromTrigramIndex() {
+        String plan = explain("""
+                SELECT p.name, p.surname, 'jonh do' <<-> LOWER(p.name || ' ' || p.surname) AS distance
+                FROM person p
+                WHERE 'jonh do' <% LOWER(p.name || ' ' || p.surname)
+                ORDER BY distance
+                LIMIT 20
+                """);
+
+        assertThat(plan).contains("Index Scan using idx_person_name_trgm ", "Order By:")
+                .doesNotContain("Seq Scan on person", SORT_NODE);
+    }
+
+    /**
+     * @return План запроса, в котором индексы секций заменены родительскими индексами {@code person}.
+     */
+    private String explain(String sql) {
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class));
+        return INDEX_NAME.matcher(plan).replaceAll(match -> match.group(1) + " " + parentIndex(match.group(2)));
+    }
+
+    private String parentIndex(String index) {
+        List<String> parents = jdbcTemplate.queryForList("""
+                SELECT parent.relname
+                FROM pg_inherits
+                JOIN pg_class parent ON parent.oid = pg_inherits.inhparent
+                WHERE pg_inherits.inhrelid = ?::regclass
+                """, String.class, index);
+        return parents.isEmpty() ? index : parents.get(0);
+    }
+}
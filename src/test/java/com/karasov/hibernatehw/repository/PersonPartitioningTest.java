@@ -0,0 +1,119 @@
+package com.karasov.hibernatehw.repository;
+
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.entity.Person;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Секционирование {@code person} по городу: уникальность ключа между секциями через {@code person_key},
+ * перенос строки между секциями при смене города, создание секций для новых городов и отбрасывание лишних
+ * секций в общих планах.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+@Transactional
+class PersonPartitioningTest {
+
+    @Autowired
+    private PersonBatchRepository personBatchRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void keyIsUniqueAcrossPartitions() {
+        // John Doe 30 живет в New York
+        InsertOutcome outcome = personBatchRepository.insertIfAbsent(
+                new PersonDto("John", "Doe", 30, "5550000", "San Diego"));
+
+        assertThat(outcome).isEqualTo(InsertOutcome.ALREADY_EXISTS);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM person WHERE name = 'John' AND surname = 'Doe' AND age = 30", Long.class))
+                .isEqualTo(1);
+    }
+
+    @Test
+    void cityChangeMovesPersonToCityPartition() {
+        long sanDiego = cityId("San Diego");
+
+        assertThat(personBatchRepository.updateReturningCity(new Person.PersonId("John", "Doe", 30), "5550000", sanDiego))
+                .containsExactly(cityId("New York"));
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT tableoid::regclass::text FROM person WHERE name = 'John' AND surname = 'Doe' AND age = 30",
+                String.class))
+                .isEqualTo("person_" + sanDiego);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT city_id FROM person_key WHERE name = 'John' AND surname = 'Doe' AND age = 30", Long.class))
+                .isEqualTo(sanDiego);
+    }
+
+    @Test
+    void newCityGetsPartitionDroppedWithCity() {
+        long cityId = jdbcTemplate.queryForObject(
+                "INSERT INTO city (name) VALUES ('Partition City') RETURNING id", Long.class);
+
+        assertThat(personBatchRepository.insertIfAbsent(
+                new PersonDto("Partition", "Person", 33, "5550000", "Partition City")))
+                .isEqualTo(InsertOutcome.INSERTED);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM person_" + cityId + " WHERE name = 'Partition'", Long.class))
+                .isEqualTo(1);
+
+        assertThat(personBatchRepository.deleteReturningCity(new Person.PersonId("Partition", "Person", 33)))
+                .hasSize(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM person_key WHERE name = 'Partition'", Long.class))
+                .isZero();
+        jdbcTemplate.update("DELETE FROM city WHERE id = ?", cityId);
+        assertThat(jdbcTemplate.queryForObject("SELECT to_regclass(?)::text", String.class, "person_" + cityId))
+                .isNull();
+    }
+
+    /**
+     * Общий план подготовленного запроса строится без значений параметров, но лишние секции все равно
+     * отбрасываются: по параметру города — при запуске, по городу из {@code person_key} — при выполнении.
+     * Поэтому режим выбора плана ({@code plan_cache_mode}) оставлен по умолчанию.
+     */
+    @Test
+    void genericPlansPrunePartitionsByCityParameterAndByKeySubquery() {
+        long newYork = cityId("New York");
+        jdbcTemplate.execute("SET LOCAL plan_cache_mode = force_generic_plan");
+        jdbcTemplate.execute("""
+                PREPARE person_by_key(varchar, varchar, int) AS
+                SELECT p.phone_number FROM person p
+                WHERE p.name = $1 AND p.surname = $2 AND p.age = $3
+                  AND p.city_id = (SELECT k.city_id FROM person_key k WHERE k.name = $1 AND k.surname = $2 AND k.age = $3)
+                """);
+        jdbcTemplate.execute("PREPARE person_by_city(bigint) AS SELECT p.name FROM person p WHERE p.city_id = $1");
+        try {
+            String byKey = explainAnalyze("EXECUTE person_by_key('John', 'Doe', 30)");
+            String byCity = explainAnalyze("EXECUTE person_by_city(" + newYork + ")");
+
+            long partitions = jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM pg_inherits WHERE inhparent = 'person'::regclass", Long.class);
+            assertThat(byKey).containsPattern("person_" + newYork + " p_\\d+ \\(actual rows=1");
+            assertThat(byKey.split("never executed", -1)).hasSize((int) partitions);
+            assertThat(byCity).contains("Subplans Removed: " + (partitions - 1), "person_" + newYork);
+        } finally {
+            jdbcTemplate.execute("DEALLOCATE person_by_key");
+            jdbcTemplate.execute("DEALLOCATE person_by_city");
+        }
+    }
+
+    private String explainAnalyze(String sql) {
+        return String.join("\n", jdbcTemplate.queryForList(
+                "EXPLAIN (ANALYZE, COSTS OFF, TIMING OFF, SUMMARY OFF) " + sql, String.class));
+    }
+
+    private long cityId(String name) {
+        return jdbcTemplate.queryForObject("SELECT id FROM city WHERE name = ?", Long.class, name);
+    }
+}
@@ -0,0 +1,96 @@
+package com.karasov.hibernatehw.service;
+
+import com.karasov.hibernatehw.dto.PatchPersonDto;
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.entity.City;
+import com.karasov.hibernatehw.repository.CityRepository;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет query cache для чтений {@link PersonService} и то, что нативные записи сбрасывают
+ * только данные таблицы {@code person}, не затрагивая регион {@code city}.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+class PersonCacheTest {
+
+    @Autowired
+    private PersonService service;
+
+    @Autowired
+    private CityRepository cityRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        // Регионы JCache общие для всех тестовых контекстов, поэтому очищаются напрямую,
+        // включая регионы запросов, которые этот контекст еще не создал
+        CacheManager cacheManager = Caching.getCachingProvider().getCacheManager();
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.patchPerson("John", "Doe", 30, new PatchPersonDto("1234567890", "New York"));
+        service.deletePerson("Ann", "Lee", 20);
+    }
+
+    @Test
+    void repeatedReadsAreServedFromQueryCache() {
+        service.getPerson("John", "Doe", 30);
+        service.getPersonsByCity("New York");
+        service.getPersonByAgeLowerThanAsc(40);
+        statistics.clear();
+
+        service.getPerson("John", "Doe", 30);
+        service.getPersonsByCity("New York");
+        service.getPersonByAgeLowerThanAsc(40);
+
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getQueryCacheHitCount()).isEqualTo(3);
+    }
+
+    @Test
+    void nativePatchInvalidatesPersonButKeepsCityRegion() {
+        City newYork = cityRepository.findCityByName("New York").orElseThrow();
+        service.getPerson("John", "Doe", 30);
+
+        service.patchPerson("John", "Doe", 30, new PatchPersonDto("555", "San Diego"));
+
+        assertThat(entityManagerFactory.getCache().contains(City.class, newYork.getId())).isTrue();
+        PersonDto patched = service.getPerson("John", "Doe", 30);
+        assertThat(patched.phoneNumber()).isEqualTo("555");
+        assertThat(patched.cityName()).isEqualTo("San Diego");
+    }
+
+    @Test
+    void batchImportInvalidatesCachedLists() {
+        assertThat(service.getPersonsByCity("New York")).hasSize(2);
+
+        service.importPersons(List.of(new PersonDto("Ann", "Lee", 20, "1", "New York")).iterator());
+
+        assertThat(service.getPersonsByCity("New York")).hasSize(3);
+    }
+}
@@ -0,0 +1,290 @@
+package com.karasov.hibernatehw.service;
+
+import com.karasov.hibernatehw.cache.CityDirectory;
+import com.karasov.hibernatehw.dto.BulkPatchItemDto;
+import com.karasov.hibernatehw.dto.PatchPersonDto;
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonKeyDto;
+import com.karasov.hibernatehw.dto.PersonPageDto;
+import com.karasov.hibernatehw.entity.Person;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Регрессионные проверки SQL каждого метода {@link PersonService} на объеме, близком к рабочему:
+ * {@value #PERSONS} людей в {@value #CITIES} городах. Запросы записываются прокси над {@link DataSource}
+ * ({@link SqlRecorder}), поэтому проверяется ровно тот SQL, который выполнил метод.
+ * <p>
+ * Каждый тест объявляет бюджет запросов метода; тест падает, если метод выполнил больше (например, N+1 загрузка
+ * городов или чтение перед вставкой), или если в плане любого запроса к {@code person} появился
+ * {@code Seq Scan}. Планы строятся обычным планировщиком по свежей статистике, без запрета последовательного
+ * сканирования, поэтому параметры выбраны избирательными, как в рабочих запросах.
+ * <p>
+ * {@code person} секционирована по городу. Последовательное чтение допустимо для маленьких секций
+ * (городов из changelog) и для единственной секции в плане: выборка по городу читает свою секцию целиком.
+ * <p>
+ * Кэш второго уровня и query cache очищаются перед каждым тестом, чтобы считать запросы к базе. Набор данных
+ * добавляется один раз на класс и удаляется после него.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+@Import(SqlRecorder.Config.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PersonServiceSqlRegressionTest {
+
+    private static final int PERSONS = 100_000;
+    private static final int CITIES = 100;
+    private static final Pattern SEQ_SCAN_ON_PERSON = Pattern.compile("Seq Scan on (person\\w*)");
+    private static final Pattern PERSON_PARTITION = Pattern.compile(" on (person_(?:\\d+|default))\\b");
+    private static final int SMALL_RELATION_ROWS = 100;
+
+    @Autowired
+    private PersonService service;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CityDirectory cityDirectory;
+
+    @BeforeAll
+    void seed() {
+        jdbcTemplate.update("""
+                INSERT INTO city (name)
+                SELECT 'Budget City ' || g FROM generate_series(1, ?) g
+                """, CITIES);
+        jdbcTemplate.update("""
+                INSERT INTO person (name, surname, age, phone_number, city_id)
+                SELECT 'Name' || (g % 5000), 'Surname' || g, 18 + g % 63, lpad(g::text, 10, '0'), c.id
+                FROM generate_series(1, ?) g
+                JOIN city c ON c.name = 'Budget City ' || (1 + g % ?)
+                """, PERSONS, CITIES);
+        jdbcTemplate.execute("ANALYZE person");
+        jdbcTemplate.execute("ANALYZE city");
+        cityDirectory.preload();
+    }
+
+    @AfterAll
+    void removeSeed() {
+        jdbcTemplate.update("DELETE FROM person WHERE city_id IN (SELECT id FROM city WHERE name LIKE 'Budget City %')");
+        jdbcTemplate.update("DELETE FROM city WHERE name LIKE 'Budget City %'");
+    }
+
+    @BeforeEach
+    void clearCaches() {
+        // Регионы JCache общие для всех тестовых контекстов, поэтому очищаются напрямую
+        CacheManager cacheManager = Caching.getCachingProvider().getCacheManager();
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    void getPerson() throws SQLException {
+        assertSql(1, () -> assertThat(service.getPerson("Name7", "Surname7", 25).cityName())
+                .isEqualTo("Budget City 8"));
+    }
+
+    @Test
+    void getPersonByNameAndSurname() throws SQLException {
+        assertSql(1, () -> assertThat(service.getPersonByNameAndSurname("name7", "surname7").age())
+                .isEqualTo(25));
+    }
+
+    @Test
+    void getPersonsByCity() throws SQLException {
+        assertSql(1, () -> assertThat(service.getPersonsByCity("Budget City 8")).hasSize(PERSONS / CITIES));
+    }
+
+    @Test
+    void getPersonByAgeLowerThanAsc() throws SQLException {
+        assertSql(1, () -> assertThat(service.getPersonByAgeLowerThanAsc(19)).isNotEmpty());
+    }
+
+    @Test
+    void getPersonsByCityPages() throws SQLException {
+        PersonPageDto first = service.getPersonsByCity("Budget City 8", null, 100);
+
+        assertSql(1, () -> service.getPersonsByCity("Budget City 8", null, 100));
+        assertSql(1, () -> assertThat(service.getPersonsByCity("Budget City 8", first.nextCursor(), 100).items())
+                .hasSize(100));
+    }
+
+    @Test
+    void getPersonByAgeLowerThanAscPages() throws SQLException {
+        PersonPageDto first = service.getPersonByAgeLowerThanAsc(30, null, 100);
+
+        assertSql(1, () -> service.getPersonByAgeLowerThanAsc(30, null, 100));
+        assertSql(1, () -> assertThat(service.getPersonByAgeLowerThanAsc(30, first.nextCursor(), 100).items())
+                .hasSize(100));
+    }
+
+    @Test
+    void streams() throws SQLException {
+        assertSql(1, () -> service.streamPersonsByCity("Budget City 8", person -> {
+        }));
+        assertSql(1, () -> service.streamPersonByAgeLowerThanAsc(19, person -> {
+        }));
+    }
+
+    @Test
+    void exportResumedNearTheEnd() throws SQLException {
+        List<PersonDto> exported = new ArrayList<>();
+
+        assertSql(2, () -> service.exportPersons(new Person.PersonId("Name999", "Surname99999", 0), exported::add));
+        assertThat(exported).isNotEmpty();
+    }
+
+    /**
+     * Все люди набора — {@code NameN SurnameM} и делят с любым запросом такого вида большинство триграмм, поэтому
+     * похожие строки на этих данных читаются последовательно: под порог попадает почти вся таблица. Проверяется
+     * бюджет и чтение совпадений по началу строки по индексу; в масштабе поиск обслуживает модель чтения.
+     */
+    @Test
+    void searchPersons() throws SQLException {
+        // Порог похожести задается для транзакции отдельным set_config
+        List<SqlRecorder.Statement> statements = recordWithinBudget(2,
+                () -> assertThat(service.searchPersons("name7 surname7", null, 20).items()).isNotEmpty());
+
+        SqlRecorder.Statement search = statements.get(statements.size() - 1);
+        assertThat(SqlRecorder.explain(dataSource, search)).contains("_lower_name_surname_age_idx");
+    }
+
+    @Test
+    void getStatisticsDoesNotQuery() throws SQLException {
+        assertSql(0, () -> service.getStatistics("Budget City 8", 10));
+    }
+
+    @Test
+    void createAndDeletePerson() throws SQLException {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(
+                new MockHttpServletRequest("POST", "/persons")));
+        try {
+            assertSql(1, () -> service.createPerson(
+                    new PersonDto("Budget", "Create", 44, "5550000", "Budget City 8")));
+            assertSql(1, () -> service.createPerson(
+                    new PersonDto("Budget", "Create", 44, "5550000", "Budget City 8")), true);
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+        assertSql(1, () -> service.deletePerson("Budget", "Create", 44));
+    }
+
+    @Test
+    void patchPerson() throws SQLException {
+        assertSql(1, () -> assertThat(service.patchPerson("Name11", "Surname11", 29,
+                new PatchPersonDto("5551111", "Budget City 3"))).isEqualTo(1));
+    }
+
+    @Test
+    void importPersons() throws SQLException {
+        List<PersonDto> persons = List.of(
+                new PersonDto("Budget", "Import1", 30, "5550001", "Budget City 1"),
+                new PersonDto("Budget", "Import2", 30, "5550002", "Budget City 2"));
+
+        assertSql(1, () -> assertThat(service.importPersons(persons.iterator()).succeeded()).isEqualTo(2));
+        assertSql(1, () -> service.deletePersons(List.of(
+                new PersonKeyDto("Budget", "Import1", 30), new PersonKeyDto("Budget", "Import2", 30))));
+    }
+
+    @Test
+    void patchPersons() throws SQLException {
+        assertSql(1, () -> assertThat(service.patchPersons(List.of(
+                new BulkPatchItemDto(new PersonKeyDto("Name12", "Surname12", 30),
+                        new PatchPersonDto("5551212", "Budget City 4")),
+                new BulkPatchItemDto(new PersonKeyDto("Name13", "Surname13", 31),
+                        new PatchPersonDto("5551313", "Budget City 5")))).affected()).isEqualTo(2));
+    }
+
+    private void assertSql(int budget, Runnable call) throws SQLException {
+        assertSql(budget, call, false);
+    }
+
+    /**
+     * Выполняет метод, проверяет бюджет запросов и планы запросов к {@code person}.
+     *
+     * @param expectFailure Метод должен завершиться исключением (например, отказ в создании существующего человека);
+     *                      его запросы проверяются так же.
+     */
+    private void assertSql(int budget, Runnable call, boolean expectFailure) throws SQLException {
+        List<SqlRecorder.Statement> statements = recordWithinBudget(budget, () -> {
+            try {
+                call.run();
+                assertThat(expectFailure).as("call should have failed").isFalse();
+            } catch (RuntimeException e) {
+                if (!expectFailure) {
+                    throw e;
+                }
+            }
+        });
+
+        for (SqlRecorder.Statement statement : statements) {
+            if (statement.readsPerson()) {
+                String plan = SqlRecorder.explain(dataSource, statement);
+                assertThat(largeSeqScans(plan))
+                        .as("sequential scan on person in%n%s%n%s", statement, plan)
+                        .isEmpty();
+            }
+        }
+    }
+
+    /**
+     * Выполняет метод и проверяет только бюджет запросов.
+     *
+     * @return Выполненные запросы.
+     */
+    private List<SqlRecorder.Statement> recordWithinBudget(int budget, Runnable call) {
+        List<SqlRecorder.Statement> statements = SqlRecorder.record(call);
+        assertThat(statements)
+                .as("statement budget %d exceeded:%n%s", budget, describe(statements))
+                .hasSizeLessThanOrEqualTo(budget);
+        return statements;
+    }
+
+    /**
+     * @return Отношения {@code person*}, которые план читает последовательно, кроме маленьких и кроме
+     * единственной секции плана.
+     */
+    private List<String> largeSeqScans(String plan) {
+        Set<String> partitions = PERSON_PARTITION.matcher(plan).results()
+                .map(match -> match.group(1))
+                .collect(Collectors.toSet());
+        return SEQ_SCAN_ON_PERSON.matcher(plan).results()
+                .map(match -> match.group(1))
+                .filter(relation -> !partitions.equals(Set.of(relation)))
+                .filter(relation -> jdbcTemplate.queryForObject(
+                        "SELECT reltuples FROM pg_class WHERE relname = ?", Double.class, relation)
+                        >= SMALL_RELATION_ROWS)
+                .toList();
+    }
+
+    private static String describe(List<SqlRecorder.Statement> statements) {
+        return String.join(System.lineSeparator(), statements.stream().map(SqlRecorder.Statement::toString).toList());
+    }
+}
@@ -0,0 +1,147 @@
+package com.karasov.hibernatehw.service;
+
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonPageDto;
+import com.karasov.hibernatehw.handler.exception.CityNotFoundException;
+import com.karasov.hibernatehw.handler.exception.CreatingPersonAlreadyExistsException;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Проверяет, что методы чтения {@link PersonService} выполняют ровно один SQL-запрос
+ * и не создают сущностей: человек и город выбираются одним join в {@link PersonDto}.
+ * Создание человека — тоже один запрос, и при успехе, и при отказе.
+ * Кэш второго уровня и query cache очищаются перед каждым тестом, чтобы считать запросы к базе.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+class PersonServiceStatementCountTest {
+
+    @Autowired
+    private PersonService service;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        // Регионы JCache общие для всех тестовых контекстов, поэтому очищаются напрямую,
+        // включая регионы запросов, которые этот контекст еще не создал
+        CacheManager cacheManager = Caching.getCachingProvider().getCacheManager();
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void getPersonRunsSingleStatement() {
+        PersonDto person = service.getPerson("John", "Doe", 30);
+
+        assertThat(person.cityName()).isEqualTo("New York");
+        assertSingleStatementWithoutEntityLoads();
+    }
+
+    @Test
+    void getPersonsByCityRunsSingleStatement() {
+        List<PersonDto> persons = service.getPersonsByCity("los angeles");
+
+        assertThat(persons).extracting(PersonDto::name).containsExactlyInAnyOrder("Alice", "Dug");
+        assertSingleStatementWithoutEntityLoads();
+    }
+
+    @Test
+    void getPersonByAgeLowerThanAscRunsSingleStatement() {
+        List<PersonDto> persons = service.getPersonByAgeLowerThanAsc(200);
+
+        assertThat(persons).hasSize(6);
+        assertSingleStatementWithoutEntityLoads();
+    }
+
+    @Test
+    void getPersonByNameAndSurnameRunsSingleStatement() {
+        PersonDto person = service.getPersonByNameAndSurname("tom", "delonge");
+
+        assertThat(person.cityName()).isEqualTo("San Diego");
+        assertSingleStatementWithoutEntityLoads();
+    }
+
+    @Test
+    void pageAfterCursorRunsSingleStatement() {
+        PersonPageDto first = service.getPersonByAgeLowerThanAsc(200, null, 4);
+        statistics.clear();
+
+        PersonPageDto second = service.getPersonByAgeLowerThanAsc(200, first.nextCursor(), 4);
+
+        assertThat(first.items()).hasSize(4);
+        assertThat(second.items()).hasSize(2);
+        assertThat(second.nextCursor()).isNull();
+        assertSingleStatementWithoutEntityLoads();
+    }
+
+    @Test
+    void streamRunsSingleStatement() {
+        List<PersonDto> persons = new ArrayList<>();
+
+        service.streamPersonsByCity("New York", persons::add);
+
+        assertThat(persons).extracting(PersonDto::name).containsExactly("Jane", "John");
+        assertSingleStatementWithoutEntityLoads();
+    }
+
+    @Test
+    @Transactional
+    void createPersonRunsSingleStatement() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(
+                new MockHttpServletRequest("POST", "/persons")));
+        try {
+            URI uri = service.createPerson(new PersonDto("Count", "Create", 44, "5550000", "san diego"));
+
+            assertThat(uri.getPath()).isEqualTo("/persons/Count/Create/44");
+            assertSingleStatementWithoutEntityLoads();
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Test
+    @Transactional
+    void rejectedCreatePersonRunsSingleStatement() {
+        assertThatThrownBy(() -> service.createPerson(new PersonDto("John", "Doe", 30, "1", "New York")))
+                .isInstanceOf(CreatingPersonAlreadyExistsException.class);
+        assertSingleStatementWithoutEntityLoads();
+
+        statistics.clear();
+        assertThatThrownBy(() -> service.createPerson(new PersonDto("Count", "Nowhere", 44, "1", "Atlantis")))
+                .isInstanceOf(CityNotFoundException.class)
+                .hasMessage("City 'Atlantis' not found.");
+        assertSingleStatementWithoutEntityLoads();
+    }
+
+    private void assertSingleStatementWithoutEntityLoads() {
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+}
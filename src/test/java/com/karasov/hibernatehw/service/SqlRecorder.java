@@ -0,0 +1,129 @@
+package com.karasov.hibernatehw.service;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Запись SQL, выполненного в текущем потоке, через datasource-proxy.
+ * <p>
+ * {@link Config} оборачивает {@link DataSource} контекста; {@link #record(Runnable)} возвращает выполненные
+ * запросы с параметрами первого набора: пакет одного {@link PreparedStatement} — один запрос.
+ * Выполнения других потоков (планировщик, запись в фоне) не записываются. {@link #explain(DataSource, Statement)} строит план записанного
+ * запроса с теми же параметрами.
+ */
+final class SqlRecorder {
+
+    private static final ThreadLocal<List<Statement>> RECORDING = new ThreadLocal<>();
+    private static final Pattern PERSON_TABLE = Pattern.compile("(?i)\\bperson\\b");
+
+    private SqlRecorder() {
+    }
+
+    /**
+     * Выполненный запрос.
+     *
+     * @param sql        Текст запроса.
+     * @param parameters Операции установки параметров первого набора в порядке вызова.
+     */
+    record Statement(String sql, List<ParameterSetOperation> parameters) {
+
+        boolean readsPerson() {
+            return PERSON_TABLE.matcher(sql).find();
+        }
+
+        @Override
+        public String toString() {
+            return sql.strip().replaceAll("\\s+", " ");
+        }
+    }
+
+    static List<Statement> record(Runnable call) {
+        List<Statement> statements = new ArrayList<>();
+        RECORDING.set(statements);
+        try {
+            call.run();
+        } finally {
+            RECORDING.remove();
+        }
+        return statements;
+    }
+
+    /**
+     * @return Текст плана {@code EXPLAIN} запроса, построенного с записанными параметрами.
+     */
+    static String explain(DataSource dataSource, Statement statement) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement explain = connection.prepareStatement("EXPLAIN " + statement.sql())) {
+            for (ParameterSetOperation parameter : statement.parameters()) {
+                try {
+                    parameter.getMethod().invoke(explain, parameter.getArgs());
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    throw new SQLException("Cannot bind " + parameter.getMethod().getName(), e);
+                }
+            }
+            List<String> plan = new ArrayList<>();
+            try (ResultSet rs = explain.executeQuery()) {
+                while (rs.next()) {
+                    plan.add(rs.getString(1));
+                }
+            }
+            return String.join("\n", plan);
+        }
+    }
+
+    private static final class Listener implements QueryExecutionListener {
+
+        @Override
+        public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        }
+
+        @Override
+        public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+            List<Statement> statements = RECORDING.get();
+            if (statements == null) {
+                return;
+            }
+            for (QueryInfo query : queryInfoList) {
+                List<List<ParameterSetOperation>> parameters = query.getParametersList();
+                statements.add(new Statement(query.getQuery(),
+                        parameters.isEmpty() ? List.of() : List.copyOf(parameters.get(0))));
+            }
+        }
+    }
+
+    @TestConfiguration
+    static class Config {
+
+        @Bean
+        static BeanPostProcessor sqlRecordingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource dataSource) {
+                        return ProxyDataSourceBuilder.create(dataSource)
+                                .name(beanName)
+                                .listener(new Listener())
+                                .build();
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+}
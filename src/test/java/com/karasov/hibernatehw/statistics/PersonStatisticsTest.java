@@ -0,0 +1,110 @@
+package com.karasov.hibernatehw.statistics;
+
+import com.karasov.hibernatehw.dto.AgeBucketDto;
+import com.karasov.hibernatehw.dto.CityCountDto;
+import com.karasov.hibernatehw.dto.PatchPersonDto;
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.dto.PersonStatisticsDto;
+import com.karasov.hibernatehw.service.PersonService;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Проверяет инкрементальное обновление статистики записями сервиса и пересчет расхождений.
+ * Агрегат меняется после фиксации записи, поэтому тест не транзакционный и возвращает данные после себя.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+@AutoConfigureMockMvc
+class PersonStatisticsTest {
+
+    @Autowired
+    private PersonStatistics statistics;
+
+    @Autowired
+    private PersonService service;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        statistics.reconcile();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.patchPerson("John", "Doe", 30, new PatchPersonDto("1234567890", "New York"));
+        service.deletePerson("Ann", "Lee", 20);
+        jdbcTemplate.update("DELETE FROM person WHERE name = 'Bypass'");
+        statistics.reconcile();
+    }
+
+    @Test
+    void servesCountsHistogramAndPercentiles() throws Exception {
+        mockMvc.perform(get("/persons/statistics").param("bucket", "20"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(6))
+                .andExpect(jsonPath("$.cities[*].city").value(contains("Los Angeles", "New York", "San Diego")))
+                .andExpect(jsonPath("$.ageHistogram[*].count").value(contains(0, 3, 3)))
+                .andExpect(jsonPath("$.agePercentiles.p50").value(35))
+                .andExpect(jsonPath("$.agePercentiles.p99").value(50));
+
+        mockMvc.perform(get("/persons/statistics").param("city", "new york"))
+                .andExpect(jsonPath("$.count").value(2))
+                .andExpect(jsonPath("$.agePercentiles.p50").value(25));
+        mockMvc.perform(get("/persons/statistics").param("city", "Atlantis"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void writesUpdateAggregateWithoutReconciliation() {
+        service.createPerson(new PersonDto("Ann", "Lee", 20, "1", "Los Angeles"));
+        service.patchPerson("John", "Doe", 30, new PatchPersonDto("555", "San Diego"));
+
+        PersonStatisticsDto snapshot = statistics.snapshot(null, 10);
+
+        assertThat(snapshot.count()).isEqualTo(7);
+        assertThat(snapshot.cities()).containsExactly(
+                new CityCountDto("Los Angeles", 3), new CityCountDto("San Diego", 3), new CityCountDto("New York", 1));
+        assertThat(snapshot.ageHistogram()).contains(new AgeBucketDto(20, 29, 2), new AgeBucketDto(30, 39, 2));
+
+        service.deletePerson("ann", "LEE", 20);
+
+        assertThat(statistics.snapshot(null, 10).cities()).contains(new CityCountDto("Los Angeles", 2));
+    }
+
+    @Test
+    void reconciliationCorrectsWritesMadeOutsideTheService() {
+        jdbcTemplate.update("INSERT INTO person (name, surname, age, phone_number, city_id) "
+                + "VALUES ('Bypass', 'Writer', 99, '0', 1)");
+        assertThat(statistics.snapshot(null, 10).count()).isEqualTo(6);
+
+        statistics.reconcile();
+
+        PersonStatisticsDto snapshot = statistics.snapshot(null, 10);
+        assertThat(snapshot.count()).isEqualTo(7);
+        assertThat(snapshot.ageHistogram()).last().isEqualTo(new AgeBucketDto(90, 99, 1));
+        assertThat(snapshot.cities()).extracting(CityCountDto::city).isEqualTo(List.of("New York", "Los Angeles", "San Diego"));
+    }
+}
@@ -0,0 +1,97 @@
+package com.karasov.hibernatehw.writebehind;
+
+import com.karasov.hibernatehw.entity.Person;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PatchJournalTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void replaysAppendedPatchesAndStopsAtTornRecord() throws Exception {
+        PendingPatch first = new PendingPatch(new Person.PersonId("John", "Doe", 30), "1", 2);
+        PendingPatch second = new PendingPatch(new Person.PersonId("Jane", "Smith", 25), null, 3);
+        try (PatchJournal journal = new PatchJournal(directory, true)) {
+            assertThat(journal.replay()).isEmpty();
+            journal.append(first);
+            journal.append(second);
+        }
+        Path segment = segments().get(0);
+        Files.write(segment, new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+        try (PatchJournal journal = new PatchJournal(directory, false)) {
+            assertThat(journal.replay()).containsExactly(first, second);
+            journal.append(first);
+        }
+        try (PatchJournal journal = new PatchJournal(directory, false)) {
+            assertThat(journal.replay()).containsExactly(first, second, first);
+        }
+    }
+
+    @Test
+    void deletesSegmentsBeforeRotation() throws Exception {
+        try (PatchJournal journal = new PatchJournal(directory, false)) {
+            journal.replay();
+            journal.append(new PendingPatch(new Person.PersonId("John", "Doe", 30), "1", 2));
+            long segment = journal.rotate();
+            journal.append(new PendingPatch(new Person.PersonId("Jane", "Smith", 25), "2", 3));
+
+            journal.deleteBefore(segment);
+
+            assertThat(segments()).hasSize(1);
+        }
+        try (PatchJournal journal = new PatchJournal(directory, false)) {
+            assertThat(journal.replay()).extracting(patch -> patch.personId().getName()).containsExactly("Jane");
+        }
+    }
+
+    @Test
+    void keepsConcurrentForcedAppendsAcrossRotation() throws Exception {
+        int threads = 8;
+        int perThread = 50;
+        try (PatchJournal journal = new PatchJournal(directory, true)) {
+            journal.replay();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> appenders = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                appenders.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        journal.append(new PendingPatch(new Person.PersonId("P" + thread, "S" + i, 30), "1", 2));
+                    }
+                    return null;
+                }));
+            }
+            for (int i = 0; i < 5; i++) {
+                journal.rotate();
+            }
+            for (Future<?> appender : appenders) {
+                appender.get();
+            }
+            executor.shutdown();
+        }
+        try (PatchJournal journal = new PatchJournal(directory, false)) {
+            assertThat(journal.replay()).hasSize(threads * perThread).doesNotHaveDuplicates();
+        }
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+}
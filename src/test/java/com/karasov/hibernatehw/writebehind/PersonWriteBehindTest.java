@@ -0,0 +1,120 @@
+package com.karasov.hibernatehw.writebehind;
+
+import com.karasov.hibernatehw.dto.PatchPersonDto;
+import com.karasov.hibernatehw.dto.PersonDto;
+import com.karasov.hibernatehw.service.PersonService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Проверяет, что изменения через {@code PATCH} принимаются сразу, сливаются по ключу человека и записываются
+ * в базу фоновым потоком. Запись идет вне транзакции теста, поэтому тест возвращает данные после себя.
+ */
+@SpringBootTest(properties = {
+        "persons.write-behind.enabled=true",
+        "persons.write-behind.flush-size=100",
+        "persons.write-behind.max-delay=300ms",
+        "persons.write-behind.durability=journal",
+        "persons.write-behind.journal-dir=target/write-behind-test"
+})
+@ActiveProfiles("test")
+@AutoConfigureEmbeddedDatabase
+@AutoConfigureMockMvc
+class PersonWriteBehindTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PersonService service;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        awaitTrue(() -> meterRegistry.get("persons.write-behind.depth").gauge().value() == 0);
+        service.patchPerson("John", "Doe", 30, new PatchPersonDto("1234567890", "New York"));
+        service.patchPerson("Jane", "Smith", 25, new PatchPersonDto("0987654321", "New York"));
+    }
+
+    @Test
+    void coalescesPatchesOfOnePersonAndWritesThemLater() throws Exception {
+        double coalescedBefore = meterRegistry.get("persons.write-behind.coalesced").counter().count();
+
+        for (int i = 1; i <= 5; i++) {
+            patchPerson("John", "Doe", 30, "{\"phoneNumber\":\"%d\",\"cityName\":\"san diego\"}".formatted(i))
+                    .andExpect(status().isAccepted());
+        }
+        patchPerson("Jane", "Smith", 25, "{\"phoneNumber\":\"9\",\"cityName\":\"Los Angeles\"}")
+                .andExpect(status().isAccepted());
+
+        assertThat(meterRegistry.get("persons.write-behind.coalesced").counter().count() - coalescedBefore)
+                .isEqualTo(4);
+        awaitTrue(() -> "5".equals(service.getPerson("John", "Doe", 30).phoneNumber()));
+        assertThat(service.getPerson("John", "Doe", 30))
+                .isEqualTo(new PersonDto("John", "Doe", 30, "5", "San Diego"));
+        assertThat(service.getPerson("Jane", "Smith", 25))
+                .isEqualTo(new PersonDto("Jane", "Smith", 25, "9", "Los Angeles"));
+        assertThat(service.getPersonsByCity("San Diego")).extracting(PersonDto::name).contains("John");
+        assertThat(meterRegistry.get("persons.write-behind.flush").timer().count()).isPositive();
+    }
+
+    @Test
+    void writesValidPatchesAroundRejectedOneAndDropsItAfterMaxAttempts() throws Exception {
+        double deadLettersBefore = meterRegistry.get("persons.write-behind.dead-letters").counter().count();
+
+        patchPerson("John", "Doe", 30, "{\"phoneNumber\":\"7\",\"cityName\":\"San Diego\"}")
+                .andExpect(status().isAccepted());
+        patchPerson("Alice", "Johnson", 40, "{\"phoneNumber\":\"%s\",\"cityName\":\"Los Angeles\"}"
+                .formatted("1".repeat(300)))
+                .andExpect(status().isAccepted());
+        patchPerson("Jane", "Smith", 25, "{\"phoneNumber\":\"8\",\"cityName\":\"Los Angeles\"}")
+                .andExpect(status().isAccepted());
+
+        awaitTrue(() -> meterRegistry.get("persons.write-behind.dead-letters").counter().count() > deadLettersBefore);
+        assertThat(meterRegistry.get("persons.write-behind.dead-letters").counter().count() - deadLettersBefore)
+                .isEqualTo(1);
+        assertThat(service.getPerson("John", "Doe", 30))
+                .isEqualTo(new PersonDto("John", "Doe", 30, "7", "San Diego"));
+        assertThat(service.getPerson("Jane", "Smith", 25))
+                .isEqualTo(new PersonDto("Jane", "Smith", 25, "8", "Los Angeles"));
+        assertThat(service.getPerson("Alice", "Johnson", 40).phoneNumber()).hasSizeLessThan(300);
+        assertThat(meterRegistry.get("persons.write-behind.depth").gauge().value()).isZero();
+    }
+
+    @Test
+    void rejectsUnknownCityImmediately() throws Exception {
+        patchPerson("John", "Doe", 30, "{\"phoneNumber\":\"1\",\"cityName\":\"Atlantis\"}")
+                .andExpect(status().isNotFound());
+    }
+
+    private ResultActions patchPerson(String name, String surname, int age, String body) throws Exception {
+        return mockMvc.perform(patch("/persons/{name}/{surname}/{age}", name, surname, age)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body));
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 10 s").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}